@@ -10,6 +10,9 @@ import simpledb.common.Type;
 import simpledb.execution.*;
 import simpledb.optimizer.LogicalPlan;
 import simpledb.optimizer.TableStats;
+import simpledb.storage.DbFile;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapFileEncoder;
 import simpledb.storage.IntField;
 import simpledb.storage.StringField;
 import simpledb.storage.Tuple;
@@ -21,6 +24,8 @@ import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class Parser {
     static boolean explain = false;
@@ -187,23 +192,19 @@ public class Parser {
 
         // now look for group by fields
         ZGroupBy gby = q.getGroupBy();
-        String groupByField = null;
+        List<String> groupByFields = new ArrayList<>();
         if (gby != null) {
             @SuppressWarnings("unchecked")
             List<ZExp> gbs = gby.getGroupBy();
-            if (gbs.size() > 1) {
-                throw new simpledb.ParsingException(
-                        "At most one grouping field expression supported.");
-            }
-            if (gbs.size() == 1) {
-                ZExp gbe = gbs.get(0);
+            for (ZExp gbe : gbs) {
                 if (!(gbe instanceof ZConstant)) {
                     throw new simpledb.ParsingException(
                             "Complex grouping expressions (" + gbe
                                     + ") not supported.");
                 }
-                groupByField = ((ZConstant) gbe).getValue();
+                String groupByField = ((ZConstant) gbe).getValue();
                 System.out.println("GROUP BY FIELD : " + groupByField);
+                groupByFields.add(groupByField);
             }
 
         }
@@ -212,8 +213,7 @@ public class Parser {
         // validity
         @SuppressWarnings("unchecked")
         List<ZSelectItem> selectList = q.getSelect();
-        String aggField = null;
-        String aggFun = null;
+        boolean hasAgg = false;
 
         for (int i = 0; i < selectList.size(); i++) {
             ZSelectItem si = selectList.get(i);
@@ -223,20 +223,18 @@ public class Parser {
                         "Expressions in SELECT list are not supported.");
             }
             if (si.getAggregate() != null) {
-                if (aggField != null) {
-                    throw new simpledb.ParsingException(
-                            "Aggregates over multiple fields not supported.");
-                }
-                aggField = ((ZConstant) ((ZExpression) si.getExpression())
+                String aggField = ((ZConstant) ((ZExpression) si.getExpression())
                         .getOperand(0)).getValue();
-                aggFun = si.getAggregate();
+                String aggFun = si.getAggregate();
                 System.out.println("Aggregate field is " + aggField
                         + ", agg fun is : " + aggFun);
                 lp.addProjectField(aggField, aggFun);
+                lp.addAggregate(aggFun, aggField, null);
+                hasAgg = true;
             } else {
-                if (groupByField != null
-                        && !(groupByField.equals(si.getTable() + "."
-                        + si.getColumn()) || groupByField.equals(si
+                if (!groupByFields.isEmpty()
+                        && !(groupByFields.contains(si.getTable() + "."
+                        + si.getColumn()) || groupByFields.contains(si
                         .getColumn()))) {
                     throw new simpledb.ParsingException("Non-aggregate field "
                             + si.getColumn()
@@ -246,30 +244,26 @@ public class Parser {
             }
         }
 
-        if (groupByField != null && aggFun == null) {
+        if (!groupByFields.isEmpty() && !hasAgg) {
             throw new simpledb.ParsingException("GROUP BY without aggregation.");
         }
 
-        if (aggFun != null) {
-            lp.addAggregate(aggFun, aggField, groupByField);
-        }
+        for (String groupByField : groupByFields)
+            lp.addGroupBy(groupByField);
         // sort the data
 
         if (q.getOrderBy() != null) {
             @SuppressWarnings("unchecked")
             List<ZOrderBy> obys = q.getOrderBy();
-            if (obys.size() > 1) {
-                throw new simpledb.ParsingException(
-                        "Multi-attribute ORDER BY is not supported.");
-            }
-            ZOrderBy oby = obys.get(0);
-            if (!(oby.getExpression() instanceof ZConstant)) {
-                throw new simpledb.ParsingException(
-                        "Complex ORDER BY's are not supported");
-            }
-            ZConstant f = (ZConstant) oby.getExpression();
+            for (ZOrderBy oby : obys) {
+                if (!(oby.getExpression() instanceof ZConstant)) {
+                    throw new simpledb.ParsingException(
+                            "Complex ORDER BY's are not supported");
+                }
+                ZConstant f = (ZConstant) oby.getExpression();
 
-            lp.addOrderBy(f.getValue(), oby.getAscOrder());
+                lp.addOrderBy(f.getValue(), oby.getAscOrder());
+            }
 
         }
         return lp;
@@ -284,6 +278,8 @@ public class Parser {
         Query query = new Query(tId);
 
         LogicalPlan lp = parseQueryLogicalPlan(tId, s);
+        if (limit >= 0)
+            lp.addLimit(limit);
         OpIterator physicalPlan = lp.physicalPlan(tId,
                 TableStats.getStatsMap(), explain);
         query.setPhysicalPlan(physicalPlan);
@@ -463,6 +459,56 @@ public class Parser {
         }
     }
 
+    /**
+     * COPY table FROM 'file' [DELIMITER 'c']: bulk load a delimited text file
+     * into an existing table. Zql does not know the statement, so it is
+     * recognized before the text reaches the Zql parser.
+     */
+    static final Pattern COPY_STATEMENT = Pattern.compile(
+            "\\s*COPY\\s+(\\w+)\\s+FROM\\s+'([^']*)'(?:\\s+DELIMITER\\s+'(.)')?\\s*;?\\s*",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * A trailing LIMIT n of a SELECT, which Zql does not know either: it is
+     * removed from the text and added to the logical plan of the query. A
+     * LIMIT on any other statement is a parse error.
+     */
+    static final Pattern LIMIT_CLAUSE = Pattern.compile(
+            "(.*\\S)\\s+LIMIT\\s+(\\d+)\\s*;?\\s*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * LIMIT of the statement being processed, or -1
+     */
+    private int limit = -1;
+
+    /**
+     * Load the rows of a delimited text file into a heap table with
+     * {@link HeapFile#bulkLoad}, which runs as its own transaction.
+     */
+    public void handleCopyStatement(String tableName, String fileName, char delimiter)
+            throws IOException, DbException, simpledb.ParsingException {
+        if (inUserTrans)
+            throw new ParsingException("COPY runs as its own transaction and cannot be used inside a transaction");
+        int tableId;
+        try {
+            tableId = Database.getCatalog().getTableId(tableName);
+        } catch (NoSuchElementException e) {
+            throw new ParsingException("Unknown table " + tableName);
+        }
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        if (!(file instanceof HeapFile))
+            throw new ParsingException("COPY can only load heap tables");
+        Iterator<Tuple> tuples = HeapFileEncoder.readTuples(new File(fileName), file.getTupleDesc(), delimiter);
+        int loaded;
+        try {
+            loaded = ((HeapFile) file).bulkLoad(tuples);
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            throw new DbException("COPY failed, nothing was loaded: " + e.getMessage());
+        }
+        System.out.println(loaded + " rows loaded into " + tableName + ".");
+    }
+
     public LogicalPlan generateLogicalPlan(TransactionId tid, String s)
             throws simpledb.ParsingException, IOException {
         ByteArrayInputStream bis = new ByteArrayInputStream(s.getBytes());
@@ -503,8 +549,28 @@ public class Parser {
 
     private void processNextStatementImpl(InputStream is, boolean expectNoErrors) {
         try {
-            ZqlParser p = new ZqlParser(is);
+            byte[] statement = readAll(is);
+            Matcher copy = COPY_STATEMENT.matcher(new String(statement, StandardCharsets.UTF_8));
+            if (copy.matches()) {
+                handleCopyStatement(copy.group(1), copy.group(2),
+                        copy.group(3) == null ? ',' : copy.group(3).charAt(0));
+                return;
+            }
+            Matcher limitClause = LIMIT_CLAUSE.matcher(new String(statement, StandardCharsets.UTF_8));
+            limit = -1;
+            if (limitClause.matches()) {
+                try {
+                    limit = Integer.parseInt(limitClause.group(2));
+                } catch (NumberFormatException e) {
+                    throw new simpledb.ParsingException("LIMIT " + limitClause.group(2) + " is too large");
+                }
+                statement = (limitClause.group(1) + ";").getBytes(StandardCharsets.UTF_8);
+            }
+            ZqlParser p = new ZqlParser(new ByteArrayInputStream(statement));
             ZStatement s = p.readStatement();
+            // 只有SELECT使用LIMIT，其他语句不能悄悄丢掉它
+            if (limit >= 0 && !(s instanceof ZQuery))
+                throw new simpledb.ParsingException("LIMIT is only supported in SELECT statements");
 
             Query query = null;
             if (s instanceof ZTransactStmt)
@@ -532,8 +598,11 @@ public class Parser {
                                         + s
                                         + "\n -- parser only handles SQL transactions, insert, delete, and select statements");
                     }
-                    if (query != null)
+                    if (query != null) {
                         query.execute();
+                        if (explain)
+                            printSortStats(query.getPhysicalPlan());
+                    }
 
                     if (!inUserTrans && curtrans != null) {
                         curtrans.commit();
@@ -581,10 +650,38 @@ public class Parser {
         }
     }
 
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = is.read(buf)) > 0)
+            bytes.write(buf, 0, n);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Run a backslash command of the interactive prompt:
+     * <ul>
+     * <li>\stats prints the buffer pool stats</li>
+     * <li>\stats reset sets them back to zero</li>
+     * </ul>
+     */
+    protected void handleMetaCommand(String cmd) {
+        String[] words = cmd.split("\\s+");
+        if (words[0].equals("\\stats") && words.length == 1) {
+            System.out.println(Database.getBufferPool().getStats());
+        } else if (words[0].equals("\\stats") && words.length == 2 && words[1].equalsIgnoreCase("reset")) {
+            Database.getBufferPool().getStats().reset();
+            System.out.println("Buffer pool stats reset.");
+        } else {
+            System.out.println("Unknown command " + cmd + "\n -- supported commands: \\stats, \\stats reset");
+        }
+    }
+
     // Basic SQL completions
     public static final String[] SQL_COMMANDS = {"select", "from", "where",
             "group by", "max(", "min(", "avg(", "count", "rollback", "commit",
-            "insert", "delete", "values", "into"};
+            "insert", "delete", "values", "into", "copy"};
 
     public static void main(String[] argv) throws IOException {
 
@@ -598,6 +695,20 @@ public class Parser {
         p.start(argv);
     }
 
+    /**
+     * Print what the sorts of an executed plan did.
+     */
+    private static void printSortStats(OpIterator plan) {
+        if (plan instanceof OrderBy)
+            System.out.println(((OrderBy) plan).explainAnalyze());
+        if (plan instanceof Operator) {
+            for (OpIterator child : ((Operator) plan).getChildren()) {
+                if (child != null)
+                    printSortStats(child);
+            }
+        }
+    }
+
     static final String usage = "Usage: parser catalogFile [-explain] [-f queryFile]";
     static final int SLEEP_TIME = 1000;
 
@@ -611,6 +722,7 @@ public class Parser {
         // first add tables to database
         Database.getCatalog().loadSchema(argv[0]);
         TableStats.computeStatistics();
+        Database.enableJmx();
 
         String queryFile = null;
 
@@ -669,6 +781,11 @@ public class Parser {
             String line;
             boolean quit = false;
             while (!quit && (line = reader.readLine("SimpleDB> ")) != null) {
+                // backslash commands take the whole line and need no ';'
+                if (buffer.length() == 0 && line.trim().startsWith("\\")) {
+                    handleMetaCommand(line.trim());
+                    continue;
+                }
                 // Split statements at ';': handles multiple statements on one
                 // line, or one
                 // statement spread across many lines
@@ -52,8 +52,13 @@ public class SimpleDb {
                             fieldSeparator = args[4].charAt(0);
                     }
 
-                    HeapFileEncoder.convert(sourceTxtFile, targetDatFile,
-                            BufferPool.getPageSize(), numOfAttributes, ts, fieldSeparator);
+                    long start = System.nanoTime();
+                    long rows = HeapFileEncoder.convertParallel(sourceTxtFile, targetDatFile,
+                            BufferPool.getPageSize(), numOfAttributes, ts, fieldSeparator,
+                            Runtime.getRuntime().availableProcessors());
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.printf("Converted %d rows in %.2f s (%.0f rows/s)%n",
+                            rows, seconds, rows / Math.max(seconds, 1e-9));
 
                 } catch (IOException e) {
                     throw new RuntimeException(e);
@@ -1,6 +1,7 @@
 package simpledb.common;
 
 import simpledb.storage.DbFile;
+import simpledb.storage.FilePageIO;
 import simpledb.storage.HeapFile;
 import simpledb.storage.TupleDesc;
 
@@ -11,6 +12,8 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * The Catalog keeps track of all available tables in the database and their
@@ -23,6 +26,8 @@ import java.util.function.Consumer;
  */
 public class Catalog {
 
+    private static final Pattern VARCHAR = Pattern.compile("varchar\\((\\d+)\\)", Pattern.CASE_INSENSITIVE);
+
     /**
      * Table description, includes a name, a primary key field name, a DbFile reference
      */
@@ -95,7 +100,7 @@ public class Catalog {
         for (; i < tableDescs.size(); ++i) {
             int tableId = tableDescs.get(i).getFile().getId();
             if (tableId == file.getId()) {
-                tableDescs.set(i, new TableDesc(file, name, pkeyField));
+                closeReplaced(tableDescs.set(i, new TableDesc(file, name, pkeyField)).getFile(), file);
                 return;
             }
         }
@@ -103,7 +108,7 @@ public class Catalog {
         i = tableDescs.size() - 1;
         for (; i >= 0; --i) {
             if (name.equals(tableDescs.get(i).getName())) {
-                tableDescs.set(i, new TableDesc(file, name, pkeyField));
+                closeReplaced(tableDescs.set(i, new TableDesc(file, name, pkeyField)).getFile(), file);
                 return;
             }
         }
@@ -115,6 +120,21 @@ public class Catalog {
         addTable(file, name, "");
     }
 
+    /**
+     * Close the file of a table that leaves the catalog, unless it is also
+     * the file that takes its place (replacement, null if none). Closing only
+     * releases file handles, so a failure is reported and otherwise ignored.
+     */
+    private static void closeReplaced(DbFile old, DbFile replacement) {
+        if (old == replacement)
+            return;
+        try {
+            old.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Add a new table to the catalog.
      * This table has tuples formatted using the specified TupleDesc and its
@@ -236,12 +256,20 @@ public class Catalog {
      */
     public void clear() {
         // TODO: some code goes here
+        for (TableDesc desc : tableDescs)
+            closeReplaced(desc.getFile(), null);
         tableDescs.clear();
     }
 
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
      * 从一个文件中读取schema，并在catalog中添加addTable合适的表
+     * <p>
+     * A field is of type int, string or varchar(n). A varchar(n) field holds
+     * strings of at most n &lt;= Type.STRING_LEN characters. The option
+     * format=fixed|slotted|pax|compressed chooses the page layout of the
+     * table (see HeapFile.PageFormat); a table with a varchar field is
+     * slotted by default, any other table fixed.
      *
      * @param catalogFile
      */
@@ -256,19 +284,30 @@ public class Catalog {
                 //assume line is of the format name (field type, field type, ...)
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
-                String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
+                // 字段列表以最后一个右括号结束，varchar(n)中也有括号
+                int close = line.lastIndexOf(")");
+                String fields = line.substring(line.indexOf("(") + 1, close).trim();
                 String[] els = fields.split(",");
                 List<String> names = new ArrayList<>();
                 List<Type> types = new ArrayList<>();
+                List<Integer> lengths = new ArrayList<>();
+                boolean varchar = false;
                 String primaryKey = ""; // 主键
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
-                    if (els2[1].trim().equalsIgnoreCase("int"))
+                    Matcher m = VARCHAR.matcher(els2[1].trim());
+                    if (els2[1].trim().equalsIgnoreCase("int")) {
                         types.add(Type.INT_TYPE);
-                    else if (els2[1].trim().equalsIgnoreCase("string")) // 不同类型
+                        lengths.add(0);
+                    } else if (els2[1].trim().equalsIgnoreCase("string")) { // 不同类型
+                        types.add(Type.STRING_TYPE);
+                        lengths.add(Type.STRING_LEN);
+                    } else if (m.matches()) {
                         types.add(Type.STRING_TYPE);
-                    else { // 不知道的类型
+                        lengths.add(Integer.parseInt(m.group(1)));
+                        varchar = true;
+                    } else { // 不知道的类型
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
                     }
@@ -284,17 +323,72 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder + "/" + name + ".dat"), t);
+                // 右括号之后是可选的表选项，例如 io=mmap checksum=crc32c
+                Map<String, String> options = parseOptions(line.substring(close + 1));
+                FilePageIO.Mode ioMode = FilePageIO.DEFAULT_MODE;
+                boolean checksums = false;
+                // 有varchar字段的表默认使用slotted页格式
+                HeapFile.PageFormat format = varchar ? HeapFile.PageFormat.SLOTTED : HeapFile.PageFormat.FIXED;
+                for (Map.Entry<String, String> option : options.entrySet()) {
+                    if (option.getKey().equals("io"))
+                        ioMode = FilePageIO.Mode.parse(option.getValue());
+                    else if (option.getKey().equals("checksum"))
+                        checksums = parseChecksum(option.getValue());
+                    else if (option.getKey().equals("format"))
+                        format = HeapFile.PageFormat.parse(option.getValue());
+                    else {
+                        System.out.println("Unknown table option " + option.getKey());
+                        System.exit(0);
+                    }
+                }
+                int[] lengthAr = lengths.stream().mapToInt(Integer::intValue).toArray();
+                HeapFile tabHf = new HeapFile(new File(baseFolder + "/" + name + ".dat"), t, ioMode, checksums,
+                        format, lengthAr);
                 addTable(tabHf, name, primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(0);
-        } catch (IndexOutOfBoundsException e) {
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
             System.out.println("Invalid catalog entry : " + line);
             System.exit(0);
         }
     }
+
+    /**
+     * Parse the value of the checksum table option: crc32c or none.
+     *
+     * @throws IllegalArgumentException if the value is neither
+     */
+    static boolean parseChecksum(String value) {
+        switch (value.toLowerCase()) {
+            case "crc32c":
+                return true;
+            case "none":
+                return false;
+            default:
+                throw new IllegalArgumentException("unknown checksum " + value);
+        }
+    }
+
+    /**
+     * Parse the table options that may follow the field list of a catalog
+     * entry, written as whitespace separated key=value pairs.
+     *
+     * @throws IllegalArgumentException if an option is not of the form key=value
+     */
+    static Map<String, String> parseOptions(String trailer) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String option : trailer.trim().split("\\s+")) {
+            if (option.isEmpty())
+                continue;
+            int eq = option.indexOf('=');
+            if (eq <= 0 || eq == option.length() - 1)
+                throw new IllegalArgumentException("malformed table option " + option);
+            options.put(option.substring(0, eq).toLowerCase(), option.substring(eq + 1));
+        }
+        return options;
+    }
 }
 
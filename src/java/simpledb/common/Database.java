@@ -2,10 +2,13 @@ package simpledb.common;
 
 import simpledb.storage.BufferPool;
 import simpledb.storage.LogFile;
+import simpledb.storage.ReplacementPolicy;
 
+import javax.management.JMException;
 import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
 
 /**
  * Database is a class that initializes several static variables used by the
@@ -24,11 +27,15 @@ public class Database {
     private final BufferPool _bufferpool;
 
     private final static String logfilename = "log";
+
+    private static volatile boolean jmxEnabled = false;
     private final LogFile _logfile;
 
     private Database() {
         _catalog = new Catalog();
         _bufferpool = new BufferPool(BufferPool.DEFAULT_PAGES);
+        if (jmxEnabled)
+            exposeStats(_bufferpool);
         LogFile tmp = null;
         try {
             tmp = new LogFile(new File(logfilename));
@@ -66,11 +73,27 @@ public class Database {
      * return it
      */
     public static BufferPool resetBufferPool(int pages) {
+        return resetBufferPool(pages, BufferPool.DEFAULT_POLICY);
+    }
+
+    /**
+     * Method used for testing -- create a new instance of the buffer pool,
+     * evicting pages with the given replacement policy, and return it
+     *
+     * @param pages         the number of pages in the new buffer pool
+     * @param policyFactory creates the replacement policy, e.g.
+     *                      {@code ClockReplacementPolicy::new}
+     */
+    public static BufferPool resetBufferPool(int pages, IntFunction<ReplacementPolicy> policyFactory) {
         java.lang.reflect.Field bufferPoolF = null;
         try {
             bufferPoolF = Database.class.getDeclaredField("_bufferpool");
             bufferPoolF.setAccessible(true);
-            bufferPoolF.set(_instance.get(), new BufferPool(pages));
+            _instance.get()._bufferpool.shutdownPrefetcher();
+            BufferPool pool = new BufferPool(pages, policyFactory);
+            bufferPoolF.set(_instance.get(), pool);
+            if (jmxEnabled)
+                exposeStats(pool);
         } catch (NoSuchFieldException | IllegalAccessException | IllegalArgumentException | SecurityException e) {
             e.printStackTrace();
         }
@@ -78,9 +101,36 @@ public class Database {
         return _instance.get()._bufferpool;
     }
 
+    /**
+     * Expose the stats of the buffer pool through JMX, now and whenever the
+     * buffer pool is replaced. Off by default: starting the platform MBean
+     * server is not free, and tests and embedded uses do not need it.
+     *
+     * @see simpledb.storage.BufferPoolStats#OBJECT_NAME
+     */
+    public static void enableJmx() {
+        jmxEnabled = true;
+        exposeStats(getBufferPool());
+    }
+
+    /**
+     * Register the stats of pool with JMX, replacing those of the previous
+     * pool. JMX is only for monitoring, so a failure is reported and
+     * otherwise ignored.
+     */
+    private static void exposeStats(BufferPool pool) {
+        try {
+            pool.getStats().register();
+        } catch (JMException e) {
+            System.err.println("Unable to register buffer pool stats with JMX: " + e);
+        }
+    }
+
     // reset the database, used for unit tests only.
     public static void reset() {
-        _instance.set(new Database());
+        Database old = _instance.getAndSet(new Database());
+        old._bufferpool.shutdownPrefetcher();
+        old._catalog.clear();
     }
 
 }
@@ -30,6 +30,11 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(byte[] data, int offset) {
+            return new IntField(readInt(data, offset));
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -48,6 +53,14 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(byte[] data, int offset) throws ParseException {
+            int strLen = readInt(data, offset);
+            if (strLen < 0 || strLen > STRING_LEN)
+                throw new ParseException("couldn't parse", offset);
+            return new StringField(new String(data, offset + 4, strLen), STRING_LEN);
+        }
     };
 
     public static final int STRING_LEN = 128;
@@ -66,4 +79,24 @@ public enum Type implements Serializable {
      */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+    /**
+     * Decode a field directly from a byte array, in the format written by
+     * {@link Field#serialize}.
+     *
+     * @param data   the array to read from
+     * @param offset the position of the first byte of the field in data
+     * @return a Field object of the same type as this object
+     * @throws ParseException if the bytes are not a field of this type
+     */
+    public abstract Field parse(byte[] data, int offset) throws ParseException;
+
+    /**
+     * Read a big-endian int (the format of DataOutputStream.writeInt) from
+     * data at offset.
+     */
+    public static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16
+                | (data[offset + 2] & 0xff) << 8 | data[offset + 3] & 0xff;
+    }
+
 }
@@ -1,29 +1,102 @@
 package simpledb.execution;
 
 import simpledb.common.DbException;
+import simpledb.common.Debug;
 import simpledb.common.Type;
-import simpledb.execution.Aggregator.Op;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.SpillFile;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 import simpledb.transaction.TransactionAbortedException;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
- * The Aggregation operator that computes an aggregate (e.g., sum, avg, max,
- * min). Note that we only support aggregates over a single column, grouped by a
- * single column.
+ * The Aggregation operator that computes aggregates (e.g., sum, avg, max,
+ * min), any number of them over their own columns, grouped by zero or more
+ * columns, in one pass over the child.
+ * <p>
+ * The groups are kept in a {@link HashAggregator} of at most memoryGroups
+ * groups, which holds all the aggregates of a group. Once it is full,
+ * the tuples of the groups in memory are still merged, and the others are
+ * written to {@link HashEquiJoin#FANOUT} spill files by the hash of their
+ * group fields; each partition is aggregated on its own after the groups in
+ * memory are returned, and split again with another hash function if it
+ * has too many groups, up to {@link HashEquiJoin#MAX_DEPTH} times.
+ * <p>
+ * If the child is already sorted on the group fields, the tuples of each
+ * group come together, and only one group is held at a time.
  */
 public class Aggregate extends Operator {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The default number of groups held in memory
+     */
+    public final static int MAX_GROUPS = 100000;
+
+    private OpIterator child;
+    private final int[] afields;
+    private final Aggregator.Op[] aops;
+    private final int[] gfields;
+    private final int memoryGroups;
+    private TupleDesc td;
+
+    /**
+     * A spill file of tuples whose groups are aggregated together.
+     */
+    private static class Partition {
+        final SpillFile file;
+        /**
+         * 已经分区的次数
+         */
+        final int depth;
+
+        Partition(SpillFile file, int depth) {
+            this.file = file;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * 输入已按分组字段排序时逐个分组聚合
+     */
+    transient private boolean sorted;
+    /**
+     * 读child时留在内存中的分组，rewind时直接重用
+     */
+    transient private HashAggregator first;
+    transient private HashAggregator partitionGroups;
+    /**
+     * 正在返回的分组
+     */
+    transient private HashAggregator current;
+    transient private int currentGroup;
+    /**
+     * 读child时写出的分区，rewind时重新聚合；再分区得到的文件用完即删
+     */
+    transient private List<SpillFile> partitions = new ArrayList<>();
+    transient private Deque<Partition> pending = new ArrayDeque<>();
+    /**
+     * 有序输入中下一个分组的第一个元组
+     */
+    transient private Tuple lookahead;
+
+    private int peakGroups;
+    private long spilledTuples;
+    private long spilledBytes;
+    private int spilledPartitions;
+
     /**
      * Constructor.
-     * <p>
-     * Implementation hint: depending on the type of afield, you will want to
-     * construct an {@link IntegerAggregator} or {@link StringAggregator} to help
-     * you with your implementation of readNext().
      *
      * @param child  The OpIterator that is feeding us tuples.
      * @param afield The column over which we are computing an aggregate.
@@ -32,84 +105,409 @@ public class Aggregate extends Operator {
      * @param aop    The aggregation operator to use
      */
     public Aggregate(OpIterator child, int afield, int gfield, Aggregator.Op aop) {
-        // TODO: some code goes here
+        this(child, afield, gfield, aop, MAX_GROUPS);
+    }
+
+    /**
+     * @param memoryGroups the largest number of groups held in memory;
+     *                     beyond that the tuples of other groups are
+     *                     partitioned to disk
+     * @throws IllegalArgumentException if aop is not supported on afield
+     */
+    public Aggregate(OpIterator child, int afield, int gfield, Aggregator.Op aop, int memoryGroups) {
+        this(child, new int[]{afield}, new Aggregator.Op[]{aop},
+                gfield == Aggregator.NO_GROUPING ? new int[0] : new int[]{gfield}, memoryGroups);
+    }
+
+    /**
+     * @param afields the columns over which the aggregates are computed
+     * @param aops    aops[i] is the aggregation operator over afields[i]
+     * @param gfields the columns over which we are grouping the result,
+     *                none if there is no grouping
+     */
+    public Aggregate(OpIterator child, int[] afields, Aggregator.Op[] aops, int[] gfields) {
+        this(child, afields, aops, gfields, MAX_GROUPS);
+    }
+
+    /**
+     * @param memoryGroups the largest number of groups held in memory;
+     *                     beyond that the tuples of other groups are
+     *                     partitioned to disk
+     * @throws IllegalArgumentException if there is no aggregate, or an
+     *                                  operator is not supported on its
+     *                                  field
+     */
+    public Aggregate(OpIterator child, int[] afields, Aggregator.Op[] aops, int[] gfields, int memoryGroups) {
+        if (afields.length == 0 || afields.length != aops.length)
+            throw new IllegalArgumentException("need one operator for each of at least one aggregate field");
+        if (memoryGroups < 1)
+            throw new IllegalArgumentException("memory budget of " + memoryGroups + " groups");
+        this.child = child;
+        this.afields = afields.clone();
+        this.aops = aops.clone();
+        this.gfields = gfields.clone();
+        this.memoryGroups = memoryGroups;
+        this.td = tupleDesc(child.getTupleDesc());
+        newAggregator();
+    }
+
+    private TupleDesc tupleDesc(TupleDesc childTd) {
+        int k = gfields.length;
+        Type[] types = new Type[k + afields.length];
+        String[] names = new String[types.length];
+        for (int i = 0; i < k; i++) {
+            types[i] = childTd.getFieldType(gfields[i]);
+            names[i] = childTd.getFieldName(gfields[i]);
+        }
+        for (int a = 0; a < afields.length; a++) {
+            String aname = childTd.getFieldName(afields[a]);
+            types[k + a] = Type.INT_TYPE;
+            // 输入字段没有名字时，聚合字段也没有名字
+            names[k + a] = aname == null || aname.isEmpty() ? aname
+                    : nameOfAggregatorOp(aops[a]) + " (" + aname + ")";
+        }
+        return new TupleDesc(types, names);
+    }
+
+    private HashAggregator newAggregator() {
+        TupleDesc childTd = child.getTupleDesc();
+        Type[] gtypes = new Type[gfields.length];
+        for (int i = 0; i < gtypes.length; i++)
+            gtypes[i] = childTd.getFieldType(gfields[i]);
+        boolean[] intValues = new boolean[afields.length];
+        for (int a = 0; a < intValues.length; a++)
+            intValues[a] = childTd.getFieldType(afields[a]) == Type.INT_TYPE;
+        return new HashAggregator(gfields, gtypes, afields, aops, intValues);
     }
 
     /**
      * @return If this aggregate is accompanied by a groupby, return the groupby
      *         field index in the <b>INPUT</b> tuples. If not, return
-     *         {@link Aggregator#NO_GROUPING}
+     *         {@link Aggregator#NO_GROUPING}. With several groupby fields,
+     *         the first one.
      */
     public int groupField() {
-        // TODO: some code goes here
-        return -1;
+        return gfields.length == 0 ? Aggregator.NO_GROUPING : gfields[0];
     }
 
     /**
      * @return If this aggregate is accompanied by a group by, return the name
      *         of the groupby field in the <b>OUTPUT</b> tuples. If not, return
-     *         null;
+     *         null; With several groupby fields, the first one.
      */
     public String groupFieldName() {
-        // TODO: some code goes here
-        return null;
+        return gfields.length == 0 ? null : td.getFieldName(0);
+    }
+
+    /**
+     * @return the groupby field indexes in the <b>INPUT</b> tuples, which are
+     *         the first fields of the <b>OUTPUT</b> tuples
+     */
+    public int[] groupFields() {
+        return gfields.clone();
     }
 
     /**
-     * @return the aggregate field
+     * @return the aggregate field; the first one if there are several
      */
     public int aggregateField() {
-        // TODO: some code goes here
-        return -1;
+        return afields[0];
     }
 
     /**
      * @return return the name of the aggregate field in the <b>OUTPUT</b>
-     *         tuples
+     *         tuples; the first one if there are several
      */
     public String aggregateFieldName() {
-        // TODO: some code goes here
-        return null;
+        return td.getFieldName(gfields.length);
     }
 
     /**
-     * @return return the aggregate operator
+     * @return return the aggregate operator; the first one if there are
+     *         several
      */
     public Aggregator.Op aggregateOp() {
-        // TODO: some code goes here
-        return null;
+        return aops[0];
+    }
+
+    /**
+     * @return the aggregate fields, in the order of their columns after the
+     *         groupby fields in the <b>OUTPUT</b> tuples
+     */
+    public int[] aggregateFields() {
+        return afields.clone();
+    }
+
+    /**
+     * @return the operator of each aggregate field
+     */
+    public Aggregator.Op[] aggregateOps() {
+        return aops.clone();
     }
 
     public static String nameOfAggregatorOp(Aggregator.Op aop) {
         return aop.toString();
     }
 
+    /**
+     * @return true if the tuples of it with equal values of fields come
+     *         together, which holds if it is sorted, in any directions, on
+     *         fields in some order followed by any other fields
+     */
+    static boolean isGroupedOn(OpIterator it, int[] fields) {
+        if (fields.length == 0)
+            return false;
+        if (it instanceof OrderBy)
+            return leadsWith(((OrderBy) it).getOrderByFields(), fields);
+        if (it instanceof TopN)
+            return leadsWith(((TopN) it).getOrderByFields(), fields);
+        if (it instanceof Filter)
+            return isGroupedOn(((Filter) it).getChildren()[0], fields);
+        return fields.length == 1 && SortMergeJoin.isSortedOn(it, fields[0]);
+    }
+
+    /**
+     * @return true if the first sort fields are all of fields, in any order
+     */
+    private static boolean leadsWith(int[] sortFields, int[] fields) {
+        Set<Integer> rest = new HashSet<>();
+        for (int f : fields)
+            rest.add(f);
+        for (int i = 0; i < sortFields.length && !rest.isEmpty(); i++) {
+            if (!rest.remove(sortFields[i]))
+                return false;
+        }
+        return rest.isEmpty();
+    }
+
+    /**
+     * @return true if the child is sorted on the group field and is
+     *         aggregated one group at a time; only known once open
+     */
+    public boolean isSortedInput() {
+        return sorted;
+    }
+
+    /**
+     * @return the largest number of groups that were in memory at once
+     */
+    public int getPeakGroups() {
+        return peakGroups;
+    }
+
+    /**
+     * @return the number of tuples written to spill files, counting each
+     *         time a tuple is partitioned again
+     */
+    public long getSpilledTuples() {
+        return spilledTuples;
+    }
+
+    /**
+     * @return the number of bytes written to spill files
+     */
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * @return the number of partitions written to spill files
+     */
+    public int getSpilledPartitions() {
+        return spilledPartitions;
+    }
+
+    private int partitionOf(Tuple t, int depth) {
+        if (gfields.length == 1 && td.getFieldType(0) == Type.INT_TYPE)
+            return HashEquiJoin.partitionOf(t.getInt(gfields[0]), depth);
+        int h = 0;
+        for (int f : gfields)
+            h = 31 * h + t.getField(f).hashCode();
+        return HashEquiJoin.partitionOf(h, depth);
+    }
+
+    /**
+     * Merge t into groups; once groups holds memoryGroups groups, a tuple of
+     * another group goes to its partition instead.
+     *
+     * @param spill the partitions, or null if none were needed yet
+     * @return the partitions, or null if none were needed
+     */
+    private SpillFile[] add(Tuple t, HashAggregator groups, SpillFile[] spill, int depth) throws IOException {
+        if (spill == null && (groups.numGroups() < memoryGroups || depth >= HashEquiJoin.MAX_DEPTH)) {
+            groups.mergeTupleIntoGroup(t);
+            return null;
+        }
+        if (groups.mergeTupleIntoExistingGroup(t))
+            return spill;
+        if (spill == null) {
+            spill = new SpillFile[HashEquiJoin.FANOUT];
+            for (int i = 0; i < spill.length; i++)
+                spill[i] = new SpillFile(child.getTupleDesc());
+        }
+        spill[partitionOf(t, depth)].add(t);
+        return spill;
+    }
+
+    /**
+     * Count the partitions written and delete the empty ones.
+     *
+     * @return the partitions that have tuples
+     */
+    private List<SpillFile> finishPartitions(SpillFile[] spill) {
+        List<SpillFile> files = new ArrayList<>();
+        if (spill == null)
+            return files;
+        for (SpillFile f : spill) {
+            spilledTuples += f.size();
+            spilledBytes += f.bytes();
+            if (f.size() > 0) {
+                files.add(f);
+                spilledPartitions++;
+            } else {
+                f.delete();
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Aggregate the child into first, partitioning the tuples of the groups
+     * that do not fit to disk.
+     */
+    private void aggregateChild() throws DbException, TransactionAbortedException {
+        first = newAggregator();
+        SpillFile[] spill = null;
+        try {
+            while (child.hasNext())
+                spill = add(child.next(), first, spill, 0);
+        } catch (IOException e) {
+            throw new DbException("failed to spill aggregate: " + e);
+        }
+        peakGroups = Math.max(peakGroups, first.numGroups());
+        partitions = finishPartitions(spill);
+    }
+
+    /**
+     * Aggregate the tuples of a partition, queueing the partitions of the
+     * groups that do not fit to be aggregated next.
+     */
+    private void aggregatePartition(Partition p) throws DbException, TransactionAbortedException {
+        if (partitionGroups == null)
+            partitionGroups = newAggregator();
+        partitionGroups.clear();
+        SpillFile[] spill = null;
+        DbFileIterator it = p.file.iterator();
+        it.open();
+        try {
+            while (it.hasNext())
+                spill = add(it.next(), partitionGroups, spill, p.depth);
+        } catch (IOException e) {
+            throw new DbException("failed to spill aggregate: " + e);
+        } finally {
+            it.close();
+        }
+        if (p.depth > 1)
+            p.file.delete();
+        peakGroups = Math.max(peakGroups, partitionGroups.numGroups());
+        List<SpillFile> files = finishPartitions(spill);
+        // 先处理新的子分区，磁盘上同时存在的文件更少
+        for (int i = files.size() - 1; i >= 0; i--)
+            pending.addFirst(new Partition(files.get(i), p.depth + 1));
+        current = partitionGroups;
+        currentGroup = 0;
+    }
+
+    /**
+     * Return the groups in memory, then those of each partition.
+     */
+    private void startResults() {
+        deletePending();
+        for (SpillFile f : partitions)
+            pending.add(new Partition(f, 1));
+        current = first;
+        currentGroup = 0;
+    }
+
+    /**
+     * Delete the queued partitions that were split from others; the ones
+     * written from the child are kept until close.
+     */
+    private void deletePending() {
+        for (Partition p : pending) {
+            if (p.depth > 1)
+                p.file.delete();
+        }
+        pending.clear();
+    }
+
     public void open() throws NoSuchElementException, DbException,
             TransactionAbortedException {
-        // TODO: some code goes here
+        child.open();
+        peakGroups = 0;
+        spilledTuples = spilledBytes = 0;
+        spilledPartitions = 0;
+        sorted = isGroupedOn(child, gfields);
+        if (sorted) {
+            current = newAggregator();
+            lookahead = child.hasNext() ? child.next() : null;
+        } else {
+            aggregateChild();
+            startResults();
+        }
+        super.open();
+    }
+
+    /**
+     * @return the result of the next group of the sorted child
+     */
+    private Tuple nextSortedGroup() throws TransactionAbortedException, DbException {
+        if (lookahead == null)
+            return null;
+        current.clear();
+        current.mergeTupleIntoGroup(lookahead);
+        lookahead = null;
+        while (child.hasNext()) {
+            Tuple t = child.next();
+            if (!current.mergeTupleIntoExistingGroup(t)) {
+                lookahead = t;
+                break;
+            }
+        }
+        peakGroups = 1;
+        return current.result(0, td);
     }
 
     /**
-     * Returns the next tuple. If there is a group by field, then the first
-     * field is the field by which we are grouping, and the second field is the
-     * result of computing the aggregate. If there is no group by field, then
-     * the result tuple should contain one field representing the result of the
+     * Returns the next tuple. Its first fields are the fields by which we are
+     * grouping, if any, and the following ones the results of computing each
      * aggregate. Should return null if there are no more tuples.
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        // TODO: some code goes here
-        return null;
+        if (sorted)
+            return nextSortedGroup();
+        while (true) {
+            if (currentGroup < current.numGroups())
+                return current.result(currentGroup++, td);
+            Partition p = pending.poll();
+            if (p == null)
+                return null;
+            aggregatePartition(p);
+        }
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        // TODO: some code goes here
+        if (sorted) {
+            child.rewind();
+            lookahead = child.hasNext() ? child.next() : null;
+        } else {
+            startResults();
+        }
     }
 
     /**
-     * Returns the TupleDesc of this Aggregate. If there is no group by field,
-     * this will have one field - the aggregate column. If there is a group by
-     * field, the first field will be the group by field, and the second will be
-     * the aggregate value column.
+     * Returns the TupleDesc of this Aggregate: the group by fields, if any,
+     * followed by one aggregate value column for each aggregate.
      * <p>
      * The name of an aggregate column should be informative. For example:
      * "aggName(aop) (child_td.getFieldName(afield))" where aop and afield are
@@ -117,23 +515,34 @@ public class Aggregate extends Operator {
      * iterator.
      */
     public TupleDesc getTupleDesc() {
-        // TODO: some code goes here
-        return null;
+        return td;
     }
 
     public void close() {
-        // TODO: some code goes here
+        super.close();
+        if (spilledPartitions > 0)
+            Debug.log("Aggregate %s spilled %d tuples (%d bytes) in %d partitions, peak %d groups in memory",
+                    td, spilledTuples, spilledBytes, spilledPartitions, peakGroups);
+        deletePending();
+        for (SpillFile f : partitions)
+            f.delete();
+        partitions = new ArrayList<>();
+        child.close();
+        first = partitionGroups = current = null;
+        lookahead = null;
     }
 
     @Override
     public OpIterator[] getChildren() {
-        // TODO: some code goes here
-        return null;
+        return new OpIterator[]{this.child};
     }
 
     @Override
     public void setChildren(OpIterator[] children) {
-        // TODO: some code goes here
+        if (this.child != children[0]) {
+            this.child = children[0];
+            this.td = tupleDesc(child.getTupleDesc());
+        }
     }
 
 }
@@ -0,0 +1,243 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.Field;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BatchAggregate is the batch version of {@link Aggregate}: it computes
+ * MIN, MAX, SUM, AVG or COUNT over one column, grouped by at most one
+ * column. Without grouping, each batch is folded into the result with one
+ * loop over the vector of the aggregate field.
+ * <p>
+ * The result tuples are (groupVal, aggregateVal), or (aggregateVal) without
+ * grouping, in the order the groups first appear; there is no result tuple
+ * if the child returns no tuple.
+ */
+public class BatchAggregate implements BatchOpIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BatchOpIterator child;
+    private final int afield;
+    private final int gfield;
+    private final Aggregator.Op aop;
+    private final TupleDesc td;
+
+    /**
+     * 分组的数目；每个分组的值按出现的顺序存放在groupInts或groupFields中
+     */
+    private transient int groups;
+    private transient int[] groupInts;
+    private transient List<Field> groupFields;
+    private transient long[] sum;
+    private transient long[] count;
+    private transient int[] min;
+    private transient int[] max;
+    private transient TupleBatch out;
+    private transient int emitted;
+
+    /**
+     * @param child  The BatchOpIterator that is feeding us tuples.
+     * @param afield The column over which we are computing an aggregate.
+     * @param gfield The column over which we are grouping the result, or
+     *               {@link Aggregator#NO_GROUPING} if there is no grouping
+     * @param aop    The aggregation operator to use
+     * @throws IllegalArgumentException if aop is not MIN, MAX, SUM, AVG or
+     *                                  COUNT, or is not COUNT on a field
+     *                                  that is not an int field
+     */
+    public BatchAggregate(BatchOpIterator child, int afield, int gfield, Aggregator.Op aop) {
+        TupleDesc childTd = child.getTupleDesc();
+        if (aop == Aggregator.Op.SUM_COUNT || aop == Aggregator.Op.SC_AVG)
+            throw new IllegalArgumentException("unsupported aggregate " + aop);
+        if (aop != Aggregator.Op.COUNT && childTd.getFieldType(afield) != Type.INT_TYPE)
+            throw new IllegalArgumentException(aop + " needs an int field");
+        this.child = child;
+        this.afield = afield;
+        this.gfield = gfield;
+        this.aop = aop;
+        String name = Aggregate.nameOfAggregatorOp(aop) + "(" + childTd.getFieldName(afield) + ")";
+        if (gfield == Aggregator.NO_GROUPING)
+            td = new TupleDesc(new Type[]{Type.INT_TYPE}, new String[]{name});
+        else
+            td = new TupleDesc(new Type[]{childTd.getFieldType(gfield), Type.INT_TYPE},
+                    new String[]{childTd.getFieldName(gfield), name});
+    }
+
+    public int groupField() {
+        return gfield;
+    }
+
+    public int aggregateField() {
+        return afield;
+    }
+
+    public Aggregator.Op aggregateOp() {
+        return aop;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the index of a new group
+     */
+    private int addGroup() {
+        int g = groups++;
+        if (g == sum.length) {
+            groupInts = Arrays.copyOf(groupInts, 2 * g);
+            sum = Arrays.copyOf(sum, 2 * g);
+            count = Arrays.copyOf(count, 2 * g);
+            min = Arrays.copyOf(min, 2 * g);
+            max = Arrays.copyOf(max, 2 * g);
+        }
+        min[g] = Integer.MAX_VALUE;
+        max[g] = Integer.MIN_VALUE;
+        return g;
+    }
+
+    /**
+     * Fold a batch into the single group of an aggregate without grouping.
+     */
+    private void fold(TupleBatch b) {
+        if (groups == 0)
+            addGroup();
+        int[] values = b.getInts(afield);
+        count[0] += b.size();
+        if (values == null || aop == Aggregator.Op.COUNT)
+            return;
+        int[] sel = b.getSelection();
+        int size = b.size();
+        long s = 0;
+        int lo = min[0], hi = max[0];
+        for (int k = 0; k < size; k++) {
+            int v = values[sel == null ? k : sel[k]];
+            s += v;
+            lo = Math.min(lo, v);
+            hi = Math.max(hi, v);
+        }
+        sum[0] += s;
+        min[0] = lo;
+        max[0] = hi;
+    }
+
+    /**
+     * Fold a batch into the groups of its rows. Int group values are looked
+     * up in intGroups, others in fieldGroups.
+     */
+    private void foldGroups(TupleBatch b, IntHashTable intGroups, Map<Field, Integer> fieldGroups) {
+        int[] values = b.getInts(afield);
+        int[] keys = b.getInts(gfield);
+        Field[] keyFields = b.getFields(gfield);
+        // 连续相同的分组值只查一次表
+        int lastInt = 0;
+        Field lastField = null;
+        int g = -1;
+        for (int k = 0; k < b.size(); k++) {
+            int r = b.row(k);
+            if (keys != null) {
+                if (g < 0 || keys[r] != lastInt) {
+                    lastInt = keys[r];
+                    g = intGroups.putIfAbsent(lastInt, groups);
+                    if (g == IntHashTable.ABSENT) {
+                        g = addGroup();
+                        groupInts[g] = lastInt;
+                    }
+                }
+            } else if (g < 0 || !keyFields[r].equals(lastField)) {
+                lastField = keyFields[r];
+                Integer found = fieldGroups.putIfAbsent(lastField, groups);
+                if (found != null) {
+                    g = found;
+                } else {
+                    g = addGroup();
+                    groupFields.add(lastField);
+                }
+            }
+            count[g]++;
+            if (values != null) {
+                int v = values[r];
+                sum[g] += v;
+                min[g] = Math.min(min[g], v);
+                max[g] = Math.max(max[g], v);
+            }
+        }
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        groups = 0;
+        groupInts = new int[16];
+        groupFields = new ArrayList<>();
+        sum = new long[16];
+        count = new long[16];
+        min = new int[16];
+        max = new int[16];
+        IntHashTable intGroups = new IntHashTable();
+        Map<Field, Integer> fieldGroups = new HashMap<>();
+        TupleBatch b;
+        while ((b = child.nextBatch()) != null) {
+            if (gfield == Aggregator.NO_GROUPING)
+                fold(b);
+            else
+                foldGroups(b, intGroups, fieldGroups);
+        }
+        out = new TupleBatch(td);
+        emitted = 0;
+    }
+
+    private int result(int g) {
+        switch (aop) {
+            case MIN:
+                return min[g];
+            case MAX:
+                return max[g];
+            case SUM:
+                return (int) sum[g];
+            case AVG:
+                return (int) (sum[g] / count[g]);
+            default:
+                return (int) count[g];
+        }
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (out == null)
+            throw new IllegalStateException("BatchAggregate not yet open");
+        out.clear();
+        int a = gfield == Aggregator.NO_GROUPING ? 0 : 1;
+        while (emitted < groups && !out.isFull()) {
+            int r = out.addRow();
+            if (a == 1) {
+                if (td.getFieldType(0) == Type.INT_TYPE)
+                    out.getInts(0)[r] = groupInts[emitted];
+                else
+                    out.setField(0, r, groupFields.get(emitted));
+            }
+            out.getInts(a)[r] = result(emitted++);
+        }
+        return out.size() > 0 ? out : null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        emitted = 0;
+    }
+
+    public void close() {
+        child.close();
+        groupInts = null;
+        groupFields = null;
+        out = null;
+    }
+}
@@ -0,0 +1,140 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+/**
+ * BatchFilter is the batch version of {@link Filter}: it narrows the
+ * selection vector of each batch of its child to the rows that satisfy the
+ * predicate, without moving any value.
+ */
+public class BatchFilter implements BatchOpIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Predicate p;
+    private final BatchOpIterator child;
+    private transient int[] selection;
+
+    public BatchFilter(Predicate p, BatchOpIterator child) {
+        this.p = p;
+        this.child = child;
+    }
+
+    public Predicate getPredicate() {
+        return p;
+    }
+
+    public BatchOpIterator getChild() {
+        return child;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        selection = new int[TupleBatch.CAPACITY];
+    }
+
+    /**
+     * Write to out the rows of b that satisfy "value op operand", where
+     * values is the vector of an int field; one loop per operator, so that
+     * the loops have no branch on the operator.
+     *
+     * @return the number of rows written
+     */
+    static int select(TupleBatch b, int[] values, Predicate.Op op, int operand, int[] out) {
+        int[] sel = b.getSelection();
+        int size = b.size();
+        int n = 0;
+        switch (op) {
+            case EQUALS:
+            case LIKE:
+                for (int k = 0; k < size; k++) {
+                    int r = sel == null ? k : sel[k];
+                    out[n] = r;
+                    n += values[r] == operand ? 1 : 0;
+                }
+                break;
+            case NOT_EQUALS:
+                for (int k = 0; k < size; k++) {
+                    int r = sel == null ? k : sel[k];
+                    out[n] = r;
+                    n += values[r] != operand ? 1 : 0;
+                }
+                break;
+            case GREATER_THAN:
+                for (int k = 0; k < size; k++) {
+                    int r = sel == null ? k : sel[k];
+                    out[n] = r;
+                    n += values[r] > operand ? 1 : 0;
+                }
+                break;
+            case GREATER_THAN_OR_EQ:
+                for (int k = 0; k < size; k++) {
+                    int r = sel == null ? k : sel[k];
+                    out[n] = r;
+                    n += values[r] >= operand ? 1 : 0;
+                }
+                break;
+            case LESS_THAN:
+                for (int k = 0; k < size; k++) {
+                    int r = sel == null ? k : sel[k];
+                    out[n] = r;
+                    n += values[r] < operand ? 1 : 0;
+                }
+                break;
+            case LESS_THAN_OR_EQ:
+                for (int k = 0; k < size; k++) {
+                    int r = sel == null ? k : sel[k];
+                    out[n] = r;
+                    n += values[r] <= operand ? 1 : 0;
+                }
+                break;
+        }
+        return n;
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (selection == null)
+            throw new IllegalStateException("BatchFilter not yet open");
+        TupleBatch b;
+        while ((b = child.nextBatch()) != null) {
+            int n;
+            int[] values = b.getInts(p.getField());
+            if (values != null && p.getOperand() instanceof IntField) {
+                // 无分支地写选择向量：每行都写入，只有满足谓词时才前进
+                n = select(b, values, p.getOp(), ((IntField) p.getOperand()).getValue(), selection);
+            } else {
+                n = 0;
+                Field[] fields = b.getFields(p.getField());
+                for (int k = 0; k < b.size(); k++) {
+                    int r = b.row(k);
+                    Field f = fields != null ? fields[r] : b.getField(p.getField(), r);
+                    if (f.compare(p.getOp(), p.getOperand()))
+                        selection[n++] = r;
+                }
+            }
+            if (n > 0) {
+                b.select(selection, n);
+                return b;
+            }
+        }
+        return null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    public void close() {
+        child.close();
+        selection = null;
+    }
+}
@@ -0,0 +1,190 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.Field;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BatchHashEquiJoin is the batch version of {@link HashEquiJoin}. It copies
+ * all tuples of its first child into vectors and a hash table on open, then
+ * probes the table with the batches of its second child. The result tuples
+ * are the concatenation of the joining tuples, as in HashEquiJoin, in
+ * batches of up to {@link TupleBatch#CAPACITY} rows.
+ */
+public class BatchHashEquiJoin implements BatchOpIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate pred;
+    private final BatchOpIterator child1, child2;
+    private final TupleDesc comboTD;
+    /**
+     * 两个连接字段都是int时用IntHashTable，不装箱
+     */
+    private final boolean intKeys;
+
+    /**
+     * 第一个孩子的所有元组，按字段存放
+     */
+    private transient int[][] buildInts;
+    private transient Field[][] buildFields;
+    private transient int buildRows;
+    /**
+     * 连接字段的值到第一个具有该值的行；next[r]是下一个具有相同值的行，-1结束
+     */
+    private transient IntHashTable intHeads;
+    private transient Map<Field, Integer> heads;
+    private transient int[] next;
+
+    private transient TupleBatch out;
+    private transient TupleBatch probe;
+    private transient int probeK;
+    private transient int match = -1;
+
+    /**
+     * @param p      The predicate to use to join the children; its operator
+     *               must be EQUALS
+     * @param child1 the relation that is loaded into the hash table
+     * @param child2 the relation that probes the hash table
+     */
+    public BatchHashEquiJoin(JoinPredicate p, BatchOpIterator child1, BatchOpIterator child2) {
+        if (p.getOperator() != Predicate.Op.EQUALS)
+            throw new IllegalArgumentException("hash join needs an equality predicate");
+        this.pred = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        this.intKeys = child1.getTupleDesc().getFieldType(p.getField1()) == Type.INT_TYPE
+                && child2.getTupleDesc().getFieldType(p.getField2()) == Type.INT_TYPE;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return comboTD;
+    }
+
+    /**
+     * @return the first build row that joins with the given row of a probe
+     *         batch, or -1
+     */
+    private int lookup(TupleBatch b, int row) {
+        if (intKeys)
+            return intHeads.get(b.getInts(pred.getField2())[row]);
+        Integer head = heads.get(b.getFields(pred.getField2())[row]);
+        return head == null ? -1 : head;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child1.open();
+        child2.open();
+        int n1 = child1.getTupleDesc().numFields();
+        buildInts = new int[n1][];
+        buildFields = new Field[n1][];
+        buildRows = 0;
+        intHeads = new IntHashTable();
+        heads = new HashMap<>();
+        next = new int[TupleBatch.CAPACITY];
+        TupleBatch b;
+        while ((b = child1.nextBatch()) != null) {
+            for (int k = 0; k < b.size(); k++) {
+                int r = b.row(k);
+                if (buildRows == next.length)
+                    next = Arrays.copyOf(next, 2 * next.length);
+                for (int i = 0; i < n1; i++) {
+                    if (b.getInts(i) != null) {
+                        if (buildInts[i] == null || buildInts[i].length == buildRows)
+                            buildInts[i] = Arrays.copyOf(buildInts[i] == null ? new int[0] : buildInts[i], next.length);
+                        buildInts[i][buildRows] = b.getInts(i)[r];
+                    } else {
+                        if (buildFields[i] == null || buildFields[i].length == buildRows)
+                            buildFields[i] = Arrays.copyOf(buildFields[i] == null ? new Field[0] : buildFields[i],
+                                    next.length);
+                        buildFields[i][buildRows] = b.getFields(i)[r];
+                    }
+                }
+                if (intKeys) {
+                    next[buildRows] = intHeads.put(b.getInts(pred.getField1())[r], buildRows);
+                } else {
+                    Integer head = heads.put(b.getFields(pred.getField1())[r], buildRows);
+                    next[buildRows] = head == null ? -1 : head;
+                }
+                buildRows++;
+            }
+        }
+        out = new TupleBatch(comboTD);
+        probe = null;
+        match = -1;
+    }
+
+    /**
+     * Add to out the concatenation of build row b and row r of the probe
+     * batch.
+     */
+    private void emit(int b, int r) {
+        int o = out.addRow();
+        int n1 = buildInts.length;
+        for (int i = 0; i < n1; i++) {
+            if (buildInts[i] != null)
+                out.getInts(i)[o] = buildInts[i][b];
+            else
+                out.getFields(i)[o] = buildFields[i][b];
+        }
+        for (int j = 0; j < probe.getTupleDesc().numFields(); j++) {
+            int[] ints = probe.getInts(j);
+            if (ints != null)
+                out.getInts(n1 + j)[o] = ints[r];
+            else
+                out.getFields(n1 + j)[o] = probe.getFields(j)[r];
+        }
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (out == null)
+            throw new IllegalStateException("BatchHashEquiJoin not yet open");
+        out.clear();
+        while (true) {
+            // 输出当前探测行的所有匹配，批满时下次从这里继续
+            while (match >= 0) {
+                if (out.isFull())
+                    return out;
+                emit(match, probe.row(probeK));
+                match = next[match];
+            }
+            if (probe == null || ++probeK >= probe.size()) {
+                probe = child2.nextBatch();
+                probeK = 0;
+                if (probe == null)
+                    return out.size() > 0 ? out : null;
+            }
+            match = lookup(probe, probe.row(probeK));
+        }
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child2.rewind();
+        probe = null;
+        match = -1;
+    }
+
+    public void close() {
+        child2.close();
+        child1.close();
+        buildInts = null;
+        buildFields = null;
+        intHeads = null;
+        heads = null;
+        next = null;
+        out = null;
+        probe = null;
+    }
+}
@@ -0,0 +1,54 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.io.Serializable;
+
+/**
+ * BatchOpIterator is the iterator interface of the operators that pass
+ * tuples a batch at a time, in a {@link TupleBatch}, instead of one at a
+ * time like an {@link OpIterator}; the per tuple work is then a loop over
+ * a vector rather than a chain of virtual calls.
+ * <p>
+ * {@link BatchToRow} and {@link RowToBatch} connect batch operators and row
+ * operators in the same plan.
+ */
+public interface BatchOpIterator extends Serializable {
+    /**
+     * Opens the iterator. This must be called before any of the other methods.
+     *
+     * @throws DbException when there are problems opening/accessing the database.
+     */
+    void open() throws DbException, TransactionAbortedException;
+
+    /**
+     * Returns the next batch of tuples. The batch has at least one selected
+     * row, and is only valid until the next call of nextBatch, rewind or
+     * close: operators reuse their batches.
+     *
+     * @return the next batch, or null if there are no more tuples
+     * @throws IllegalStateException If the iterator has not been opened
+     */
+    TupleBatch nextBatch() throws DbException, TransactionAbortedException;
+
+    /**
+     * Resets the iterator to the start.
+     *
+     * @throws DbException           when rewind is unsupported.
+     * @throws IllegalStateException If the iterator has not been opened
+     */
+    void rewind() throws DbException, TransactionAbortedException;
+
+    /**
+     * @return the TupleDesc of the returned tuples
+     */
+    TupleDesc getTupleDesc();
+
+    /**
+     * Closes the iterator.
+     */
+    void close();
+}
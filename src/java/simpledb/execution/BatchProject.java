@@ -0,0 +1,72 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * BatchProject is the batch version of {@link Project}. The returned
+ * batches share the vectors and the selection of the batches of its child,
+ * so that a projection copies no value.
+ */
+public class BatchProject implements BatchOpIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BatchOpIterator child;
+    private final TupleDesc td;
+    private final int[] outFieldIds;
+
+    /**
+     * @param fieldList The ids of the fields child's tupleDesc to project out
+     * @param typesList the types of the fields in the final projection
+     * @param child     The child operator
+     */
+    public BatchProject(List<Integer> fieldList, List<Type> typesList, BatchOpIterator child) {
+        this.child = child;
+        this.outFieldIds = fieldList.stream().mapToInt(Integer::intValue).toArray();
+        String[] fieldAr = new String[outFieldIds.length];
+        TupleDesc childtd = child.getTupleDesc();
+        for (int i = 0; i < fieldAr.length; i++)
+            fieldAr[i] = childtd.getFieldName(outFieldIds[i]);
+        td = new TupleDesc(typesList.toArray(new Type[]{}), fieldAr);
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        // 扫描只需读取投影的字段，以及中间的BatchFilter要用到的字段
+        Set<Integer> needed = new HashSet<>();
+        for (int i : outFieldIds)
+            needed.add(i);
+        BatchOpIterator source = child;
+        while (source instanceof BatchFilter) {
+            needed.add(((BatchFilter) source).getPredicate().getField());
+            source = ((BatchFilter) source).getChild();
+        }
+        if (source instanceof BatchSeqScan)
+            ((BatchSeqScan) source).pushDownProjection(needed);
+        child.open();
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        TupleBatch b = child.nextBatch();
+        return b == null ? null : b.project(outFieldIds, td);
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    public void close() {
+        child.close();
+    }
+}
@@ -0,0 +1,148 @@
+package simpledb.execution;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.util.Collection;
+
+/**
+ * BatchSeqScan is the batch version of {@link SeqScan}: it reads the tuples
+ * of a table in batches of {@link TupleBatch#CAPACITY} rows.
+ * <p>
+ * On a HeapFile the values are copied from the pages into the vectors
+ * through a {@link HeapPage.SlotCursor}, without building tuples; other
+ * files are read with their DbFileIterator.
+ */
+public class BatchSeqScan implements BatchOpIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TransactionId tid;
+    private final int tableId;
+    private final TupleDesc td;
+
+    /**
+     * 只读取这些字段，为null时读取所有字段
+     */
+    private int[] projection;
+
+    private transient boolean[] isInt;
+    private transient TupleBatch batch;
+    private transient int pageNo;
+    private transient HeapPage.SlotCursor cursor;
+    /**
+     * 不是HeapFile时使用的迭代器
+     */
+    private transient DbFileIterator rows;
+
+    public BatchSeqScan(TransactionId tid, int tableId) {
+        this(tid, tableId, Database.getCatalog().getTableName(tableId));
+    }
+
+    /**
+     * @param tid        The transaction this scan is running as a part of.
+     * @param tableId    the table to scan.
+     * @param tableAlias the alias of this table; the field names are
+     *                   tableAlias.fieldName, as in SeqScan
+     */
+    public BatchSeqScan(TransactionId tid, int tableId, String tableAlias) {
+        this.tid = tid;
+        this.tableId = tableId;
+        this.td = new SeqScan(tid, tableId, tableAlias).getTupleDesc();
+    }
+
+    /**
+     * Tell the scan that its parent only reads the given fields; the other
+     * vectors of the returned batches are then not filled. Takes effect at
+     * the next open().
+     */
+    public void pushDownProjection(Collection<Integer> fields) {
+        projection = fields.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        batch = new TupleBatch(td);
+        isInt = new boolean[td.numFields()];
+        for (int i = 0; i < isInt.length; i++)
+            isInt[i] = td.getFieldType(i) == Type.INT_TYPE;
+        if (projection == null) {
+            projection = new int[td.numFields()];
+            for (int i = 0; i < projection.length; i++)
+                projection[i] = i;
+        }
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        if (!(file instanceof HeapFile)) {
+            rows = file.iterator(tid);
+            rows.open();
+        }
+        pageNo = 0;
+        cursor = null;
+    }
+
+    /**
+     * @return a cursor on the next page that has a used slot, or null at the
+     *         end of the table
+     */
+    private HeapPage.SlotCursor nextPage() throws DbException, TransactionAbortedException {
+        HeapFile file = (HeapFile) Database.getCatalog().getDatabaseFile(tableId);
+        while (pageNo < file.numPages()) {
+            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                    new HeapPageId(tableId, pageNo++), Permissions.READ_ONLY);
+            HeapPage.SlotCursor c = page.cursor();
+            if (c.next())
+                return c;
+        }
+        return null;
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (batch == null)
+            throw new IllegalStateException("BatchSeqScan not yet open");
+        batch.clear();
+        if (rows != null) {
+            while (!batch.isFull() && rows.hasNext())
+                batch.add(rows.next());
+            return batch.size() == 0 ? null : batch;
+        }
+        while (!batch.isFull()) {
+            if (cursor == null || !cursor.next()) {
+                cursor = nextPage();
+                if (cursor == null)
+                    break;
+            }
+            int r = batch.addRow();
+            for (int i : projection) {
+                if (isInt[i])
+                    batch.getInts(i)[r] = cursor.getInt(i);
+                else
+                    batch.getFields(i)[r] = cursor.getField(i);
+            }
+        }
+        return batch.size() == 0 ? null : batch;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (rows != null)
+            rows.rewind();
+        pageNo = 0;
+        cursor = null;
+    }
+
+    public void close() {
+        if (rows != null) {
+            rows.close();
+            rows = null;
+        }
+        batch = null;
+        cursor = null;
+    }
+}
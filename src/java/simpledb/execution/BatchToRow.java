@@ -0,0 +1,71 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+/**
+ * BatchToRow returns the tuples of a batch operator one at a time, so that
+ * row operators can be placed on top of batch operators.
+ */
+public class BatchToRow extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BatchOpIterator child;
+    private transient TupleBatch batch;
+    private transient int k;
+
+    public BatchToRow(BatchOpIterator child) {
+        this.child = child;
+    }
+
+    public BatchOpIterator getChild() {
+        return child;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        batch = null;
+        super.open();
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        while (batch == null || k == batch.size()) {
+            batch = child.nextBatch();
+            k = 0;
+            if (batch == null)
+                return null;
+        }
+        return batch.getTuple(k++);
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+        batch = null;
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        batch = null;
+    }
+
+    /**
+     * @return no children: the child of this operator is a batch operator
+     */
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[0];
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+    }
+}
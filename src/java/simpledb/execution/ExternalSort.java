@@ -0,0 +1,371 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.SpillFile;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * ExternalSort sorts the tuples of an operator with a bounded number of
+ * tuples in memory. Input that fits is sorted in memory, on normalized keys
+ * if it is given {@link SortKeys}. Larger input is cut into sorted runs in
+ * {@link SpillFile}s by replacement selection, which makes runs of about
+ * twice the budget on random input, and one run on sorted input; the runs
+ * are then merged with a loser tree, at most {@link #MAX_FANIN} at a time,
+ * the last merge as the tuples are read.
+ * <p>
+ * Tuples with equal keys are in the order of the input when sorted in
+ * memory, and in any order otherwise.
+ *
+ * @NotThreadsafe
+ */
+class ExternalSort {
+
+    /**
+     * The largest number of runs merged at once
+     */
+    static final int MAX_FANIN = 64;
+
+    private final TupleDesc td;
+    private final Comparator<Tuple> comparator;
+    private final SortKeys keys;
+    private final int memoryTuples;
+
+    /**
+     * 输入不超过内存预算时，排好序的元组
+     */
+    private List<Tuple> memory;
+    private int memoryIndex;
+    /**
+     * 否则是最后一趟归并的顺串
+     */
+    private List<SpillFile> runs = new ArrayList<>();
+    private Merger merger;
+
+    /**
+     * 置换选择的堆：heapRuns[i]是heap[i]所属的顺串
+     */
+    private Tuple[] heap;
+    private int[] heapRuns;
+
+    private long tuples;
+    private int initialRuns;
+    private int mergePasses;
+    private long spilledTuples;
+    private long spilledBytes;
+    private long sortNanos;
+
+    /**
+     * @param keys         the normalized keys of the order of comparator, or
+     *                     null to sort in memory with comparator
+     * @param memoryTuples the largest number of tuples held in memory
+     */
+    ExternalSort(TupleDesc td, Comparator<Tuple> comparator, SortKeys keys, int memoryTuples) {
+        if (memoryTuples < 1)
+            throw new IllegalArgumentException("memory budget of " + memoryTuples + " tuples");
+        this.td = td;
+        this.comparator = comparator;
+        this.keys = keys;
+        this.memoryTuples = memoryTuples;
+    }
+
+    /**
+     * Read all the tuples of child, which must be open, and sort them; they
+     * are then returned by {@link #next()}.
+     */
+    void sort(OpIterator child) throws DbException, TransactionAbortedException {
+        close();
+        tuples = 0;
+        initialRuns = mergePasses = 0;
+        spilledTuples = spilledBytes = 0;
+        long start = System.nanoTime();
+
+        List<Tuple> buffer = new ArrayList<>(Math.min(memoryTuples, 1 << 16));
+        while (buffer.size() < memoryTuples && child.hasNext())
+            buffer.add(child.next());
+        tuples = buffer.size();
+        if (!child.hasNext()) {
+            if (keys != null)
+                keys.sort(buffer);
+            else
+                buffer.sort(comparator);
+            memory = buffer;
+            memoryIndex = 0;
+        } else {
+            try {
+                formRuns(buffer, child);
+                while (runs.size() > MAX_FANIN)
+                    mergePass();
+            } catch (IOException e) {
+                throw new DbException("failed to spill sort: " + e);
+            }
+            mergePasses++;
+            merger = new Merger(runs);
+        }
+        sortNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Write the tuples in buffer, which is full, and the rest of child to
+     * sorted runs by replacement selection: the smallest tuple in memory
+     * that is not smaller than the last one written goes next; a tuple
+     * read that is smaller goes to the next run.
+     */
+    private void formRuns(List<Tuple> buffer, OpIterator child)
+            throws IOException, DbException, TransactionAbortedException {
+        int size = buffer.size();
+        heap = buffer.toArray(new Tuple[size]);
+        heapRuns = new int[size];
+        buffer.clear();
+        for (int i = size / 2 - 1; i >= 0; i--)
+            siftDown(i, size);
+
+        SpillFile out = null;
+        int run = -1;
+        while (size > 0) {
+            Tuple t = heap[0];
+            if (heapRuns[0] != run) {
+                finishRun(out);
+                out = new SpillFile(td);
+                runs.add(out);
+                run = heapRuns[0];
+            }
+            out.add(t);
+            if (child.hasNext()) {
+                Tuple u = child.next();
+                tuples++;
+                heap[0] = u;
+                heapRuns[0] = comparator.compare(u, t) >= 0 ? run : run + 1;
+            } else {
+                size--;
+                heap[0] = heap[size];
+                heapRuns[0] = heapRuns[size];
+                heap[size] = null;
+            }
+            siftDown(0, size);
+        }
+        finishRun(out);
+        initialRuns = runs.size();
+        heap = null;
+        heapRuns = null;
+    }
+
+    private void finishRun(SpillFile out) {
+        if (out != null) {
+            spilledTuples += out.size();
+            spilledBytes += out.bytes();
+        }
+    }
+
+    private boolean heapLess(int i, int j) {
+        if (heapRuns[i] != heapRuns[j])
+            return heapRuns[i] < heapRuns[j];
+        return comparator.compare(heap[i], heap[j]) < 0;
+    }
+
+    private void siftDown(int i, int size) {
+        while (true) {
+            int least = i, l = 2 * i + 1, r = l + 1;
+            if (l < size && heapLess(l, least))
+                least = l;
+            if (r < size && heapLess(r, least))
+                least = r;
+            if (least == i)
+                return;
+            Tuple t = heap[i];
+            heap[i] = heap[least];
+            heap[least] = t;
+            int run = heapRuns[i];
+            heapRuns[i] = heapRuns[least];
+            heapRuns[least] = run;
+            i = least;
+        }
+    }
+
+    /**
+     * Merge the runs MAX_FANIN at a time into fewer, longer runs.
+     */
+    private void mergePass() throws IOException, DbException, TransactionAbortedException {
+        List<SpillFile> merged = new ArrayList<>();
+        for (int from = 0; from < runs.size(); from += MAX_FANIN) {
+            List<SpillFile> group = runs.subList(from, Math.min(from + MAX_FANIN, runs.size()));
+            Merger m = new Merger(group);
+            SpillFile out = new SpillFile(td);
+            for (Tuple t = m.next(); t != null; t = m.next())
+                out.add(t);
+            m.close();
+            for (SpillFile f : group)
+                f.delete();
+            finishRun(out);
+            merged.add(out);
+        }
+        runs = merged;
+        mergePasses++;
+    }
+
+    /**
+     * @return the next tuple in sorted order, or null after the last one
+     */
+    Tuple next() throws DbException, TransactionAbortedException {
+        if (memory != null)
+            return memoryIndex < memory.size() ? memory.get(memoryIndex++) : null;
+        return merger != null ? merger.next() : null;
+    }
+
+    /**
+     * Return the tuples from the first one again.
+     */
+    void rewind() throws DbException, TransactionAbortedException {
+        memoryIndex = 0;
+        if (merger != null) {
+            merger.close();
+            merger = new Merger(runs);
+        }
+    }
+
+    /**
+     * Release the sorted tuples and delete the runs.
+     */
+    void close() {
+        memory = null;
+        if (merger != null) {
+            merger.close();
+            merger = null;
+        }
+        for (SpillFile f : runs)
+            f.delete();
+        runs = new ArrayList<>();
+    }
+
+    /**
+     * @return the number of tuples sorted
+     */
+    long getTuples() {
+        return tuples;
+    }
+
+    /**
+     * @return the number of runs written by replacement selection; 0 if the
+     *         input was sorted in memory
+     */
+    int getInitialRuns() {
+        return initialRuns;
+    }
+
+    /**
+     * @return the number of merge passes over the tuples, including the
+     *         last one as they are read
+     */
+    int getMergePasses() {
+        return mergePasses;
+    }
+
+    /**
+     * @return the number of tuples written to runs, over all passes
+     */
+    long getSpilledTuples() {
+        return spilledTuples;
+    }
+
+    /**
+     * @return the number of bytes written to runs, over all passes
+     */
+    long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * @return the nanoseconds {@link #sort} took, which include forming the
+     *         runs and all merge passes but the last
+     */
+    long getSortNanos() {
+        return sortNanos;
+    }
+
+    /**
+     * Merger is a loser tree over sorted runs: tree[1..k) hold the loser of
+     * the match at each internal node, leaf i is at k + i, and one tuple
+     * taken from a run is replayed against the log2(k) losers on its path.
+     */
+    private class Merger {
+        private final DbFileIterator[] inputs;
+        private final Tuple[] heads;
+        private final int[] tree;
+        private final int k;
+        private int winner;
+
+        Merger(List<SpillFile> files) throws DbException, TransactionAbortedException {
+            k = files.size();
+            inputs = new DbFileIterator[k];
+            heads = new Tuple[k];
+            for (int i = 0; i < k; i++) {
+                inputs[i] = files.get(i).iterator();
+                inputs[i].open();
+                heads[i] = inputs[i].hasNext() ? inputs[i].next() : null;
+            }
+            tree = new int[Math.max(k, 1)];
+            winner = k > 1 ? build(1) : 0;
+        }
+
+        /**
+         * @return the winner of the subtree at node, storing the losers
+         */
+        private int build(int node) {
+            if (node >= k)
+                return node - k;
+            int a = build(2 * node), b = build(2 * node + 1);
+            if (beats(a, b)) {
+                tree[node] = b;
+                return a;
+            }
+            tree[node] = a;
+            return b;
+        }
+
+        /**
+         * @return true if the head of run a comes before that of run b; an
+         *         exhausted run comes last, and ties go to the earlier run
+         */
+        private boolean beats(int a, int b) {
+            if (heads[a] == null)
+                return false;
+            if (heads[b] == null)
+                return true;
+            int c = comparator.compare(heads[a], heads[b]);
+            return c < 0 || (c == 0 && a < b);
+        }
+
+        Tuple next() throws DbException, TransactionAbortedException {
+            if (k == 0)
+                return null;
+            Tuple t = heads[winner];
+            if (t == null)
+                return null;
+            DbFileIterator in = inputs[winner];
+            heads[winner] = in.hasNext() ? in.next() : null;
+            // 沿叶子到根的路径与各层的败者比较
+            int s = winner;
+            for (int node = (winner + k) >> 1; node >= 1; node >>= 1) {
+                if (beats(tree[node], s)) {
+                    int loser = s;
+                    s = tree[node];
+                    tree[node] = loser;
+                }
+            }
+            winner = s;
+            return t;
+        }
+
+        void close() {
+            for (DbFileIterator in : inputs)
+                in.close();
+        }
+    }
+}
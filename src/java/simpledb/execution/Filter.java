@@ -24,6 +24,11 @@ public class Filter extends Operator {
      */
     private TupleDesc td;
 
+    /**
+     * 谓词是否已经下推到child中求值
+     */
+    private boolean pushedDown;
+
     /**
      * Constructor accepts a predicate to apply and a child operator to read
      * tuples to filter from.
@@ -51,6 +56,8 @@ public class Filter extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         // TODO: some code goes here
+        if (child instanceof SeqScan)
+            pushedDown = ((SeqScan) child).pushDown(p); // 谓词在扫描的页数据上求值，不满足的元组不会被构造
         child.open(); // 先开启来源的 operator
         super.open(); // 再调用super的open方法
     }
@@ -82,7 +89,7 @@ public class Filter extends Operator {
         // TODO: some code goes here
         while (child.hasNext()) {
             Tuple t = child.next();
-            if (!p.filter(t)) continue; // 不满足谓词条件
+            if (!pushedDown && !p.filter(t)) continue; // 不满足谓词条件
             return t;
         }
         return null;
@@ -97,7 +104,9 @@ public class Filter extends Operator {
     @Override
     public void setChildren(OpIterator[] children) {
         // TODO: some code goes here
-        if (this.child != children[0])
+        if (this.child != children[0]) {
             this.child = children[0];
+            this.pushedDown = false;
+        }
     }
 }
@@ -0,0 +1,330 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HashAggregator computes any number of aggregates over groups of zero or
+ * more fields, in one hash table. Each group is an index into primitive
+ * arrays of its count, and of the sum, min and max of each aggregate.
+ * Groups of int fields are looked up in an {@link IntHashTable} on the hash
+ * of their values, chaining the groups with equal hashes, and compared on
+ * their values kept in an int array; others are looked up in a HashMap.
+ * Groups are returned in the order they first appear.
+ * <p>
+ * It is the hash table of {@link IntegerAggregator},
+ * {@link StringAggregator} and {@link Aggregate}. Aggregate also merges
+ * tuples only into the groups already in memory with
+ * {@link #mergeTupleIntoExistingGroup}, to bound the number of groups.
+ */
+class HashAggregator implements Aggregator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int[] gbfields;
+    private final Type[] gbfieldtypes;
+    private final int[] afields;
+    private final Op[] whats;
+    /**
+     * 聚合字段是int时累加值，否则只计数
+     */
+    private final boolean[] intValues;
+    /**
+     * 聚合的数目
+     */
+    private final int n;
+    /**
+     * 分组字段都是int
+     */
+    private final boolean intGroups;
+
+    /**
+     * 分组的数目；int分组字段的值按出现的顺序存放在groupInts中，分组g的
+     * 第i个字段位于g * gbfields.length + i；其他分组的键（一个字段时是该
+     * Field，多个字段时是GroupKey）在groupKeys中
+     */
+    private int groups;
+    private int[] groupInts;
+    /**
+     * 哈希值相同的下一个分组，-1表示没有
+     */
+    private int[] chain = new int[16];
+    private List<Object> groupKeys = new ArrayList<>();
+    private long[] count = new long[16];
+    /**
+     * 第a个聚合在分组g的累加值位于g * n + a
+     */
+    private long[] sum;
+    private int[] min;
+    private int[] max;
+    private final IntHashTable intTable = new IntHashTable();
+    private final Map<Object, Integer> keyTable = new HashMap<>();
+
+    /**
+     * @param gbfields     the group-by fields, none if there is no grouping
+     * @param gbfieldtypes the types of the group-by fields
+     * @param afields      the aggregate fields, one for each aggregate
+     * @param whats        the aggregation operator of each aggregate
+     * @param intValues    intValues[a] is true if afields[a] is an int field
+     *                     whose values are aggregated, false if its tuples
+     *                     are only counted
+     * @throws IllegalArgumentException if an aggregate is not MIN, MAX, SUM,
+     *                                  AVG or COUNT, or is not COUNT over a
+     *                                  field that is not an int field
+     */
+    HashAggregator(int[] gbfields, Type[] gbfieldtypes, int[] afields, Op[] whats, boolean[] intValues) {
+        if (afields.length != whats.length || afields.length != intValues.length)
+            throw new IllegalArgumentException("need one operator for each aggregate field");
+        for (int a = 0; a < whats.length; a++) {
+            if (whats[a] == Op.SUM_COUNT || whats[a] == Op.SC_AVG)
+                throw new IllegalArgumentException("unsupported aggregate " + whats[a]);
+            if (whats[a] != Op.COUNT && !intValues[a])
+                throw new IllegalArgumentException(whats[a] + " needs an int field");
+        }
+        this.gbfields = gbfields.clone();
+        this.gbfieldtypes = gbfieldtypes.clone();
+        this.afields = afields.clone();
+        this.whats = whats.clone();
+        this.intValues = intValues.clone();
+        this.n = afields.length;
+        boolean ints = gbfields.length > 0;
+        for (Type t : gbfieldtypes)
+            ints &= t == Type.INT_TYPE;
+        this.intGroups = ints;
+        groupInts = new int[16 * gbfields.length];
+        sum = new long[16 * n];
+        min = new int[16 * n];
+        max = new int[16 * n];
+    }
+
+    /**
+     * @param intValues true if afield is an int field whose values are
+     *                  aggregated, false if its tuples are only counted
+     */
+    HashAggregator(int gbfield, Type gbfieldtype, int afield, Op what, boolean intValues) {
+        this(gbfield == NO_GROUPING ? new int[0] : new int[]{gbfield},
+                gbfield == NO_GROUPING ? new Type[0] : new Type[]{gbfieldtype},
+                new int[]{afield}, new Op[]{what}, new boolean[]{intValues});
+    }
+
+    /**
+     * @return the index of a new group
+     */
+    private int addGroup() {
+        int g = groups++;
+        if (g == count.length) {
+            groupInts = Arrays.copyOf(groupInts, 2 * g * gbfields.length);
+            chain = Arrays.copyOf(chain, 2 * g);
+            count = Arrays.copyOf(count, 2 * g);
+            sum = Arrays.copyOf(sum, 2 * g * n);
+            min = Arrays.copyOf(min, 2 * g * n);
+            max = Arrays.copyOf(max, 2 * g * n);
+        }
+        count[g] = 0;
+        int base = g * n;
+        Arrays.fill(sum, base, base + n, 0);
+        Arrays.fill(min, base, base + n, Integer.MAX_VALUE);
+        Arrays.fill(max, base, base + n, Integer.MIN_VALUE);
+        return g;
+    }
+
+    /**
+     * The values of several group-by fields, with their hash computed once.
+     */
+    private static class GroupKey {
+        final Field[] fields;
+        final int hash;
+
+        GroupKey(Field[] fields) {
+            this.fields = fields;
+            // 31 * h会让小整数字段的组合大量冲突，用大的奇数乘子
+            int h = 0;
+            for (Field f : fields)
+                h = h * 0x9e3779b1 + f.hashCode();
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof GroupKey && hash == ((GroupKey) o).hash
+                    && Arrays.equals(fields, ((GroupKey) o).fields);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * @return the key of the group of tup in keyTable
+     */
+    private Object keyOf(Tuple tup) {
+        if (gbfields.length == 1)
+            return tup.getField(gbfields[0]);
+        Field[] key = new Field[gbfields.length];
+        for (int i = 0; i < key.length; i++)
+            key[i] = tup.getField(gbfields[i]);
+        return new GroupKey(key);
+    }
+
+    /**
+     * @return the group of tup, or -1 if it is not in memory and create is
+     *         false
+     */
+    private int groupOf(Tuple tup, boolean create) {
+        if (gbfields.length == 0)
+            return groups > 0 ? 0 : create ? addGroup() : -1;
+        if (intGroups)
+            return intGroupOf(tup, create);
+        Object key = keyOf(tup);
+        Integer found = create ? keyTable.putIfAbsent(key, groups) : keyTable.get(key);
+        if (found != null)
+            return found;
+        if (!create)
+            return -1;
+        int g = addGroup();
+        groupKeys.add(key);
+        return g;
+    }
+
+    /**
+     * @return the group of tup, whose group-by fields are all ints, or -1
+     *         if it is not in memory and create is false
+     */
+    private int intGroupOf(Tuple tup, boolean create) {
+        int k = gbfields.length;
+        // 单个字段时哈希值就是字段的值
+        int h = 0;
+        for (int f : gbfields)
+            h = h * 0x9e3779b1 + tup.getInt(f);
+        int head = intTable.get(h);
+        for (int g = head; g != IntHashTable.ABSENT; g = chain[g]) {
+            int i = 0;
+            while (i < k && groupInts[g * k + i] == tup.getInt(gbfields[i]))
+                i++;
+            if (i == k)
+                return g;
+        }
+        if (!create)
+            return -1;
+        int g = addGroup();
+        for (int i = 0; i < k; i++)
+            groupInts[g * k + i] = tup.getInt(gbfields[i]);
+        chain[g] = head;
+        intTable.put(h, g);
+        return g;
+    }
+
+    private void merge(int g, Tuple tup) {
+        count[g]++;
+        int base = g * n;
+        for (int a = 0; a < n; a++) {
+            if (intValues[a]) {
+                int v = tup.getInt(afields[a]);
+                sum[base + a] += v;
+                min[base + a] = Math.min(min[base + a], v);
+                max[base + a] = Math.max(max[base + a], v);
+            }
+        }
+    }
+
+    public void mergeTupleIntoGroup(Tuple tup) {
+        merge(groupOf(tup, true), tup);
+    }
+
+    /**
+     * Merge tup into the aggregates of its group if the group is already in
+     * memory.
+     *
+     * @return false if the group of tup is not in memory; tup was not merged
+     */
+    boolean mergeTupleIntoExistingGroup(Tuple tup) {
+        int g = groupOf(tup, false);
+        if (g < 0)
+            return false;
+        merge(g, tup);
+        return true;
+    }
+
+    /**
+     * @return the number of groups in memory
+     */
+    int numGroups() {
+        return groups;
+    }
+
+    /**
+     * Drop all the groups.
+     */
+    void clear() {
+        groups = 0;
+        groupKeys.clear();
+        intTable.clear();
+        keyTable.clear();
+    }
+
+    private int value(int g, int a) {
+        int i = g * n + a;
+        switch (whats[a]) {
+            case MIN:
+                return min[i];
+            case MAX:
+                return max[i];
+            case SUM:
+                return (int) sum[i];
+            case AVG:
+                return (int) (sum[i] / count[g]);
+            default:
+                return (int) count[g];
+        }
+    }
+
+    /**
+     * @return the result tuple of group g, with the fields of td
+     */
+    Tuple result(int g, TupleDesc td) {
+        Tuple t = new Tuple(td);
+        int k = gbfields.length;
+        if (intGroups) {
+            for (int i = 0; i < k; i++)
+                t.setField(i, new IntField(groupInts[g * k + i]));
+        } else if (k == 1) {
+            t.setField(0, (Field) groupKeys.get(g));
+        } else if (k > 1) {
+            Field[] key = ((GroupKey) groupKeys.get(g)).fields;
+            for (int i = 0; i < k; i++)
+                t.setField(i, key[i]);
+        }
+        for (int a = 0; a < n; a++)
+            t.setInt(k + a, value(g, a));
+        return t;
+    }
+
+    /**
+     * @return the group-by values followed by the aggregate values of each
+     *         group, with the fields of td
+     */
+    OpIterator iterator(TupleDesc td) {
+        List<Tuple> results = new ArrayList<>(groups);
+        for (int g = 0; g < groups; g++)
+            results.add(result(g, td));
+        return new TupleIterator(td, results);
+    }
+
+    public OpIterator iterator() {
+        Type[] types = Arrays.copyOf(gbfieldtypes, gbfieldtypes.length + n);
+        Arrays.fill(types, gbfieldtypes.length, types.length, Type.INT_TYPE);
+        return iterator(new TupleDesc(types));
+    }
+}
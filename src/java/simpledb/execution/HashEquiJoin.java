@@ -1,14 +1,30 @@
 package simpledb.execution;
 
+import simpledb.common.Debug;
 import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.Field;
+import simpledb.storage.SpillFile;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 import simpledb.transaction.TransactionAbortedException;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * HashEquiJoin loads the tuples of child1 into a hash table and probes it
+ * with the tuples of child2. If child1 has more tuples than fit in memory,
+ * it runs as a grace hash join: the tuples of both children are written to
+ * {@link #FANOUT} spill files each, by the hash of their join field, and
+ * the pairs of partitions are then joined one at a time. A build partition
+ * that still does not fit is partitioned again with another hash function,
+ * up to {@link #MAX_DEPTH} times; a partition that is still too large after
+ * that (many tuples with the same join value) is loaded in chunks, each
+ * joined with the whole probe partition.
  */
 public class HashEquiJoin extends Operator {
 
@@ -19,6 +35,61 @@ public class HashEquiJoin extends Operator {
     transient private Tuple t1 = null;
     transient private Tuple t2 = null;
 
+    /**
+     * The default number of tuples of child1 held in memory
+     */
+    public final static int MAP_SIZE = 20000;
+    /**
+     * The number of partitions each child is split into when spilling
+     */
+    public final static int FANOUT = 16;
+    /**
+     * The number of times a partition may be split again
+     */
+    public final static int MAX_DEPTH = 3;
+
+    private final int memoryTuples;
+    /**
+     * 两个连接字段都是int时用IntHashTable，不装箱
+     */
+    private final boolean intKeys;
+
+    /**
+     * A pair of partitions of the two children with the same hash values.
+     */
+    private static class Partition {
+        final SpillFile build, probe;
+        /**
+         * 已经分区的次数
+         */
+        final int depth;
+
+        Partition(SpillFile build, SpillFile probe, int depth) {
+            this.build = build;
+            this.probe = probe;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * 等待连接的分区
+     */
+    transient private Deque<Partition> partitions = new ArrayDeque<>();
+    /**
+     * 正在连接的分区；为null时直接用child2探测
+     */
+    transient private Partition current;
+    transient private DbFileIterator probe;
+    /**
+     * 当前分区中还未装入内存的构建元组
+     */
+    transient private DbFileIterator buildRest;
+
+    private int peakMemoryTuples;
+    private long spilledTuples;
+    private long spilledBytes;
+    private int spilledPartitions;
+
     /**
      * Constructor. Accepts to children to join and the predicate to join them
      * on
@@ -28,9 +99,24 @@ public class HashEquiJoin extends Operator {
      * @param child2 Iterator for the right(inner) relation to join
      */
     public HashEquiJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        this(p, child1, child2, MAP_SIZE);
+    }
+
+    /**
+     * @param memoryTuples the largest number of tuples of child1 held in
+     *                     memory; beyond that the children are partitioned
+     *                     to disk
+     * @throws IllegalArgumentException if memoryTuples is less than 1
+     */
+    public HashEquiJoin(JoinPredicate p, OpIterator child1, OpIterator child2, int memoryTuples) {
+        if (memoryTuples < 1)
+            throw new IllegalArgumentException("memory budget of " + memoryTuples + " tuples");
         this.pred = p;
         this.child1 = child1;
         this.child2 = child2;
+        this.memoryTuples = memoryTuples;
+        this.intKeys = child1.getTupleDesc().getFieldType(p.getField1()) == Type.INT_TYPE
+                && child2.getTupleDesc().getFieldType(p.getField2()) == Type.INT_TYPE;
         comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
     }
 
@@ -50,48 +136,297 @@ public class HashEquiJoin extends Operator {
         return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
     }
 
-    final Map<Object, List<Tuple>> map = new HashMap<>();
-    public final static int MAP_SIZE = 20000;
+    /**
+     * @return the largest number of tuples of child1 that were in memory at
+     *         once
+     */
+    public int getPeakMemoryTuples() {
+        return peakMemoryTuples;
+    }
+
+    /**
+     * @return the number of tuples written to spill files, counting each
+     *         time a tuple is partitioned
+     */
+    public long getSpilledTuples() {
+        return spilledTuples;
+    }
+
+    /**
+     * @return the number of bytes written to spill files
+     */
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * @return the number of pairs of partitions joined from spill files
+     */
+    public int getSpilledPartitions() {
+        return spilledPartitions;
+    }
+
+    /**
+     * 内存中的构建元组；next[i]是下一个连接字段值相同的元组，-1结束
+     */
+    transient private List<Tuple> rows = new ArrayList<>();
+    transient private int[] next = new int[16];
+    /**
+     * 连接字段的值到第一个具有该值的元组，intKeys时用intHeads
+     */
+    transient private IntHashTable intHeads = new IntHashTable();
+    transient private Map<Field, Integer> heads = new HashMap<>();
+    /**
+     * 当前探测元组的下一个匹配，-1表示没有
+     */
+    transient private int match = -1;
+
+    /**
+     * @return the partition of a join value, out of FANOUT; each depth uses
+     *         a different hash function
+     */
+    static int partitionOf(Field key, int depth) {
+        return partitionOf(key.hashCode(), depth);
+    }
+
+    /**
+     * @return the partition of an int join value, the same as that of its
+     *         IntField
+     */
+    static int partitionOf(int key, int depth) {
+        int h = key ^ (depth * 0x9e3779b9);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % FANOUT;
+    }
+
+    private int partitionOf(Tuple t, int field, int depth) {
+        return intKeys ? partitionOf(t.getInt(field), depth) : partitionOf(t.getField(field), depth);
+    }
+
+    private void add(Tuple t) {
+        int r = rows.size();
+        rows.add(t);
+        if (r == next.length)
+            next = Arrays.copyOf(next, 2 * r);
+        if (intKeys) {
+            next[r] = intHeads.put(t.getInt(pred.getField1()), r);
+        } else {
+            Integer head = heads.put(t.getField(pred.getField1()), r);
+            next[r] = head == null ? -1 : head;
+        }
+    }
+
+    /**
+     * Empty the hash table.
+     */
+    private void clearTable() {
+        rows.clear();
+        intHeads.clear();
+        heads.clear();
+        match = -1;
+    }
+
+    private static SpillFile[] newPartitions(TupleDesc td) throws IOException {
+        SpillFile[] files = new SpillFile[FANOUT];
+        for (int i = 0; i < FANOUT; i++)
+            files[i] = new SpillFile(td);
+        return files;
+    }
+
+    /**
+     * Queue the pairs of partitions in which both sides have tuples, and
+     * delete the others, which cannot produce any result.
+     */
+    private void queue(SpillFile[] build, SpillFile[] probes, int depth) {
+        for (int i = 0; i < FANOUT; i++) {
+            spilledTuples += build[i].size() + probes[i].size();
+            spilledBytes += build[i].bytes() + probes[i].bytes();
+            if (build[i].size() > 0 && probes[i].size() > 0) {
+                partitions.add(new Partition(build[i], probes[i], depth));
+                spilledPartitions++;
+            } else {
+                build[i].delete();
+                probes[i].delete();
+            }
+        }
+    }
 
-    private boolean loadMap() throws DbException, TransactionAbortedException {
-        int cnt = 0;
-        map.clear();
+    /**
+     * Load child1 into the hash table, or, if it does not fit, partition
+     * both children to disk and load the first partition.
+     */
+    private void build() throws DbException, TransactionAbortedException {
+        clearTable();
+        int n = 0;
         while (child1.hasNext()) {
-            t1 = child1.next();
-            List<Tuple> list = map.computeIfAbsent(t1.getField(pred.getField1()), k -> new ArrayList<>());
-            list.add(t1);
-            if (cnt++ == MAP_SIZE)
-                return true;
+            Tuple t = child1.next();
+            if (n == memoryTuples) {
+                peakMemoryTuples = Math.max(peakMemoryTuples, n);
+                spill(t);
+                return;
+            }
+            add(t);
+            n++;
         }
-        return cnt > 0;
+        peakMemoryTuples = Math.max(peakMemoryTuples, n);
+    }
 
+    /**
+     * Partition the tuples in the hash table, t and the rest of both
+     * children to disk.
+     */
+    private void spill(Tuple t) throws DbException, TransactionAbortedException {
+        int f1 = pred.getField1(), f2 = pred.getField2();
+        try {
+            SpillFile[] build = newPartitions(child1.getTupleDesc());
+            SpillFile[] probes = newPartitions(child2.getTupleDesc());
+            for (Tuple b : rows)
+                build[partitionOf(b, f1, 0)].add(b);
+            clearTable();
+            build[partitionOf(t, f1, 0)].add(t);
+            while (child1.hasNext()) {
+                Tuple b = child1.next();
+                build[partitionOf(b, f1, 0)].add(b);
+            }
+            while (child2.hasNext()) {
+                Tuple p = child2.next();
+                probes[partitionOf(p, f2, 0)].add(p);
+            }
+            queue(build, probes, 1);
+        } catch (IOException e) {
+            throw new DbException("failed to spill hash join: " + e);
+        }
+        nextPartition();
+    }
+
+    /**
+     * Split a partition that does not fit in memory with the hash function
+     * of its depth.
+     */
+    private void repartition(Partition p) throws DbException, TransactionAbortedException {
+        try {
+            SpillFile[] build = newPartitions(p.build.getTupleDesc());
+            SpillFile[] probes = newPartitions(p.probe.getTupleDesc());
+            DbFileIterator it = p.build.iterator();
+            it.open();
+            while (it.hasNext()) {
+                Tuple b = it.next();
+                build[partitionOf(b, pred.getField1(), p.depth)].add(b);
+            }
+            it.close();
+            it = p.probe.iterator();
+            it.open();
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                probes[partitionOf(t, pred.getField2(), p.depth)].add(t);
+            }
+            it.close();
+            // 所有元组落在同一个分区时，再分区也无法拆分，直接分块连接
+            int depth = p.depth + 1;
+            for (SpillFile b : build) {
+                if (b.size() == p.build.size())
+                    depth = MAX_DEPTH;
+            }
+            p.build.delete();
+            p.probe.delete();
+            queue(build, probes, depth);
+        } catch (IOException e) {
+            throw new DbException("failed to spill hash join: " + e);
+        }
+    }
+
+    /**
+     * Load the next chunk of the build partition into the hash table.
+     */
+    private void loadChunk() throws DbException, TransactionAbortedException {
+        clearTable();
+        int n = 0;
+        while (n < memoryTuples && buildRest.hasNext()) {
+            add(buildRest.next());
+            n++;
+        }
+        peakMemoryTuples = Math.max(peakMemoryTuples, n);
+    }
+
+    /**
+     * Delete the partition being joined.
+     */
+    private void closeCurrent() {
+        if (current == null)
+            return;
+        probe.close();
+        buildRest.close();
+        current.build.delete();
+        current.probe.delete();
+        current = null;
+    }
+
+    /**
+     * Start joining the next pair of partitions, splitting the ones that
+     * do not fit in memory.
+     *
+     * @return false if there are no more partitions
+     */
+    private boolean nextPartition() throws DbException, TransactionAbortedException {
+        closeCurrent();
+        while ((current = partitions.poll()) != null) {
+            if (current.build.size() > memoryTuples && current.depth < MAX_DEPTH) {
+                repartition(current);
+                continue;
+            }
+            buildRest = current.build.iterator();
+            buildRest.open();
+            loadChunk();
+            probe = current.probe.iterator();
+            probe.open();
+            return true;
+        }
+        clearTable();
+        return false;
+    }
+
+    private void deletePartitions() {
+        closeCurrent();
+        for (Partition p : partitions) {
+            p.build.delete();
+            p.probe.delete();
+        }
+        partitions.clear();
     }
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child1.open();
         child2.open();
-        loadMap();
+        build();
         super.open();
     }
 
     public void close() {
         super.close();
+        if (spilledPartitions > 0)
+            Debug.log("HashEquiJoin on %s = %s spilled %d tuples (%d bytes) in %d partitions, peak %d tuples in memory",
+                    getJoinField1Name(), getJoinField2Name(), spilledTuples, spilledBytes, spilledPartitions,
+                    peakMemoryTuples);
+        deletePartitions();
         child2.close();
         child1.close();
         this.t1 = null;
         this.t2 = null;
-        this.listIt = null;
-        this.map.clear();
+        clearTable();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
+        deletePartitions();
         child1.rewind();
         child2.rewind();
+        build();
     }
 
-    transient Iterator<Tuple> listIt = null;
-
     /**
      * Returns the next tuple generated by the join, or null if there are no
      * more tuples. Logically, this is the next tuple in r1 cross r2 that
@@ -111,48 +446,51 @@ public class HashEquiJoin extends Operator {
      * @see JoinPredicate#filter
      */
     private Tuple processList() {
-        t1 = listIt.next();
-
-        int td1n = t1.getTupleDesc().numFields();
-        int td2n = t2.getTupleDesc().numFields();
+        t1 = rows.get(match);
+        match = next[match];
 
         // set fields in combined tuple
-        Tuple t = new Tuple(comboTD);
-        for (int i = 0; i < td1n; i++)
-            t.setField(i, t1.getField(i));
-        for (int i = 0; i < td2n; i++)
-            t.setField(td1n + i, t2.getField(i));
-        return t;
+        return Tuple.merge(t1, t2, comboTD);
+    }
 
+    /**
+     * @return the next probe tuple, from child2 or from the probe partition
+     */
+    private Tuple nextProbe() throws TransactionAbortedException, DbException {
+        if (current == null)
+            return child2.hasNext() ? child2.next() : null;
+        return probe.hasNext() ? probe.next() : null;
     }
 
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        if (listIt != null && listIt.hasNext()) {
-            return processList();
-        }
-
-        // loop around child2
-        while (child2.hasNext()) {
-            t2 = child2.next();
+        while (true) {
+            if (match >= 0)
+                return processList();
 
             // if match, create a combined tuple and fill it with the values
             // from both tuples
-            List<Tuple> l = map.get(t2.getField(pred.getField2()));
-            if (l == null)
+            Tuple t = nextProbe();
+            if (t != null) {
+                t2 = t;
+                if (intKeys) {
+                    match = intHeads.get(t2.getInt(pred.getField2()));
+                } else {
+                    Integer head = heads.get(t2.getField(pred.getField2()));
+                    match = head == null ? -1 : head;
+                }
                 continue;
-            listIt = l.iterator();
-
-            return processList();
+            }
 
+            // 探测端读完：连接当前分区的下一块，或者下一个分区
+            if (current == null)
+                return null;
+            if (buildRest.hasNext()) {
+                loadChunk();
+                probe.rewind();
+            } else if (!nextPartition()) {
+                return null;
+            }
         }
-
-        // child2 is done: advance child1
-        child2.rewind();
-        if (loadMap()) {
-            return fetchNext();
-        }
-
-        return null;
     }
 
     @Override
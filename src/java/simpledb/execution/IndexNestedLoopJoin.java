@@ -0,0 +1,202 @@
+package simpledb.execution;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.index.BTreeFile;
+import simpledb.storage.DbFile;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * IndexNestedLoopJoin joins each tuple of child1 with the tuples of child2
+ * found by a search of the B+ tree that child2 scans, instead of a scan of
+ * child2. child2 must be a SeqScan of a {@link BTreeFile} whose key field
+ * is the join field, possibly under Filters, which are applied to the
+ * tuples found; child2 itself is never opened.
+ * <p>
+ * The result tuples are the concatenation of the joining tuples, as in
+ * {@link Join}.
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate pred;
+    private OpIterator child1, child2;
+    private final TupleDesc comboTD;
+
+    /**
+     * child2中的扫描，以及它上面的过滤谓词
+     */
+    private SeqScan scan;
+    private final List<Predicate> filters = new ArrayList<>();
+
+    transient private DbFileIterator matches;
+    transient private Tuple t1;
+    private int probes;
+
+    /**
+     * @param p      The predicate to use to join the children; its operator
+     *               cannot be LIKE or NOT_EQUALS
+     * @param child1 Iterator for the left(outer) relation to join
+     * @param child2 the inner relation, which is searched with its index
+     * @throws IllegalArgumentException if {@link #canProbe} is false
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        if (!canProbe(p, child2))
+            throw new IllegalArgumentException("no index on the join field of " + child2.getTupleDesc());
+        this.pred = p;
+        this.child1 = child1;
+        this.comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        setInner(child2);
+    }
+
+    private void setInner(OpIterator child2) {
+        this.child2 = child2;
+        filters.clear();
+        OpIterator it = child2;
+        while (it instanceof Filter) {
+            filters.add(((Filter) it).getPredicate());
+            it = ((Filter) it).getChildren()[0];
+        }
+        this.scan = (SeqScan) it;
+    }
+
+    /**
+     * @return true if the tuples of inner that join with a tuple under p can
+     *         be found with an index search: inner is a SeqScan of a
+     *         BTreeFile keyed on the join field, under zero or more Filters,
+     *         and the operator of p is a comparison the index can search for
+     */
+    public static boolean canProbe(JoinPredicate p, OpIterator inner) {
+        if (indexOp(p.getOperator()) == null)
+            return false;
+        while (inner instanceof Filter)
+            inner = ((Filter) inner).getChildren()[0];
+        if (!(inner instanceof SeqScan))
+            return false;
+        DbFile file = Database.getCatalog().getDatabaseFile(((SeqScan) inner).getTableId());
+        return file instanceof BTreeFile && ((BTreeFile) file).keyField() == p.getField2();
+    }
+
+    /**
+     * @return the operator of the index search for the tuples of child2 that
+     *         join with a tuple of child1 under op: t1 op t2 is t2 op' t1, or
+     *         null if the index cannot search for op
+     */
+    private static Predicate.Op indexOp(Predicate.Op op) {
+        switch (op) {
+            case EQUALS:
+                return Predicate.Op.EQUALS;
+            case LESS_THAN:
+                return Predicate.Op.GREATER_THAN;
+            case LESS_THAN_OR_EQ:
+                return Predicate.Op.GREATER_THAN_OR_EQ;
+            case GREATER_THAN:
+                return Predicate.Op.LESS_THAN;
+            case GREATER_THAN_OR_EQ:
+                return Predicate.Op.LESS_THAN_OR_EQ;
+            default:
+                return null;
+        }
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(pred.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return child2.getTupleDesc().getFieldName(pred.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return comboTD;
+    }
+
+    /**
+     * @return the number of index searches since open()
+     */
+    public int getProbes() {
+        return probes;
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException {
+        child1.open();
+        probes = 0;
+        super.open();
+    }
+
+    private void closeMatches() {
+        if (matches != null) {
+            matches.close();
+            matches = null;
+        }
+    }
+
+    public void close() {
+        super.close();
+        closeMatches();
+        child1.close();
+        t1 = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        closeMatches();
+        child1.rewind();
+        t1 = null;
+    }
+
+    /**
+     * @return true if t satisfies the Filters of child2
+     */
+    private boolean passes(Tuple t) {
+        for (Predicate f : filters) {
+            if (!f.filter(t))
+                return false;
+        }
+        return true;
+    }
+
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        BTreeFile file = (BTreeFile) Database.getCatalog().getDatabaseFile(scan.getTableId());
+        while (true) {
+            if (matches != null) {
+                while (matches.hasNext()) {
+                    Tuple t2 = matches.next();
+                    if (passes(t2) && pred.filter(t1, t2))
+                        return Tuple.merge(t1, t2, comboTD);
+                }
+                closeMatches();
+            }
+            if (!child1.hasNext())
+                return null;
+            // 用表1元组的连接字段值搜索索引
+            t1 = child1.next();
+            matches = file.indexIterator(scan.getTransactionId(),
+                    new IndexPredicate(indexOp(pred.getOperator()), t1.getField(pred.getField1())));
+            matches.open();
+            probes++;
+        }
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{this.child1, this.child2};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child1 = children[0];
+        setInner(children[1]);
+    }
+}
@@ -0,0 +1,151 @@
+package simpledb.execution;
+
+import java.util.Arrays;
+
+/**
+ * IntHashTable maps int keys to non-negative int values, for hash joins
+ * and aggregates on int fields. It is an open-addressing table with linear
+ * probing: keys and values are interleaved in one int array, so a lookup
+ * reads one cache line in the common case, and no object is allocated per
+ * entry or per lookup.
+ * <p>
+ * A join stores the index of a row and chains the rows with the same key
+ * itself; an aggregate stores the index of a group. Entries cannot be
+ * removed.
+ *
+ * @NotThreadsafe
+ */
+public class IntHashTable {
+
+    /**
+     * The value returned for a key that is not in the table
+     */
+    public static final int ABSENT = -1;
+
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * slots[2 * i]是键，slots[2 * i + 1]是值，值为ABSENT表示空位
+     */
+    private int[] slots;
+    private int mask;
+    private int shift;
+    private int size;
+    private int resizeAt;
+
+    public IntHashTable() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expected the number of keys the table holds without growing
+     */
+    public IntHashTable(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3L / 4 < expected)
+            capacity <<= 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        slots = new int[2 * capacity];
+        for (int i = 1; i < slots.length; i += 2)
+            slots[i] = ABSENT;
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(mask);
+        resizeAt = capacity * 3 / 4;
+    }
+
+    /**
+     * @return the first slot to look for key in: the high bits of key
+     *         multiplied by the golden ratio, which spreads consecutive keys
+     */
+    private int slot(int key) {
+        return (key * 0x9e3779b9) >>> shift;
+    }
+
+    /**
+     * @return the value of key, or {@link #ABSENT}
+     */
+    public int get(int key) {
+        int[] s = slots;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            int v = s[2 * i + 1];
+            if (v == ABSENT || s[2 * i] == key)
+                return v;
+        }
+    }
+
+    /**
+     * Set the value of key.
+     *
+     * @param value a non-negative value
+     * @return the previous value of key, or {@link #ABSENT}
+     */
+    public int put(int key, int value) {
+        return put(key, value, true);
+    }
+
+    /**
+     * Set the value of key if it has none.
+     *
+     * @param value a non-negative value
+     * @return the value of key if it had one, in which case it is unchanged,
+     *         or {@link #ABSENT}
+     */
+    public int putIfAbsent(int key, int value) {
+        return put(key, value, false);
+    }
+
+    private int put(int key, int value, boolean replace) {
+        if (value < 0)
+            throw new IllegalArgumentException("negative value " + value);
+        int[] s = slots;
+        int i = slot(key);
+        for (; s[2 * i + 1] != ABSENT; i = (i + 1) & mask) {
+            if (s[2 * i] == key) {
+                int old = s[2 * i + 1];
+                if (replace)
+                    s[2 * i + 1] = value;
+                return old;
+            }
+        }
+        s[2 * i] = key;
+        s[2 * i + 1] = value;
+        if (++size > resizeAt)
+            grow();
+        return ABSENT;
+    }
+
+    private void grow() {
+        int[] old = slots;
+        allocate(2 * (mask + 1));
+        int[] s = slots;
+        for (int j = 0; j < old.length; j += 2) {
+            if (old[j + 1] == ABSENT)
+                continue;
+            int i = slot(old[j]);
+            while (s[2 * i + 1] != ABSENT)
+                i = (i + 1) & mask;
+            s[2 * i] = old[j];
+            s[2 * i + 1] = old[j + 1];
+        }
+    }
+
+    /**
+     * @return the number of keys in the table
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all keys, keeping the capacity.
+     */
+    public void clear() {
+        if (size == 0)
+            return;
+        Arrays.fill(slots, ABSENT);
+        size = 0;
+    }
+}
@@ -1,12 +1,14 @@
 package simpledb.execution;
 
 import simpledb.common.Type;
-import simpledb.storage.Tuple;
 
 /**
  * Knows how to compute some aggregate over a set of IntFields.
+ * <p>
+ * All the groups are held in memory; {@link Aggregate} bounds their number
+ * by partitioning its input to disk.
  */
-public class IntegerAggregator implements Aggregator {
+public class IntegerAggregator extends HashAggregator {
 
     private static final long serialVersionUID = 1L;
 
@@ -22,31 +24,7 @@ public class IntegerAggregator implements Aggregator {
      */
 
     public IntegerAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
-        // TODO: some code goes here
-    }
-
-    /**
-     * Merge a new tuple into the aggregate, grouping as indicated in the
-     * constructor
-     *
-     * @param tup the Tuple containing an aggregate field and a group-by field
-     */
-    public void mergeTupleIntoGroup(Tuple tup) {
-        // TODO: some code goes here
-    }
-
-    /**
-     * Create a OpIterator over group aggregate results.
-     *
-     * @return a OpIterator whose tuples are the pair (groupVal, aggregateVal)
-     *         if using group, or a single (aggregateVal) if no grouping. The
-     *         aggregateVal is determined by the type of aggregate specified in
-     *         the constructor.
-     */
-    public OpIterator iterator() {
-        // TODO: some code goes here
-        throw new
-        UnsupportedOperationException("please implement me for lab2");
+        super(gbfield, gbfieldtype, afield, what, true);
     }
 
 }
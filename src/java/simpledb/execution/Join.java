@@ -1,19 +1,32 @@
 package simpledb.execution;
 
 import simpledb.common.DbException;
+import simpledb.storage.BufferPool;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 import simpledb.transaction.TransactionAbortedException;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * Join is a block nested-loop join: it reads as many tuples of child1 as
+ * fit in a block of pages, then scans child2 once and joins each of its
+ * tuples with all tuples of the block, so child2 is scanned once per block
+ * instead of once per tuple of child1.
  */
 public class Join extends Operator {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The default size of a block of child1, in pages
+     */
+    public final static int DEFAULT_BLOCK_PAGES = 32;
+
     /**
      * 用于join两张表的谓词
      */
@@ -33,6 +46,12 @@ public class Join extends Operator {
      * 孩子迭代器
      */
     private OpIterator[] children;
+
+    /**
+     * 一块中表1的元组数
+     */
+    private final int blockTuples;
+
     /**
      * Constructor. Accepts two children to join and the predicate to join them
      * on
@@ -42,6 +61,14 @@ public class Join extends Operator {
      * @param child2 Iterator for the right(inner) relation to join
      */
     public Join(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        this(p, child1, child2, DEFAULT_BLOCK_PAGES);
+    }
+
+    /**
+     * @param blockPages the number of pages of tuples of child1 held in
+     *                   memory and joined with each scan of child2
+     */
+    public Join(JoinPredicate p, OpIterator child1, OpIterator child2, int blockPages) {
         // TODO: some code goes here
         this.p = p;
         // 连接时，返回的元组的tupleDesc必须是两个表的tupleDesc之和
@@ -49,6 +76,29 @@ public class Join extends Operator {
         this.child1 = child1;
         this.child2 = child2;
         this.children = new OpIterator[]{child1, child2};
+        this.blockTuples = blockTuples(blockPages, child1.getTupleDesc());
+    }
+
+    /**
+     * @return the number of tuples of the given schema in the given number of
+     *         pages, at least 1
+     */
+    public static int blockTuples(int blockPages, TupleDesc td) {
+        return (int) Math.max(1, (long) blockPages * BufferPool.getPageSize() / td.getSize());
+    }
+
+    /**
+     * @return the number of tuples of child1 joined with each scan of child2
+     */
+    public int getBlockTuples() {
+        return blockTuples;
+    }
+
+    /**
+     * @return the number of times child2 was scanned since open()
+     */
+    public int getInnerScans() {
+        return innerScans;
     }
 
     public JoinPredicate getJoinPredicate() {
@@ -88,6 +138,8 @@ public class Join extends Operator {
         // TODO: some code goes here
         child1.open();
         child2.open();
+        innerScans = 0;
+        loadBlock();
         super.open(); // 启动这个Operator
     }
 
@@ -96,19 +148,40 @@ public class Join extends Operator {
         super.close();
         child1.close();
         child2.close();
+        block.clear();
+        tuple2 = null;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
         // TODO: some code goes here
         child1.rewind();
         child2.rewind();
+        loadBlock();
     }
 
     /**
-     * 保存tuple1, tuple2的引用
+     * 当前块中表1的元组，以及与tuple2比较的下一个元组的下标
      */
-    private Tuple tuple1 = null;
+    private final List<Tuple> block = new ArrayList<>();
+    private int blockIndex;
     private Tuple tuple2 = null;
+    private int innerScans;
+
+    /**
+     * Read the next block of child1, and start a scan of child2.
+     *
+     * @return false if child1 has no more tuples
+     */
+    private boolean loadBlock() throws DbException, TransactionAbortedException {
+        block.clear();
+        tuple2 = null;
+        while (block.size() < blockTuples && child1.hasNext())
+            block.add(child1.next());
+        if (block.isEmpty())
+            return false;
+        innerScans++;
+        return true;
+    }
 
     /**
      * Returns the next tuple generated by the join, or null if there are no
@@ -131,31 +204,24 @@ public class Join extends Operator {
      * @see JoinPredicate#filter
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        // 对每个child1的tuple，分别连接child2的tuple
-        // TODO: some code goes here
-        // 如果child1有下个，或者tuple1还没用完，则继续迭代
-        while (child1.hasNext() || tuple1 != null) {
-            if (tuple1 == null) tuple1 = child1.next(); // 一开始初始化tuple1
-            int n = tuple1.getTupleDesc().numFields();
-            // 先找到满足join条件的两个元组，进行合并
-            Tuple newTuple = new Tuple(td);
-            while (child2.hasNext()) { // 从当前child2所处的状态获取下个元组
-                tuple2 = child2.next();
-                boolean filter = p.filter(tuple1, tuple2);
-                if (filter) {
-                    for (int i = 0; i < td.numFields(); ++i) {
-                        if (i < n)
-                            newTuple.setField(i, tuple1.getField(i));
-                        else
-                            newTuple.setField(i, tuple2.getField(i - n));
-                    }
-                    return newTuple;
+        // 对child2的每个tuple，分别连接当前块中child1的所有tuple
+        while (!block.isEmpty()) {
+            if (tuple2 != null) {
+                while (blockIndex < block.size()) {
+                    Tuple tuple1 = block.get(blockIndex++);
+                    if (p.filter(tuple1, tuple2))
+                        return Tuple.merge(tuple1, tuple2, td);
                 }
             }
-            // tuple1存在，但child2没有下个，此时rewind child2，同时获取下个tuple1
+            if (child2.hasNext()) { // 从当前child2所处的状态获取下个元组
+                tuple2 = child2.next();
+                blockIndex = 0;
+                continue;
+            }
+            // child2没有下个，此时读取child1的下一块，同时rewind child2
+            if (!loadBlock())
+                return null;
             child2.rewind();
-            if (child1.hasNext()) tuple1 = child1.next();
-            else tuple1 = null;
         }
         return null;
     }
@@ -1,5 +1,6 @@
 package simpledb.execution;
 
+import simpledb.common.Type;
 import simpledb.storage.Field;
 import simpledb.storage.Tuple;
 
@@ -46,6 +47,9 @@ public class JoinPredicate implements Serializable {
     public boolean filter(Tuple t1, Tuple t2) {
         // TODO: some code goes here
         if (t1 == null || t2 == null) return t1 == t2;
+        if (t1.getTupleDesc().getFieldType(fieldIndex1) == Type.INT_TYPE
+                && t2.getTupleDesc().getFieldType(fieldIndex2) == Type.INT_TYPE)
+            return op.compare(t1.getInt(fieldIndex1), t2.getInt(fieldIndex2));
         Field f1 = t1.getField(fieldIndex1);
         Field f2 = t2.getField(fieldIndex2);
         return f1.compare(op, f2);
@@ -1,7 +1,6 @@
 package simpledb.execution;
 
 import simpledb.common.DbException;
-import simpledb.storage.Field;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 import simpledb.transaction.TransactionAbortedException;
@@ -9,18 +8,31 @@ import simpledb.transaction.TransactionAbortedException;
 import java.util.*;
 
 /**
- * OrderBy is an operator that implements a relational ORDER BY.
+ * OrderBy is an operator that implements a relational ORDER BY, on one or
+ * more fields, each ascending or descending.
+ * <p>
+ * Up to a budget of tuples is sorted in memory; a larger input is sorted
+ * externally, in runs spilled to temporary files that are then merged (see
+ * {@link ExternalSort}).
  */
 public class OrderBy extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /**
+     * The default number of tuples held in memory
+     */
+    public final static int MEMORY_TUPLES = 100000;
+
     private OpIterator child;
     private final TupleDesc td;
-    private final List<Tuple> childTups = new ArrayList<>();
-    private final int orderByField;
-    private final String orderByFieldName;
-    private Iterator<Tuple> it;
-    private final boolean asc;
+    /**
+     * 排序键依次比较，asc[i]是第i个键的方向
+     */
+    private final int[] orderByFields;
+    private final boolean[] asc;
+    private final int memoryTuples;
+    transient private ExternalSort sort;
 
     /**
      * Creates a new OrderBy node over the tuples from the iterator.
@@ -30,51 +42,159 @@ public class OrderBy extends Operator {
      * @param child        the tuples to sort.
      */
     public OrderBy(int orderbyField, boolean asc, OpIterator child) {
+        this(orderbyField, asc, child, MEMORY_TUPLES);
+    }
+
+    /**
+     * @param memoryTuples the largest number of tuples held in memory;
+     *                     beyond that the tuples are sorted in runs on disk
+     */
+    public OrderBy(int orderbyField, boolean asc, OpIterator child, int memoryTuples) {
+        this(new int[]{orderbyField}, new boolean[]{asc}, child, memoryTuples);
+    }
+
+    /**
+     * Creates a new OrderBy node that sorts on several fields: tuples are
+     * ordered by the first field, then those with equal first fields by the
+     * second, and so on.
+     *
+     * @param orderbyFields the fields to which the sort is applied.
+     * @param asc           asc[i] is true if orderbyFields[i] is sorted in
+     *                      ascending order.
+     * @param child         the tuples to sort.
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, OpIterator child) {
+        this(orderbyFields, asc, child, MEMORY_TUPLES);
+    }
+
+    /**
+     * @param memoryTuples the largest number of tuples held in memory;
+     *                     beyond that the tuples are sorted in runs on disk
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, OpIterator child, int memoryTuples) {
+        if (orderbyFields.length == 0 || orderbyFields.length != asc.length)
+            throw new IllegalArgumentException("need one direction for each of at least one sort field");
         this.child = child;
         td = child.getTupleDesc();
-        this.orderByField = orderbyField;
-        this.orderByFieldName = td.getFieldName(orderbyField);
-        this.asc = asc;
+        this.orderByFields = orderbyFields.clone();
+        this.asc = asc.clone();
+        this.memoryTuples = memoryTuples;
     }
 
+    /**
+     * @return true if the first sort field is in ascending order
+     */
     public boolean isASC() {
-        return this.asc;
+        return this.asc[0];
     }
 
+    /**
+     * @return the first sort field
+     */
     public int getOrderByField() {
-        return this.orderByField;
+        return this.orderByFields[0];
     }
 
     public String getOrderFieldName() {
-        return this.orderByFieldName;
+        return td.getFieldName(this.orderByFields[0]);
+    }
+
+    public int[] getOrderByFields() {
+        return orderByFields.clone();
+    }
+
+    /**
+     * @return the direction of each sort field: true for ascending
+     */
+    public boolean[] getAscending() {
+        return asc.clone();
     }
 
     public TupleDesc getTupleDesc() {
         return td;
     }
 
+    private ExternalSort sort() {
+        if (sort == null)
+            sort = new ExternalSort(td, new TupleComparator(orderByFields, asc),
+                    new SortKeys(td, orderByFields, asc), memoryTuples);
+        return sort;
+    }
+
+    /**
+     * @return the number of tuples sorted by the last open()
+     */
+    public long getSortedTuples() {
+        return sort().getTuples();
+    }
+
+    /**
+     * @return the number of sorted runs written to disk by the last open(); 0
+     *         if the tuples were sorted in memory
+     */
+    public int getRuns() {
+        return sort().getInitialRuns();
+    }
+
+    /**
+     * @return the number of merge passes over the runs
+     */
+    public int getMergePasses() {
+        return sort().getMergePasses();
+    }
+
+    /**
+     * @return the number of tuples written to disk, counting each pass
+     */
+    public long getSpilledTuples() {
+        return sort().getSpilledTuples();
+    }
+
+    /**
+     * @return the number of bytes written to disk, counting each pass
+     */
+    public long getSpilledBytes() {
+        return sort().getSpilledBytes();
+    }
+
+    /**
+     * @return what the last open() did, in the style of EXPLAIN ANALYZE: the
+     *         sort method, the runs and bytes spilled, and the time to read
+     *         and sort the child, which excludes the last merge
+     */
+    public String explainAnalyze() {
+        ExternalSort s = sort();
+        double ms = s.getSortNanos() / 1e6;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Sort on %s: %d tuples in %.1f ms (%.0f tuples/s)",
+                TupleComparator.describe(td, orderByFields, asc), s.getTuples(), ms, ms > 0 ? s.getTuples() / (ms / 1000) : 0.0));
+        if (s.getInitialRuns() == 0)
+            sb.append(", in memory");
+        else
+            sb.append(String.format(", external merge: %d runs, %d merge passes, spilled %d tuples (%d kB)",
+                    s.getInitialRuns(), s.getMergePasses(), s.getSpilledTuples(), s.getSpilledBytes() / 1024));
+        return sb.toString();
+    }
+
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
-        // load all the tuples in a collection, and sort it
-        while (child.hasNext())
-            childTups.add(child.next());
-        // 对所有元组进行排序，使用TupleComparator排序器
-        childTups.sort(new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+        // 超过内存预算时生成有序的顺串写入磁盘，再归并
+        sort().sort(child);
         super.open();
     }
 
     public void close() {
         super.close();
-        it = null;
+        child.close();
+        sort().close();
     }
 
     /**
-     * 重新回到所有元组的迭代器开头
+     * 重新回到有序元组的开头
      */
-    public void rewind() {
-        it = childTups.iterator();
+    public void rewind() throws DbException, TransactionAbortedException {
+        sort().rewind();
     }
 
     /**
@@ -84,11 +204,8 @@ public class OrderBy extends Operator {
      * @return The next tuple in the ordering, or null if there are no more
      *         tuples
      */
-    protected Tuple fetchNext() throws NoSuchElementException {
-        if (it != null && it.hasNext()) {
-            return it.next();
-        } else
-            return null;
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        return sort().next();
     }
 
     @Override
@@ -102,25 +219,3 @@ public class OrderBy extends Operator {
     }
 
 }
-
-class TupleComparator implements Comparator<Tuple> {
-    final int field;
-    final boolean asc;
-
-    public TupleComparator(int field, boolean asc) {
-        this.field = field;
-        this.asc = asc;
-    }
-
-    public int compare(Tuple o1, Tuple o2) {
-        Field t1 = (o1).getField(field);
-        Field t2 = (o2).getField(field);
-        if (t1.compare(Predicate.Op.EQUALS, t2))
-            return 0;
-        if (t1.compare(Predicate.Op.GREATER_THAN, t2)) // t1>t2
-            return asc ? 1 : -1;
-        else
-            return asc ? -1 : 1;
-    }
-
-}
@@ -1,6 +1,7 @@
 package simpledb.execution;
 
 import simpledb.storage.Field;
+import simpledb.storage.IntField;
 import simpledb.storage.Tuple;
 
 import java.io.Serializable;
@@ -49,6 +50,30 @@ public class Predicate implements Serializable {
             throw new IllegalStateException("impossible to reach here");
         }
 
+        /**
+         * Compare two ints with this operator; LIKE on ints means equality.
+         *
+         * @return true if lhs op rhs holds
+         */
+        public boolean compare(int lhs, int rhs) {
+            switch (this) {
+                case EQUALS:
+                case LIKE:
+                    return lhs == rhs;
+                case NOT_EQUALS:
+                    return lhs != rhs;
+                case GREATER_THAN:
+                    return lhs > rhs;
+                case GREATER_THAN_OR_EQ:
+                    return lhs >= rhs;
+                case LESS_THAN:
+                    return lhs < rhs;
+                case LESS_THAN_OR_EQ:
+                    return lhs <= rhs;
+            }
+            return false;
+        }
+
     }
 
     private int field;
@@ -103,6 +128,8 @@ public class Predicate implements Serializable {
      */
     public boolean filter(Tuple t) {
         // TODO: some code goes here
+        if (operand instanceof IntField) // int字段直接比较值，不创建IntField
+            return op.compare(t.getInt(field), ((IntField) operand).getValue());
         Field f = t.getField(field); // 某个元组的第field个字段
         return f.compare(op, operand);
     }
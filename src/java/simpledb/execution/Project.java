@@ -6,7 +6,9 @@ import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 import simpledb.transaction.TransactionAbortedException;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.NoSuchElementException;
 
 /**
@@ -56,6 +58,15 @@ public class Project extends Operator {
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
+        // 扫描只需读取投影的字段，以及中间的Filter要用到的字段
+        Set<Integer> needed = new HashSet<>(outFieldIds);
+        OpIterator source = child;
+        while (source instanceof Filter) {
+            needed.add(((Filter) source).getPredicate().getField());
+            source = ((Filter) source).getChildren()[0];
+        }
+        if (source instanceof SeqScan)
+            ((SeqScan) source).pushDownProjection(needed);
         child.open();
         super.open();
     }
@@ -82,8 +93,11 @@ public class Project extends Operator {
         Tuple t = child.next();
         Tuple newTuple = new Tuple(td); // 投影后要输出的元组
         newTuple.setRecordId(t.getRecordId()); // 元组的位置
-        for (int i = 0; i < td.numFields(); i++) { // 设置字段
-            newTuple.setField(i, t.getField(outFieldIds.get(i)));
+        for (int i = 0; i < td.numFields(); i++) { // 设置字段，int字段不经过IntField
+            if (td.getFieldType(i) == Type.INT_TYPE)
+                newTuple.setInt(i, t.getInt(outFieldIds.get(i)));
+            else
+                newTuple.setField(i, t.getField(outFieldIds.get(i)));
         }
         return newTuple;
     }
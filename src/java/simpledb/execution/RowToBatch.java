@@ -0,0 +1,53 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+/**
+ * RowToBatch gathers the tuples of a row operator into batches, so that
+ * batch operators can be placed on top of row operators.
+ */
+public class RowToBatch implements BatchOpIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final OpIterator child;
+    private transient TupleBatch batch;
+
+    public RowToBatch(OpIterator child) {
+        this.child = child;
+    }
+
+    public OpIterator getChild() {
+        return child;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        batch = new TupleBatch(child.getTupleDesc());
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (batch == null)
+            throw new IllegalStateException("RowToBatch not yet open");
+        batch.clear();
+        while (!batch.isFull() && child.hasNext())
+            batch.add(child.next());
+        return batch.size() > 0 ? batch : null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    public void close() {
+        child.close();
+        batch = null;
+    }
+}
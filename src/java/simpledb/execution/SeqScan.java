@@ -3,12 +3,15 @@ package simpledb.execution;
 import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Type;
+import simpledb.storage.DbFile;
 import simpledb.storage.DbFileIterator;
+import simpledb.storage.HeapFile;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
+import java.util.Collection;
 import java.util.NoSuchElementException;
 
 /**
@@ -29,6 +32,16 @@ public class SeqScan implements OpIterator {
      */
     private DbFileIterator dbFileIterator;
 
+    /**
+     * 下推到扫描中求值的谓词，可以为null
+     */
+    private Predicate pushedPredicate;
+
+    /**
+     * 下推到扫描中的投影，只有这些字段会被读取；为null时读取所有字段
+     */
+    private int[] projection;
+
     public SeqScan(TransactionId tid, int tableId) {
         this(tid, tableId, Database.getCatalog().getTableName(tableId));
     }
@@ -60,6 +73,20 @@ public class SeqScan implements OpIterator {
         return Database.getCatalog().getTableName(tableId);
     }
 
+    /**
+     * @return the id of the table the operator scans
+     */
+    public int getTableId() {
+        return tableId;
+    }
+
+    /**
+     * @return the transaction the scan runs as a part of
+     */
+    public TransactionId getTransactionId() {
+        return tid;
+    }
+
     /**
      * @return Return the alias of the table this operator scans.
      */
@@ -83,11 +110,51 @@ public class SeqScan implements OpIterator {
         // TODO: some code goes here
         this.tableId = tableId;
         this.tableAlias = tableAlias;
+        this.pushedPredicate = null;
+        this.projection = null;
+    }
+
+    /**
+     * Ask the scan to evaluate p itself, before tuples are built. Only
+     * comparisons of a field with a constant that HeapFile.canEvaluate
+     * accepts can be pushed down; the caller must still apply p to the
+     * tuples it receives if this returns false. Takes effect at the next open().
+     *
+     * @return true if the scan will only return tuples that satisfy p
+     */
+    public boolean pushDown(Predicate p) {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        if (file instanceof HeapFile && ((HeapFile) file).canEvaluate(p)) {
+            pushedPredicate = p;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Tell the scan that its parent only reads the given fields. On a
+     * HeapFile, the other fields of the returned tuples are then never read
+     * from the pages and keep the values of a new Tuple; the TupleDesc of
+     * the scan does not change. Takes effect at the next open().
+     *
+     * @return true if the scan will only set the given fields
+     */
+    public boolean pushDownProjection(Collection<Integer> fields) {
+        if (!(Database.getCatalog().getDatabaseFile(tableId) instanceof HeapFile))
+            return false;
+        projection = fields.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+        return true;
     }
 
     public void open() throws DbException, TransactionAbortedException {
         // TODO: some code goes here
-        dbFileIterator = Database.getCatalog().getDatabaseFile(tableId).iterator(tid); // 这个对表tableId访问的迭代器属于某个事务
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        if (projection != null)
+            dbFileIterator = ((HeapFile) file).iterator(tid, pushedPredicate, projection);
+        else if (pushedPredicate != null)
+            dbFileIterator = ((HeapFile) file).iterator(tid, pushedPredicate);
+        else
+            dbFileIterator = file.iterator(tid); // 这个对表tableId访问的迭代器属于某个事务
         dbFileIterator.open();
     }
 
@@ -0,0 +1,200 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SortKeys encodes the sort fields of a tuple into a normalized key: a byte
+ * array whose unsigned lexicographic order is the order of the tuples on
+ * those fields, as compared by {@link TupleComparator}. A sort then encodes
+ * each tuple once, instead of comparing its fields through
+ * {@link simpledb.storage.Field#compare} in each of its n log n
+ * comparisons.
+ * <p>
+ * An INT_TYPE field is 4 big-endian bytes with the sign bit flipped. A
+ * STRING_TYPE field is its chars as 2 big-endian bytes each, except that a
+ * char 0 is 00 00 01, followed by 00 00 00: no encoded string is a prefix of
+ * another, so the fields after it are compared only between equal strings.
+ * A descending field has all its bytes inverted.
+ * <p>
+ * {@link #sort} sorts on arrays of the first 8 bytes of each key, as a long,
+ * and the index of its tuple, comparing whole keys only when their first
+ * 8 bytes are equal.
+ *
+ * @NotThreadsafe
+ */
+public class SortKeys {
+
+    private final int[] fields;
+    private final boolean[] asc;
+    /**
+     * 键全是int字段时的长度，否则为-1
+     */
+    private final int fixedLength;
+
+    /**
+     * 编码时的缓冲区
+     */
+    private byte[] buffer = new byte[64];
+    private int length;
+
+    /**
+     * @param fields the sort fields, compared in turn
+     * @param asc    asc[i] is true if fields[i] is sorted in ascending order
+     */
+    public SortKeys(TupleDesc td, int[] fields, boolean[] asc) {
+        if (fields.length != asc.length)
+            throw new IllegalArgumentException("need one direction for each sort field");
+        this.fields = fields.clone();
+        this.asc = asc.clone();
+        int fixed = 0;
+        for (int f : fields) {
+            if (td.getFieldType(f) != Type.INT_TYPE) {
+                fixed = -1;
+                break;
+            }
+            fixed += 4;
+        }
+        this.fixedLength = fixed;
+    }
+
+    private void put(int b) {
+        if (length == buffer.length)
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        buffer[length++] = (byte) b;
+    }
+
+    /**
+     * @return the normalized key of t
+     */
+    public byte[] encode(Tuple t) {
+        length = 0;
+        for (int i = 0; i < fields.length; i++) {
+            int start = length;
+            if (t.getTupleDesc().getFieldType(fields[i]) == Type.INT_TYPE) {
+                // 翻转符号位，有符号顺序变为无符号顺序
+                int v = t.getInt(fields[i]) ^ Integer.MIN_VALUE;
+                put(v >>> 24);
+                put(v >>> 16);
+                put(v >>> 8);
+                put(v);
+            } else {
+                String s = ((StringField) t.getField(fields[i])).getValue();
+                for (int j = 0; j < s.length(); j++) {
+                    char c = s.charAt(j);
+                    put(c >>> 8);
+                    put(c);
+                    if (c == 0)
+                        put(1);
+                }
+                put(0);
+                put(0);
+                put(0);
+            }
+            if (!asc[i]) {
+                for (int j = start; j < length; j++)
+                    buffer[j] = (byte) ~buffer[j];
+            }
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * @return the first 8 bytes of key as an unsigned long, padded with zeros
+     */
+    static long prefix(byte[] key) {
+        long p = 0;
+        int n = Math.min(8, key.length);
+        for (int i = 0; i < n; i++)
+            p |= (key[i] & 0xffL) << (56 - 8 * i);
+        return p;
+    }
+
+    /**
+     * Sort tuples on the sort fields, keeping tuples with equal fields in
+     * their order in the list.
+     */
+    public void sort(List<Tuple> tuples) {
+        int n = tuples.size();
+        if (n < 2)
+            return;
+        Tuple[] rows = tuples.toArray(new Tuple[n]);
+        long[] prefixes = new long[n];
+        int[] pointers = new int[n];
+        // 键不超过8字节时前缀就是整个键，不需要保存键
+        byte[][] keys = fixedLength >= 0 && fixedLength <= 8 ? null : new byte[n][];
+        for (int i = 0; i < n; i++) {
+            byte[] key = encode(rows[i]);
+            prefixes[i] = prefix(key);
+            pointers[i] = i;
+            if (keys != null)
+                keys[i] = key;
+        }
+        mergeSort(prefixes, pointers, keys, new long[n], new int[n], 0, n);
+        for (int i = 0; i < n; i++)
+            tuples.set(i, rows[pointers[i]]);
+    }
+
+    /**
+     * @return the order of the entries with prefixes pa and pb, of the keys
+     *         pointed to by a and b
+     */
+    private static int compare(long pa, int a, long pb, int b, byte[][] keys) {
+        int c = Long.compareUnsigned(pa, pb);
+        if (c != 0 || keys == null)
+            return c;
+        byte[] ka = keys[a], kb = keys[b];
+        if (ka.length <= 8 && kb.length <= 8)
+            return 0;
+        return Arrays.compareUnsigned(ka, Math.min(8, ka.length), ka.length, kb, Math.min(8, kb.length), kb.length);
+    }
+
+    private static final int INSERTION_SORT = 16;
+
+    /**
+     * Stable merge sort of the entries [from, to) of prefixes and pointers,
+     * moved together; tmpPrefixes and tmpPointers are scratch space.
+     */
+    private static void mergeSort(long[] prefixes, int[] pointers, byte[][] keys,
+                                  long[] tmpPrefixes, int[] tmpPointers, int from, int to) {
+        if (to - from <= INSERTION_SORT) {
+            for (int i = from + 1; i < to; i++) {
+                long p = prefixes[i];
+                int q = pointers[i];
+                int j = i - 1;
+                while (j >= from && compare(prefixes[j], pointers[j], p, q, keys) > 0) {
+                    prefixes[j + 1] = prefixes[j];
+                    pointers[j + 1] = pointers[j];
+                    j--;
+                }
+                prefixes[j + 1] = p;
+                pointers[j + 1] = q;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(prefixes, pointers, keys, tmpPrefixes, tmpPointers, from, mid);
+        mergeSort(prefixes, pointers, keys, tmpPrefixes, tmpPointers, mid, to);
+        if (compare(prefixes[mid - 1], pointers[mid - 1], prefixes[mid], pointers[mid], keys) <= 0)
+            return;
+        System.arraycopy(prefixes, from, tmpPrefixes, from, to - from);
+        System.arraycopy(pointers, from, tmpPointers, from, to - from);
+        int i = from, j = mid;
+        for (int k = from; k < to; k++) {
+            // 相等时取左半边，保持稳定
+            if (j >= to || (i < mid && compare(tmpPrefixes[i], tmpPointers[i],
+                    tmpPrefixes[j], tmpPointers[j], keys) <= 0)) {
+                prefixes[k] = tmpPrefixes[i];
+                pointers[k] = tmpPointers[i++];
+            } else {
+                prefixes[k] = tmpPrefixes[j];
+                pointers[k] = tmpPointers[j++];
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package simpledb.execution;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeScan;
+import simpledb.storage.DbFile;
+import simpledb.storage.Field;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * SortMergeJoin joins two children sorted in ascending order of their join
+ * fields. A child that is not already sorted, by an OrderBy, a scan of a
+ * B+ tree on its key or another sort-merge join (see {@link #isSortedOn}),
+ * is sorted with an OrderBy.
+ * <p>
+ * An EQUALS join reads both children once, holding only the tuples of
+ * child2 with the current join value. A range join (LESS_THAN,
+ * LESS_THAN_OR_EQ, GREATER_THAN or GREATER_THAN_OR_EQ) loads child2 in
+ * memory: the tuples that join with a tuple of child1 are a prefix or a
+ * suffix of it, whose bound only moves forward as child1 is read.
+ * <p>
+ * The result tuples are the concatenation of the joining tuples, as in
+ * {@link Join}, in ascending order of the join field of child1.
+ */
+public class SortMergeJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate pred;
+    private OpIterator child1, child2;
+    private final TupleDesc comboTD;
+    private final boolean intKeys;
+
+    /**
+     * 与当前元组t1连接的child2元组是matches[index, end)
+     */
+    transient private Tuple t1;
+    transient private List<Tuple> matches;
+    private int index, end;
+
+    /**
+     * 等值连接：child2中与t1的连接字段值相同的元组，以及child2的下一个元组
+     */
+    transient private List<Tuple> group;
+    transient private Tuple next2;
+    /**
+     * 范围连接：child2的所有元组，以及匹配的前缀或后缀的边界
+     */
+    transient private List<Tuple> right;
+    private int bound;
+
+    /**
+     * @param p      The predicate to use to join the children; its operator
+     *               cannot be LIKE or NOT_EQUALS
+     * @param child1 Iterator for the left(outer) relation to join
+     * @param child2 Iterator for the right(inner) relation to join
+     */
+    public SortMergeJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        if (!canJoin(p.getOperator()))
+            throw new IllegalArgumentException("sort-merge join cannot join on " + p.getOperator());
+        this.pred = p;
+        this.child1 = sorted(child1, p.getField1());
+        this.child2 = sorted(child2, p.getField2());
+        this.comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        this.intKeys = child1.getTupleDesc().getFieldType(p.getField1()) == Type.INT_TYPE
+                && child2.getTupleDesc().getFieldType(p.getField2()) == Type.INT_TYPE;
+    }
+
+    /**
+     * @return true if a sort-merge join can join on op
+     */
+    public static boolean canJoin(Predicate.Op op) {
+        return op != Predicate.Op.LIKE && op != Predicate.Op.NOT_EQUALS;
+    }
+
+    /**
+     * @return true if it returns its tuples in ascending order of field
+     */
+    public static boolean isSortedOn(OpIterator it, int field) {
+        if (it instanceof OrderBy)
+            return ((OrderBy) it).getOrderByField() == field && ((OrderBy) it).isASC();
+        if (it instanceof Filter)
+            return isSortedOn(((Filter) it).getChildren()[0], field);
+        if (it instanceof SortMergeJoin) {
+            SortMergeJoin j = (SortMergeJoin) it;
+            JoinPredicate p = j.getJoinPredicate();
+            // 等值连接的结果也按child2的连接字段有序
+            return field == p.getField1() || (p.getOperator() == Predicate.Op.EQUALS
+                    && field == j.child1.getTupleDesc().numFields() + p.getField2());
+        }
+        int tableId;
+        if (it instanceof SeqScan)
+            tableId = ((SeqScan) it).getTableId();
+        else if (it instanceof BTreeScan)
+            tableId = ((BTreeScan) it).getTableId();
+        else
+            return false;
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        return file instanceof BTreeFile && ((BTreeFile) file).keyField() == field;
+    }
+
+    private static OpIterator sorted(OpIterator child, int field) {
+        return isSortedOn(child, field) ? child : new OrderBy(field, true, child);
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(pred.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return child2.getTupleDesc().getFieldName(pred.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return comboTD;
+    }
+
+    /**
+     * @return the order of the join field of t1 and that of t2
+     */
+    private int compare(Tuple t1, Tuple t2) {
+        if (intKeys)
+            return Integer.compare(t1.getInt(pred.getField1()), t2.getInt(pred.getField2()));
+        Field f1 = t1.getField(pred.getField1());
+        Field f2 = t2.getField(pred.getField2());
+        if (f1.compare(Predicate.Op.EQUALS, f2))
+            return 0;
+        return f1.compare(Predicate.Op.LESS_THAN, f2) ? -1 : 1;
+    }
+
+    private Tuple nextRight() throws DbException, TransactionAbortedException {
+        return child2.hasNext() ? child2.next() : null;
+    }
+
+    /**
+     * Start reading child2 from its first tuple.
+     */
+    private void start() throws DbException, TransactionAbortedException {
+        t1 = null;
+        index = end = 0;
+        bound = 0;
+        if (pred.getOperator() == Predicate.Op.EQUALS) {
+            group = new ArrayList<>();
+            next2 = nextRight();
+        } else if (right == null) {
+            right = new ArrayList<>();
+            while (child2.hasNext())
+                right.add(child2.next());
+        }
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException {
+        child1.open();
+        child2.open();
+        start();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child2.close();
+        child1.close();
+        t1 = null;
+        matches = null;
+        group = null;
+        next2 = null;
+        right = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child1.rewind();
+        if (pred.getOperator() == Predicate.Op.EQUALS)
+            child2.rewind();
+        start();
+    }
+
+    /**
+     * Find the tuples of child2 that join with t1 under EQUALS.
+     */
+    private void mergeEquals() throws DbException, TransactionAbortedException {
+        if (group.isEmpty() || compare(t1, group.get(0)) != 0) {
+            group.clear();
+            while (next2 != null && compare(t1, next2) > 0)
+                next2 = nextRight();
+            while (next2 != null && compare(t1, next2) == 0) {
+                group.add(next2);
+                next2 = nextRight();
+            }
+        }
+        matches = group;
+        index = 0;
+        end = group.size();
+    }
+
+    /**
+     * Find the tuples of child2 that join with t1 under a range predicate.
+     */
+    private void mergeRange() {
+        Predicate.Op op = pred.getOperator();
+        // 跳过连接字段值不大于(LESS_THAN, GREATER_THAN_OR_EQ)或小于t1的元组
+        boolean skipEqual = op == Predicate.Op.LESS_THAN || op == Predicate.Op.GREATER_THAN_OR_EQ;
+        while (bound < right.size()) {
+            int c = compare(t1, right.get(bound));
+            if (c < 0 || (c == 0 && !skipEqual))
+                break;
+            bound++;
+        }
+        matches = right;
+        if (op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ) {
+            index = bound;
+            end = right.size();
+        } else {
+            index = 0;
+            end = bound;
+        }
+    }
+
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (index < end)
+                return Tuple.merge(t1, matches.get(index++), comboTD);
+            if (!child1.hasNext())
+                return null;
+            t1 = child1.next();
+            if (pred.getOperator() == Predicate.Op.EQUALS)
+                mergeEquals();
+            else
+                mergeRange();
+        }
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{this.child1, this.child2};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child1 = children[0];
+        this.child2 = children[1];
+    }
+}
@@ -1,12 +1,14 @@
 package simpledb.execution;
 
 import simpledb.common.Type;
-import simpledb.storage.Tuple;
 
 /**
  * Knows how to compute some aggregate over a set of StringFields.
+ * <p>
+ * All the groups are held in memory; {@link Aggregate} bounds their number
+ * by partitioning its input to disk.
  */
-public class StringAggregator implements Aggregator {
+public class StringAggregator extends HashAggregator {
 
     private static final long serialVersionUID = 1L;
 
@@ -21,29 +23,13 @@ public class StringAggregator implements Aggregator {
      */
 
     public StringAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
-        // TODO: some code goes here
+        super(gbfield, gbfieldtype, afield, check(what), false);
     }
 
-    /**
-     * Merge a new tuple into the aggregate, grouping as indicated in the constructor
-     *
-     * @param tup the Tuple containing an aggregate field and a group-by field
-     */
-    public void mergeTupleIntoGroup(Tuple tup) {
-        // TODO: some code goes here
-    }
-
-    /**
-     * Create a OpIterator over group aggregate results.
-     *
-     * @return a OpIterator whose tuples are the pair (groupVal,
-     *         aggregateVal) if using group, or a single (aggregateVal) if no
-     *         grouping. The aggregateVal is determined by the type of
-     *         aggregate specified in the constructor.
-     */
-    public OpIterator iterator() {
-        // TODO: some code goes here
-        throw new UnsupportedOperationException("please implement me for lab2");
+    private static Op check(Op what) {
+        if (what != Op.COUNT)
+            throw new IllegalArgumentException("StringAggregator only supports COUNT, not " + what);
+        return what;
     }
 
 }
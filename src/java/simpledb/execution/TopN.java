@@ -0,0 +1,213 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * TopN implements ORDER BY ... LIMIT n: it returns the first n tuples of
+ * its child in the order of one or more sort fields, as an {@link OrderBy}
+ * followed by a limit would, but reads its child once holding at most n
+ * tuples, in a heap whose root is the last of them. Tuples with equal sort
+ * fields are returned in the order of the child.
+ * <p>
+ * Without sort fields it returns the first n tuples of its child, and stops
+ * reading it.
+ */
+public class TopN extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private OpIterator child;
+    private final TupleDesc td;
+    private final int[] orderByFields;
+    private final boolean[] asc;
+    private final int limit;
+    transient private TupleComparator comparator;
+
+    /**
+     * 最大堆：heap[0]是保留的元组中最后一个；seqs[i]是heap[i]在输入中的序号
+     */
+    transient private Tuple[] heap;
+    transient private long[] seqs;
+    private int size;
+    private int index;
+    private long tuplesRead;
+
+    /**
+     * @param orderbyFields the fields to which the sort is applied; may be
+     *                      empty
+     * @param asc           asc[i] is true if orderbyFields[i] is sorted in
+     *                      ascending order.
+     * @param limit         the number of tuples to return
+     * @param child         the tuples to sort.
+     */
+    public TopN(int[] orderbyFields, boolean[] asc, int limit, OpIterator child) {
+        if (orderbyFields.length != asc.length)
+            throw new IllegalArgumentException("need one direction for each sort field");
+        if (limit < 0)
+            throw new IllegalArgumentException("negative limit " + limit);
+        this.child = child;
+        this.td = child.getTupleDesc();
+        this.orderByFields = orderbyFields.clone();
+        this.asc = asc.clone();
+        this.limit = limit;
+    }
+
+    public TopN(int orderbyField, boolean asc, int limit, OpIterator child) {
+        this(new int[]{orderbyField}, new boolean[]{asc}, limit, child);
+    }
+
+    public int[] getOrderByFields() {
+        return orderByFields.clone();
+    }
+
+    /**
+     * @return the direction of each sort field: true for ascending
+     */
+    public boolean[] getAscending() {
+        return asc.clone();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the number of tuples read from the child since open()
+     */
+    public long getTuplesRead() {
+        return tuplesRead;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return true if tuple a, the seqA-th of the input, comes after tuple b,
+     *         the seqB-th
+     */
+    private boolean after(Tuple a, long seqA, Tuple b, long seqB) {
+        int c = comparator.compare(a, b);
+        return c > 0 || (c == 0 && seqA > seqB);
+    }
+
+    private void swap(int i, int j) {
+        Tuple t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+        long s = seqs[i];
+        seqs[i] = seqs[j];
+        seqs[j] = s;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!after(heap[i], seqs[i], heap[parent], seqs[parent]))
+                return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int n) {
+        while (true) {
+            int last = i, l = 2 * i + 1, r = l + 1;
+            if (l < n && after(heap[l], seqs[l], heap[last], seqs[last]))
+                last = l;
+            if (r < n && after(heap[r], seqs[r], heap[last], seqs[last]))
+                last = r;
+            if (last == i)
+                return;
+            swap(i, last);
+            i = last;
+        }
+    }
+
+    /**
+     * Read the child, keeping the first limit tuples in the heap, then sort
+     * them in place. With a limit of 0 the child is not read at all.
+     */
+    private void select() throws DbException, TransactionAbortedException {
+        comparator = new TupleComparator(orderByFields, asc);
+        int capacity = Math.min(limit, 1024);
+        heap = new Tuple[capacity];
+        seqs = new long[capacity];
+        size = 0;
+        if (limit == 0)
+            return;
+        while (child.hasNext()) {
+            Tuple t = child.next();
+            long seq = tuplesRead++;
+            if (size < limit) {
+                if (size == heap.length) {
+                    int grown = (int) Math.min(limit, 2L * heap.length);
+                    heap = Arrays.copyOf(heap, grown);
+                    seqs = Arrays.copyOf(seqs, grown);
+                }
+                heap[size] = t;
+                seqs[size] = seq;
+                siftUp(size++);
+            } else if (after(heap[0], seqs[0], t, seq)) {
+                // 新元组排在当前最后一个之前，替换它
+                heap[0] = t;
+                seqs[0] = seq;
+                siftDown(0, size);
+            }
+        }
+        // 堆排序：依次把最后一个移到末尾
+        for (int n = size - 1; n > 0; n--) {
+            swap(0, n);
+            siftDown(0, n);
+        }
+        seqs = null;
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException {
+        child.open();
+        tuplesRead = 0;
+        index = 0;
+        if (orderByFields.length > 0)
+            select();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        heap = null;
+        seqs = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        index = 0;
+        if (orderByFields.length == 0)
+            child.rewind();
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        if (orderByFields.length > 0)
+            return index < size ? heap[index++] : null;
+        if (index >= limit || !child.hasNext())
+            return null;
+        index++;
+        tuplesRead++;
+        return child.next();
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{this.child};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+}
@@ -0,0 +1,60 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.Field;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+import java.util.Comparator;
+
+/**
+ * Compares tuples on a list of fields, each ascending or descending.
+ */
+class TupleComparator implements Comparator<Tuple> {
+    final int[] fields;
+    final boolean[] asc;
+
+    public TupleComparator(int field, boolean asc) {
+        this(new int[]{field}, new boolean[]{asc});
+    }
+
+    public TupleComparator(int[] fields, boolean[] asc) {
+        this.fields = fields;
+        this.asc = asc;
+    }
+
+    public int compare(Tuple o1, Tuple o2) {
+        for (int i = 0; i < fields.length; i++) {
+            int c = compareField(o1, o2, fields[i]);
+            if (c != 0)
+                return asc[i] ? c : -c;
+        }
+        return 0;
+    }
+
+    /**
+     * @return the ascending order of field in o1 and o2
+     */
+    static int compareField(Tuple o1, Tuple o2, int field) {
+        if (o1.getTupleDesc().getFieldType(field) == Type.INT_TYPE)
+            return Integer.compare(o1.getInt(field), o2.getInt(field));
+        Field t1 = o1.getField(field);
+        Field t2 = o2.getField(field);
+        if (t1.compare(Predicate.Op.EQUALS, t2))
+            return 0;
+        return t1.compare(Predicate.Op.GREATER_THAN, t2) ? 1 : -1;
+    }
+
+    /**
+     * @return the sort keys as in an ORDER BY clause, e.g. "a ASC, b DESC"
+     */
+    static String describe(TupleDesc td, int[] fields, boolean[] asc) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(td.getFieldName(fields[i])).append(asc[i] ? " ASC" : " DESC");
+        }
+        return sb.toString();
+    }
+}
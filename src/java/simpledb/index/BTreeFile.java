@@ -32,6 +32,8 @@ public class BTreeFile implements DbFile {
     private final TupleDesc td;
     private final int tableid;
     private final int keyField;
+    private final FilePageIO io;
+    private final boolean checksums;
 
     /**
      * Constructs a B+ tree file backed by the specified file.
@@ -42,10 +44,43 @@ public class BTreeFile implements DbFile {
      * @param td  - the tuple descriptor of tuples in the file
      */
     public BTreeFile(File f, int key, TupleDesc td) {
+        this(f, key, td, FilePageIO.DEFAULT_MODE);
+    }
+
+    /**
+     * Constructs a B+ tree file backed by the specified file, whose pages are
+     * read in the given I/O mode.
+     *
+     * @param f      - the file that stores the on-disk backing store for this B+ tree
+     *               file.
+     * @param key    - the field which index is keyed on
+     * @param td     - the tuple descriptor of tuples in the file
+     * @param ioMode - how pages are read from and written to f
+     */
+    public BTreeFile(File f, int key, TupleDesc td, FilePageIO.Mode ioMode) {
+        this(f, key, td, ioMode, false);
+    }
+
+    /**
+     * Constructs a B+ tree file backed by the specified file, whose pages are
+     * read in the given I/O mode and optionally stored with a checksum.
+     *
+     * @param f         - the file that stores the on-disk backing store for this B+ tree
+     *                  file.
+     * @param key       - the field which index is keyed on
+     * @param td        - the tuple descriptor of tuples in the file
+     * @param ioMode    - how pages are read from and written to f
+     * @param checksums - whether each page is followed by a CRC32C trailer
+     *                  that is verified when the page is read
+     * @see PageChecksum
+     */
+    public BTreeFile(File f, int key, TupleDesc td, FilePageIO.Mode ioMode, boolean checksums) {
         this.f = f;
         this.tableid = f.getAbsoluteFile().hashCode();
         this.keyField = key;
         this.td = td;
+        this.io = new FilePageIO(f, ioMode);
+        this.checksums = checksums;
     }
 
     /**
@@ -87,35 +122,36 @@ public class BTreeFile implements DbFile {
     public Page readPage(PageId pid) {
         BTreePageId id = (BTreePageId) pid;
 
-        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(f))) {
+        try {
             if (id.pgcateg() == BTreePageId.ROOT_PTR) {
-                byte[] pageBuf = new byte[BTreeRootPtrPage.getPageSize()];
-                int retval = bis.read(pageBuf, 0, BTreeRootPtrPage.getPageSize());
+                byte[] pageBuf = new byte[PageChecksum.diskSize(BTreeRootPtrPage.getPageSize(), checksums)];
+                int retval = io.read(0, pageBuf);
                 if (retval == -1) {
                     throw new IllegalArgumentException("Read past end of table");
                 }
-                if (retval < BTreeRootPtrPage.getPageSize()) {
+                if (retval < pageBuf.length) {
                     throw new IllegalArgumentException("Unable to read "
-                            + BTreeRootPtrPage.getPageSize() + " bytes from BTreeFile");
+                            + pageBuf.length + " bytes from BTreeFile");
                 }
                 Debug.log(1, "BTreeFile.readPage: read page %d", id.getPageNumber());
-                return new BTreeRootPtrPage(id, pageBuf);
+                return new BTreeRootPtrPage(id, verified(id, 0, pageBuf, BTreeRootPtrPage.getPageSize()));
             } else {
-                byte[] pageBuf = new byte[BufferPool.getPageSize()];
-                if (bis.skip(BTreeRootPtrPage.getPageSize() + (long) (id.getPageNumber() - 1) * BufferPool.getPageSize()) !=
-                        BTreeRootPtrPage.getPageSize() + (long) (id.getPageNumber() - 1) * BufferPool.getPageSize()) {
+                byte[] pageBuf = new byte[PageChecksum.diskSize(BufferPool.getPageSize(), checksums)];
+                long offset = pageOffset(id.getPageNumber());
+                if (offset > io.size()) {
                     throw new IllegalArgumentException(
                             "Unable to seek to correct place in BTreeFile");
                 }
-                int retval = bis.read(pageBuf, 0, BufferPool.getPageSize());
+                int retval = io.read(offset, pageBuf);
                 if (retval == -1) {
                     throw new IllegalArgumentException("Read past end of table");
                 }
-                if (retval < BufferPool.getPageSize()) {
+                if (retval < pageBuf.length) {
                     throw new IllegalArgumentException("Unable to read "
-                            + BufferPool.getPageSize() + " bytes from BTreeFile");
+                            + pageBuf.length + " bytes from BTreeFile");
                 }
                 Debug.log(1, "BTreeFile.readPage: read page %d", id.getPageNumber());
+                pageBuf = verified(id, offset, pageBuf, BufferPool.getPageSize());
                 if (id.pgcateg() == BTreePageId.INTERNAL) {
                     return new BTreeInternalPage(id, pageBuf, keyField);
                 } else if (id.pgcateg() == BTreePageId.LEAF) {
@@ -127,8 +163,6 @@ public class BTreeFile implements DbFile {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        // Close the file on success or error
-        // Ignore failures closing the file
     }
 
     /**
@@ -141,23 +175,68 @@ public class BTreeFile implements DbFile {
         BTreePageId id = (BTreePageId) page.getId();
 
         byte[] data = page.getPageData();
-        RandomAccessFile rf = new RandomAccessFile(f, "rw");
         if (id.pgcateg() == BTreePageId.ROOT_PTR) {
-            rf.write(data);
-            rf.close();
+            writePageData(0, data);
         } else {
-            rf.seek(BTreeRootPtrPage.getPageSize() + (long) (page.getId().getPageNumber() - 1) * BufferPool.getPageSize());
-            rf.write(data);
-            rf.close();
+            writePageData(pageOffset(page.getId().getPageNumber()), data);
         }
     }
 
+    /**
+     * @return true if the pages of this file are stored with a checksum
+     */
+    public boolean hasChecksums() {
+        return checksums;
+    }
+
+    /**
+     * @return the offset in the file of the (non root pointer) page pageNo
+     */
+    private long pageOffset(int pageNo) {
+        return PageChecksum.diskSize(BTreeRootPtrPage.getPageSize(), checksums)
+                + (long) (pageNo - 1) * PageChecksum.diskSize(BufferPool.getPageSize(), checksums);
+    }
+
+    /**
+     * Write page data at offset, followed by its checksum if this file has
+     * checksums.
+     */
+    private void writePageData(long offset, byte[] data) throws IOException {
+        io.write(offset, checksums ? PageChecksum.seal(data) : data);
+    }
+
+    /**
+     * Check the checksum of a page read from offset, repairing the page from
+     * the log if it does not match.
+     *
+     * @param buf      the page as read from disk, with its trailer if this
+     *                 file has checksums
+     * @param pageSize the size of the page without trailer
+     * @return the page data
+     */
+    private byte[] verified(BTreePageId id, long offset, byte[] buf, int pageSize) throws IOException {
+        if (!checksums)
+            return buf;
+        if (!PageChecksum.verify(buf, 0, pageSize))
+            return PageChecksum.repair(io, offset, id);
+        return Arrays.copyOf(buf, pageSize);
+    }
+
+    /**
+     * Close the file handles held by this BTreeFile. They are reopened if the
+     * file is accessed again.
+     */
+    public void close() throws IOException {
+        io.close();
+    }
+
     /**
      * Returns the number of pages in this BTreeFile.
      */
     public int numPages() {
         // we only ever write full pages
-        return (int) ((f.length() - BTreeRootPtrPage.getPageSize()) / BufferPool.getPageSize());
+        return (int) ((f.length() - PageChecksum.diskSize(BTreeRootPtrPage.getPageSize(), checksums))
+                / PageChecksum.diskSize(BufferPool.getPageSize(), checksums));
     }
 
     /**
@@ -185,8 +264,20 @@ public class BTreeFile implements DbFile {
     private BTreeLeafPage findLeafPage(TransactionId tid, Map<PageId, Page> dirtypages, BTreePageId pid, Permissions perm,
                                        Field f)
             throws DbException, TransactionAbortedException {
-        // TODO: some code goes here
-        return null;
+        if (pid.pgcateg() == BTreePageId.LEAF)
+            return (BTreeLeafPage) getPage(tid, dirtypages, pid, perm);
+        BTreeInternalPage page = (BTreeInternalPage) getPage(tid, dirtypages, pid, Permissions.READ_ONLY);
+        Iterator<BTreeEntry> it = page.iterator();
+        BTreeEntry e = null;
+        while (it.hasNext()) {
+            e = it.next();
+            // 第一个不小于f的键的左孩子可能包含f
+            if (f == null || f.compare(Op.LESS_THAN_OR_EQ, e.getKey()))
+                return findLeafPage(tid, dirtypages, e.getLeftChild(), perm, f);
+        }
+        if (e == null)
+            throw new DbException("empty internal page " + pid);
+        return findLeafPage(tid, dirtypages, e.getRightChild(), perm, f);
     }
 
     /**
@@ -227,16 +318,36 @@ public class BTreeFile implements DbFile {
      */
     public BTreeLeafPage splitLeafPage(TransactionId tid, Map<PageId, Page> dirtypages, BTreeLeafPage page, Field field)
             throws DbException, IOException, TransactionAbortedException {
-        // TODO: some code goes here
-        //
-        // Split the leaf page by adding a new page on the right of the existing
-        // page and moving half of the tuples to the new page.  Copy the middle key up
-        // into the parent page, and recursively split the parent as needed to accommodate
-        // the new entry.  getParentWithEmtpySlots() will be useful here.  Don't forget to update
-        // the sibling pointers of all the affected leaf pages.  Return the page into which a
-        // tuple with the given key field should be inserted.
-        return null;
+        // 新页放在右边，移入后一半的元组
+        BTreeLeafPage right = (BTreeLeafPage) getEmptyPage(tid, dirtypages, BTreePageId.LEAF);
+        int move = page.getNumTuples() / 2;
+        Iterator<Tuple> it = page.reverseIterator();
+        List<Tuple> moved = new ArrayList<>(move);
+        while (moved.size() < move && it.hasNext())
+            moved.add(it.next());
+        for (Tuple t : moved) {
+            page.deleteTuple(t);
+            right.insertTuple(t);
+        }
 
+        // 更新兄弟指针
+        BTreePageId oldRight = page.getRightSiblingId();
+        if (oldRight != null) {
+            BTreeLeafPage next = (BTreeLeafPage) getPage(tid, dirtypages, oldRight, Permissions.READ_WRITE);
+            next.setLeftSiblingId(right.getId());
+        }
+        right.setRightSiblingId(oldRight);
+        right.setLeftSiblingId(page.getId());
+        page.setRightSiblingId(right.getId());
+
+        // 右页的第一个键复制到父节点
+        Field middle = moved.get(moved.size() - 1).getField(keyField);
+        BTreeInternalPage parent = getParentWithEmptySlots(tid, dirtypages, page.getParentId(), middle);
+        parent.insertEntry(new BTreeEntry(middle, page.getId(), right.getId()));
+        page.setParentId(parent.getId());
+        right.setParentId(parent.getId());
+
+        return field.compare(Op.GREATER_THAN, middle) ? right : page;
     }
 
     /**
@@ -263,16 +374,29 @@ public class BTreeFile implements DbFile {
     public BTreeInternalPage splitInternalPage(TransactionId tid, Map<PageId, Page> dirtypages,
                                                BTreeInternalPage page, Field field)
             throws DbException, IOException, TransactionAbortedException {
-        // TODO: some code goes here
-        //
-        // Split the internal page by adding a new page on the right of the existing
-        // page and moving half of the entries to the new page.  Push the middle key up
-        // into the parent page, and recursively split the parent as needed to accommodate
-        // the new entry.  getParentWithEmtpySlots() will be useful here.  Don't forget to update
-        // the parent pointers of all the children moving to the new page.  updateParentPointers()
-        // will be useful here.  Return the page into which an entry with the given key field
-        // should be inserted.
-        return null;
+        // 新页放在右边，移入后一半的项，中间的键推到父节点
+        BTreeInternalPage right = (BTreeInternalPage) getEmptyPage(tid, dirtypages, BTreePageId.INTERNAL);
+        int move = page.getNumEntries() / 2;
+        Iterator<BTreeEntry> it = page.reverseIterator();
+        List<BTreeEntry> moved = new ArrayList<>(move);
+        while (moved.size() < move && it.hasNext())
+            moved.add(it.next());
+        for (BTreeEntry e : moved) {
+            page.deleteKeyAndRightChild(e);
+            right.insertEntry(e);
+        }
+        BTreeEntry middle = it.next();
+        page.deleteKeyAndRightChild(middle);
+        updateParentPointers(tid, dirtypages, right);
+
+        BTreeInternalPage parent = getParentWithEmptySlots(tid, dirtypages, page.getParentId(), middle.getKey());
+        middle.setLeftChild(page.getId());
+        middle.setRightChild(right.getId());
+        parent.insertEntry(middle);
+        page.setParentId(parent.getId());
+        right.setParentId(parent.getId());
+
+        return field.compare(Op.GREATER_THAN, middle.getKey()) ? right : page;
     }
 
     /**
@@ -804,13 +928,10 @@ public class BTreeFile implements DbFile {
         synchronized (this) {
             if (f.length() == 0) {
                 // create the root pointer page and the root page
-                BufferedOutputStream bw = new BufferedOutputStream(
-                        new FileOutputStream(f, true));
                 byte[] emptyRootPtrData = BTreeRootPtrPage.createEmptyPageData();
                 byte[] emptyLeafData = BTreeLeafPage.createEmptyPageData();
-                bw.write(emptyRootPtrData);
-                bw.write(emptyLeafData);
-                bw.close();
+                writePageData(0, emptyRootPtrData);
+                writePageData(pageOffset(1), emptyLeafData);
             }
         }
 
@@ -864,11 +985,8 @@ public class BTreeFile implements DbFile {
         if (headerId == null) {
             synchronized (this) {
                 // create the new page
-                BufferedOutputStream bw = new BufferedOutputStream(
-                        new FileOutputStream(f, true));
                 byte[] emptyData = BTreeInternalPage.createEmptyPageData();
-                bw.write(emptyData);
-                bw.close();
+                writePageData(f.length(), emptyData);
                 emptyPageNo = numPages();
             }
         }
@@ -898,10 +1016,7 @@ public class BTreeFile implements DbFile {
         BTreePageId newPageId = new BTreePageId(tableid, emptyPageNo, pgcateg);
 
         // write empty page to disk
-        RandomAccessFile rf = new RandomAccessFile(f, "rw");
-        rf.seek(BTreeRootPtrPage.getPageSize() + (long) (emptyPageNo - 1) * BufferPool.getPageSize());
-        rf.write(BTreePage.createEmptyPageData());
-        rf.close();
+        writePageData(pageOffset(emptyPageNo), BTreePage.createEmptyPageData());
 
         // make sure the page is not in the buffer pool	or in the local cache
         Database.getBufferPool().removePage(newPageId);
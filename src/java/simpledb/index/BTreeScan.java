@@ -27,6 +27,7 @@ public class BTreeScan implements OpIterator {
     private IndexPredicate ipred = null;
     private transient DbFileIterator it;
     private String tablename;
+    private int tableid;
     private String alias;
 
     /**
@@ -58,6 +59,13 @@ public class BTreeScan implements OpIterator {
         return this.tablename;
     }
 
+    /**
+     * @return the id of the table the operator scans
+     */
+    public int getTableId() {
+        return this.tableid;
+    }
+
     /**
      * @return Return the alias of the table this operator scans.
      */
@@ -80,6 +88,7 @@ public class BTreeScan implements OpIterator {
         this.isOpen = false;
         this.alias = tableAlias;
         this.tablename = Database.getCatalog().getTableName(tableid);
+        this.tableid = tableid;
         if (ipred == null) {
             this.it = Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
         } else {
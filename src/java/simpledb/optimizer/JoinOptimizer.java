@@ -3,6 +3,10 @@ package simpledb.optimizer;
 import simpledb.ParsingException;
 import simpledb.common.Database;
 import simpledb.execution.*;
+import simpledb.index.BTreeFile;
+import simpledb.storage.BufferPool;
+import simpledb.storage.DbFile;
+import simpledb.storage.HeapFile;
 import simpledb.storage.TupleDesc;
 
 import javax.swing.*;
@@ -68,12 +72,150 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
-        j = new Join(p,plan1,plan2);
+        // 按代价在块嵌套循环连接、哈希连接、排序归并连接和索引嵌套循环连接中选择
+        double card1 = estimatePlanCardinality(plan1);
+        double card2 = estimatePlanCardinality(plan2);
+        double cost1 = estimatePlanCost(plan1);
+        double cost2 = estimatePlanCost(plan2);
+        TupleDesc td1 = plan1.getTupleDesc(), td2 = plan2.getTupleDesc();
+
+        double blocks = Math.ceil(card1 / Join.blockTuples(Join.DEFAULT_BLOCK_PAGES, td1));
+        double best = cost1 + blocks * cost2 + card1 * card2;
+        j = new Join(p, plan1, plan2);
+
+        if (lj.p == Predicate.Op.EQUALS && td1.getFieldType(t1id) == td2.getFieldType(t2id)) {
+            // 建哈希表时每个元组算两次：一次哈希插入，一次读取
+            double hashCost = cost1 + cost2 + 2 * card1 + card2;
+            if (card1 > HashEquiJoin.MAP_SIZE) // 两边都要写入分区再读回
+                hashCost += 2 * (pages(card1, td1) + pages(card2, td2)) * TableStats.IOCOSTPERPAGE;
+            if (hashCost < best) {
+                best = hashCost;
+                j = new HashEquiJoin(p, plan1, plan2);
+            }
+        }
+
+        if (SortMergeJoin.canJoin(lj.p) && td1.getFieldType(t1id) == td2.getFieldType(t2id)) {
+            // 已按连接字段有序的一边不用再排序
+            double mergeCost = cost1 + cost2 + card1 + card2;
+            if (!SortMergeJoin.isSortedOn(plan1, t1id))
+                mergeCost += sortCost(card1);
+            if (!SortMergeJoin.isSortedOn(plan2, t2id))
+                mergeCost += sortCost(card2);
+            if (mergeCost < best) {
+                best = mergeCost;
+                j = new SortMergeJoin(p, plan1, plan2);
+            }
+        }
+
+        if (IndexNestedLoopJoin.canProbe(p, plan2)) {
+            // 等值连接假定每次搜索匹配一个元组，范围连接匹配三分之一
+            double matches = lj.p == Predicate.Op.EQUALS ? 1 : card2 / 3;
+            double indexCost = cost1 + card1 * (INDEX_PROBE_PAGES * TableStats.IOCOSTPERPAGE
+                    + pages(matches, td2) * TableStats.IOCOSTPERPAGE + matches);
+            if (indexCost < best)
+                j = new IndexNestedLoopJoin(p, plan1, plan2);
+        }
 
         return j;
 
     }
 
+    /**
+     * The number of pages read by a search of a B+ tree, down to the first
+     * leaf it reads
+     */
+    static final int INDEX_PROBE_PAGES = 3;
+
+    /**
+     * @return the number of comparisons to sort the given number of tuples
+     */
+    private static double sortCost(double tuples) {
+        return tuples * Math.max(1, Math.log(tuples) / Math.log(2));
+    }
+
+    /**
+     * @return the number of pages that hold the given number of tuples
+     */
+    private static double pages(double tuples, TupleDesc td) {
+        return Math.ceil(tuples * td.getSize() / BufferPool.getPageSize());
+    }
+
+    /**
+     * @return the number of pages of the table a scan reads
+     */
+    private static int tablePages(SeqScan scan) {
+        DbFile file = Database.getCatalog().getDatabaseFile(scan.getTableId());
+        if (file instanceof HeapFile)
+            return ((HeapFile) file).numPages();
+        if (file instanceof BTreeFile)
+            return ((BTreeFile) file).numPages();
+        return 1;
+    }
+
+    /**
+     * Estimate the number of tuples a subplan returns, from the table
+     * statistics if there are any, or else from the number of pages of the
+     * tables. Filters on a table without statistics are assumed not to
+     * remove tuples, and joins to return as many tuples as their larger child.
+     */
+    static double estimatePlanCardinality(OpIterator plan) {
+        if (plan instanceof SeqScan) {
+            SeqScan scan = (SeqScan) plan;
+            TableStats stats = TableStats.getTableStats(scan.getTableName());
+            if (stats != null && stats.totalTuples() > 0)
+                return stats.totalTuples();
+            TupleDesc td = plan.getTupleDesc();
+            return (double) tablePages(scan) * (BufferPool.getPageSize() * 8 / (td.getSize() * 8 + 1));
+        }
+        if (plan instanceof Filter) {
+            OpIterator child = ((Filter) plan).getChildren()[0];
+            double card = estimatePlanCardinality(child);
+            if (child instanceof SeqScan) {
+                TableStats stats = TableStats.getTableStats(((SeqScan) child).getTableName());
+                Predicate pred = ((Filter) plan).getPredicate();
+                if (stats != null)
+                    card *= stats.estimateSelectivity(pred.getField(), pred.getOp(), pred.getOperand());
+            }
+            return Math.max(1, card);
+        }
+        if (plan instanceof Operator) {
+            Operator o = (Operator) plan;
+            if (o.getEstimatedCardinality() > 0)
+                return o.getEstimatedCardinality();
+            double card = 1;
+            for (OpIterator child : o.getChildren()) {
+                if (child != null)
+                    card = Math.max(card, estimatePlanCardinality(child));
+            }
+            return card;
+        }
+        return 1;
+    }
+
+    /**
+     * Estimate the cost of running a subplan once: the pages of the tables it
+     * scans, and one unit per result tuple of its joins.
+     */
+    static double estimatePlanCost(OpIterator plan) {
+        if (plan instanceof SeqScan)
+            return (double) tablePages((SeqScan) plan) * TableStats.IOCOSTPERPAGE;
+        if (plan instanceof Operator) {
+            OpIterator[] children = ((Operator) plan).getChildren();
+            // 索引嵌套循环连接不扫描内表
+            int n = plan instanceof IndexNestedLoopJoin ? 1 : children.length;
+            double cost = 0;
+            for (int i = 0; i < n; i++) {
+                if (children[i] != null)
+                    cost += estimatePlanCost(children[i]);
+            }
+            if (plan instanceof Join || plan instanceof HashEquiJoin || plan instanceof IndexNestedLoopJoin
+                    || plan instanceof SortMergeJoin)
+                cost += estimatePlanCardinality(plan);
+            return cost;
+        }
+        return 0;
+    }
+
     /**
      * Estimate the cost of a join.
      * <p>
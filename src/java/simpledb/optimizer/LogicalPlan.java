@@ -33,12 +33,18 @@ public class LogicalPlan {
     private final Map<String, Integer> tableMap;
 
     private final List<LogicalSelectListNode> selectList;
-    private String groupByField = null;
-    private boolean hasAgg = false;
-    private String aggOp;
-    private String aggField;
-    private boolean oByAsc, hasOrderBy = false;
-    private String oByField;
+    private final List<String> groupByFields = new ArrayList<>();
+    /**
+     * 聚合的操作和字段，aggOps.get(i)作用于aggFields.get(i)
+     */
+    private final List<String> aggOps = new ArrayList<>();
+    private final List<String> aggFields = new ArrayList<>();
+    private final List<String> oByFields = new ArrayList<>();
+    private final List<Boolean> oByAsc = new ArrayList<>();
+    /**
+     * LIMIT的元组数，-1表示没有LIMIT
+     */
+    private int limit = -1;
     private String query;
     //    private Query owner;
 
@@ -205,27 +211,55 @@ public class LogicalPlan {
 
     /**
      * Add an aggregate over the field with the specified grouping to
-     * the query.  SimpleDb only supports a single aggregate
-     * expression and GROUP BY field.
+     * the query.  Aggregates added by successive calls are computed
+     * together in one pass; an aggregate already added is computed once.
      *
      * @param op     the aggregation operator
      * @param afield the field to aggregate over
-     * @param gfield the field to group by
+     * @param gfield the field to group by, added as by {@link #addGroupBy},
+     *               or null
      * @throws ParsingException
      */
     public void addAggregate(String op, String afield, String gfield) throws ParsingException {
         afield = disambiguateName(afield);
         if (gfield != null)
-            gfield = disambiguateName(gfield);
-        aggOp = op;
-        aggField = afield;
-        groupByField = gfield;
-        hasAgg = true;
+            addGroupBy(gfield);
+        if (aggregateIndex(op, afield) < 0) {
+            aggOps.add(op);
+            aggFields.add(afield);
+        }
     }
 
     /**
-     * Add an ORDER BY expression in the specified order on the specified field.  SimpleDb only supports
-     * a single ORDER BY field.
+     * Add a GROUP BY field.  Fields added by successive calls group the
+     * aggregates together, on the combination of their values; a field
+     * already added is ignored.
+     *
+     * @param gfield the field to group by
+     * @throws ParsingException
+     */
+    public void addGroupBy(String gfield) throws ParsingException {
+        gfield = disambiguateName(gfield);
+        if (!groupByFields.contains(gfield))
+            groupByFields.add(gfield);
+    }
+
+    /**
+     * @return the index of the aggregate op over afield, or -1 if it was not
+     *         added
+     */
+    private int aggregateIndex(String op, String afield) {
+        for (int i = 0; i < aggOps.size(); i++) {
+            if (aggOps.get(i).equalsIgnoreCase(op) && aggFields.get(i).equals(afield))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Add an ORDER BY expression in the specified order on the specified field.  Fields added by
+     * successive calls are compared in turn: the second orders the tuples with equal first fields, and
+     * so on.
      *
      * @param field the field to order by
      * @param asc   true if should be ordered in ascending order, false for descending order
@@ -233,9 +267,21 @@ public class LogicalPlan {
      */
     public void addOrderBy(String field, boolean asc) throws ParsingException {
         field = disambiguateName(field);
-        oByField = field;
-        oByAsc = asc;
-        hasOrderBy = true;
+        oByFields.add(field);
+        oByAsc.add(asc);
+    }
+
+    /**
+     * Return only the first n result tuples, in the order of the ORDER BY fields if there are any.
+     * Such a query is planned with a {@link TopN}, which holds n tuples instead of sorting all of them.
+     *
+     * @param n the number of tuples to return
+     * @throws ParsingException if n is negative
+     */
+    public void addLimit(int n) throws ParsingException {
+        if (n < 0)
+            throw new ParsingException("Negative LIMIT " + n);
+        limit = n;
     }
 
     /**
@@ -438,7 +484,10 @@ public class LogicalPlan {
         for (int i = 0; i < selectList.size(); i++) {
             LogicalSelectListNode si = selectList.get(i);
             if (si.aggOp != null) {
-                outFields.add(groupByField != null ? 1 : 0);
+                int a = aggregateIndex(si.aggOp, si.fname);
+                if (a < 0)
+                    throw new ParsingException("Aggregate " + si.aggOp + "(" + si.fname + ") was not added");
+                outFields.add(groupByFields.size() + a);
                 TupleDesc td = node.getTupleDesc();
                 //                int  id;
                 try {
@@ -449,17 +498,18 @@ public class LogicalPlan {
                 }
                 outTypes.add(Type.INT_TYPE);  //the type of all aggregate functions is INT
 
-            } else if (hasAgg) {
-                if (groupByField == null) {
+            } else if (!aggOps.isEmpty()) {
+                int g = groupByFields.indexOf(si.fname);
+                if (g < 0) {
                     throw new ParsingException("Field " + si.fname + " does not appear in GROUP BY list");
                 }
-                outFields.add(0);
+                outFields.add(g);
                 TupleDesc td = node.getTupleDesc();
                 int id;
                 try {
-                    id = td.indexForFieldName(groupByField);
+                    id = td.indexForFieldName(si.fname);
                 } catch (NoSuchElementException e) {
-                    throw new ParsingException("Unknown field " + groupByField + " in GROUP BY statement");
+                    throw new ParsingException("Unknown field " + si.fname + " in GROUP BY statement");
                 }
                 outTypes.add(td.getFieldType(id));
             } else if (si.fname.equals("null.*")) {
@@ -482,22 +532,39 @@ public class LogicalPlan {
             }
         }
 
-        if (hasAgg) {
+        if (!aggOps.isEmpty()) {
             TupleDesc td = node.getTupleDesc();
             Aggregate aggNode;
             try {
-                aggNode = new Aggregate(node,
-                        td.indexForFieldName(aggField),
-                        groupByField == null ? Aggregator.NO_GROUPING : td.indexForFieldName(groupByField),
-                        getAggOp(aggOp));
+                // 所有聚合在一个Aggregate中一趟算出
+                int[] afields = new int[aggOps.size()];
+                Aggregator.Op[] aops = new Aggregator.Op[aggOps.size()];
+                for (int i = 0; i < afields.length; i++) {
+                    afields[i] = td.indexForFieldName(aggFields.get(i));
+                    aops[i] = getAggOp(aggOps.get(i));
+                }
+                int[] gfields = new int[groupByFields.size()];
+                for (int i = 0; i < gfields.length; i++)
+                    gfields[i] = td.indexForFieldName(groupByFields.get(i));
+                aggNode = new Aggregate(node, afields, aops, gfields);
             } catch (NoSuchElementException | IllegalArgumentException e) {
                 throw new simpledb.ParsingException(e);
             }
             node = aggNode;
         }
 
-        if (hasOrderBy) {
-            node = new OrderBy(node.getTupleDesc().indexForFieldName(oByField), oByAsc, node);
+        if (!oByFields.isEmpty() || limit >= 0) {
+            int[] fields = new int[oByFields.size()];
+            boolean[] asc = new boolean[oByFields.size()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = node.getTupleDesc().indexForFieldName(oByFields.get(i));
+                asc[i] = oByAsc.get(i);
+            }
+            // 有LIMIT时用TopN，只保留前limit个元组
+            if (limit >= 0)
+                node = new TopN(fields, asc, limit, node);
+            else
+                node = new OrderBy(fields, asc, node);
         }
 
         return new Project(outFields, outTypes, node);
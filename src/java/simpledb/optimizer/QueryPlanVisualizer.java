@@ -1,9 +1,13 @@
 package simpledb.optimizer;
 
+import simpledb.common.Database;
 import simpledb.execution.*;
+import simpledb.storage.DbFile;
+import simpledb.storage.HeapFile;
 import simpledb.storage.TupleDesc;
 import simpledb.storage.TupleDesc.TDItem;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -12,6 +16,8 @@ public class QueryPlanVisualizer {
 
     static final String JOIN = "⨝";
     static final String HASH_JOIN = "⨝(hash)";
+    static final String INDEX_JOIN = "⨝(index)";
+    static final String MERGE_JOIN = "⨝(merge)";
     static final String SELECT = "σ";
     static final String PROJECT = "π";
     static final String RENAME = "ρ";
@@ -29,7 +35,8 @@ public class QueryPlanVisualizer {
         Operator o = (Operator) root;
         OpIterator[] children = o.getChildren();
 
-        if (o instanceof Join || o instanceof HashEquiJoin) {
+        if (o instanceof Join || o instanceof HashEquiJoin || o instanceof IndexNestedLoopJoin
+                || o instanceof SortMergeJoin) {
             int d1 = this.calculateQueryPlanTreeDepth(children[0]);
             int d2 = this.calculateQueryPlanTreeDepth(children[1]);
             return Math.max(d1, d2) + 3;
@@ -56,6 +63,26 @@ public class QueryPlanVisualizer {
 
     }
 
+    /**
+     * @return how many pages of the scanned table the zone map lets a scan
+     *         with p skip, as ",zonemap skips:80%(800/1000 pages)", or "" if
+     *         it cannot skip any
+     */
+    static String zoneMapSkips(SeqScan scan, Predicate p) {
+        DbFile file = Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId(scan.getTableName()));
+        if (!(file instanceof HeapFile) || !((HeapFile) file).canSkipPages(p))
+            return "";
+        HeapFile hf = (HeapFile) file;
+        try {
+            int skipped = hf.countSkippedPages(p);
+            int pages = hf.numPages();
+            return String.format(",zonemap skips:%d%%(%d/%d pages)", pages == 0 ? 0 : skipped * 100 / pages,
+                    skipped, pages);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
     private SubTreeDescriptor buildTree(int queryPlanDepth, int currentDepth,
                                         OpIterator queryPlan, int currentStartPosition,
                                         int parentUpperBarStartShift) {
@@ -136,18 +163,29 @@ public class QueryPlanVisualizer {
                 thisNode.leftChild = left;
                 thisNode.rightChild = right;
                 thisNode.height = currentDepth;
-            } else if (plan instanceof HashEquiJoin) {
-                HashEquiJoin j = (HashEquiJoin) plan;
-                JoinPredicate jp = j.getJoinPredicate();
-                TupleDesc td = j.getTupleDesc();
+            } else if (plan instanceof HashEquiJoin || plan instanceof IndexNestedLoopJoin
+                    || plan instanceof SortMergeJoin) {
+                String joinName;
+                JoinPredicate jp;
+                if (plan instanceof HashEquiJoin) {
+                    joinName = HASH_JOIN;
+                    jp = ((HashEquiJoin) plan).getJoinPredicate();
+                } else if (plan instanceof IndexNestedLoopJoin) {
+                    joinName = INDEX_JOIN;
+                    jp = ((IndexNestedLoopJoin) plan).getJoinPredicate();
+                } else {
+                    joinName = MERGE_JOIN;
+                    jp = ((SortMergeJoin) plan).getJoinPredicate();
+                }
+                TupleDesc td = plan.getTupleDesc();
                 String field1 = td.getFieldName(jp.getField1());
                 String field2 = td.getFieldName(jp.getField2()
                         + children[0].getTupleDesc().numFields());
-                thisNode.text = String.format("%1$s(%2$s),card:%3$d", HASH_JOIN, field1
-                        + jp.getOperator() + field2, j.getEstimatedCardinality());
+                thisNode.text = String.format("%1$s(%2$s),card:%3$d", joinName, field1
+                        + jp.getOperator() + field2, plan.getEstimatedCardinality());
                 int upBarShift = parentUpperBarStartShift;
-                if (HASH_JOIN.length() / 2 > parentUpperBarStartShift)
-                    upBarShift = HASH_JOIN.length() / 2;
+                if (joinName.length() / 2 > parentUpperBarStartShift)
+                    upBarShift = joinName.length() / 2;
                 SubTreeDescriptor left = this.buildTree(queryPlanDepth,
                         currentDepth + 3 + adjustDepth, children[0],
                         currentStartPosition, upBarShift);
@@ -156,7 +194,7 @@ public class QueryPlanVisualizer {
                         currentStartPosition + left.width + SPACE.length(), 0);
                 thisNode.upBarPosition = (left.upBarPosition + right.upBarPosition) / 2;
                 thisNode.textStartPosition = thisNode.upBarPosition
-                        - HASH_JOIN.length() / 2;
+                        - joinName.length() / 2;
                 thisNode.width = Math.max(
                         left.width + right.width + SPACE.length(),
                         thisNode.textStartPosition + thisNode.text.length()
@@ -169,16 +207,30 @@ public class QueryPlanVisualizer {
                 int upBarShift = parentUpperBarStartShift;
                 String alignTxt;
                 TupleDesc td = a.getTupleDesc();
-                int gfield = a.groupField();
+                int[] gfields = a.groupFields();
+                int[] afields = a.aggregateFields();
+                Aggregator.Op[] aops = a.aggregateOps();
+                TupleDesc childTd = a.getChildren()[0].getTupleDesc();
+                StringBuilder aggs = new StringBuilder();
+                for (int i = 0; i < afields.length; i++) {
+                    if (i > 0)
+                        aggs.append(", ");
+                    aggs.append(aops[i]).append("(").append(childTd.getFieldName(afields[i])).append(")");
+                }
 
-                if (gfield == Aggregator.NO_GROUPING) {
-                    thisNode.text = String.format("%1$s(%2$s),card:%3$d",
-                            a.aggregateOp(), a.aggregateFieldName(), a.getEstimatedCardinality());
+                if (gfields.length == 0) {
+                    thisNode.text = String.format("%1$s,card:%2$d",
+                            aggs, a.getEstimatedCardinality());
                     alignTxt = td.getFieldName(0);
                 } else {
-                    thisNode.text = String.format("%1$s(%2$s), %3$s(%4$s),card:%5$d",
-                            GROUPBY, a.groupFieldName(), a.aggregateOp(),
-                            a.aggregateFieldName(), a.getEstimatedCardinality());
+                    StringBuilder groups = new StringBuilder();
+                    for (int i = 0; i < gfields.length; i++) {
+                        if (i > 0)
+                            groups.append(", ");
+                        groups.append(td.getFieldName(i));
+                    }
+                    thisNode.text = String.format("%1$s(%2$s), %3$s,card:%4$d",
+                            GROUPBY, groups, aggs, a.getEstimatedCardinality());
                     alignTxt = GROUPBY;
                 }
                 if (alignTxt.length() / 2 > parentUpperBarStartShift)
@@ -202,6 +254,8 @@ public class QueryPlanVisualizer {
                         .getTupleDesc().getFieldName(p.getField())
                         + p.getOp()
                         + p.getOperand(), f.getEstimatedCardinality());
+                if (children[0] instanceof SeqScan)
+                    thisNode.text += zoneMapSkips((SeqScan) children[0], p);
                 int upBarShift = parentUpperBarStartShift;
                 if (SELECT.length() / 2 > parentUpperBarStartShift)
                     upBarShift = SELECT.length() / 2;
@@ -216,13 +270,23 @@ public class QueryPlanVisualizer {
                                 - currentStartPosition);
                 thisNode.leftChild = child;
                 thisNode.height = currentDepth;
-            } else if (plan instanceof OrderBy) {
-                OrderBy o = (OrderBy) plan;
+            } else if (plan instanceof OrderBy || plan instanceof TopN) {
+                boolean topN = plan instanceof TopN;
+                int[] fields = topN ? ((TopN) plan).getOrderByFields() : ((OrderBy) plan).getOrderByFields();
+                boolean[] asc = topN ? ((TopN) plan).getAscending() : ((OrderBy) plan).getAscending();
+                StringBuilder keys = new StringBuilder();
+                for (int i = 0; i < fields.length; i++) {
+                    if (i > 0)
+                        keys.append(",");
+                    keys.append(children[0].getTupleDesc().getFieldName(fields[i]));
+                    if (!asc[i])
+                        keys.append(" desc");
+                }
+                if (topN)
+                    keys.append(" limit ").append(((TopN) plan).getLimit());
                 thisNode.text = String.format(
                         "%1$s(%2$s),card:%3$d",
-                        ORDERBY,
-                        children[0].getTupleDesc().getFieldName(
-                                o.getOrderByField()), o.getEstimatedCardinality());
+                        ORDERBY, keys, plan.getEstimatedCardinality());
                 int upBarShift = parentUpperBarStartShift;
                 if (ORDERBY.length() / 2 > parentUpperBarStartShift)
                     upBarShift = ORDERBY.length() / 2;
@@ -9,8 +9,13 @@ import simpledb.transaction.TransactionId;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -20,6 +25,11 @@ import java.util.concurrent.ConcurrentMap;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * The page table is partitioned into shards, each guarded by its own lock,
+ * so threads working on different pages do not contend with each other. A
+ * miss is loaded from disk exactly once: concurrent requests for a page that
+ * is being read wait for that read instead of issuing their own.
  *
  * @Threadsafe, all fields are final
  */
@@ -38,9 +48,72 @@ public class BufferPool {
      */
     public static final int DEFAULT_PAGES = 50;
 
+    /**
+     * Replacement policy used when none is given to the constructor. 2Q keeps
+     * pages that are read only once (e.g. by a sequential scan) from pushing
+     * the working set out of the pool.
+     */
+    public static final IntFunction<ReplacementPolicy> DEFAULT_POLICY = TwoQueueReplacementPolicy::new;
+
+    /**
+     * Default number of page table shards; must be a power of two.
+     */
+    public static final int DEFAULT_SHARDS = 16;
+
     private int numPages = DEFAULT_PAGES;
 
-    private HashMap<PageId, Page> simpleCache;
+    /**
+     * One partition of the page table. A page id always maps to the same
+     * shard; every access to the maps of a shard holds its lock.
+     */
+    private static class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        /**
+         * 该分片中缓存的页
+         */
+        private final HashMap<PageId, Page> pages = new HashMap<>();
+        /**
+         * 正在从磁盘读取的页，其他请求同一页的线程等待该读取完成
+         */
+        private final HashMap<PageId, CompletableFuture<Page>> loading = new HashMap<>();
+    }
+
+    /**
+     * 缓存的页，按PageId的哈希值分布到各个分片中，最多numPages个
+     */
+    private final Shard[] shards;
+
+    /**
+     * 缓冲池中已占用的frame数，包括已经为正在读入的页预留的frame
+     */
+    private final AtomicInteger numResident = new AtomicInteger();
+
+    /**
+     * Serializes frame reservation, so that concurrent misses on a full pool
+     * each evict their own victim.
+     */
+    private final Object evictionLock = new Object();
+
+    /**
+     * 决定缓冲池满时换出哪一页
+     * <p>
+     * Lock ordering: the policy may take a shard lock (through the
+     * evictable predicate) while holding its own, so the policy must never
+     * be called while a shard lock is held.
+     */
+    private final ReplacementPolicy policy;
+
+    /**
+     * 顺序扫描的异步预读；与统计一样在第一次使用时创建，构造函数不把this交给它们
+     */
+    private volatile Prefetcher prefetcher;
+
+    /**
+     * 命中、未命中、换出、写回次数及读写延迟，按表统计
+     */
+    private volatile BufferPoolStats stats;
+
+    private final Object lazyInitLock = new Object();
 
     /**
      * Creates a BufferPool that caches up to numPages pages.
@@ -48,9 +121,106 @@ public class BufferPool {
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, DEFAULT_POLICY);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and evicts pages
+     * according to the given replacement policy.
+     *
+     * @param numPages      maximum number of pages in this buffer pool.
+     * @param policyFactory creates the replacement policy, given numPages
+     *                      (e.g. {@code LRUReplacementPolicy::new})
+     */
+    public BufferPool(int numPages, IntFunction<ReplacementPolicy> policyFactory) {
+        this(numPages, policyFactory, DEFAULT_SHARDS);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages in a page table
+     * partitioned into numShards independently locked shards.
+     *
+     * @param numPages      maximum number of pages in this buffer pool.
+     * @param policyFactory creates the replacement policy, given numPages
+     * @param numShards     number of page table shards, a power of two
+     */
+    public BufferPool(int numPages, IntFunction<ReplacementPolicy> policyFactory, int numShards) {
         // TODO: some code goes here
+        if (numShards <= 0 || (numShards & (numShards - 1)) != 0)
+            throw new IllegalArgumentException("number of shards must be a power of two");
         this.numPages = numPages;
-        simpleCache = new HashMap<>();
+        this.policy = policyFactory.apply(numPages);
+        this.shards = new Shard[numShards];
+        for (int i = 0; i < numShards; i++)
+            shards[i] = new Shard();
+    }
+
+    /**
+     * @return the prefetcher that reads pages into this pool ahead of
+     *         sequential scans
+     */
+    public Prefetcher getPrefetcher() {
+        Prefetcher p = prefetcher;
+        if (p == null) {
+            synchronized (lazyInitLock) {
+                p = prefetcher;
+                if (p == null)
+                    prefetcher = p = new Prefetcher(this, numPages, Prefetcher.DEFAULT_THREADS);
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Stop the prefetcher of this pool, if it was ever started. Used when the
+     * pool is replaced.
+     */
+    public void shutdownPrefetcher() {
+        Prefetcher p = prefetcher;
+        if (p != null)
+            p.shutdown();
+    }
+
+    /**
+     * @return the hit, miss, eviction, flush and I/O counters of this pool
+     */
+    public BufferPoolStats getStats() {
+        BufferPoolStats s = stats;
+        if (s == null) {
+            synchronized (lazyInitLock) {
+                s = stats;
+                if (s == null)
+                    stats = s = new BufferPoolStats(this);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * @return the number of pages this pool can hold
+     */
+    int getNumPages() {
+        return numPages;
+    }
+
+    /**
+     * @return the number of frames in use, including frames reserved for
+     *         pages being read
+     */
+    int getNumResident() {
+        return numResident.get();
+    }
+
+    /**
+     * @return the number of resident pages that are dirty
+     */
+    int getNumDirty() {
+        int dirty = 0;
+        for (Page page : residentPages()) {
+            if (page.isDirty() != null)
+                dirty++;
+        }
+        return dirty;
     }
 
     public static int getPageSize() {
@@ -85,12 +255,174 @@ public class BufferPool {
     public Page getPage(TransactionId tid, PageId pid, Permissions perm)
             throws TransactionAbortedException, DbException {
         // TODO: some code goes here
-        DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
-        if (!simpleCache.containsKey(pid)) {
-            Page page = file.readPage(pid); // 用dbFile实现的readPage方法读取不同类型的Page
-            simpleCache.put(pid, page);
+        Shard shard = shardFor(pid);
+        Page page;
+        CompletableFuture<Page> pending;
+        boolean loader = false;
+        shard.lock.lock();
+        try {
+            page = shard.pages.get(pid);
+            pending = shard.loading.get(pid);
+            if (page == null && pending == null) { // 由当前线程负责读入该页
+                pending = new CompletableFuture<>();
+                shard.loading.put(pid, pending);
+                loader = true;
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+
+        if (page != null) {
+            getStats().recordHit(pid);
+            policy.pageAccessed(pid);
+            getPrefetcher().pageRequested(pid);
+            return page;
+        }
+        getStats().recordMiss(pid);
+        if (!loader)
+            return awaitLoad(tid, pid, perm, pending);
+        return loadPage(shard, pid, pending, false);
+    }
+
+    /**
+     * Read pid into the pool on behalf of the prefetcher, unless it is
+     * already resident or being read. Failures are ignored: a prefetch is
+     * only a hint, and the page will be read on demand if it is needed.
+     */
+    void prefetchPage(PageId pid) {
+        Shard shard = shardFor(pid);
+        CompletableFuture<Page> pending;
+        shard.lock.lock();
+        try {
+            if (shard.pages.containsKey(pid) || shard.loading.containsKey(pid))
+                return;
+            pending = new CompletableFuture<>();
+            shard.loading.put(pid, pending);
+        } finally {
+            shard.lock.unlock();
+        }
+        try {
+            loadPage(shard, pid, pending, true);
+        } catch (DbException | RuntimeException e) {
+            // dropped: waiters were told to retry
+        }
+    }
+
+    /**
+     * Read a missing page from disk, reserve a frame for it and install it
+     * in its shard, then wake up the threads waiting for it.
+     *
+     * @param prefetch true if the read was issued by the prefetcher; if it
+     *                 fails, waiting threads retry the read themselves
+     */
+    private Page loadPage(Shard shard, PageId pid, CompletableFuture<Page> pending, boolean prefetch)
+            throws DbException {
+        Page page;
+        try {
+            DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+            long start = System.nanoTime();
+            page = file.readPage(pid); // 用dbFile实现的readPage方法读取不同类型的Page
+            getStats().recordRead(pid, System.nanoTime() - start);
+            // 缓冲池已满，先换出一页
+            reserveFrame();
+        } catch (DbException | RuntimeException e) {
+            shard.lock.lock();
+            try {
+                shard.loading.remove(pid);
+            } finally {
+                shard.lock.unlock();
+            }
+            if (prefetch)
+                pending.complete(null);
+            else
+                pending.completeExceptionally(e);
+            throw e;
+        }
+        shard.lock.lock();
+        try {
+            shard.pages.put(pid, page);
+            shard.loading.remove(pid);
+            if (prefetch)
+                getPrefetcher().pageLoaded(pid);
+        } finally {
+            shard.lock.unlock();
+        }
+        policy.pageAdmitted(pid);
+        pending.complete(page);
+        return page;
+    }
+
+    /**
+     * Wait for another thread to finish reading pid, and return its page.
+     * If that thread was a prefetch that gave up, read the page again.
+     */
+    private Page awaitLoad(TransactionId tid, PageId pid, Permissions perm, CompletableFuture<Page> pending)
+            throws DbException, TransactionAbortedException {
+        try {
+            Page page = pending.get();
+            if (page == null)
+                return getPage(tid, pid, perm);
+            policy.pageAccessed(pid);
+            getPrefetcher().pageRequested(pid);
+            return page;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DbException("interrupted while waiting for page " + pid);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DbException)
+                throw (DbException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new DbException("failed to read page " + pid + ": " + cause);
+        }
+    }
+
+    private Shard shardFor(PageId pid) {
+        int h = pid.hashCode();
+        h ^= (h >>> 16);
+        return shards[h & (shards.length - 1)];
+    }
+
+    /**
+     * @return the page cached for pid, or null if it is not resident
+     */
+    private Page residentPage(PageId pid) {
+        Shard shard = shardFor(pid);
+        shard.lock.lock();
+        try {
+            return shard.pages.get(pid);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * @return a snapshot of the pages currently in the buffer pool
+     */
+    private List<Page> residentPages() {
+        List<Page> result = new ArrayList<>();
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                result.addAll(shard.pages.values());
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Take a free frame for a page about to be installed, evicting pages
+     * until the pool has room.
+     */
+    private void reserveFrame() throws DbException {
+        synchronized (evictionLock) {
+            while (numResident.get() >= numPages)
+                evictPage();
+            numResident.incrementAndGet();
         }
-        return simpleCache.get(pid);
     }
 
     /**
@@ -115,6 +447,7 @@ public class BufferPool {
     public void transactionComplete(TransactionId tid) {
         // TODO: some code goes here
         // not necessary for lab1|lab2
+        transactionComplete(tid, true);
     }
 
     /**
@@ -136,6 +469,39 @@ public class BufferPool {
     public void transactionComplete(TransactionId tid, boolean commit) {
         // TODO: some code goes here
         // not necessary for lab1|lab2
+        List<Page> dirtied = new ArrayList<>();
+        for (Page page : residentPages()) {
+            if (tid.equals(page.isDirty()))
+                dirtied.add(page);
+        }
+        if (commit) {
+            try {
+                for (Page page : dirtied) {
+                    flushPage(page.getId());
+                    page.setBeforeImage(); // 提交后的内容成为新的before image
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
+        // NO STEAL: the pages on disk do not contain the changes of tid, so
+        // rolling back is putting the before images back in the pool
+        for (Page page : dirtied) {
+            PageId pid = page.getId();
+            Page restored = page.getBeforeImage();
+            Shard shard = shardFor(pid);
+            shard.lock.lock();
+            try {
+                if (shard.pages.get(pid) == page)
+                    shard.pages.put(pid, restored);
+            } finally {
+                shard.lock.unlock();
+            }
+            DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+            if (file instanceof HeapFile && restored instanceof HeapPage)
+                ((HeapFile) file).pageRestored((HeapPage) restored);
+        }
     }
 
     /**
@@ -157,6 +523,11 @@ public class BufferPool {
             throws DbException, IOException, TransactionAbortedException {
         // TODO: some code goes here
         // not necessary for lab1
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        for (Page page : file.insertTuple(tid, t)) {
+            page.markDirty(true, tid);
+            installPage(page);
+        }
     }
 
     /**
@@ -176,6 +547,44 @@ public class BufferPool {
             throws DbException, IOException, TransactionAbortedException {
         // TODO: some code goes here
         // not necessary for lab1
+        if (t.getRecordId() == null)
+            throw new DbException("tuple has no record id");
+        DbFile file = Database.getCatalog().getDatabaseFile(t.getRecordId().getPageId().getTableId());
+        for (Page page : file.deleteTuple(tid, t)) {
+            page.markDirty(true, tid);
+            installPage(page);
+        }
+    }
+
+    /**
+     * Make page the cached version of its page id. Access methods usually
+     * modify pages they got from getPage, which are already cached; pages
+     * they created themselves take a frame.
+     */
+    private void installPage(Page page) throws DbException {
+        PageId pid = page.getId();
+        Shard shard = shardFor(pid);
+        shard.lock.lock();
+        try {
+            if (shard.pages.containsKey(pid)) {
+                shard.pages.put(pid, page);
+                return;
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+        reserveFrame();
+        boolean admitted;
+        shard.lock.lock();
+        try {
+            admitted = shard.pages.put(pid, page) == null;
+        } finally {
+            shard.lock.unlock();
+        }
+        if (admitted)
+            policy.pageAdmitted(pid);
+        else
+            numResident.decrementAndGet(); // 另一个线程已经读入了该页
     }
 
     /**
@@ -183,10 +592,11 @@ public class BufferPool {
      * NB: Be careful using this routine -- it writes dirty data to disk so will
      * break simpledb if running in NO STEAL mode.
      */
-    public synchronized void flushAllPages() throws IOException {
+    public void flushAllPages() throws IOException {
         // TODO: some code goes here
         // not necessary for lab1
-
+        for (Page page : residentPages())
+            flushPage(page.getId());
     }
 
     /**
@@ -198,9 +608,21 @@ public class BufferPool {
      * Also used by B+ tree files to ensure that deleted pages
      * are removed from the cache so they can be reused safely
      */
-    public synchronized void removePage(PageId pid) {
+    public void removePage(PageId pid) {
         // TODO: some code goes here
         // not necessary for lab1
+        Shard shard = shardFor(pid);
+        boolean removed;
+        shard.lock.lock();
+        try {
+            removed = shard.pages.remove(pid) != null;
+        } finally {
+            shard.lock.unlock();
+        }
+        if (removed) {
+            numResident.decrementAndGet();
+            policy.pageRemoved(pid);
+        }
     }
 
     /**
@@ -208,25 +630,87 @@ public class BufferPool {
      *
      * @param pid an ID indicating the page to flush
      */
-    private synchronized void flushPage(PageId pid) throws IOException {
+    private void flushPage(PageId pid) throws IOException {
         // TODO: some code goes here
         // not necessary for lab1
+        Shard shard = shardFor(pid);
+        shard.lock.lock();
+        try {
+            Page page = shard.pages.get(pid);
+            if (page == null)
+                return;
+            TransactionId dirtier = page.isDirty();
+            if (dirtier == null) // 干净页不需要写回
+                return;
+            Database.getLogFile().logWrite(dirtier, page.getBeforeImage(), page);
+            Database.getLogFile().force();
+            long start = System.nanoTime();
+            Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+            getStats().recordWrite(pid, System.nanoTime() - start);
+            getStats().recordFlush(pid);
+            page.markDirty(false, null);
+        } finally {
+            shard.lock.unlock();
+        }
     }
 
     /**
      * Write all pages of the specified transaction to disk.
      */
-    public synchronized void flushPages(TransactionId tid) throws IOException {
+    public void flushPages(TransactionId tid) throws IOException {
         // TODO: some code goes here
         // not necessary for lab1|lab2
+        for (Page page : residentPages()) {
+            if (tid.equals(page.isDirty()))
+                flushPage(page.getId());
+        }
     }
 
     /**
      * Discards a page from the buffer pool.
      * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * <p>
+     * The victim is chosen by the replacement policy among the clean pages
+     * only: under NO STEAL a page dirtied by a running transaction must stay
+     * in memory until that transaction completes.
+     * <p>
+     * Callers must hold evictionLock.
+     *
+     * @throws DbException if every page in the buffer pool is dirty
      */
-    private synchronized void evictPage() throws DbException {
+    private void evictPage() throws DbException {
         // TODO: some code goes here
         // not necessary for lab1
+        while (true) {
+            PageId victim = policy.chooseVictim(pid -> {
+                Page page = residentPage(pid);
+                return page == null || page.isDirty() == null;
+            });
+            if (victim == null)
+                throw new DbException("all pages in the buffer pool are dirty, cannot evict under NO STEAL");
+
+            // the victim may have been dirtied after the policy picked it
+            Shard shard = shardFor(victim);
+            boolean dirtied = false;
+            shard.lock.lock();
+            try {
+                Page page = shard.pages.get(victim);
+                if (page == null) // removed concurrently, its frame is already free
+                    return;
+                if (page.isDirty() != null) {
+                    dirtied = true;
+                } else {
+                    shard.pages.remove(victim);
+                    numResident.decrementAndGet();
+                    getPrefetcher().pageEvicted(victim);
+                    getStats().recordEviction(victim);
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+            if (!dirtied)
+                return;
+            policy.victimRejected(victim);
+        }
     }
 }
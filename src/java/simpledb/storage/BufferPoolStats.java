@@ -0,0 +1,463 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BufferPoolStats counts what a BufferPool does, per table: page requests
+ * that hit or missed, evictions, flushes, and the pages read and written
+ * with histograms of their latency.
+ * <p>
+ * Counters are LongAdders, which stripe their updates over cells, and the
+ * per-table counters are found in a copy-on-write hash table without locking
+ * or boxing the table id, so counting adds no contention to getPage. Totals
+ * are summed when they are read and are not an atomic snapshot.
+ * <p>
+ * The stats of the current pool are exposed through JMX (see
+ * {@link #register}) and printed by the parser's \stats command.
+ *
+ * @Threadsafe
+ */
+public class BufferPoolStats implements BufferPoolStatsMXBean {
+
+    /**
+     * Name the stats of the current buffer pool are registered under.
+     */
+    public static final String OBJECT_NAME = "simpledb:type=BufferPoolStats";
+
+    /**
+     * A histogram of latencies in power-of-two buckets of microseconds:
+     * bucket 0 counts latencies under 1 us, bucket b those in
+     * [2^(b-1), 2^b) us.
+     */
+    public static class LatencyHistogram {
+        private static final int BUCKETS = 32;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder totalNanos = new LongAdder();
+
+        LatencyHistogram() {
+            for (int i = 0; i < BUCKETS; i++)
+                buckets[i] = new LongAdder();
+        }
+
+        void record(long nanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets[bucket].increment();
+            totalNanos.add(nanos);
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (LongAdder bucket : buckets)
+                count += bucket.sum();
+            return count;
+        }
+
+        /**
+         * @return the mean latency in microseconds, 0 if nothing was recorded
+         */
+        public double getMeanMicros() {
+            long count = getCount();
+            return count == 0 ? 0 : totalNanos.sum() / 1000.0 / count;
+        }
+
+        /**
+         * @param p a fraction in (0, 1], e.g. 0.99
+         * @return an upper bound of the p-quantile of the latencies, in
+         *         microseconds; 0 if nothing was recorded
+         */
+        public long getPercentileMicros(double p) {
+            long[] counts = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++)
+                count += counts[i] = buckets[i].sum();
+            long rank = (long) Math.ceil(p * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0)
+                    return 1L << i;
+            }
+            return 0;
+        }
+
+        void reset() {
+            for (LongAdder bucket : buckets)
+                bucket.reset();
+            totalNanos.reset();
+        }
+    }
+
+    /**
+     * The counters of one table.
+     */
+    private static class TableCounters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+        final LongAdder flushes = new LongAdder();
+        final LatencyHistogram reads = new LatencyHistogram();
+        final LatencyHistogram writes = new LatencyHistogram();
+
+        void reset() {
+            hits.reset();
+            misses.reset();
+            evictions.reset();
+            flushes.reset();
+            reads.reset();
+            writes.reset();
+        }
+    }
+
+    /**
+     * The counters of one table at the time they were read.
+     */
+    public static class TableSnapshot {
+        private final int tableId;
+        private final String tableName;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long flushes;
+        private final long pagesRead;
+        private final long pagesWritten;
+        private final double readMeanMicros;
+        private final long readP99Micros;
+        private final double writeMeanMicros;
+        private final long writeP99Micros;
+
+        @ConstructorProperties({"tableId", "tableName", "hits", "misses", "evictions", "flushes", "pagesRead",
+                "pagesWritten", "readMeanMicros", "readP99Micros", "writeMeanMicros", "writeP99Micros"})
+        public TableSnapshot(int tableId, String tableName, long hits, long misses, long evictions, long flushes,
+                             long pagesRead, long pagesWritten, double readMeanMicros, long readP99Micros,
+                             double writeMeanMicros, long writeP99Micros) {
+            this.tableId = tableId;
+            this.tableName = tableName;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.flushes = flushes;
+            this.pagesRead = pagesRead;
+            this.pagesWritten = pagesWritten;
+            this.readMeanMicros = readMeanMicros;
+            this.readP99Micros = readP99Micros;
+            this.writeMeanMicros = writeMeanMicros;
+            this.writeP99Micros = writeP99Micros;
+        }
+
+        public int getTableId() {
+            return tableId;
+        }
+
+        /**
+         * @return the name of the table in the catalog, or its id if the
+         *         catalog does not know it
+         */
+        public String getTableName() {
+            return tableName;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getFlushes() {
+            return flushes;
+        }
+
+        public long getPagesRead() {
+            return pagesRead;
+        }
+
+        public long getPagesWritten() {
+            return pagesWritten;
+        }
+
+        public double getReadMeanMicros() {
+            return readMeanMicros;
+        }
+
+        public long getReadP99Micros() {
+            return readP99Micros;
+        }
+
+        public double getWriteMeanMicros() {
+            return writeMeanMicros;
+        }
+
+        public long getWriteP99Micros() {
+            return writeP99Micros;
+        }
+    }
+
+    /**
+     * An open addressing table from table id to counters. It is never
+     * modified once published; adding a table publishes a larger copy.
+     */
+    private static class CounterTable {
+        final int[] ids;
+        final TableCounters[] counters;
+        final int size;
+
+        CounterTable(int capacity, int size) {
+            this.ids = new int[capacity];
+            this.counters = new TableCounters[capacity];
+            this.size = size;
+        }
+
+        TableCounters get(int tableId) {
+            int mask = ids.length - 1;
+            for (int i = mix(tableId) & mask; counters[i] != null; i = (i + 1) & mask) {
+                if (ids[i] == tableId)
+                    return counters[i];
+            }
+            return null;
+        }
+
+        void put(int tableId, TableCounters c) {
+            int mask = ids.length - 1;
+            int i = mix(tableId) & mask;
+            while (counters[i] != null)
+                i = (i + 1) & mask;
+            ids[i] = tableId;
+            counters[i] = c;
+        }
+
+        private static int mix(int h) {
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    private final BufferPool pool;
+    private volatile CounterTable tables = new CounterTable(16, 0);
+
+    BufferPoolStats(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    private TableCounters table(PageId pid) {
+        int tableId = pid.getTableId();
+        TableCounters counters = tables.get(tableId);
+        return counters != null ? counters : addTable(tableId);
+    }
+
+    private synchronized TableCounters addTable(int tableId) {
+        CounterTable old = tables;
+        TableCounters counters = old.get(tableId);
+        if (counters != null)
+            return counters;
+        int capacity = old.ids.length;
+        if ((old.size + 1) * 2 > capacity) // 装载因子不超过1/2
+            capacity *= 2;
+        CounterTable grown = new CounterTable(capacity, old.size + 1);
+        for (int i = 0; i < old.ids.length; i++) {
+            if (old.counters[i] != null)
+                grown.put(old.ids[i], old.counters[i]);
+        }
+        counters = new TableCounters();
+        grown.put(tableId, counters);
+        tables = grown;
+        return counters;
+    }
+
+    /**
+     * @return the counters of a table, or null if the pool has not served it
+     */
+    private TableCounters existing(int tableId) {
+        return tables.get(tableId);
+    }
+
+    /**
+     * @return the counters of every table the pool has served
+     */
+    private List<TableCounters> allTables() {
+        CounterTable t = tables;
+        List<TableCounters> result = new ArrayList<>(t.size);
+        for (TableCounters c : t.counters) {
+            if (c != null)
+                result.add(c);
+        }
+        return result;
+    }
+
+    void recordHit(PageId pid) {
+        table(pid).hits.increment();
+    }
+
+    void recordMiss(PageId pid) {
+        table(pid).misses.increment();
+    }
+
+    void recordRead(PageId pid, long nanos) {
+        table(pid).reads.record(nanos);
+    }
+
+    void recordWrite(PageId pid, long nanos) {
+        table(pid).writes.record(nanos);
+    }
+
+    void recordEviction(PageId pid) {
+        table(pid).evictions.increment();
+    }
+
+    void recordFlush(PageId pid) {
+        table(pid).flushes.increment();
+    }
+
+    /**
+     * @return the read latency histogram of a table
+     */
+    public LatencyHistogram getReadLatency(int tableId) {
+        TableCounters counters = existing(tableId);
+        return counters == null ? new LatencyHistogram() : counters.reads;
+    }
+
+    /**
+     * @return the write latency histogram of a table
+     */
+    public LatencyHistogram getWriteLatency(int tableId) {
+        TableCounters counters = existing(tableId);
+        return counters == null ? new LatencyHistogram() : counters.writes;
+    }
+
+    public long getHits() {
+        long sum = 0;
+        for (TableCounters counters : allTables())
+            sum += counters.hits.sum();
+        return sum;
+    }
+
+    public long getMisses() {
+        long sum = 0;
+        for (TableCounters counters : allTables())
+            sum += counters.misses.sum();
+        return sum;
+    }
+
+    public double getHitRatio() {
+        long hits = getHits();
+        long requests = hits + getMisses();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    public long getEvictions() {
+        long sum = 0;
+        for (TableCounters counters : allTables())
+            sum += counters.evictions.sum();
+        return sum;
+    }
+
+    public long getFlushes() {
+        long sum = 0;
+        for (TableCounters counters : allTables())
+            sum += counters.flushes.sum();
+        return sum;
+    }
+
+    public long getPagesRead() {
+        long sum = 0;
+        for (TableCounters counters : allTables())
+            sum += counters.reads.getCount();
+        return sum;
+    }
+
+    public long getPagesWritten() {
+        long sum = 0;
+        for (TableCounters counters : allTables())
+            sum += counters.writes.getCount();
+        return sum;
+    }
+
+    public int getCapacity() {
+        return pool.getNumPages();
+    }
+
+    public int getResidentPages() {
+        return pool.getNumResident();
+    }
+
+    public int getDirtyPages() {
+        return pool.getNumDirty();
+    }
+
+    public List<TableSnapshot> getTables() {
+        List<TableSnapshot> result = new ArrayList<>();
+        CounterTable t = tables;
+        for (int i = 0; i < t.ids.length; i++) {
+            TableCounters c = t.counters[i];
+            if (c == null)
+                continue;
+            int tableId = t.ids[i];
+            String name = Database.getCatalog().getTableName(tableId);
+            result.add(new TableSnapshot(tableId, name != null ? name : String.valueOf(tableId),
+                    c.hits.sum(), c.misses.sum(), c.evictions.sum(), c.flushes.sum(),
+                    c.reads.getCount(), c.writes.getCount(),
+                    c.reads.getMeanMicros(), c.reads.getPercentileMicros(0.99),
+                    c.writes.getMeanMicros(), c.writes.getPercentileMicros(0.99)));
+        }
+        result.sort((a, b) -> a.getTableName().compareTo(b.getTableName()));
+        return result;
+    }
+
+    public void reset() {
+        for (TableCounters counters : allTables())
+            counters.reset();
+    }
+
+    /**
+     * Register these stats with the platform MBean server as
+     * {@value #OBJECT_NAME}, replacing the stats of a previous pool.
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        synchronized (BufferPoolStats.class) {
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(this, name);
+        }
+    }
+
+    /**
+     * @return a report of the pool and of each table, one table per line
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("pool: %d/%d pages resident, %d dirty; hits=%d misses=%d hit ratio=%.3f "
+                        + "evictions=%d flushes=%d%n", getResidentPages(), getCapacity(), getDirtyPages(),
+                getHits(), getMisses(), getHitRatio(), getEvictions(), getFlushes()));
+        sb.append(pool.getPrefetcher()).append(String.format("%n"));
+        sb.append(String.format("%-20s %10s %10s %9s %9s %10s %10s %12s %12s%n", "table", "hits", "misses",
+                "evictions", "flushes", "reads", "writes", "read us", "write us"));
+        for (TableSnapshot t : getTables()) {
+            sb.append(String.format("%-20s %10d %10d %9d %9d %10d %10d %12s %12s%n", t.getTableName(),
+                    t.getHits(), t.getMisses(), t.getEvictions(), t.getFlushes(),
+                    t.getPagesRead(), t.getPagesWritten(),
+                    String.format("%.1f/%d", t.getReadMeanMicros(), t.getReadP99Micros()),
+                    String.format("%.1f/%d", t.getWriteMeanMicros(), t.getWriteP99Micros())));
+        }
+        sb.append(String.format("(reads and writes in pages of %d bytes; latencies as mean/p99, "
+                + "the p99 rounded up to a power of two)", BufferPool.getPageSize()));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package simpledb.storage;
+
+import java.util.List;
+
+/**
+ * The management interface of {@link BufferPoolStats}, registered with the
+ * platform MBean server as {@value BufferPoolStats#OBJECT_NAME}.
+ */
+public interface BufferPoolStatsMXBean {
+
+    /**
+     * @return the number of getPage calls that found the page resident
+     */
+    long getHits();
+
+    /**
+     * @return the number of getPage calls that had to wait for a read
+     */
+    long getMisses();
+
+    /**
+     * @return hits / (hits + misses), or 0 before the first request
+     */
+    double getHitRatio();
+
+    long getEvictions();
+
+    long getFlushes();
+
+    long getPagesRead();
+
+    long getPagesWritten();
+
+    /**
+     * @return the number of pages the pool can hold
+     */
+    int getCapacity();
+
+    /**
+     * @return the number of pages currently in the pool
+     */
+    int getResidentPages();
+
+    /**
+     * @return the number of resident pages dirtied by running transactions
+     */
+    int getDirtyPages();
+
+    /**
+     * @return the counters of each table the pool has served
+     */
+    List<BufferPoolStats.TableSnapshot> getTables();
+
+    /**
+     * Set all counters and histograms back to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,133 @@
+package simpledb.storage;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * CLOCK (second chance) replacement. Resident pages sit in a circular array
+ * of frames, each with a reference bit that is set on every access. The
+ * clock hand sweeps the frames, clearing set bits, and evicts the first
+ * evictable page whose bit is already clear.
+ * <p>
+ * Recording a hit only sets a reference bit and takes no lock, which makes
+ * CLOCK the cheapest policy on a hit-heavy, multi-threaded workload.
+ */
+public class ClockReplacementPolicy implements ReplacementPolicy {
+
+    private PageId[] frames;
+    /**
+     * Written without holding the lock on a hit. The race is benign: the bit
+     * is only a hint, and losing one set merely costs a page its second chance.
+     */
+    private volatile boolean[] referenced;
+    /**
+     * 每个页所在的frame下标
+     */
+    private final Map<PageId, Integer> frameOf;
+    private int hand;
+    /**
+     * 上一个被选中的页及其所在的frame
+     */
+    private PageId lastVictim;
+    private int lastVictimSlot;
+
+    /**
+     * @param numPages the number of frames in the buffer pool
+     */
+    public ClockReplacementPolicy(int numPages) {
+        int n = Math.max(1, numPages);
+        this.frames = new PageId[n];
+        this.referenced = new boolean[n];
+        this.frameOf = new ConcurrentHashMap<>();
+        this.hand = 0;
+    }
+
+    @Override
+    public synchronized void pageAdmitted(PageId pid) {
+        if (frameOf.containsKey(pid)) {
+            referenced[frameOf.get(pid)] = true;
+            return;
+        }
+        int slot = freeFrame();
+        frames[slot] = pid;
+        referenced[slot] = true;
+        frameOf.put(pid, slot);
+    }
+
+    @Override
+    public void pageAccessed(PageId pid) {
+        Integer slot = frameOf.get(pid);
+        boolean[] bits = referenced;
+        if (slot != null && slot < bits.length)
+            bits[slot] = true;
+    }
+
+    @Override
+    public synchronized void pageRemoved(PageId pid) {
+        Integer slot = frameOf.remove(pid);
+        if (slot != null) {
+            frames[slot] = null;
+            referenced[slot] = false;
+        }
+    }
+
+    @Override
+    public synchronized PageId chooseVictim(Predicate<PageId> evictable) {
+        // two full sweeps: the first may only clear reference bits
+        for (int step = 0; step < 2 * frames.length; step++) {
+            int slot = hand;
+            hand = (hand + 1) % frames.length;
+            PageId pid = frames[slot];
+            if (pid == null)
+                continue;
+            if (referenced[slot]) {
+                referenced[slot] = false;
+                continue;
+            }
+            if (evictable.test(pid)) {
+                frames[slot] = null;
+                frameOf.remove(pid);
+                lastVictim = pid;
+                lastVictimSlot = slot;
+                return pid;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void victimRejected(PageId pid) {
+        if (frameOf.containsKey(pid))
+            return;
+        // 放回原来的frame并让指针回到它，引用位保持清零
+        int slot;
+        if (pid.equals(lastVictim) && frames[lastVictimSlot] == null) {
+            slot = lastVictimSlot;
+            hand = slot;
+        } else {
+            slot = freeFrame();
+        }
+        frames[slot] = pid;
+        referenced[slot] = false;
+        frameOf.put(pid, slot);
+    }
+
+    /**
+     * @return the index of an empty frame, growing the clock if every frame
+     *         is taken (the pool never admits more than numPages pages, so
+     *         this only happens if the pool is misused)
+     */
+    private int freeFrame() {
+        for (int i = 0; i < frames.length; i++) {
+            int slot = (hand + i) % frames.length;
+            if (frames[slot] == null)
+                return slot;
+        }
+        int old = frames.length;
+        frames = Arrays.copyOf(frames, old * 2);
+        referenced = Arrays.copyOf(referenced, old * 2);
+        return old;
+    }
+}
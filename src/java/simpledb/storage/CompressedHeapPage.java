@@ -0,0 +1,664 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+
+import java.util.*;
+
+/**
+ * CompressedHeapPage is a page of a HeapFile in the read-optimized compressed
+ * format. The values of each field are stored together in a column chunk,
+ * compressed with whichever of these encodings makes the chunk smallest:
+ * <ul>
+ * <li>RLE, for int columns: runs of equal values, each stored as the value
+ * and the length of the run;</li>
+ * <li>DICTIONARY: the distinct values of the chunk, followed by the index of
+ * each row's value in that dictionary, bit-packed;</li>
+ * <li>FRAME_OF_REFERENCE, for int columns: the smallest value of the chunk,
+ * followed by each row's difference from it, bit-packed;</li>
+ * <li>PLAIN, for string columns: each string as its length and bytes.</li>
+ * </ul>
+ * The layout of a page, where every count and offset is a big-endian
+ * unsigned short:
+ * <pre>
+ * 0         number of rows n
+ * 2         offset of the column chunk of each field
+ * 2 + 2k    deleted rows, a bitmap of ceil(n / 8) bytes
+ *           the column chunks; each starts with a byte naming its encoding
+ *             RLE                 runs, then (int value, short length) per run
+ *             DICTIONARY          entries, the entries, bits per code, codes
+ *             FRAME_OF_REFERENCE  int base, bits per value, values
+ *             PLAIN               n strings
+ * </pre>
+ * Bit-packed values are stored least significant bit first. A string takes
+ * two bytes for its length and one per character, truncated to the declared
+ * length of its field as in {@link SlottedHeapPage}.
+ * <p>
+ * Pages are written whole by {@link HeapFile#bulkLoad}; a page takes no
+ * inserts, and a delete only sets the row's bit in the bitmap. Predicates
+ * are evaluated on the encoded chunk: once per run or per dictionary entry,
+ * and for a frame of reference by comparing the packed differences with the
+ * operand minus the base. Only the fields a scan returns are decoded.
+ *
+ * @see HeapFile.PageFormat#COMPRESSED
+ */
+public class CompressedHeapPage extends HeapPage {
+
+    static final int RLE = 1;
+    static final int DICTIONARY = 2;
+    static final int FRAME_OF_REFERENCE = 3;
+    static final int PLAIN = 4;
+
+    /**
+     * The most rows a page holds, so that counts fit in two bytes.
+     */
+    static final int MAX_ROWS = 0xffff;
+
+    private final Type[] types;
+
+    /**
+     * 删除元组后的页数据；第一次删除前为null，此时读取data
+     */
+    private byte[] page;
+
+    /**
+     * Create a CompressedHeapPage from the bytes of a page read from disk.
+     */
+    public CompressedHeapPage(HeapPageId id, byte[] data) {
+        super(id, Database.getCatalog().getTupleDesc(id.getTableId()), data);
+        this.types = new Type[td.numFields()];
+        for (int i = 0; i < types.length; i++)
+            types[i] = td.getFieldType(i);
+    }
+
+    /**
+     * @return the number of bits needed to store every value from 0 to max
+     */
+    static int bitsFor(long max) {
+        return 64 - Long.numberOfLeadingZeros(max);
+    }
+
+    /**
+     * @return the number of bytes n values of the given width take when
+     *         bit-packed
+     */
+    static int packedSize(int n, int bits) {
+        return (int) (((long) n * bits + 7) / 8);
+    }
+
+    /**
+     * OR the low bits of v into the ith value of the bit-packed array at
+     * b[off], which must be zero there.
+     */
+    static void pack(byte[] b, int off, int i, int bits, long v) {
+        long bit = (long) i * bits;
+        int pos = off + (int) (bit >>> 3);
+        v <<= bit & 7;
+        for (int end = (int) ((bit & 7) + bits); end > 0; end -= 8, v >>>= 8)
+            b[pos++] |= (byte) v;
+    }
+
+    /**
+     * Unpack the first n values of the bit-packed array at b[off].
+     */
+    static int[] unpack(byte[] b, int off, int n, int bits) {
+        int[] values = new int[n];
+        if (bits == 0)
+            return values;
+        long mask = (1L << bits) - 1;
+        long buffer = 0; // 尚未取出的位
+        int available = 0;
+        int pos = off;
+        for (int i = 0; i < n; i++) {
+            while (available < bits) {
+                buffer |= (long) (b[pos++] & 0xff) << available;
+                available += 8;
+            }
+            values[i] = (int) (buffer & mask);
+            buffer >>>= bits;
+            available -= bits;
+        }
+        return values;
+    }
+
+    private byte[] bytes() {
+        return page != null ? page : data;
+    }
+
+    private static int deletedBitmap(TupleDesc td) {
+        return 2 + 2 * td.numFields();
+    }
+
+    @Override
+    public CompressedHeapPage getBeforeImage() {
+        byte[] oldDataRef;
+        synchronized (oldDataLock) {
+            oldDataRef = oldData;
+        }
+        return new CompressedHeapPage(pid, oldDataRef);
+    }
+
+    @Override
+    public byte[] getPageData() {
+        return Arrays.copyOf(bytes(), BufferPool.getPageSize());
+    }
+
+    /**
+     * Compressed pages take no inserts.
+     */
+    @Override
+    public int getNumUnusedSlots() {
+        return 0;
+    }
+
+    @Override
+    public boolean isSlotUsed(int i) {
+        byte[] b = bytes();
+        return i >= 0 && i < SlottedHeapPage.getShort(b, 0)
+                && (b[deletedBitmap(td) + i / 8] & (1 << (i % 8))) == 0;
+    }
+
+    /**
+     * @throws DbException always; compressed pages are only written by
+     *                     {@link HeapFile#bulkLoad}
+     */
+    @Override
+    public void insertTuple(Tuple t) throws DbException {
+        throw new DbException("page " + pid + " is compressed and takes no inserts");
+    }
+
+    /**
+     * Delete the specified tuple from the page by marking its row deleted.
+     *
+     * @throws DbException if this tuple is not on this page, or its row is
+     *                     already deleted.
+     */
+    @Override
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId()))
+            throw new DbException("tuple is not on page " + pid);
+        int row = rid.getTupleNumber();
+        if (!isSlotUsed(row))
+            throw new DbException("slot " + row + " of page " + pid + " is already empty");
+        if (page == null)
+            page = Arrays.copyOf(data, BufferPool.getPageSize()); // 去掉可能存在的校验尾
+        page[deletedBitmap(td) + row / 8] |= (byte) (1 << (row % 8));
+    }
+
+    @Override
+    public Iterator<Tuple> iterator() {
+        return iterator(null, null);
+    }
+
+    @Override
+    public Iterator<Tuple> iterator(int field, Predicate.Op op, int operand, int[] fields) {
+        return iterator(field < 0 ? null : new Predicate(field, op, new IntField(operand)), fields);
+    }
+
+    /**
+     * Returns an iterator over the rows that satisfy p, which is evaluated
+     * on the compressed column chunk of its field; p may compare a string
+     * field as well as an int field.
+     */
+    @Override
+    public Iterator<Tuple> iterator(Predicate p, int[] fields) {
+        Cursor cursor = new Cursor(p);
+        return new Iterator<Tuple>() {
+            boolean advanced;
+            boolean more;
+
+            public boolean hasNext() {
+                if (!advanced) {
+                    more = cursor.next();
+                    advanced = true;
+                }
+                return more;
+            }
+
+            public Tuple next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                advanced = false;
+                return fields == null ? cursor.getTuple() : cursor.getTuple(fields);
+            }
+        };
+    }
+
+    @Override
+    public SlotCursor cursor() {
+        return new Cursor(null);
+    }
+
+    /**
+     * A SlotCursor over the rows of the page that are not deleted and, if
+     * it was given a predicate, satisfy it. A column chunk is decoded the
+     * first time one of its fields is read.
+     */
+    private class Cursor extends SlotCursor {
+        private final byte[] b = bytes();
+        private final int rows = SlottedHeapPage.getShort(b, 0);
+        private final int bitmap = deletedBitmap(td);
+        /**
+         * 满足谓词的行；没有谓词时为null
+         */
+        private final boolean[] selected;
+        private int row = -1;
+
+        /**
+         * 已解码的int字段的值
+         */
+        private final int[][] values = new int[types.length][];
+        /**
+         * 字典编码的字段每行的编码，或PLAIN字符串字段每行的偏移
+         */
+        private final int[][] codes = new int[types.length][];
+        /**
+         * 已解码的字典，各行共享其中的Field
+         */
+        private final Field[][] dictionaries = new Field[types.length][];
+        /**
+         * 字典之后的位宽字节的偏移
+         */
+        private final int[] codesOffset = new int[types.length];
+
+        Cursor(Predicate p) {
+            selected = p == null ? null : select(p);
+        }
+
+        private int chunk(int field) {
+            return SlottedHeapPage.getShort(b, 2 + 2 * field);
+        }
+
+        @Override
+        public boolean next() {
+            while (++row < rows) {
+                if ((b[bitmap + row / 8] & (1 << (row % 8))) == 0 && (selected == null || selected[row]))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int slot() {
+            return row;
+        }
+
+        @Override
+        public int getInt(int i) {
+            return ints(i)[row];
+        }
+
+        @Override
+        public Field getField(int i) {
+            if (types[i] == Type.INT_TYPE)
+                return new IntField(ints(i)[row]);
+            int off = chunk(i);
+            if (b[off] == DICTIONARY)
+                return dictionary(i)[codes(i)[row]];
+            int pos = codes(i)[row];
+            return new StringField(new String(b, pos + 2, SlottedHeapPage.getShort(b, pos)), Type.STRING_LEN);
+        }
+
+        @Override
+        public Tuple getTuple() {
+            Tuple t = new Tuple(td);
+            t.setRecordId(new RecordId(pid, row));
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] == Type.INT_TYPE)
+                    t.setInt(i, ints(i)[row]);
+                else
+                    t.setField(i, getField(i));
+            }
+            return t;
+        }
+
+        /**
+         * @return the dictionary of a DICTIONARY chunk, decoded
+         */
+        private Field[] dictionary(int i) {
+            if (dictionaries[i] != null)
+                return dictionaries[i];
+            int off = chunk(i) + 1;
+            Field[] dict = new Field[SlottedHeapPage.getShort(b, off)];
+            off += 2;
+            for (int k = 0; k < dict.length; k++) {
+                if (types[i] == Type.INT_TYPE) {
+                    dict[k] = new IntField(Type.readInt(b, off));
+                    off += 4;
+                } else {
+                    int len = SlottedHeapPage.getShort(b, off);
+                    dict[k] = new StringField(new String(b, off + 2, len), Type.STRING_LEN);
+                    off += 2 + len;
+                }
+            }
+            codesOffset[i] = off;
+            return dictionaries[i] = dict;
+        }
+
+        /**
+         * @return the dictionary codes of a DICTIONARY chunk, or the offset
+         *         of each string of a PLAIN chunk
+         */
+        private int[] codes(int i) {
+            if (codes[i] != null)
+                return codes[i];
+            int off = chunk(i);
+            if (b[off] == DICTIONARY) {
+                dictionary(i);
+                int bits = b[codesOffset[i]];
+                return codes[i] = unpack(b, codesOffset[i] + 1, rows, bits);
+            }
+            int[] offsets = new int[rows];
+            int pos = off + 1;
+            for (int r = 0; r < rows; r++) {
+                offsets[r] = pos;
+                pos += 2 + SlottedHeapPage.getShort(b, pos);
+            }
+            return codes[i] = offsets;
+        }
+
+        /**
+         * @return the values of an int field, decoded
+         */
+        private int[] ints(int i) {
+            if (values[i] != null)
+                return values[i];
+            int off = chunk(i);
+            int[] v;
+            switch (b[off]) {
+                case RLE:
+                    v = new int[rows];
+                    int runs = SlottedHeapPage.getShort(b, off + 1);
+                    int r = 0;
+                    for (int k = 0, pos = off + 3; k < runs; k++, pos += 6) {
+                        int end = r + SlottedHeapPage.getShort(b, pos + 4);
+                        Arrays.fill(v, r, end, Type.readInt(b, pos));
+                        r = end;
+                    }
+                    break;
+                case DICTIONARY:
+                    Field[] dict = dictionary(i);
+                    int[] c = codes(i);
+                    v = new int[rows];
+                    for (int k = 0; k < rows; k++)
+                        v[k] = ((IntField) dict[c[k]]).getValue();
+                    break;
+                default:
+                    int base = Type.readInt(b, off + 1);
+                    v = unpack(b, off + 6, rows, b[off + 5]);
+                    for (int k = 0; k < rows; k++)
+                        v[k] += base;
+            }
+            return values[i] = v;
+        }
+
+        /**
+         * Evaluate p on the column chunk of its field.
+         *
+         * @return for each row, whether it satisfies p
+         */
+        private boolean[] select(Predicate p) {
+            int i = p.getField();
+            Predicate.Op op = p.getOp();
+            Field operand = p.getOperand();
+            boolean[] result = new boolean[rows];
+            int off = chunk(i);
+            switch (b[off]) {
+                case RLE: {
+                    int c = ((IntField) operand).getValue();
+                    int runs = SlottedHeapPage.getShort(b, off + 1);
+                    int r = 0;
+                    for (int k = 0, pos = off + 3; k < runs; k++, pos += 6) {
+                        int end = r + SlottedHeapPage.getShort(b, pos + 4);
+                        if (op.compare(Type.readInt(b, pos), c)) // 每个run只比较一次
+                            Arrays.fill(result, r, end, true);
+                        r = end;
+                    }
+                    break;
+                }
+                case DICTIONARY: {
+                    Field[] dict = dictionary(i);
+                    boolean[] match = new boolean[dict.length]; // 每个字典项只比较一次
+                    boolean any = false;
+                    for (int k = 0; k < dict.length; k++)
+                        any |= match[k] = dict[k].compare(op, operand);
+                    if (!any)
+                        break;
+                    int[] c = codes(i);
+                    for (int r = 0; r < rows; r++)
+                        result[r] = match[c[r]];
+                    break;
+                }
+                case FRAME_OF_REFERENCE: {
+                    // 比较 value - base 与 operand - base，不必还原每个值
+                    long d = (long) ((IntField) operand).getValue() - Type.readInt(b, off + 1);
+                    int bits = b[off + 5];
+                    if (d < 0 || d >= 1L << bits) {
+                        // 所有值都在operand的同一侧
+                        if (op.compare(d < 0 ? 1 : -1, 0))
+                            Arrays.fill(result, true);
+                        break;
+                    }
+                    int[] packed = unpack(b, off + 6, rows, bits);
+                    int target = (int) d;
+                    for (int r = 0; r < rows; r++)
+                        result[r] = op.compare(Integer.compareUnsigned(packed[r], target), 0);
+                    break;
+                }
+                default:
+                    int[] offsets = codes(i);
+                    for (int r = 0; r < rows; r++) {
+                        int pos = offsets[r];
+                        String s = new String(b, pos + 2, SlottedHeapPage.getShort(b, pos));
+                        result[r] = new StringField(s, Type.STRING_LEN).compare(op, operand);
+                    }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Builder fills a compressed page one tuple at a time, keeping for each
+     * field the size its column chunk would take in every encoding, and
+     * writes the page once no more tuples fit.
+     */
+    static class Builder {
+        private final TupleDesc td;
+        private final int[] maxLengths;
+        private final Column[] columns;
+        private int rows;
+
+        Builder(TupleDesc td, int[] maxLengths) {
+            this.td = td;
+            this.maxLengths = maxLengths;
+            this.columns = new Column[td.numFields()];
+            for (int i = 0; i < columns.length; i++)
+                columns[i] = new Column(td.getFieldType(i) == Type.INT_TYPE);
+        }
+
+        /**
+         * @return the number of tuples added since the last page was built
+         */
+        int size() {
+            return rows;
+        }
+
+        /**
+         * Add t to the page, if the page still fits in BufferPool.getPageSize()
+         * bytes with it.
+         *
+         * @return false if the page is full; t was not added
+         */
+        boolean add(Tuple t) {
+            if (rows == MAX_ROWS)
+                return false;
+            Object[] values = new Object[columns.length];
+            int size = deletedBitmap(td) + (rows + 1 + 7) / 8;
+            for (int i = 0; i < columns.length; i++) {
+                Field f = t.getField(i);
+                if (columns[i].ints) {
+                    values[i] = ((IntField) f).getValue();
+                } else {
+                    String s = ((StringField) f).getValue();
+                    values[i] = s.length() > maxLengths[i] ? s.substring(0, maxLengths[i]) : s;
+                }
+                size += columns[i].sizeWith(values[i], rows);
+            }
+            if (size > BufferPool.getPageSize())
+                return false;
+            for (int i = 0; i < columns.length; i++)
+                columns[i].add(values[i]);
+            rows++;
+            return true;
+        }
+
+        /**
+         * Write the page of the tuples added so far into buf[base], which
+         * must be zero, and start a new page.
+         */
+        void build(byte[] buf, int base) {
+            SlottedHeapPage.putShort(buf, base, rows);
+            int off = deletedBitmap(td) + (rows + 7) / 8;
+            for (int i = 0; i < columns.length; i++) {
+                SlottedHeapPage.putShort(buf, base + 2 + 2 * i, off);
+                off = columns[i].write(buf, base + off, rows) - base;
+                columns[i] = new Column(columns[i].ints);
+            }
+            rows = 0;
+        }
+    }
+
+    /**
+     * The values of one field on the page being built, with the statistics
+     * that give the size of each encoding.
+     */
+    private static class Column {
+        final boolean ints;
+        final List<Object> values = new ArrayList<>();
+        /**
+         * 字典：值到编码的映射，编码按第一次出现的顺序分配
+         */
+        final Map<Object, Integer> dictionary = new HashMap<>();
+        int dictionaryBytes;
+        int runs;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        int plainBytes;
+
+        Column(boolean ints) {
+            this.ints = ints;
+        }
+
+        private static int valueSize(Object v) {
+            return v instanceof Integer ? 4 : 2 + ((String) v).length();
+        }
+
+        /**
+         * @return the size of the smallest encoding of the rows so far and v
+         */
+        int sizeWith(Object v, int rows) {
+            boolean known = dictionary.containsKey(v);
+            int entries = dictionary.size() + (known ? 0 : 1);
+            int dict = 4 + dictionaryBytes + (known ? 0 : valueSize(v))
+                    + packedSize(rows + 1, bitsFor(entries - 1));
+            if (!ints)
+                return Math.min(dict, 1 + plainBytes + valueSize(v));
+            long x = (Integer) v;
+            int rle = 3 + 6 * (runs + (rows > 0 && values.get(rows - 1).equals(v) ? 0 : 1));
+            int frame = 6 + packedSize(rows + 1, bitsFor(Math.max(max, x) - Math.min(min, x)));
+            return Math.min(dict, Math.min(rle, frame));
+        }
+
+        void add(Object v) {
+            if (!dictionary.containsKey(v)) {
+                dictionary.put(v, dictionary.size());
+                dictionaryBytes += valueSize(v);
+            }
+            if (ints) {
+                if (values.isEmpty() || !values.get(values.size() - 1).equals(v))
+                    runs++;
+                min = Math.min(min, (Integer) v);
+                max = Math.max(max, (Integer) v);
+            } else {
+                plainBytes += valueSize(v);
+            }
+            values.add(v);
+        }
+
+        private static int putValue(byte[] buf, int pos, Object v) {
+            if (v instanceof Integer) {
+                int x = (Integer) v;
+                buf[pos] = (byte) (x >>> 24);
+                buf[pos + 1] = (byte) (x >>> 16);
+                buf[pos + 2] = (byte) (x >>> 8);
+                buf[pos + 3] = (byte) x;
+                return pos + 4;
+            }
+            String s = (String) v;
+            SlottedHeapPage.putShort(buf, pos, s.length());
+            for (int k = 0; k < s.length(); k++)
+                buf[pos + 2 + k] = (byte) s.charAt(k); // 与StringField.serialize一样只写低字节
+            return pos + 2 + s.length();
+        }
+
+        /**
+         * Write the column chunk in its smallest encoding at buf[pos].
+         *
+         * @return the position after the chunk
+         */
+        int write(byte[] buf, int pos, int rows) {
+            int dictBits = bitsFor(Math.max(0, dictionary.size() - 1));
+            int dict = 4 + dictionaryBytes + packedSize(rows, dictBits);
+            int frameBits = rows == 0 ? 0 : bitsFor(max - min);
+            int frame = ints ? 6 + packedSize(rows, frameBits) : Integer.MAX_VALUE;
+            int rle = ints ? 3 + 6 * runs : Integer.MAX_VALUE;
+            int plain = ints ? Integer.MAX_VALUE : 1 + plainBytes;
+            int best = Math.min(Math.min(frame, rle), Math.min(dict, plain));
+            if (best == frame) {
+                buf[pos] = FRAME_OF_REFERENCE;
+                putValue(buf, pos + 1, (int) min);
+                buf[pos + 5] = (byte) frameBits;
+                for (int r = 0; r < rows; r++)
+                    pack(buf, pos + 6, r, frameBits, (Integer) values.get(r) - min);
+                return pos + frame;
+            }
+            if (best == rle) {
+                buf[pos] = RLE;
+                SlottedHeapPage.putShort(buf, pos + 1, runs);
+                int p = pos + 3;
+                for (int r = 0; r < rows; ) {
+                    int end = r + 1;
+                    while (end < rows && values.get(end).equals(values.get(r)))
+                        end++;
+                    p = putValue(buf, p, values.get(r));
+                    SlottedHeapPage.putShort(buf, p, end - r);
+                    p += 2;
+                    r = end;
+                }
+                return p;
+            }
+            if (best == dict) {
+                buf[pos] = DICTIONARY;
+                SlottedHeapPage.putShort(buf, pos + 1, dictionary.size());
+                Object[] entries = new Object[dictionary.size()];
+                for (Map.Entry<Object, Integer> e : dictionary.entrySet())
+                    entries[e.getValue()] = e.getKey();
+                int p = pos + 3;
+                for (Object v : entries)
+                    p = putValue(buf, p, v);
+                buf[p++] = (byte) dictBits;
+                for (int r = 0; r < rows; r++)
+                    pack(buf, p, r, dictBits, dictionary.get(values.get(r)));
+                return p + packedSize(rows, dictBits);
+            }
+            buf[pos] = PLAIN;
+            int p = pos + 1;
+            for (Object v : values)
+                p = putValue(buf, p, v);
+            return p;
+        }
+    }
+}
@@ -94,4 +94,11 @@ public interface DbFile {
      * @return TupleDesc of this DbFile.
      */
     TupleDesc getTupleDesc();
+
+    /**
+     * Close the file handles held by this DbFile. They are reopened if the
+     * file is accessed again.
+     */
+    default void close() throws IOException {
+    }
 }
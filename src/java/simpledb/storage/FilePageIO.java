@@ -0,0 +1,222 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * FilePageIO performs the positional page reads and writes of a DbFile. It
+ * keeps one FileChannel open for the life of the file instead of opening the
+ * file for every page, and can optionally serve reads from a memory mapping
+ * of the file, which suits read-mostly tables.
+ * <p>
+ * In {@link Mode#MMAP} writes still go through the channel. The mapping is
+ * shared with the OS page cache, so written pages are visible through it;
+ * when the file grows past the mapped region it is mapped again.
+ *
+ * @Threadsafe
+ */
+public class FilePageIO {
+
+    /**
+     * How pages are read from disk.
+     */
+    public enum Mode {
+        /**
+         * Open a RandomAccessFile for every read and write (the original
+         * behaviour, kept for comparison).
+         */
+        RANDOM_ACCESS,
+        /**
+         * Positional reads and writes on a FileChannel kept open.
+         */
+        CHANNEL,
+        /**
+         * Reads from a MappedByteBuffer, writes through the FileChannel.
+         */
+        MMAP;
+
+        /**
+         * Parse a mode name as written in the catalog file: raf, channel or mmap.
+         *
+         * @throws IllegalArgumentException if the name is unknown
+         */
+        public static Mode parse(String name) {
+            switch (name.trim().toLowerCase()) {
+                case "raf":
+                    return RANDOM_ACCESS;
+                case "channel":
+                    return CHANNEL;
+                case "mmap":
+                    return MMAP;
+                default:
+                    throw new IllegalArgumentException("unknown io mode " + name);
+            }
+        }
+    }
+
+    /**
+     * Mode used by files that do not choose one.
+     */
+    public static final Mode DEFAULT_MODE = Mode.CHANNEL;
+
+    private final File f;
+    private final Mode mode;
+
+    private FileChannel channel;
+    private boolean readOnly;
+    private volatile MappedByteBuffer mapped;
+
+    public FilePageIO(File f, Mode mode) {
+        this.f = f;
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Read up to buf.length bytes starting at offset. Bytes past the end of
+     * the file are left untouched.
+     *
+     * @return the number of bytes read, or -1 if offset is at or past the
+     *         end of the file
+     */
+    public int read(long offset, byte[] buf) throws IOException {
+        switch (mode) {
+            case RANDOM_ACCESS:
+                try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+                    raf.seek(offset);
+                    return raf.read(buf, 0, buf.length);
+                }
+            case MMAP:
+                MappedByteBuffer map = mappingFor(offset + buf.length);
+                if (map != null) {
+                    if (offset >= map.capacity())
+                        return -1;
+                    int n = (int) Math.min(buf.length, map.capacity() - offset);
+                    ByteBuffer view = map.duplicate();
+                    view.position((int) offset);
+                    view.get(buf, 0, n);
+                    return n;
+                }
+                // file too large to map in one piece: fall through to the channel
+            default:
+                ByteBuffer bb = ByteBuffer.wrap(buf);
+                FileChannel ch = channel();
+                while (bb.hasRemaining()) {
+                    int n = ch.read(bb, offset + bb.position());
+                    if (n < 0)
+                        break;
+                }
+                return bb.position() == 0 && buf.length > 0 ? -1 : bb.position();
+        }
+    }
+
+    /**
+     * Write all of data starting at offset, growing the file if needed.
+     */
+    public void write(long offset, byte[] data) throws IOException {
+        if (mode == Mode.RANDOM_ACCESS) {
+            try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                raf.seek(offset);
+                raf.write(data);
+            }
+            return;
+        }
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        FileChannel ch = channel();
+        if (readOnly)
+            throw new IOException("file " + f + " is read only");
+        while (bb.hasRemaining())
+            ch.write(bb, offset + bb.position());
+    }
+
+    /**
+     * Force the data written so far to the storage device.
+     */
+    public void force() throws IOException {
+        if (mode == Mode.RANDOM_ACCESS) {
+            try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                raf.getFD().sync();
+            }
+            return;
+        }
+        channel().force(false);
+    }
+
+    /**
+     * Cut the file down to size bytes; does nothing if it is not longer.
+     */
+    public synchronized void truncate(long size) throws IOException {
+        if (f.length() <= size)
+            return;
+        mapped = null;
+        if (mode == Mode.RANDOM_ACCESS) {
+            try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                raf.setLength(size);
+            }
+            return;
+        }
+        channel().truncate(size);
+    }
+
+    /**
+     * @return the current size of the file in bytes
+     */
+    public long size() {
+        return f.length();
+    }
+
+    /**
+     * Close the channel and drop the mapping; the file is reopened on the
+     * next access.
+     */
+    public synchronized void close() throws IOException {
+        mapped = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private synchronized FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            try {
+                channel = FileChannel.open(f.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE);
+                readOnly = false;
+            } catch (AccessDeniedException e) {
+                channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+                readOnly = true;
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * @return a read-only mapping of the file that covers at least end bytes
+     *         if the file is that long, or null if the file cannot be mapped
+     *         in one piece
+     */
+    private MappedByteBuffer mappingFor(long end) throws IOException {
+        MappedByteBuffer map = mapped;
+        if (map != null && end <= map.capacity())
+            return map;
+        synchronized (this) {
+            FileChannel ch = channel();
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE)
+                return null;
+            if (mapped == null || mapped.capacity() < size)
+                mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return mapped;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap tracks the number of free slots on each page of a HeapFile,
+ * so that an insert can find a page with room without reading the pages of
+ * the file one by one.
+ * <p>
+ * The map is kept in memory and in a side file next to the heap file
+ * (&lt;file&gt;.fsm, two bytes per page). The side file is only written when
+ * a page is written to the heap file, so it describes the pages on disk;
+ * the in-memory map also reflects uncommitted inserts and deletes. When a
+ * transaction aborts, the entries of the pages it touched are reset from
+ * the restored pages.
+ * <p>
+ * Entries are hints: the caller must check the page itself, and report the
+ * real number of free slots back when the entry was wrong. A side file that
+ * is missing, older than the heap file or of the wrong size is rebuilt from
+ * the page headers.
+ *
+ * @Threadsafe
+ */
+class FreeSpaceMap {
+
+    /**
+     * Counts the free slots of a page on disk; used to rebuild the map.
+     */
+    interface FreeSlotCounter {
+        int freeSlots(int pageNo) throws IOException;
+    }
+
+    private static final int ENTRY_SIZE = 2;
+    private static final int MAX_ENTRY = Character.MAX_VALUE;
+
+    private final File heapFile;
+    private final File mapFile;
+    private final FilePageIO io;
+
+    private boolean loaded;
+    /**
+     * 每页的空闲slot数（超过MAX_ENTRY时按MAX_ENTRY记）
+     */
+    private char[] freeSlots = new char[0];
+    private int numPages;
+    /**
+     * 有空闲slot的页
+     */
+    private final BitSet withSpace = new BitSet();
+    /**
+     * 比该页号小的页都没有空闲slot
+     */
+    private int searchFrom;
+
+    FreeSpaceMap(File heapFile) {
+        this.heapFile = heapFile;
+        this.mapFile = fileFor(heapFile);
+        this.io = new FilePageIO(mapFile, FilePageIO.Mode.CHANNEL);
+    }
+
+    /**
+     * @return the side file holding the map of heapFile
+     */
+    static File fileFor(File heapFile) {
+        return new File(heapFile.getPath() + ".fsm");
+    }
+
+    /**
+     * @return the side file the map is stored in
+     */
+    File getFile() {
+        return mapFile;
+    }
+
+    /**
+     * Load the map from its side file, or rebuild it with counter if the side
+     * file does not describe the current heap file. Does nothing if the map
+     * is already loaded.
+     *
+     * @param numPages the number of pages in the heap file
+     */
+    synchronized void load(int numPages, FreeSlotCounter counter) throws IOException {
+        if (loaded)
+            return;
+        char[] entries = new char[numPages];
+        boolean valid = mapFile.length() == (long) numPages * ENTRY_SIZE
+                && mapFile.lastModified() >= heapFile.lastModified();
+        if (valid && numPages > 0) {
+            byte[] bytes = new byte[numPages * ENTRY_SIZE];
+            valid = io.read(0, bytes) == bytes.length;
+            for (int i = 0; valid && i < numPages; i++)
+                entries[i] = (char) ((bytes[2 * i] & 0xff) << 8 | bytes[2 * i + 1] & 0xff);
+        }
+        if (!valid) {
+            // 侧文件缺失或过期，根据页头重建
+            io.close();
+            if (mapFile.exists() && !mapFile.delete())
+                throw new IOException("cannot delete stale free space map " + mapFile);
+            for (int i = 0; i < numPages; i++)
+                entries[i] = (char) Math.min(counter.freeSlots(i), MAX_ENTRY);
+            byte[] bytes = new byte[numPages * ENTRY_SIZE];
+            for (int i = 0; i < numPages; i++) {
+                bytes[2 * i] = (byte) (entries[i] >> 8);
+                bytes[2 * i + 1] = (byte) entries[i];
+            }
+            io.write(0, bytes);
+        }
+        freeSlots = entries;
+        this.numPages = numPages;
+        withSpace.clear();
+        for (int i = 0; i < numPages; i++) {
+            if (entries[i] > 0)
+                withSpace.set(i);
+        }
+        searchFrom = 0;
+        loaded = true;
+    }
+
+    /**
+     * @return true once {@link #load} has completed
+     */
+    synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return a page that is believed to have a free slot, or -1 if there is
+     *         none; amortized O(1)
+     */
+    synchronized int findPage() {
+        int pageNo = withSpace.nextSetBit(searchFrom);
+        searchFrom = pageNo < 0 ? numPages : pageNo;
+        return pageNo;
+    }
+
+    /**
+     * Record the current number of free slots of a page, which may be beyond
+     * the last page in the map.
+     */
+    synchronized void update(int pageNo, int free) {
+        if (pageNo >= freeSlots.length)
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(pageNo + 1, freeSlots.length * 2));
+        numPages = Math.max(numPages, pageNo + 1);
+        freeSlots[pageNo] = (char) Math.min(free, MAX_ENTRY);
+        if (free > 0) {
+            withSpace.set(pageNo);
+            searchFrom = Math.min(searchFrom, pageNo);
+        } else {
+            withSpace.clear(pageNo);
+        }
+    }
+
+    /**
+     * Record the number of free slots of a page that was just written to the
+     * heap file, in memory and in the side file.
+     */
+    synchronized void persist(int pageNo, int free) throws IOException {
+        update(pageNo, free);
+        char entry = freeSlots[pageNo];
+        io.write((long) pageNo * ENTRY_SIZE, new byte[]{(byte) (entry >> 8), (byte) entry});
+    }
+
+    /**
+     * Record the number of free slots of consecutive pages that were just
+     * written to the heap file, with a single write to the side file.
+     *
+     * @param firstPage the number of the first page
+     * @param free      the free slots of pages firstPage, firstPage + 1, ...
+     */
+    synchronized void persist(int firstPage, int[] free) throws IOException {
+        byte[] bytes = new byte[free.length * ENTRY_SIZE];
+        for (int i = 0; i < free.length; i++) {
+            update(firstPage + i, free[i]);
+            char entry = freeSlots[firstPage + i];
+            bytes[2 * i] = (byte) (entry >> 8);
+            bytes[2 * i + 1] = (byte) entry;
+        }
+        io.write((long) firstPage * ENTRY_SIZE, bytes);
+    }
+
+    /**
+     * Close the side file; it is reopened if the map is used again.
+     */
+    synchronized void close() throws IOException {
+        io.close();
+    }
+}
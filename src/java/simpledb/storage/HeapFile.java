@@ -3,6 +3,8 @@ package simpledb.storage;
 import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Permissions;
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
@@ -14,7 +16,12 @@ import java.util.*;
  * in no particular order. Tuples are stored on pages, each of which is a fixed
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
- * constructor.
+ * constructor; a file in the {@link PageFormat#SLOTTED} format stores
+ * variable-length records in SlottedHeapPages instead, and one in the
+ * {@link PageFormat#PAX} format groups the values of each field in
+ * PaxHeapPages. A file in the {@link PageFormat#COMPRESSED} format is
+ * read-optimized: its CompressedHeapPages are written by {@link #bulkLoad}
+ * and take no inserts.
  * HeapFile是一个DbFile的实现，用于以无特定顺序存储一组元组。
  * 元组存储在页面上，每个页面具有固定的大小，文件只是这些页面的集合。
  * HeapFile与HeapPage密切配合。HeapPages的格式在HeapPage构造函数中描述
@@ -22,9 +29,93 @@ import java.util.*;
  * @see HeapPage#HeapPage
  */
 public class HeapFile implements DbFile {
+
+    /**
+     * How tuples are laid out on the pages of a HeapFile.
+     */
+    public enum PageFormat {
+        /**
+         * Fixed-size slots and a bitmap header, see {@link HeapPage}.
+         */
+        FIXED,
+        /**
+         * Variable-length records and a slot directory, see
+         * {@link SlottedHeapPage}.
+         */
+        SLOTTED,
+        /**
+         * The slots of the fixed format, with the values of each field stored
+         * together, see {@link PaxHeapPage}.
+         */
+        PAX,
+        /**
+         * Compressed column chunks, written only by bulkLoad, see
+         * {@link CompressedHeapPage}.
+         */
+        COMPRESSED;
+
+        /**
+         * Parse a format name as written in the catalog file: fixed, slotted,
+         * pax or compressed.
+         *
+         * @throws IllegalArgumentException if the name is unknown
+         */
+        public static PageFormat parse(String name) {
+            switch (name.trim().toLowerCase()) {
+                case "fixed":
+                    return FIXED;
+                case "slotted":
+                    return SLOTTED;
+                case "pax":
+                    return PAX;
+                case "compressed":
+                    return COMPRESSED;
+                default:
+                    throw new IllegalArgumentException("unknown page format " + name);
+            }
+        }
+    }
+
     private File f;
     private TupleDesc tupleDesc;
 
+    /**
+     * 对底层文件的页读写，整个HeapFile生命周期内保持打开
+     */
+    private final FilePageIO io;
+
+    /**
+     * 每页空闲slot数的映射，插入时据此找到有空位的页
+     */
+    private final FreeSpaceMap freeSpace;
+
+    /**
+     * 每页每个int字段的最小值和最大值，带谓词的扫描据此跳过不可能满足的页
+     */
+    private final ZoneMap zoneMap;
+
+    /**
+     * 每页后面是否带有CRC32C校验尾
+     */
+    private final boolean checksums;
+
+    private final PageFormat format;
+
+    /**
+     * 每个字符串字段声明的最大长度（VARCHAR(n)中的n）
+     */
+    private final int[] maxLengths;
+
+    /**
+     * 正在进行的批量装载的第一页，装载提交前该页及之后的页不可见；没有批量装载时为-1
+     */
+    private volatile int hiddenFrom = -1;
+
+    /**
+     * Number of pages bulkLoad packs in memory before writing them out.
+     */
+    private static final int BULK_CHUNK_PAGES = 64;
+
     /**
      * 唯一标识该HeapFile的ID
      */
@@ -37,9 +128,75 @@ public class HeapFile implements DbFile {
      *          file.
      */
     public HeapFile(File f, TupleDesc td) {
+        this(f, td, FilePageIO.DEFAULT_MODE);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, whose pages are
+     * read in the given I/O mode.
+     *
+     * @param f      the file that stores the on-disk backing store for this heap
+     *               file.
+     * @param ioMode how pages are read from and written to f
+     */
+    public HeapFile(File f, TupleDesc td, FilePageIO.Mode ioMode) {
+        this(f, td, ioMode, false);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, whose pages are
+     * read in the given I/O mode and optionally stored with a checksum.
+     *
+     * @param f         the file that stores the on-disk backing store for this heap
+     *                  file.
+     * @param ioMode    how pages are read from and written to f
+     * @param checksums whether each page is followed by a CRC32C trailer that
+     *                  is verified when the page is read
+     * @see PageChecksum
+     */
+    public HeapFile(File f, TupleDesc td, FilePageIO.Mode ioMode, boolean checksums) {
+        this(f, td, ioMode, checksums, PageFormat.FIXED, null);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, with the given
+     * page format.
+     *
+     * @param f          the file that stores the on-disk backing store for this heap
+     *                   file.
+     * @param ioMode     how pages are read from and written to f
+     * @param checksums  whether each page is followed by a CRC32C trailer that
+     *                   is verified when the page is read
+     * @param format     the layout of the pages
+     * @param maxLengths the declared length of each string field, at most
+     *                   Type.STRING_LEN, or null if every string field may
+     *                   take STRING_LEN characters. Longer strings are
+     *                   truncated when they are stored. Ignored for int
+     *                   fields.
+     * @throws IllegalArgumentException if a length is out of range
+     */
+    public HeapFile(File f, TupleDesc td, FilePageIO.Mode ioMode, boolean checksums, PageFormat format,
+                    int[] maxLengths) {
         // TODO: some code goes here
         this.f = f;
         this.tupleDesc = td;
+        this.io = new FilePageIO(f, ioMode);
+        this.checksums = checksums;
+        this.format = format;
+        if (maxLengths == null) {
+            this.maxLengths = SlottedHeapPage.defaultLengths(td);
+        } else {
+            if (maxLengths.length != td.numFields())
+                throw new IllegalArgumentException("expected " + td.numFields() + " field lengths");
+            for (int len : maxLengths) {
+                if (len < 0 || len > Type.STRING_LEN)
+                    throw new IllegalArgumentException("string length " + len + " is not in [0, "
+                            + Type.STRING_LEN + "]");
+            }
+            this.maxLengths = maxLengths.clone();
+        }
+        this.freeSpace = new FreeSpaceMap(f);
+        this.zoneMap = new ZoneMap(f, td);
         tableId = f.getAbsoluteFile().hashCode();
     }
 
@@ -95,24 +252,247 @@ public class HeapFile implements DbFile {
         // 根据要读取的页号和页大小，获取文件中的位置
         int pageNo = pid.getPageNumber();
         int len = BufferPool.getPageSize();
-        int position = pageNo * len;
+        long position = pageOffset(pageNo);
 
-        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
-            // 将文件中的指针定位到指定位置
-            raf.seek(position);
+        try {
             // 创建字节数组来存储读取的数据
-            byte[] buffer = new byte[len];
-            raf.read(buffer, 0, len);
-            return new HeapPage((HeapPageId) pid, buffer);
+            byte[] buffer = new byte[PageChecksum.diskSize(len, checksums)];
+            io.read(position, buffer);
+            // HeapPage只读取页内的字节，校验尾留在buffer末尾即可，不必再复制
+            if (checksums && !PageChecksum.verify(buffer, 0, len))
+                return newPage((HeapPageId) pid, PageChecksum.repair(io, position, pid));
+            return newPage((HeapPageId) pid, buffer);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private HeapPage newPage(HeapPageId pid, byte[] data) throws IOException {
+        switch (format) {
+            case SLOTTED:
+                return new SlottedHeapPage(pid, data);
+            case PAX:
+                return new PaxHeapPage(pid, data);
+            case COMPRESSED:
+                return new CompressedHeapPage(pid, data);
+            default:
+                return new HeapPage(pid, data);
+        }
+    }
+
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         // TODO: some code goes here
         // not necessary for lab1
+        int pageNo = page.getId().getPageNumber();
+        byte[] data = page.getPageData();
+        if (page instanceof HeapPage)
+            zoneMap.beginWrite(pageNo, 1);
+        io.write(pageOffset(pageNo), checksums ? PageChecksum.seal(data) : data);
+        if (page instanceof HeapPage) {
+            zoneMap.endWrite(pageNo, 1);
+            loadedFreeSpace().persist(pageNo, ((HeapPage) page).getNumUnusedSlots());
+            if (zoneMap.isLoaded()) // 删除后的范围可能过宽，写回时才重新计算
+                zoneMap.persist(pageNo, zoneMap.isStale(pageNo) ? zoneMap.rangesOf((HeapPage) page) : null);
+        }
+    }
+
+    /**
+     * @return the I/O mode pages of this file are read in
+     */
+    public FilePageIO.Mode getIOMode() {
+        return io.getMode();
+    }
+
+    /**
+     * @return true if the pages of this file are stored with a checksum
+     */
+    public boolean hasChecksums() {
+        return checksums;
+    }
+
+    /**
+     * @return the layout of the pages of this file
+     */
+    public PageFormat getPageFormat() {
+        return format;
+    }
+
+    /**
+     * @return the declared length of a string field: n for VARCHAR(n),
+     *         Type.STRING_LEN otherwise
+     */
+    public int getMaxLength(int field) {
+        return maxLengths[field];
+    }
+
+    int[] getMaxLengths() {
+        return maxLengths;
+    }
+
+    /**
+     * @return the offset of a page in the file
+     */
+    private long pageOffset(int pageNo) {
+        return (long) pageNo * PageChecksum.diskSize(BufferPool.getPageSize(), checksums);
+    }
+
+    /**
+     * Close the file handles held by this HeapFile. They are reopened if the
+     * file is accessed again.
+     */
+    public void close() throws IOException {
+        io.close();
+        freeSpace.close();
+        zoneMap.close();
+    }
+
+    /**
+     * @return the number of tuple slots on each page of this file
+     */
+    private int slotsPerPage() {
+        return (BufferPool.getPageSize() * 8) / (tupleDesc.getSize() * 8 + 1);
+    }
+
+    /**
+     * @return the number of free slots of an empty page, as counted by
+     *         {@link HeapPage#getNumUnusedSlots()}
+     */
+    private int emptyPageFreeSlots() {
+        if (format == PageFormat.COMPRESSED)
+            return 0;
+        if (format == PageFormat.SLOTTED)
+            return SlottedHeapPage.freeSlots(new byte[SlottedHeapPage.HEADER_SIZE], 0,
+                    SlottedHeapPage.maxRecordSize(tupleDesc, maxLengths));
+        return slotsPerPage();
+    }
+
+    /**
+     * @return the free space map of this file, loaded from its side file or
+     *         rebuilt from the page headers on first use
+     */
+    private FreeSpaceMap loadedFreeSpace() throws IOException {
+        if (!freeSpace.isLoaded())
+            freeSpace.load(numPages(), this::freeSlotsOnDisk);
+        return freeSpace;
+    }
+
+    /**
+     * Count the free slots of a page on disk by reading only its header.
+     */
+    private int freeSlotsOnDisk(int pageNo) throws IOException {
+        if (format == PageFormat.COMPRESSED)
+            return 0;
+        if (format == PageFormat.SLOTTED) {
+            byte[] header = new byte[SlottedHeapPage.HEADER_SIZE];
+            io.read(pageOffset(pageNo), header);
+            return SlottedHeapPage.freeSlots(header, 0, SlottedHeapPage.maxRecordSize(tupleDesc, maxLengths));
+        }
+        int numSlots = slotsPerPage();
+        byte[] header = new byte[(numSlots + 7) / 8];
+        int n = io.read(pageOffset(pageNo), header);
+        int used = 0;
+        for (int i = 0; i < numSlots; i++) {
+            if (i / 8 < n && (header[i / 8] & (1 << (i % 8))) != 0)
+                used++;
+        }
+        return numSlots - used;
+    }
+
+    /**
+     * @return the zone map of this file, loaded from its side file or rebuilt
+     *         from the pages on first use
+     */
+    private ZoneMap loadedZoneMap() throws IOException {
+        if (!zoneMap.isLoaded())
+            zoneMap.load(numPages(), pageNo -> zoneMap.rangesOf((HeapPage) readPage(new HeapPageId(getId(), pageNo))));
+        return zoneMap;
+    }
+
+    /**
+     * Called by the BufferPool when an aborted transaction's changes to page
+     * have been rolled back, so that the free space map forgets them.
+     */
+    void pageRestored(HeapPage page) {
+        if (freeSpace.isLoaded())
+            freeSpace.update(page.getId().getPageNumber(), page.getNumUnusedSlots());
+        zoneMap.markStale(page.getId().getPageNumber());
+    }
+
+    /**
+     * @return the side file holding the free space map of this file
+     */
+    public File getFreeSpaceMapFile() {
+        return freeSpace.getFile();
+    }
+
+    /**
+     * @return the side file holding the zone map of this file
+     */
+    public File getZoneMapFile() {
+        return zoneMap.getFile();
+    }
+
+    /**
+     * @return the side files kept next to the heap file f, whether they
+     *         exist or not
+     */
+    public static List<File> sideFiles(File f) {
+        return Arrays.asList(FreeSpaceMap.fileFor(f), ZoneMap.fileFor(f));
+    }
+
+    /**
+     * Delete the heap file f together with its side files.
+     *
+     * @return true if f was deleted
+     */
+    public static boolean delete(File f) {
+        for (File side : sideFiles(f))
+            side.delete();
+        return f.delete();
+    }
+
+    /**
+     * Request that the heap file f and its side files be deleted when the
+     * virtual machine terminates, as {@link File#deleteOnExit()}.
+     */
+    public static void deleteOnExit(File f) {
+        f.deleteOnExit();
+        for (File side : sideFiles(f))
+            side.deleteOnExit();
+    }
+
+    /**
+     * @return true if the zone map can rule out pages for p: p compares an
+     *         int field with an IntField
+     */
+    public boolean canSkipPages(Predicate p) {
+        return zoneMap.covers(p.getField()) && p.getOperand() instanceof IntField;
+    }
+
+    /**
+     * @return true unless the zone map shows that no tuple of the page can
+     *         satisfy p, which {@link #canSkipPages} must accept
+     */
+    boolean mayMatch(int pageNo, Predicate p) {
+        return zoneMap.mayMatch(pageNo, p.getField(), p.getOp(), ((IntField) p.getOperand()).getValue());
+    }
+
+    /**
+     * @return the number of pages of this file that a scan with predicate p
+     *         skips, according to the zone map; 0 if p cannot skip pages
+     * @throws IOException if the zone map cannot be loaded
+     */
+    public int countSkippedPages(Predicate p) throws IOException {
+        if (!canSkipPages(p))
+            return 0;
+        loadedZoneMap();
+        int skipped = 0;
+        for (int pageNo = numPages() - 1; pageNo >= 0; pageNo--) {
+            if (!mayMatch(pageNo, p))
+                skipped++;
+        }
+        return skipped;
     }
 
     /**
@@ -120,23 +500,235 @@ public class HeapFile implements DbFile {
      */
     public int numPages() {
         // TODO: some code goes here
-        return (int) Math.ceilDiv(f.length(), BufferPool.getPageSize());
+        int numPages = (int) Math.ceilDiv(f.length(), PageChecksum.diskSize(BufferPool.getPageSize(), checksums));
+        int hidden = hiddenFrom;
+        return hidden >= 0 ? Math.min(numPages, hidden) : numPages;
+    }
+
+    /**
+     * Append tuples to this file as new, fully packed pages, bypassing the
+     * BufferPool. The pages are written with large sequential writes and
+     * forced to disk, then the load is logged as a single BULK_LOAD record
+     * (no before/after images) and committed as its own transaction.
+     * <p>
+     * The new pages become visible all at once when the load commits: until
+     * then {@link #numPages()} does not count them. If the load fails, the
+     * file is truncated back to its previous length.
+     * <p>
+     * This is the only way to add tuples to a file in the
+     * {@link PageFormat#COMPRESSED} format; each of its pages holds as many
+     * tuples as fit once compressed.
+     *
+     * @param tuples the tuples to load; they must match the TupleDesc of this file
+     * @return the number of tuples loaded
+     * @throws DbException if a tuple does not match the TupleDesc of this file
+     */
+    public synchronized int bulkLoad(Iterator<Tuple> tuples) throws DbException, IOException {
+        LogFile log = Database.getLogFile();
+        TransactionId tid = new TransactionId();
+        int diskPageSize = PageChecksum.diskSize(BufferPool.getPageSize(), checksums);
+        int numSlots = slotsPerPage();
+        int maxRecordSize = SlottedHeapPage.maxRecordSize(tupleDesc, maxLengths);
+        int firstPage = numPages();
+        FreeSpaceMap fsm = loadedFreeSpace();
+
+        byte[] chunk = new byte[BULK_CHUNK_PAGES * diskPageSize];
+        ByteArrayOutputStream tupleBytes = new ByteArrayOutputStream(tupleDesc.getSize());
+        DataOutputStream out = new DataOutputStream(tupleBytes);
+        byte[] record = new byte[maxRecordSize];
+        CompressedHeapPage.Builder compressed = format == PageFormat.COMPRESSED
+                ? new CompressedHeapPage.Builder(tupleDesc, maxLengths) : null;
+        int loaded = 0;
+        int pagesWritten = 0;
+        int chunkPages = 0; // chunk中已写满的页数
+        int slot = 0;       // 当前页中已有的元组数
+
+        hiddenFrom = firstPage; // 装载提交前，新页对扫描不可见
+        boolean committed = false;
+        try {
+            log.logXactionBegin(tid);
+            while (tuples.hasNext()) {
+                Tuple t = tuples.next();
+                if (!tupleDesc.equals(t.getTupleDesc()))
+                    throw new DbException("tupleDesc of the tuple does not match table " + f.getName());
+                int len = 0;
+                if (format == PageFormat.SLOTTED) {
+                    len = SlottedHeapPage.encode(tupleDesc, maxLengths, t, record);
+                } else if (compressed == null) {
+                    tupleBytes.reset();
+                    for (int j = 0; j < tupleDesc.numFields(); j++)
+                        t.getField(j).serialize(out);
+                    record = tupleBytes.toByteArray();
+                    len = record.length;
+                }
+                if (compressed != null ? !compressed.add(t)
+                        : !packRecord(chunk, chunkPages * diskPageSize, slot, numSlots, record, len)) {
+                    // 当前页已满，换到下一页
+                    if (compressed != null)
+                        compressed.build(chunk, chunkPages * diskPageSize);
+                    slot = 0;
+                    if (++chunkPages == BULK_CHUNK_PAGES) {
+                        writeBulkChunk(fsm, chunk, firstPage + pagesWritten, chunkPages);
+                        pagesWritten += chunkPages;
+                        chunkPages = 0;
+                        Arrays.fill(chunk, (byte) 0);
+                    }
+                    if (compressed != null ? !compressed.add(t)
+                            : !packRecord(chunk, chunkPages * diskPageSize, slot, numSlots, record, len))
+                        throw new DbException("tuple does not fit on an empty page of " + f.getName());
+                }
+                slot++;
+                loaded++;
+            }
+            int lastFree = 0;
+            if (slot > 0) { // 最后一页，可能未满
+                if (compressed != null) {
+                    compressed.build(chunk, chunkPages * diskPageSize);
+                    lastFree = 0;
+                } else if (format == PageFormat.SLOTTED) {
+                    lastFree = SlottedHeapPage.freeSlots(chunk, chunkPages * diskPageSize, maxRecordSize);
+                } else {
+                    lastFree = numSlots - slot;
+                }
+                writeBulkChunk(fsm, chunk, firstPage + pagesWritten, chunkPages + 1);
+                pagesWritten += chunkPages + 1;
+            }
+            io.force();
+            log.logBulkLoad(tid, getId(), firstPage, pagesWritten);
+            log.logCommit(tid);
+            committed = true;
+            // 提交后才公布最后一页的空位，之前插入不能选中未提交的页
+            if (lastFree > 0)
+                fsm.persist(firstPage + pagesWritten - 1, lastFree);
+        } finally {
+            if (!committed) {
+                io.truncate(pageOffset(firstPage));
+                for (int i = 0; i < pagesWritten; i++)
+                    fsm.update(firstPage + i, 0);
+            }
+            hiddenFrom = -1;
+        }
+        return loaded;
+    }
+
+    /**
+     * Add an encoded tuple to the page of chunk at pageBase, which holds
+     * slot tuples already.
+     *
+     * @param numSlots the number of slots of a fixed format page
+     * @return false if the page is full
+     */
+    private boolean packRecord(byte[] chunk, int pageBase, int slot, int numSlots, byte[] record, int len) {
+        if (format == PageFormat.SLOTTED)
+            return SlottedHeapPage.append(chunk, pageBase, record, len);
+        if (slot == numSlots)
+            return false;
+        if (format == PageFormat.PAX) {
+            PaxHeapPage.scatter(tupleDesc, numSlots, chunk, pageBase, slot, record);
+            return true;
+        }
+        System.arraycopy(record, 0, chunk, pageBase + (numSlots + 7) / 8 + slot * len, len);
+        chunk[pageBase + slot / 8] |= (byte) (1 << (slot % 8));
+        return true;
+    }
+
+    /**
+     * Write the first numPages pages of chunk at page firstPage, and record
+     * them in the free space map as full: the free slots of the last page of
+     * the load are only recorded once it commits, so that no insert picks an
+     * uncommitted page.
+     */
+    private void writeBulkChunk(FreeSpaceMap fsm, byte[] chunk, int firstPage, int numPages) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        int diskSize = PageChecksum.diskSize(pageSize, checksums);
+        if (checksums) {
+            for (int i = 0; i < numPages; i++)
+                PageChecksum.seal(chunk, i * diskSize, pageSize);
+        }
+        int len = numPages * diskSize;
+        zoneMap.beginWrite(firstPage, numPages);
+        io.write(pageOffset(firstPage), len == chunk.length ? chunk : Arrays.copyOf(chunk, len));
+        zoneMap.endWrite(firstPage, numPages);
+        fsm.persist(firstPage, new int[numPages]);
+        if (!zoneMap.isLoaded())
+            return;
+        int[][] ranges = new int[numPages][];
+        for (int i = 0; i < numPages; i++) {
+            HeapPageId pid = new HeapPageId(getId(), firstPage + i);
+            ranges[i] = zoneMap.rangesOf(newPage(pid, Arrays.copyOfRange(chunk, i * diskSize, i * diskSize + pageSize)));
+        }
+        zoneMap.persist(firstPage, ranges);
     }
 
     // see DbFile.java for javadocs
     public List<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
         // TODO: some code goes here
-        return null;
         // not necessary for lab1
+        if (!tupleDesc.equals(t.getTupleDesc()))
+            throw new DbException("tupleDesc of the tuple does not match table " + f.getName());
+        if (format == PageFormat.COMPRESSED)
+            throw new DbException("table " + f.getName() + " is compressed; its tuples are added by bulkLoad");
+        FreeSpaceMap fsm = loadedFreeSpace();
+        while (true) {
+            // 从空闲空间映射中找一个有空位的页，而不是逐页查看
+            int pageNo = fsm.findPage();
+            if (pageNo < 0) {
+                appendEmptyPage(fsm);
+                continue;
+            }
+            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                    new HeapPageId(getId(), pageNo), Permissions.READ_WRITE);
+            if (page.getNumUnusedSlots() > 0) {
+                page.insertTuple(t);
+                fsm.update(pageNo, page.getNumUnusedSlots());
+                zoneMap.widen(pageNo, t);
+                return new ArrayList<>(Collections.singletonList(page));
+            }
+            fsm.update(pageNo, 0); // 映射中的记录已过期
+        }
+    }
+
+    /**
+     * Write an empty page at the end of the file, unless another insert has
+     * made room in the meantime. Synchronized with bulkLoad, so no page is
+     * appended in the middle of a load.
+     */
+    private synchronized void appendEmptyPage(FreeSpaceMap fsm) throws IOException {
+        int pageNo = fsm.findPage();
+        if (pageNo >= 0)
+            return;
+        pageNo = numPages();
+        byte[] empty = HeapPage.createEmptyPageData();
+        zoneMap.beginWrite(pageNo, 1);
+        io.write(pageOffset(pageNo), checksums ? PageChecksum.seal(empty) : empty);
+        zoneMap.endWrite(pageNo, 1);
+        fsm.persist(pageNo, emptyPageFreeSlots());
+        if (zoneMap.isLoaded())
+            zoneMap.persist(pageNo, zoneMap.emptyRanges());
     }
 
     // see DbFile.java for javadocs
     public List<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
         // TODO: some code goes here
-        return null;
         // not necessary for lab1
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != getId())
+            throw new DbException("tuple is not stored in table " + f.getName());
+        int pageNo = rid.getPageId().getPageNumber();
+        if (pageNo < 0 || pageNo >= numPages())
+            throw new DbException("page " + pageNo + " doesn't exist in table " + f.getName());
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(getId(), pageNo), Permissions.READ_WRITE);
+        page.deleteTuple(t);
+        zoneMap.markStale(pageNo);
+        try {
+            loadedFreeSpace().update(pageNo, page.getNumUnusedSlots());
+        } catch (IOException e) {
+            throw new DbException("failed to load the free space map of " + f.getName() + ": " + e);
+        }
+        return new ArrayList<>(Collections.singletonList(page));
     }
 
     /**
@@ -149,7 +741,54 @@ public class HeapFile implements DbFile {
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
         // TODO: some code goes here
-        return new HeapFileIterator(this, tid);
+        return new HeapFileIterator(this, tid, null, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file that satisfy p. The
+     * predicate is evaluated on the page bytes (see {@link HeapPage.SlotCursor}),
+     * so tuples that fail it are never built, and pages where the zone map
+     * shows that no tuple can satisfy it are not read at all.
+     *
+     * @param p a predicate that {@link #canEvaluate} accepts
+     * @throws IllegalArgumentException if p cannot be evaluated in place
+     */
+    public DbFileIterator iterator(TransactionId tid, Predicate p) {
+        if (!canEvaluate(p))
+            throw new IllegalArgumentException("cannot evaluate " + p + " on the pages of " + f.getName());
+        return new HeapFileIterator(this, tid, p, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file that satisfy p, in
+     * which only the given fields are set; the others keep the values of a
+     * new Tuple (0 or the empty string). Only
+     * those fields are decoded, and on pages in the {@link PageFormat#PAX}
+     * format only their minipages are read.
+     *
+     * @param p      a predicate that {@link #canEvaluate} accepts, or null
+     * @param fields the fields to return
+     * @throws IllegalArgumentException if p cannot be evaluated in place
+     */
+    public DbFileIterator iterator(TransactionId tid, Predicate p, int[] fields) {
+        if (p != null && !canEvaluate(p))
+            throw new IllegalArgumentException("cannot evaluate " + p + " on the pages of " + f.getName());
+        return new HeapFileIterator(this, tid, p, fields.clone());
+    }
+
+    /**
+     * @return true if {@link #iterator(TransactionId, Predicate)} accepts p:
+     *         p compares an int field with an IntField or, in the
+     *         {@link PageFormat#COMPRESSED} format, a string field with a
+     *         StringField
+     */
+    public boolean canEvaluate(Predicate p) {
+        if (p.getField() < 0 || p.getField() >= tupleDesc.numFields())
+            return false;
+        Type type = tupleDesc.getFieldType(p.getField());
+        if (type == Type.INT_TYPE)
+            return p.getOperand() instanceof IntField;
+        return format == PageFormat.COMPRESSED && p.getOperand() instanceof StringField;
     }
 
     /**
@@ -164,15 +803,37 @@ public class HeapFile implements DbFile {
         private final HeapFile heapFile;
         private final TransactionId tid;
 
+        /**
+         * 在页数据上直接求值的谓词，为null时返回所有元组
+         */
+        private final Predicate predicate;
+
+        /**
+         * 要解码的字段，为null时解码所有字段
+         */
+        private final int[] fields;
+
+        /**
+         * 是否根据zone map跳过不可能满足谓词的页
+         */
+        private boolean skipPages;
+
+        /**
+         * 检测顺序访问，并预读后续的页
+         */
+        private SequentialReadAhead readAhead;
+
         /**
          * 用于迭代HeapFile中Tuple的迭代器
          */
         private Iterator<Tuple> tupleIterator;
         private int index;
 
-        public HeapFileIterator(HeapFile hf, TransactionId tid) {
+        public HeapFileIterator(HeapFile hf, TransactionId tid, Predicate predicate, int[] fields) {
             this.heapFile = hf;
             this.tid = tid;
+            this.predicate = predicate;
+            this.fields = fields;
         }
 
         /**
@@ -182,6 +843,15 @@ public class HeapFile implements DbFile {
          */
         @Override
         public void open() throws DbException, TransactionAbortedException {
+            readAhead = new SequentialReadAhead(Database.getBufferPool().getPrefetcher(), heapFile.getId());
+            skipPages = predicate != null && heapFile.canSkipPages(predicate);
+            if (skipPages) {
+                try {
+                    heapFile.loadedZoneMap();
+                } catch (IOException e) {
+                    throw new DbException("failed to load the zone map of " + heapFile.f.getName() + ": " + e);
+                }
+            }
             tupleIterator = getTupleIterator(index);
         }
 
@@ -195,11 +865,15 @@ public class HeapFile implements DbFile {
         private Iterator<Tuple> getTupleIterator(int pageNo)
             throws TransactionAbortedException, DbException {
             // 页号存在
-            if (pageNo >= 0 && pageNo < heapFile.numPages()) {
+            int numPages = heapFile.numPages();
+            if (pageNo >= 0 && pageNo < numPages) {
+                if (skipPages && !heapFile.mayMatch(pageNo, predicate))
+                    return Collections.emptyIterator(); // 页中没有元组能满足谓词，不必读取
+                readAhead.access(pageNo, numPages);
                 HeapPageId pid = new HeapPageId(heapFile.getId(), pageNo);
                 HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid,
                         Permissions.READ_ONLY);
-                return page.iterator(); // 返回对该页的迭代器，从而实现对元组的迭代！
+                return page.iterator(predicate, fields); // 返回对该页的迭代器，从而实现对元组的迭代！
             } else {
                 throw new DbException(String.format("page[%d] doesn't exist in heapFile[%d]", pageNo, heapFile.getId()));
             }
@@ -248,6 +922,7 @@ public class HeapFile implements DbFile {
         @Override
         public void close() {
             tupleIterator = null;
+            readAhead = null;
             index = 0; // 重置回第一页
         }
     }
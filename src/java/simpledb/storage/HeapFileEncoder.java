@@ -5,7 +5,9 @@ import simpledb.common.Utility;
 
 import java.io.*;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * HeapFileEncoder reads a comma delimited text file or accepts
@@ -69,6 +71,75 @@ public class HeapFileEncoder {
         convert(inFile, outFile, npagebytes, numFields, typeAr, ',');
     }
 
+    /**
+     * Read a delimited text file, in the format accepted by
+     * {@link #convert(File, File, int, int, Type[], char)}, as tuples of the
+     * given TupleDesc. The file is read lazily, one line per call to next();
+     * it is closed when the last line has been read.
+     *
+     * @param inFile         The input file to read data from
+     * @param td             The TupleDesc of the returned tuples
+     * @param fieldSeparator The character between the fields of a line
+     * @return an iterator over the tuples of the file. Its methods throw
+     *         UncheckedIOException if the file cannot be read, and
+     *         IllegalArgumentException on a malformed line.
+     * @throws IOException if the input file can't be opened
+     */
+    public static Iterator<Tuple> readTuples(File inFile, TupleDesc td, char fieldSeparator)
+            throws IOException {
+        BufferedReader br = new BufferedReader(new FileReader(inFile));
+        String separator = java.util.regex.Pattern.quote(String.valueOf(fieldSeparator));
+        return new Iterator<Tuple>() {
+            private String line;
+            private int lineNo;
+
+            public boolean hasNext() {
+                try {
+                    while (line == null) {
+                        line = br.readLine();
+                        if (line == null) {
+                            br.close();
+                            return false;
+                        }
+                        lineNo++;
+                        if (line.trim().isEmpty()) // 跳过空行
+                            line = null;
+                    }
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            public Tuple next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                String[] values = line.split(separator, -1);
+                line = null;
+                if (values.length != td.numFields())
+                    throw new IllegalArgumentException("line " + lineNo + " of " + inFile + " has "
+                            + values.length + " fields, expected " + td.numFields());
+                Tuple t = new Tuple(td);
+                for (int i = 0; i < values.length; i++) {
+                    String value = values[i].trim();
+                    if (td.getFieldType(i) == Type.INT_TYPE) {
+                        try {
+                            t.setField(i, new IntField(Integer.parseInt(value)));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("line " + lineNo + " of " + inFile
+                                    + ": bad int " + value);
+                        }
+                    } else {
+                        if (value.length() > Type.STRING_LEN)
+                            value = value.substring(0, Type.STRING_LEN);
+                        t.setField(i, new StringField(value, Type.STRING_LEN));
+                    }
+                }
+                return t;
+            }
+        };
+    }
+
     /**
      * Convert the specified input text file into a binary
      * page file. <br>
@@ -86,12 +157,13 @@ public class HeapFileEncoder {
      * @param outFile    The output file to write data to
      * @param npagebytes The number of bytes per page in the output file
      * @param numFields  the number of fields in each input line/output tuple
+     * @return the number of tuples written
      * @throws IOException if the input/output file can't be opened or a
      *                     malformed input line is encountered
      * @see HeapPage
      * @see HeapFile
      */
-    public static void convert(File inFile, File outFile, int npagebytes,
+    public static long convert(File inFile, File outFile, int npagebytes,
                                int numFields, Type[] typeAr, char fieldSeparator)
             throws IOException {
 
@@ -118,6 +190,7 @@ public class HeapFileEncoder {
         int recordcount = 0;
         int npages = 0;
         int fieldNo = 0;
+        long tuples = 0;
 
         ByteArrayOutputStream headerBAOS = new ByteArrayOutputStream(nheaderbytes);
         DataOutputStream headerStream = new DataOutputStream(headerBAOS);
@@ -218,11 +291,45 @@ public class HeapFileEncoder {
                 pageBAOS = new ByteArrayOutputStream(npagebytes);
                 pageStream = new DataOutputStream(pageBAOS);
 
+                tuples += recordcount;
                 recordcount = 0;
                 npages++;
             }
         }
         br.close();
         os.close();
+        return tuples;
+    }
+
+    /**
+     * Convert the specified input text file into a binary page file like
+     * {@link #convert(File, File, int, int, Type[], char)}, parsing the input
+     * on several threads. The output is identical to that of the serial
+     * encoder.
+     *
+     * @param threads the number of threads parsing the input
+     * @return the number of tuples written
+     * @throws IOException if the input/output file can't be opened
+     */
+    public static long convertParallel(File inFile, File outFile, int npagebytes,
+                                       int numFields, Type[] typeAr, char fieldSeparator, int threads)
+            throws IOException {
+        return convertParallel(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator, threads,
+                ParallelHeapFileEncoder.DEFAULT_CHUNK_BYTES);
+    }
+
+    /**
+     * As {@link #convertParallel(File, File, int, int, Type[], char, int)},
+     * splitting the input into chunks of about chunkBytes.
+     */
+    public static long convertParallel(File inFile, File outFile, int npagebytes,
+                                       int numFields, Type[] typeAr, char fieldSeparator, int threads,
+                                       int chunkBytes)
+            throws IOException {
+        long tuples = new ParallelHeapFileEncoder(inFile, outFile, npagebytes,
+                Arrays.copyOf(typeAr, numFields), fieldSeparator, chunkBytes).convert(threads);
+        if (tuples < 0) // 输入中有格式错误的行，由串行版本按原样处理
+            tuples = convert(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator);
+        return tuples;
     }
 }
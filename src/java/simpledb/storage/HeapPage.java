@@ -3,6 +3,8 @@ package simpledb.storage;
 import simpledb.common.Catalog;
 import simpledb.common.Database;
 import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
 import simpledb.transaction.TransactionId;
 
 import java.io.*;
@@ -11,6 +13,12 @@ import java.util.*;
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * A HeapPage keeps the bytes it was read from and decodes tuples lazily: a
+ * Tuple is only built when {@link #iterator()} returns it, and a
+ * {@link SlotCursor} reads int columns straight from the page bytes without
+ * building one at all. Tuples added to the page are kept as objects and
+ * merged with the original bytes by {@link #getPageData()}.
  *
  * @see HeapFile
  * @see BufferPool
@@ -19,16 +27,34 @@ public class HeapPage implements Page {
     final HeapPageId pid;
     final TupleDesc td;
     final byte[] header;
-    final Tuple[] tuples;
     final int numSlots;
 
+    /**
+     * 从磁盘读入的页数据，只读，不会被修改
+     */
+    final byte[] data;
+    /**
+     * slot s中字段i在data中的偏移为 fieldBase[i] + s * fieldStride[i]
+     */
+    final int[] fieldBase;
+    final int[] fieldStride;
+    /**
+     * 插入到该页的元组；为null的slot从data中解码。第一次插入时才分配
+     */
+    Tuple[] tuples;
+
     byte[] oldData;
-    private final Byte oldDataLock = (byte) 0;
+    final Byte oldDataLock = (byte) 0;
 
     /**
      * 使用的slot的数量
      */
     private int numUsedSlots;
+
+    /**
+     * 最近一次弄脏该页的事务，页是干净的则为null
+     */
+    private volatile TransactionId dirtier;
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
      * The format of a HeapPage is a set of header bytes indicating
@@ -47,28 +73,59 @@ public class HeapPage implements Page {
      * @see BufferPool#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, data, false);
+    }
+
+    /**
+     * Create a HeapPage whose tuples are stored row by row, as described
+     * above, or column by column.
+     *
+     * @param columnMajor if true, the slots hold the values of the first
+     *                    field, then of the second, and so on
+     * @see PaxHeapPage
+     */
+    HeapPage(HeapPageId id, byte[] data, boolean columnMajor) {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId()); // 根据表的ID，从catalog中获取tableDesc，并从中获取tupleDesc
         this.numSlots = getNumTuples(); // 获取元组数
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        this.data = data;
 
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()]; // 获取header数量
-        for (int i = 0; i < header.length; i++)
-            header[i] = dis.readByte();
+        // read the header slots of this page; the tuples are decoded on demand
+        header = Arrays.copyOf(data, getHeaderSize()); // 获取header数量
 
-        tuples = new Tuple[numSlots];
-        try {
-            // allocate and read the actual records of this page
-            for (int i = 0; i < tuples.length; i++) {
-                tuples[i] = readNextTuple(dis, i); // 从输入中读取第i个slot的那个元组
-//                if (tuples[i] != null) System.out.println(i + " " + tuples[i]);
+        fieldBase = new int[td.numFields()];
+        fieldStride = new int[td.numFields()];
+        for (int j = 0; j < fieldBase.length; j++) {
+            if (columnMajor) {
+                fieldBase[j] = header.length + numSlots * td.getFieldOffset(j);
+                fieldStride[j] = td.getFieldType(j).getLen();
+            } else {
+                fieldBase[j] = header.length + td.getFieldOffset(j);
+                fieldStride[j] = td.getSize();
             }
-        } catch (NoSuchElementException e) {
-            e.printStackTrace();
         }
-        dis.close();
-        setBeforeImage();
+        synchronized (oldDataLock) {
+            oldData = data; // 页数据本身不会被修改，可以直接作为before image
+        }
+    }
+
+    /**
+     * Constructor for subclasses that lay out the tuples of the page in
+     * another format; they use none of the fixed-size slots of this class.
+     *
+     * @see SlottedHeapPage
+     */
+    protected HeapPage(HeapPageId id, TupleDesc td, byte[] data) {
+        this.pid = id;
+        this.td = td;
+        this.numSlots = 0;
+        this.data = data;
+        this.header = new byte[0];
+        this.fieldBase = new int[0];
+        this.fieldStride = new int[0];
+        synchronized (oldDataLock) {
+            oldData = data;
+        }
     }
 
     /**
@@ -127,31 +184,44 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
-     * 从源文件中获取元组
+     * @return the offset in data of the first byte of the tuple in slotId
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) { // 如果该slot没有被元组占用
-            for (int i = 0; i < td.getSize(); i++) { // 读取一个元组的数据
-                try {
-                    dis.readByte(); // 把这些字节读完，从而跳过它们
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null; // 返回空
-        }
+    private int slotOffset(int slotId) {
+        return header.length + slotId * td.getSize();
+    }
+
+    /**
+     * @return the offset in data of the first byte of a field of the tuple
+     *         in slot
+     */
+    int fieldPosition(int slot, int field) {
+        return fieldBase[field] + slot * fieldStride[field];
+    }
+
+    /**
+     * Return the tuple in slotId, decoding it from the page bytes unless it
+     * was inserted into this page object.
+     * 返回某个slot中的元组，如果不是插入的元组，则从页数据中解码
+     *
+     * @return the tuple, or null if the slot is empty
+     */
+    private Tuple tuple(int slotId) throws NoSuchElementException {
+        if (!isSlotUsed(slotId)) // 如果该slot没有被元组占用
+            return null;
+        if (tuples != null && tuples[slotId] != null)
+            return tuples[slotId];
 
         // read fields in the tuple
         Tuple t = new Tuple(td);
         RecordId rid = new RecordId(pid, slotId);
         t.setRecordId(rid); // 设置recordId为某页的ID和对应slotId
         try {
-            for (int j = 0; j < td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
+            for (int j = 0; j < fieldBase.length; j++) {
+                Type type = td.getFieldType(j);
+                if (type == Type.INT_TYPE)
+                    t.setInt(j, Type.readInt(data, fieldPosition(slotId, j)));
+                else
+                    t.setField(j, type.parse(data, fieldPosition(slotId, j)));
             }
         } catch (java.text.ParseException e) {
             e.printStackTrace();
@@ -189,11 +259,12 @@ public class HeapPage implements Page {
         }
 
         // create the tuples
-        for (int i = 0; i < tuples.length; i++) {
+        int tupleSize = td.getSize();
+        for (int i = 0; i < numSlots; i++) {
             // empty slot
             // 某个slot没有tuple
             if (!isSlotUsed(i)) {
-                for (int j = 0; j < td.getSize(); j++) { // 写一个tuple的大小的数据，但都是0
+                for (int j = 0; j < tupleSize; j++) { // 写一个tuple的大小的数据，但都是0
                     try {
                         dos.writeByte(0);
                     } catch (IOException e) {
@@ -203,7 +274,15 @@ public class HeapPage implements Page {
                 }
                 continue;
             }
-            // non-empty slot
+            // non-empty slot that still holds the tuple read from disk
+            if (tuples == null || tuples[i] == null) {
+                try {
+                    dos.write(data, slotOffset(i), tupleSize); // 直接复制原始字节
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
             for (int j = 0; j < td.numFields(); j++) { // 对tuple中的每个字段
                 Field f = tuples[i].getField(j); // 获取tuple中的每个field
                 try {
@@ -215,7 +294,7 @@ public class HeapPage implements Page {
         }
         // 对没有数据的地方进行填充
         // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
+        int zerolen = BufferPool.getPageSize() - (header.length + tupleSize * numSlots);
         byte[] zeroes = new byte[zerolen];
         try {
             dos.write(zeroes, 0, zerolen);
@@ -257,6 +336,15 @@ public class HeapPage implements Page {
     public void deleteTuple(Tuple t) throws DbException {
         // TODO: some code goes here
         // not necessary for lab1
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId()))
+            throw new DbException("tuple is not on page " + pid);
+        int slot = rid.getTupleNumber();
+        if (slot < 0 || slot >= numSlots || !isSlotUsed(slot))
+            throw new DbException("slot " + slot + " of page " + pid + " is already empty");
+        markSlotUsed(slot, false);
+        if (tuples != null)
+            tuples[slot] = null;
     }
 
     /**
@@ -270,6 +358,19 @@ public class HeapPage implements Page {
     public void insertTuple(Tuple t) throws DbException {
         // TODO: some code goes here
         // not necessary for lab1
+        if (!td.equals(t.getTupleDesc()))
+            throw new DbException("tupleDesc of the tuple does not match page " + pid);
+        for (int i = 0; i < numSlots; i++) {
+            if (isSlotUsed(i))
+                continue;
+            if (tuples == null)
+                tuples = new Tuple[numSlots];
+            markSlotUsed(i, true);
+            t.setRecordId(new RecordId(pid, i));
+            tuples[i] = t;
+            return;
+        }
+        throw new DbException("page " + pid + " is full");
     }
 
     /**
@@ -279,6 +380,7 @@ public class HeapPage implements Page {
     public void markDirty(boolean dirty, TransactionId tid) {
         // TODO: some code goes here
         // not necessary for lab1
+        this.dirtier = dirty ? tid : null;
     }
 
     /**
@@ -287,7 +389,7 @@ public class HeapPage implements Page {
     public TransactionId isDirty() {
         // TODO: some code goes here
         // Not necessary for lab1
-        return null;      
+        return dirtier;
     }
 
     /**
@@ -296,7 +398,10 @@ public class HeapPage implements Page {
     public int getNumUnusedSlots() {
         // TODO: some code goes here
         int usedSlots = 0;
-        for (int i = 0; i < tuples.length; ++i) {
+        int fullBytes = numSlots / 8;
+        for (int i = 0; i < fullBytes; ++i)
+            usedSlots += Integer.bitCount(header[i] & 0xff);
+        for (int i = fullBytes * 8; i < numSlots; ++i) {
             if (isSlotUsed(i)) ++usedSlots;
         }
         return numSlots - usedSlots;
@@ -317,6 +422,11 @@ public class HeapPage implements Page {
     private void markSlotUsed(int i, boolean value) {
         // TODO: some code goes here
         // not necessary for lab1
+        int headerIdx = i / 8, tupleIdxInheader = i % 8;
+        if (value)
+            header[headerIdx] |= (byte) (1 << tupleIdxInheader);
+        else
+            header[headerIdx] &= (byte) ~(1 << tupleIdxInheader);
     }
 
     /**
@@ -328,6 +438,74 @@ public class HeapPage implements Page {
         return new Itr();
     }
 
+    /**
+     * @return an iterator over the tuples on this page whose int field
+     *         satisfies "field op operand". The predicate is evaluated on the
+     *         page bytes, so tuples that fail it are never built.
+     */
+    public Iterator<Tuple> iterator(int field, Predicate.Op op, int operand) {
+        return iterator(field, op, operand, null);
+    }
+
+    /**
+     * @return an iterator over all tuples on this page, in which only the
+     *         given fields are set; the others keep the values of a new
+     *         Tuple
+     */
+    public Iterator<Tuple> iterator(int[] fields) {
+        return iterator(-1, null, 0, fields);
+    }
+
+    /**
+     * @param field  the int field the predicate compares, or -1 to return
+     *               every tuple
+     * @param fields the fields to set in the returned tuples, or null for
+     *               all of them
+     * @return an iterator over the tuples on this page whose int field
+     *         satisfies "field op operand", in which only the given fields
+     *         are set; the others keep the values of a new Tuple
+     */
+    public Iterator<Tuple> iterator(int field, Predicate.Op op, int operand, int[] fields) {
+        if (field >= 0 && td.getFieldType(field) != Type.INT_TYPE)
+            throw new IllegalArgumentException("field " + field + " is not an int field");
+        SlotCursor cursor = cursor();
+        return new Iterator<Tuple>() {
+            boolean advanced;
+            boolean more;
+
+            public boolean hasNext() {
+                if (!advanced) {
+                    do {
+                        more = cursor.next();
+                    } while (more && field >= 0 && !op.compare(cursor.getInt(field), operand));
+                    advanced = true;
+                }
+                return more;
+            }
+
+            public Tuple next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                advanced = false;
+                return fields == null ? cursor.getTuple() : cursor.getTuple(fields);
+            }
+        };
+    }
+
+    /**
+     * @param p      a predicate that compares an int field of this page with
+     *               an IntField, or null to return every tuple
+     * @param fields the fields to set in the returned tuples, or null for
+     *               all of them
+     * @return an iterator over the tuples on this page that satisfy p
+     * @see HeapFile#canEvaluate
+     */
+    public Iterator<Tuple> iterator(Predicate p, int[] fields) {
+        if (p == null)
+            return fields == null ? iterator() : iterator(fields);
+        return iterator(p.getField(), p.getOp(), ((IntField) p.getOperand()).getValue(), fields);
+    }
+
     private class Itr implements Iterator<Tuple> {
         int cursor;       // index of next element to return
         int usedSlots = numSlots - getNumUnusedSlots();
@@ -344,14 +522,115 @@ public class HeapPage implements Page {
         public Tuple next() {
             while (true) {
                 int i = cursor;
-                if (i >= tuples.length)
+                if (i >= numSlots)
                     throw new NoSuchElementException();
                 cursor = i + 1;
                 if (isSlotUsed(i)) { // 一直到找到一个使用的slot为止
                     ++usedSlotCursor;
-                    return tuples[i];
+                    return tuple(i);
                 }
             }
         }
     }
+
+    /**
+     * @return a cursor positioned before the first used slot of this page
+     */
+    public SlotCursor cursor() {
+        return new SlotCursor();
+    }
+
+    /**
+     * SlotCursor walks over the used slots of a HeapPage and reads their
+     * fields in place. Only {@link #getTuple()} and {@link #getField(int)}
+     * allocate; {@link #getInt(int)} reads the value straight from the page
+     * bytes.
+     * <pre>
+     * HeapPage.SlotCursor c = page.cursor();
+     * while (c.next())
+     *     sum += c.getInt(0);
+     * </pre>
+     */
+    public class SlotCursor {
+        private int slot = -1;
+        /**
+         * 当前元组是否是插入到该页的元组
+         */
+        private boolean inserted;
+
+        SlotCursor() { }
+
+        /**
+         * Move to the next used slot.
+         *
+         * @return false if there are no more used slots
+         */
+        public boolean next() {
+            while (++slot < numSlots) {
+                // 整个header字节为0时一次跳过8个slot
+                if ((slot & 7) == 0 && header[slot >> 3] == 0) {
+                    slot += 7;
+                    continue;
+                }
+                if (isSlotUsed(slot)) {
+                    inserted = tuples != null && tuples[slot] != null;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the number of the current slot
+         */
+        public int slot() {
+            return slot;
+        }
+
+        /**
+         * @return the value of the ith field of the current tuple, which must
+         *         be an int field
+         */
+        public int getInt(int i) {
+            if (inserted)
+                return tuples[slot].getInt(i);
+            return Type.readInt(data, fieldBase[i] + slot * fieldStride[i]);
+        }
+
+        /**
+         * @return the ith field of the current tuple
+         */
+        public Field getField(int i) {
+            if (inserted)
+                return tuples[slot].getField(i);
+            try {
+                return td.getFieldType(i).parse(data, fieldBase[i] + slot * fieldStride[i]);
+            } catch (java.text.ParseException e) {
+                throw new NoSuchElementException("parsing error!");
+            }
+        }
+
+        /**
+         * @return the current tuple, with its RecordId set
+         */
+        public Tuple getTuple() {
+            return tuple(slot);
+        }
+
+        /**
+         * @return the current tuple, with its RecordId and only the given
+         *         fields set
+         */
+        public Tuple getTuple(int[] fields) {
+            Tuple t = new Tuple(td);
+            t.setRecordId(new RecordId(pid, slot()));
+            for (int i : fields) {
+                if (td.getFieldType(i) == Type.INT_TYPE)
+                    t.setInt(i, getInt(i));
+                else
+                    t.setField(i, getField(i));
+            }
+            return t;
+        }
+    }
 }
\ No newline at end of file
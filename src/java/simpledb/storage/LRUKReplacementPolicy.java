@@ -0,0 +1,130 @@
+package simpledb.storage;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * LRU-K replacement (O'Neil, O'Neil and Weikum). The victim is the evictable
+ * page whose K-th most recent access lies furthest in the past. Pages that
+ * have been referenced fewer than K times have an infinite backward
+ * K-distance and go first, oldest first, so pages touched once by a scan are
+ * dropped before the hot working set.
+ * <p>
+ * Access history is retained for a bounded number of recently evicted pages,
+ * so a page that comes back soon after being evicted is not mistaken for a
+ * page seen only once.
+ */
+public class LRUKReplacementPolicy implements ReplacementPolicy {
+
+    public static final int DEFAULT_K = 2;
+
+    private final int k;
+    private final int retainedHistory;
+
+    /**
+     * 逻辑时钟，每次访问加一
+     */
+    private long clock;
+
+    /**
+     * 页的最近K次访问时间，history[0]为最近一次；包括已被换出的页
+     */
+    private final LinkedHashMap<PageId, long[]> history;
+    private final Set<PageId> resident;
+
+    /**
+     * @param numPages the number of frames in the buffer pool
+     */
+    public LRUKReplacementPolicy(int numPages) {
+        this(numPages, DEFAULT_K);
+    }
+
+    /**
+     * @param numPages the number of frames in the buffer pool
+     * @param k        the number of past references to keep per page
+     */
+    public LRUKReplacementPolicy(int numPages, int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be positive");
+        this.k = k;
+        this.retainedHistory = Math.max(1, numPages);
+        this.history = new LinkedHashMap<>();
+        this.resident = new HashSet<>();
+    }
+
+    @Override
+    public synchronized void pageAdmitted(PageId pid) {
+        resident.add(pid);
+        touch(pid);
+        trimHistory();
+    }
+
+    @Override
+    public synchronized void pageAccessed(PageId pid) {
+        if (resident.contains(pid))
+            touch(pid);
+    }
+
+    @Override
+    public synchronized void pageRemoved(PageId pid) {
+        resident.remove(pid);
+        history.remove(pid);
+    }
+
+    @Override
+    public synchronized PageId chooseVictim(Predicate<PageId> evictable) {
+        PageId victim = null;
+        long victimKth = Long.MAX_VALUE, victimLast = Long.MAX_VALUE;
+        for (PageId pid : resident) {
+            long[] h = history.get(pid);
+            // 访问不足K次的页，其第K次访问时间视为负无穷
+            long kth = h[k - 1] == 0 ? Long.MIN_VALUE : h[k - 1];
+            long last = h[0];
+            if (kth < victimKth || (kth == victimKth && last < victimLast)) {
+                if (!evictable.test(pid))
+                    continue;
+                victim = pid;
+                victimKth = kth;
+                victimLast = last;
+            }
+        }
+        // 历史在下次读入页时才裁剪，被拒绝的victim可以保留它的历史
+        if (victim != null)
+            resident.remove(victim);
+        return victim;
+    }
+
+    @Override
+    public synchronized void victimRejected(PageId pid) {
+        resident.add(pid);
+        history.computeIfAbsent(pid, p -> new long[k]);
+    }
+
+    private void touch(PageId pid) {
+        long[] h = history.remove(pid); // re-insert to keep history in access order
+        if (h == null)
+            h = new long[k];
+        System.arraycopy(h, 0, h, 1, k - 1);
+        h[0] = ++clock;
+        history.put(pid, h);
+    }
+
+    /**
+     * Forget the oldest non-resident pages once more than retainedHistory of
+     * them are remembered.
+     */
+    private void trimHistory() {
+        int excess = history.size() - resident.size() - retainedHistory;
+        Iterator<Map.Entry<PageId, long[]>> it = history.entrySet().iterator();
+        while (excess > 0 && it.hasNext()) {
+            if (!resident.contains(it.next().getKey())) {
+                it.remove();
+                excess--;
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package simpledb.storage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Least-recently-used replacement: the victim is the evictable page whose
+ * last access is the oldest. Simple and cheap, but a single large scan
+ * pushes every other page out of the pool.
+ */
+public class LRUReplacementPolicy implements ReplacementPolicy {
+
+    /**
+     * 按访问顺序排列的页，最久未被访问的页在最前面
+     */
+    private final LinkedHashMap<PageId, Boolean> resident;
+
+    /**
+     * @param numPages the number of frames in the buffer pool
+     */
+    public LRUReplacementPolicy(int numPages) {
+        this.resident = new LinkedHashMap<>(Math.max(16, numPages * 2), 0.75f, true);
+    }
+
+    @Override
+    public synchronized void pageAdmitted(PageId pid) {
+        resident.put(pid, Boolean.TRUE);
+    }
+
+    @Override
+    public synchronized void pageAccessed(PageId pid) {
+        resident.get(pid); // access-ordered map: get moves pid to the tail
+    }
+
+    @Override
+    public synchronized void pageRemoved(PageId pid) {
+        resident.remove(pid);
+    }
+
+    @Override
+    public synchronized PageId chooseVictim(Predicate<PageId> evictable) {
+        Iterator<PageId> it = resident.keySet().iterator();
+        while (it.hasNext()) {
+            PageId pid = it.next();
+            if (evictable.test(pid)) {
+                it.remove();
+                return pid;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void victimRejected(PageId pid) {
+        // 放回最前面；很少发生，重建访问顺序的代价可以接受
+        List<PageId> rest = new ArrayList<>(resident.keySet());
+        resident.clear();
+        resident.put(pid, Boolean.TRUE);
+        for (PageId p : rest)
+            resident.put(p, Boolean.TRUE);
+    }
+}
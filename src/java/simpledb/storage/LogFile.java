@@ -58,8 +58,8 @@ must not be declared synchronized and must begin with a block like:
  * <li> Each log record ends with a long integer file offset representing
  * the position in the log file where the record began.
  *
- * <li> There are five record types: ABORT, COMMIT, UPDATE, BEGIN, and
- * CHECKPOINT
+ * <li> There are six record types: ABORT, COMMIT, UPDATE, BEGIN,
+ * CHECKPOINT and BULK_LOAD
  *
  * <li> ABORT, COMMIT, and BEGIN records contain no additional data
  *
@@ -74,6 +74,13 @@ must not be declared synchronized and must begin with a block like:
  * as a long integer transaction id and a long integer first record offset
  * for each active transaction.
  *
+ * <li> BULK_LOAD records describe pages appended to a HeapFile by
+ * {@link HeapFile#bulkLoad} without going through the BufferPool: an
+ * integer table id, the integer number of the first appended page and the
+ * integer number of appended pages. The pages are forced to disk before the
+ * record is written, so a committed bulk load needs no redo, and undoing
+ * one means truncating the file back to its first appended page.
+ *
  * </ul>
  */
 public class LogFile {
@@ -87,6 +94,7 @@ public class LogFile {
     static final int UPDATE_RECORD = 3;
     static final int BEGIN_RECORD = 4;
     static final int CHECKPOINT_RECORD = 5;
+    static final int BULK_LOAD_RECORD = 6;
     static final long NO_CHECKPOINT_ID = -1;
 
     final static int INT_SIZE = 4;
@@ -228,6 +236,28 @@ public class LogFile {
         Debug.log("WRITE OFFSET = " + currentOffset);
     }
 
+    /**
+     * Write a BULK_LOAD record for pages appended to a table without
+     * before/after images. The appended pages must already be on disk.
+     *
+     * @param tid       The transaction performing the load
+     * @param tableId   The table the pages were appended to
+     * @param firstPage The number of the first appended page
+     * @param numPages  The number of appended pages
+     */
+    public synchronized void logBulkLoad(TransactionId tid, int tableId, int firstPage, int numPages)
+            throws IOException {
+        Debug.log("BULK LOAD, offset = " + raf.getFilePointer());
+        preAppend();
+        raf.writeInt(BULK_LOAD_RECORD);
+        raf.writeLong(tid.getId());
+        raf.writeInt(tableId);
+        raf.writeInt(firstPage);
+        raf.writeInt(numPages);
+        raf.writeLong(currentOffset);
+        currentOffset = raf.getFilePointer();
+    }
+
     void writePageData(RandomAccessFile raf, Page p) throws IOException {
         PageId pid = p.getId();
         int[] pageInfo = pid.serialize();
@@ -275,7 +305,13 @@ public class LogFile {
             }
             pid = (PageId) idConsts[0].newInstance(idArgs);
 
+            // prefer the (id, data) constructor; a page class may declare others
             Constructor<?>[] pageConsts = pageClass.getDeclaredConstructors();
+            Constructor<?> pageConst = pageConsts[0];
+            for (Constructor<?> c : pageConsts) {
+                if (c.getParameterCount() == 2)
+                    pageConst = c;
+            }
             int pageSize = raf.readInt();
 
             byte[] pageData = new byte[pageSize];
@@ -285,7 +321,7 @@ public class LogFile {
             pageArgs[0] = pid;
             pageArgs[1] = pageData;
 
-            newPage = (Page) pageConsts[0].newInstance(pageArgs);
+            newPage = (Page) pageConst.newInstance(pageArgs);
 
             //            Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
         } catch (ClassNotFoundException | InvocationTargetException | IllegalAccessException | InstantiationException e) {
@@ -296,6 +332,80 @@ public class LogFile {
 
     }
 
+    /**
+     * Read a page serialized by writePageData and return its data if it is
+     * an image of pid, or null if it is an image of another page.
+     */
+    private byte[] readPageBytes(RandomAccessFile raf, PageId pid) throws IOException {
+        raf.readUTF(); // page class name
+        String idClassName = raf.readUTF();
+        int[] idArgs = new int[raf.readInt()];
+        for (int i = 0; i < idArgs.length; i++)
+            idArgs[i] = raf.readInt();
+        int pageSize = raf.readInt();
+        if (!idClassName.equals(pid.getClass().getName()) || !Arrays.equals(idArgs, pid.serialize())) {
+            raf.skipBytes(pageSize);
+            return null;
+        }
+        byte[] pageData = new byte[pageSize];
+        raf.readFully(pageData);
+        return pageData;
+    }
+
+    /**
+     * Find the current on-disk contents of a page in the log, to repair a
+     * page that was torn by a partial write. Pages are written to disk when
+     * the transaction that dirtied them commits, right after their UPDATE
+     * record, so the page should hold the after image of its last UPDATE
+     * record if that transaction committed, and the before image otherwise.
+     *
+     * @param pid the page to look for
+     * @return the page data, or null if the log has no UPDATE record for pid
+     */
+    public synchronized byte[] findPageImage(PageId pid) throws IOException {
+        long curOffset = raf.getFilePointer();
+        Set<Long> committed = new HashSet<>();
+        long lastTid = -1;
+        byte[] lastBefore = null;
+        byte[] lastAfter = null;
+        try {
+            raf.seek(0);
+            raf.readLong(); // checkpoint offset
+            while (true) {
+                int type = raf.readInt();
+                long tid = raf.readLong();
+                switch (type) {
+                    case UPDATE_RECORD:
+                        byte[] before = readPageBytes(raf, pid);
+                        byte[] after = readPageBytes(raf, pid);
+                        if (after != null) {
+                            lastTid = tid;
+                            lastBefore = before;
+                            lastAfter = after;
+                        }
+                        break;
+                    case COMMIT_RECORD:
+                        committed.add(tid);
+                        break;
+                    case CHECKPOINT_RECORD:
+                        raf.skipBytes(raf.readInt() * 2 * LONG_SIZE);
+                        break;
+                    case BULK_LOAD_RECORD:
+                        raf.skipBytes(3 * INT_SIZE);
+                        break;
+                }
+                raf.readLong(); // record start offset
+            }
+        } catch (EOFException e) {
+            // end of the log
+        } finally {
+            raf.seek(curOffset);
+        }
+        if (lastAfter == null)
+            return null;
+        return committed.contains(lastTid) ? lastAfter : lastBefore;
+    }
+
     /**
      * Write a BEGIN record for the specified transaction
      *
@@ -435,6 +545,11 @@ public class LogFile {
                     case BEGIN_RECORD:
                         tidToFirstLogRecord.put(record_tid, newStart);
                         break;
+                    case BULK_LOAD_RECORD:
+                        logNew.writeInt(raf.readInt()); // table id
+                        logNew.writeInt(raf.readInt()); // first page
+                        logNew.writeInt(raf.readInt()); // number of pages
+                        break;
                 }
 
                 //all xactions finish with a pointer
@@ -572,6 +687,13 @@ public class LogFile {
 
                         System.out.println(raf.getFilePointer() + ": RECORD START OFFSET: " + raf.readLong());
 
+                        break;
+                    case BULK_LOAD_RECORD:
+                        System.out.println(" (BULK LOAD)");
+                        System.out.println(raf.getFilePointer() + ": TABLE ID: " + raf.readInt());
+                        System.out.println(raf.getFilePointer() + ": FIRST PAGE: " + raf.readInt());
+                        System.out.println(raf.getFilePointer() + ": NUMBER OF PAGES: " + raf.readInt());
+                        System.out.println(raf.getFilePointer() + ": RECORD START OFFSET: " + raf.readLong());
                         break;
                 }
 
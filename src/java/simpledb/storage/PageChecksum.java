@@ -0,0 +1,104 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * PageChecksum implements the optional CRC32C trailer of the pages of a
+ * DbFile. A file with checksums stores each page followed by the 4-byte
+ * CRC32C of its bytes, so the page formats themselves are unchanged; the
+ * file computes page offsets with {@link #diskSize(int, boolean)}.
+ * <p>
+ * A page whose bytes and trailer are all zero has never been written and is
+ * accepted as it is. Any other page whose trailer does not match was torn
+ * by a partial write or damaged on disk; it is repaired from the last image
+ * of the page in the LogFile, if the log still has one.
+ * <p>
+ * {@link CRC32C} uses the CRC32 instructions of the processor where they
+ * are available.
+ */
+public class PageChecksum {
+
+    /**
+     * Size in bytes of the trailer following each page.
+     */
+    public static final int TRAILER_SIZE = 4;
+
+    private PageChecksum() {
+    }
+
+    /**
+     * @return the number of bytes a page of pageSize bytes takes on disk
+     */
+    public static int diskSize(int pageSize, boolean checksums) {
+        return checksums ? pageSize + TRAILER_SIZE : pageSize;
+    }
+
+    /**
+     * @return the CRC32C of buf[off, off + len)
+     */
+    public static int compute(byte[] buf, int off, int len) {
+        CRC32C crc = new CRC32C();
+        crc.update(buf, off, len);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @return a copy of page followed by its trailer
+     */
+    public static byte[] seal(byte[] page) {
+        byte[] sealed = Arrays.copyOf(page, page.length + TRAILER_SIZE);
+        seal(sealed, 0, page.length);
+        return sealed;
+    }
+
+    /**
+     * Write the trailer of the page buf[off, off + len) at off + len.
+     */
+    public static void seal(byte[] buf, int off, int len) {
+        int crc = compute(buf, off, len);
+        buf[off + len] = (byte) (crc >>> 24);
+        buf[off + len + 1] = (byte) (crc >>> 16);
+        buf[off + len + 2] = (byte) (crc >>> 8);
+        buf[off + len + 3] = (byte) crc;
+    }
+
+    /**
+     * @return true if the page buf[off, off + len) matches the trailer that
+     *         follows it, or if the page and its trailer are all zero
+     */
+    public static boolean verify(byte[] buf, int off, int len) {
+        int stored = (buf[off + len] & 0xff) << 24 | (buf[off + len + 1] & 0xff) << 16
+                | (buf[off + len + 2] & 0xff) << 8 | buf[off + len + 3] & 0xff;
+        if (stored == compute(buf, off, len))
+            return true;
+        if (stored != 0)
+            return false;
+        for (int i = off; i < off + len; i++) {
+            if (buf[i] != 0)
+                return false;
+        }
+        return true; // 从未写过的页
+    }
+
+    /**
+     * Repair a page that failed its checksum: find the last image of pid in
+     * the log, write it back at offset with its trailer and return it.
+     *
+     * @param io     the file the page is stored in
+     * @param offset the offset of the page in the file
+     * @return the repaired page bytes
+     * @throws IOException if the log has no image of the page
+     */
+    public static byte[] repair(FilePageIO io, long offset, PageId pid) throws IOException {
+        byte[] image = Database.getLogFile().findPageImage(pid);
+        if (image == null)
+            throw new IOException("checksum mismatch on page " + pid.getPageNumber() + " of table "
+                    + pid.getTableId() + ", and the log has no image to repair it from");
+        io.write(offset, seal(image));
+        return image;
+    }
+}
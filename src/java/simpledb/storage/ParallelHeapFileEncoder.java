@@ -0,0 +1,298 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * ParallelHeapFileEncoder converts a delimited text file into a heap file on
+ * several threads, producing the same bytes as the serial
+ * {@link HeapFileEncoder#convert(File, File, int, int, Type[], char)}.
+ * <p>
+ * The input is split into chunks of about chunkBytes that end at a line
+ * boundary. The chunks are parsed and their records encoded on a fork-join
+ * pool, a bounded number of chunks ahead of the writer. The writer takes the
+ * chunks in input order, lays their records out into pages and writes each
+ * run of pages at its offset in the output file.
+ * <p>
+ * The serial encoder writes malformed lines (a bad int, too few or too many
+ * fields, a last line without a newline) as records of the wrong length,
+ * which shifts the rest of the file. Such input cannot be split into pages
+ * independently, so when a chunk contains a malformed line the file is
+ * converted again by the serial encoder.
+ */
+class ParallelHeapFileEncoder {
+
+    /**
+     * Default size of the chunks the input is split into.
+     */
+    static final int DEFAULT_CHUNK_BYTES = 4 << 20;
+
+    /**
+     * The serial encoder reads each field into a buffer of this many chars.
+     */
+    private static final int MAX_FIELD_CHARS = 1024;
+
+    /**
+     * Thrown by a chunk task when a line cannot be encoded as a record of
+     * the expected length.
+     */
+    private static class MalformedLineException extends RuntimeException {
+        MalformedLineException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * The encoded records of one chunk.
+     */
+    private static class Chunk {
+        final byte[] records;
+        final int count;
+
+        Chunk(byte[] records, int count) {
+            this.records = records;
+            this.count = count;
+        }
+    }
+
+    private final File inFile;
+    private final File outFile;
+    private final int npagebytes;
+    private final Type[] typeAr;
+    private final char fieldSeparator;
+    private final int chunkBytes;
+    private final Charset charset = Charset.defaultCharset();
+
+    private final int nrecbytes;
+    private final int nrecords;
+    private final int nheaderbytes;
+
+    ParallelHeapFileEncoder(File inFile, File outFile, int npagebytes, Type[] typeAr,
+                            char fieldSeparator, int chunkBytes) {
+        this.inFile = inFile;
+        this.outFile = outFile;
+        this.npagebytes = npagebytes;
+        this.typeAr = typeAr;
+        this.fieldSeparator = fieldSeparator;
+        this.chunkBytes = chunkBytes;
+        int recbytes = 0;
+        for (Type t : typeAr)
+            recbytes += t.getLen();
+        this.nrecbytes = recbytes;
+        // same layout as HeapFileEncoder.convert
+        this.nrecords = (npagebytes * 8) / (nrecbytes * 8 + 1);
+        this.nheaderbytes = (nrecords + 7) / 8;
+    }
+
+    /**
+     * Convert the input file on the given number of threads.
+     *
+     * @return the number of tuples written, or -1 if the input has to be
+     *         converted by the serial encoder
+     */
+    long convert(int threads) throws IOException {
+        // 只有'\n'按单字节编码时才能按字节切分行
+        if (!Arrays.equals("\n".getBytes(charset), new byte[]{'\n'}))
+            return -1;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (FileChannel in = FileChannel.open(inFile.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(outFile.toPath(), StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            Deque<ForkJoinTask<Chunk>> window = new ArrayDeque<>();
+            long next = 0;
+            int pageNo = 0;
+            long tuples = 0;
+            // records of the page being filled, carried from one chunk to the next
+            byte[] pending = new byte[nrecords * nrecbytes];
+            int pendingCount = 0;
+            while (next < size || !window.isEmpty()) {
+                while (next < size && window.size() < 2 * threads) {
+                    long start = next;
+                    long end = lineBoundary(in, start + chunkBytes, size);
+                    window.add(pool.submit(() -> encode(in, start, end, end == size)));
+                    next = end;
+                }
+                Chunk chunk;
+                try {
+                    chunk = window.poll().join();
+                } catch (MalformedLineException e) {
+                    return -1;
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                int total = pendingCount + chunk.count;
+                int fullPages = total / nrecords;
+                byte[] pages = new byte[fullPages * npagebytes];
+                int from = 0; // next record of the chunk
+                for (int p = 0; p < fullPages; p++) {
+                    int base = p * npagebytes;
+                    writeHeader(pages, base, nrecords);
+                    int pos = base + nheaderbytes;
+                    if (pendingCount > 0) {
+                        System.arraycopy(pending, 0, pages, pos, pendingCount * nrecbytes);
+                        pos += pendingCount * nrecbytes;
+                    }
+                    int n = nrecords - pendingCount;
+                    System.arraycopy(chunk.records, from * nrecbytes, pages, pos, n * nrecbytes);
+                    from += n;
+                    pendingCount = 0;
+                }
+                int left = chunk.count - from;
+                System.arraycopy(chunk.records, from * nrecbytes, pending, pendingCount * nrecbytes,
+                        left * nrecbytes);
+                pendingCount += left;
+                write(out, (long) pageNo * npagebytes, pages);
+                pageNo += fullPages;
+                tuples += chunk.count;
+            }
+            // the last, partly filled page; an empty input still gets one empty page
+            if (pendingCount > 0 || pageNo == 0) {
+                byte[] page = new byte[npagebytes];
+                writeHeader(page, 0, pendingCount);
+                System.arraycopy(pending, 0, page, nheaderbytes, pendingCount * nrecbytes);
+                write(out, (long) pageNo * npagebytes, page);
+            }
+            return tuples;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the offset just past the first newline at or after from, or
+     *         size if there is none
+     */
+    private static long lineBoundary(FileChannel in, long from, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        long pos = from;
+        while (pos < size) {
+            buf.clear();
+            int n = in.read(buf, pos);
+            if (n <= 0)
+                break;
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n')
+                    return pos + i + 1;
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    private static void write(FileChannel out, long offset, byte[] data) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        while (bb.hasRemaining())
+            out.write(bb, offset + bb.position());
+    }
+
+    /**
+     * Set the header bits of the first count slots of the page at base.
+     */
+    private void writeHeader(byte[] pages, int base, int count) {
+        Arrays.fill(pages, base, base + count / 8, (byte) 0xff);
+        if (count % 8 > 0)
+            pages[base + count / 8] = (byte) ((1 << (count % 8)) - 1);
+    }
+
+    /**
+     * Parse the lines of input bytes [start, end) and encode them as records,
+     * following the serial encoder: '\r' is ignored, empty lines are
+     * skipped, fields are trimmed and strings cut to Type.STRING_LEN.
+     *
+     * @param last whether the chunk ends the file, possibly without a newline
+     * @throws MalformedLineException if a line does not encode to a record
+     *                                of the expected length
+     */
+    private Chunk encode(FileChannel in, long start, long end, boolean last) {
+        byte[] bytes = new byte[(int) (end - start)];
+        try {
+            ByteBuffer bb = ByteBuffer.wrap(bytes);
+            while (bb.hasRemaining()) {
+                if (in.read(bb, start + bb.position()) < 0)
+                    throw new IOException("unexpected end of " + inFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int lines = 1;
+        for (byte b : bytes) {
+            if (b == '\n')
+                lines++;
+        }
+        String text = new String(bytes, charset);
+        ByteBuffer records = ByteBuffer.allocate(lines * nrecbytes);
+        char[] buf = new char[MAX_FIELD_CHARS];
+        int curpos = 0;
+        int fieldNo = 0;
+        int count = 0;
+        int lineStart = 0;
+        boolean first = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\r')
+                continue;
+            if (c == '\n') {
+                if (first)
+                    continue;
+                first = true;
+            } else {
+                first = false;
+            }
+            if (c == fieldSeparator || c == '\n') {
+                if (fieldNo >= typeAr.length)
+                    throw new MalformedLineException();
+                encodeField(new String(buf, 0, curpos), typeAr[fieldNo], records);
+                curpos = 0;
+                fieldNo++;
+                if (c == '\n') {
+                    if (records.position() - lineStart != nrecbytes)
+                        throw new MalformedLineException();
+                    count++;
+                    lineStart = records.position();
+                    fieldNo = 0;
+                }
+            } else {
+                if (curpos == MAX_FIELD_CHARS)
+                    throw new MalformedLineException();
+                buf[curpos++] = c;
+            }
+        }
+        // the serial encoder writes the finished fields of an unterminated
+        // last line without counting it as a record
+        if (fieldNo > 0 || !last && curpos > 0)
+            throw new MalformedLineException();
+        return new Chunk(records.array(), count);
+    }
+
+    private static void encodeField(String s, Type type, ByteBuffer records) {
+        if (type == Type.INT_TYPE) {
+            try {
+                records.putInt(Integer.parseInt(s.trim()));
+            } catch (NumberFormatException e) {
+                throw new MalformedLineException();
+            }
+        } else if (type == Type.STRING_TYPE) {
+            s = s.trim();
+            if (s.length() > Type.STRING_LEN)
+                s = s.substring(0, Type.STRING_LEN);
+            records.putInt(s.length());
+            // DataOutputStream.writeBytes: the low byte of each char
+            for (int i = 0; i < s.length(); i++)
+                records.put((byte) s.charAt(i));
+            records.position(records.position() + Type.STRING_LEN - s.length());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package simpledb.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * PaxHeapPage is a page of a HeapFile in the PAX format (Partition Attributes
+ * Across). It has the header and the slots of a {@link HeapPage}, but stores
+ * the values of each field together in a minipage: after the header come the
+ * values of field 0 of every slot, then those of field 1, and so on.
+ * <pre>
+ * header | f0[0] f0[1] ... f0[n-1] | f1[0] ... f1[n-1] | ... | padding
+ * </pre>
+ * A scan that reads a few fields of a wide table only touches their
+ * minipages (see {@link HeapPage#iterator(int[])}), instead of every tuple
+ * of the page.
+ *
+ * @see HeapFile.PageFormat#PAX
+ */
+public class PaxHeapPage extends HeapPage {
+
+    /**
+     * Create a PaxHeapPage from the bytes of a page read from disk.
+     */
+    public PaxHeapPage(HeapPageId id, byte[] data) {
+        super(id, data, true);
+    }
+
+    @Override
+    public PaxHeapPage getBeforeImage() {
+        byte[] oldDataRef;
+        synchronized (oldDataLock) {
+            oldDataRef = oldData;
+        }
+        return new PaxHeapPage(pid, oldDataRef);
+    }
+
+    /**
+     * Generates the bytes of this page: the header and each minipage, with
+     * the fields of inserted tuples serialized into their place.
+     */
+    @Override
+    public byte[] getPageData() {
+        byte[] page = new byte[BufferPool.getPageSize()];
+        System.arraycopy(header, 0, page, 0, header.length);
+        ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream(td.getSize());
+        DataOutputStream dos = new DataOutputStream(fieldBytes);
+        for (int slot = 0; slot < numSlots; slot++) {
+            if (!isSlotUsed(slot))
+                continue;
+            for (int j = 0; j < fieldBase.length; j++) {
+                int pos = fieldPosition(slot, j);
+                if (tuples == null || tuples[slot] == null) {
+                    System.arraycopy(data, pos, page, pos, fieldStride[j]); // 直接复制原始字节
+                    continue;
+                }
+                fieldBytes.reset();
+                try {
+                    tuples[slot].getField(j).serialize(dos);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                System.arraycopy(fieldBytes.toByteArray(), 0, page, pos, fieldStride[j]);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Scatter a serialized tuple, in the row format of Field.serialize, into
+     * the minipages of the page at buf[base].
+     *
+     * @param td     the schema of the tuple
+     * @param record the serialized tuple
+     */
+    static void scatter(TupleDesc td, int numSlots, byte[] buf, int base, int slot, byte[] record) {
+        int headerSize = (numSlots + 7) / 8;
+        for (int j = 0; j < td.numFields(); j++) {
+            int offset = td.getFieldOffset(j);
+            int len = td.getFieldType(j).getLen();
+            System.arraycopy(record, offset, buf, base + headerSize + numSlots * offset + slot * len, len);
+        }
+        buf[base + slot / 8] |= (byte) (1 << (slot % 8));
+    }
+}
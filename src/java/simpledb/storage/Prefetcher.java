@@ -0,0 +1,163 @@
+package simpledb.storage;
+
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prefetcher reads pages into a BufferPool ahead of demand, on a small pool
+ * of background threads. Access methods that detect a sequential pattern
+ * (see {@link SequentialReadAhead}) ask it for the next pages of the scan.
+ * <p>
+ * Prefetching is only a hint: requests are dropped when the queue is full,
+ * when the page is already resident or being read, or when the number of
+ * prefetched pages nobody has asked for yet reaches the cap. The cap is a
+ * quarter of the pool, so read-ahead can never displace more than that share
+ * of the pages in use; a pool with fewer than four pages does not prefetch.
+ * <p>
+ * The prefetcher counts hits (a prefetched page was later requested), misses
+ * (a sequential scan had to read a page itself), wasted prefetches (a
+ * prefetched page was evicted before anybody asked for it) and issued reads.
+ *
+ * @Threadsafe
+ */
+public class Prefetcher {
+
+    /**
+     * Default number of background threads issuing prefetch reads.
+     */
+    public static final int DEFAULT_THREADS = 2;
+
+    private static final int QUEUE_CAPACITY = 256;
+
+    private final BufferPool pool;
+    private final int maxOutstanding;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 已经预读进缓冲池、但还没有被请求过的页
+     */
+    private final Set<PageId> prefetched = ConcurrentHashMap.newKeySet();
+    /**
+     * 已提交但尚未读入的预读请求数
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder wasted = new LongAdder();
+
+    /**
+     * @param pool     the pool to read pages into
+     * @param numPages the capacity of pool, in pages
+     * @param threads  number of background reader threads
+     */
+    Prefetcher(BufferPool pool, int numPages, int threads) {
+        this.pool = pool;
+        this.maxOutstanding = numPages / 4;
+        ThreadFactory daemons = r -> {
+            Thread t = new Thread(r, "simpledb-prefetch");
+            t.setDaemon(true);
+            return t;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 1L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), daemons);
+        this.executor.allowCoreThreadTimeOut(true); // idle pools hold no threads
+    }
+
+    /**
+     * @return the largest number of pages that may be prefetched and not yet
+     *         requested at any time; 0 if prefetching is disabled
+     */
+    public int getMaxOutstanding() {
+        return maxOutstanding;
+    }
+
+    /**
+     * Asynchronously read pid into the buffer pool, unless the cap on
+     * outstanding prefetches has been reached.
+     *
+     * @return true if the request was accepted
+     */
+    public boolean prefetch(PageId pid) {
+        if (queued.get() + prefetched.size() >= maxOutstanding)
+            return false;
+        queued.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    pool.prefetchPage(pid);
+                } finally {
+                    queued.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 队列已满或已关闭，请求没有入队
+            queued.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Called by the pool when a prefetch read has installed pid.
+     */
+    void pageLoaded(PageId pid) {
+        issued.increment();
+        prefetched.add(pid);
+    }
+
+    /**
+     * Called by the pool when pid is requested through getPage.
+     */
+    void pageRequested(PageId pid) {
+        if (!prefetched.isEmpty() && prefetched.remove(pid))
+            hits.increment();
+    }
+
+    /**
+     * Called by the pool when pid leaves the pool.
+     */
+    void pageEvicted(PageId pid) {
+        if (!prefetched.isEmpty() && prefetched.remove(pid))
+            wasted.increment();
+    }
+
+    /**
+     * Called by a read-ahead when the scan requests a page it had not
+     * prefetched.
+     */
+    void recordMiss() {
+        misses.increment();
+    }
+
+    public long getIssued() {
+        return issued.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getWasted() {
+        return wasted.sum();
+    }
+
+    /**
+     * Stop the background threads; queued requests are dropped.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public String toString() {
+        return String.format("prefetch: issued=%d hits=%d misses=%d wasted=%d",
+                getIssued(), getHits(), getMisses(), getWasted());
+    }
+}
@@ -0,0 +1,63 @@
+package simpledb.storage;
+
+import java.util.function.Predicate;
+
+/**
+ * ReplacementPolicy decides which resident page the BufferPool discards when
+ * it runs out of frames. The BufferPool tells the policy about every page it
+ * admits, every hit and every page it drops; the policy only keeps track of
+ * PageIds, never of the pages themselves.
+ * <p>
+ * The BufferPool only asks for a victim among the pages it is allowed to
+ * evict (under NO STEAL: the clean ones), so a policy must be prepared to
+ * skip over pages rejected by the predicate passed to
+ * {@link #chooseVictim(Predicate)}.
+ * <p>
+ * Implementations must be thread safe.
+ *
+ * @see BufferPool
+ */
+public interface ReplacementPolicy {
+
+    /**
+     * Called after a page that was not resident has been added to the pool.
+     *
+     * @param pid the id of the page that was read in
+     */
+    void pageAdmitted(PageId pid);
+
+    /**
+     * Called every time a resident page is requested again (a cache hit).
+     *
+     * @param pid the id of the page that was accessed
+     */
+    void pageAccessed(PageId pid);
+
+    /**
+     * Called when a page leaves the pool for any reason other than being
+     * returned by {@link #chooseVictim(Predicate)} (e.g. removePage).
+     *
+     * @param pid the id of the page that is no longer resident
+     */
+    void pageRemoved(PageId pid);
+
+    /**
+     * Choose a resident page to evict. The returned page is no longer
+     * tracked as resident by this policy.
+     *
+     * @param evictable tells whether a given resident page may be evicted
+     * @return the id of the victim, or null if no resident page may be evicted
+     */
+    PageId chooseVictim(Predicate<PageId> evictable);
+
+    /**
+     * Called when the victim just returned by
+     * {@link #chooseVictim(Predicate)} stays in the pool after all, because
+     * it was dirtied before the BufferPool could drop it. The policy tracks
+     * it as resident again, where it was before it was chosen; this is not
+     * a reference to the page.
+     *
+     * @param pid the id of the victim that was not evicted
+     */
+    void victimRejected(PageId pid);
+}
@@ -0,0 +1,65 @@
+package simpledb.storage;
+
+/**
+ * SequentialReadAhead watches the page numbers requested by one scan of a
+ * HeapFile and, once the scan is seen to read consecutive pages, asks the
+ * Prefetcher for the pages that follow.
+ * <p>
+ * The read-ahead window is adaptive: it starts at {@link #MIN_WINDOW} pages
+ * and doubles every time the scan catches up with the pages prefetched so
+ * far, up to {@link #MAX_WINDOW} (and never beyond the prefetcher's cap). A
+ * non-sequential access resets it.
+ */
+class SequentialReadAhead {
+
+    static final int MIN_WINDOW = 2;
+    static final int MAX_WINDOW = 32;
+
+    private final Prefetcher prefetcher;
+    private final int tableId;
+
+    private int lastPageNo = -2;
+    private int window = 0;
+    /**
+     * 下一个尚未请求预读的页号
+     */
+    private int nextToPrefetch = 0;
+
+    SequentialReadAhead(Prefetcher prefetcher, int tableId) {
+        this.prefetcher = prefetcher;
+        this.tableId = tableId;
+    }
+
+    /**
+     * Record that the scan is about to request pageNo, and prefetch ahead
+     * of it if the access pattern is sequential.
+     *
+     * @param pageNo   the page the scan is about to read
+     * @param numPages the number of pages in the file
+     */
+    void access(int pageNo, int numPages) {
+        boolean sequential = pageNo == lastPageNo + 1;
+        lastPageNo = pageNo;
+        if (!sequential) { // 非顺序访问，重置预读窗口
+            window = 0;
+            nextToPrefetch = pageNo + 1;
+            return;
+        }
+        if (pageNo >= nextToPrefetch) { // 扫描追上了预读，该页只能同步读取
+            if (window > 0)
+                prefetcher.recordMiss();
+            nextToPrefetch = pageNo + 1;
+        }
+        int limit = Math.min(MAX_WINDOW, Math.max(1, prefetcher.getMaxOutstanding()));
+        if (window == 0)
+            window = Math.min(MIN_WINDOW, limit);
+        else if (nextToPrefetch - pageNo <= window / 2)
+            window = Math.min(window * 2, limit);
+        int end = Math.min(numPages, pageNo + 1 + window);
+        while (nextToPrefetch < end) {
+            if (!prefetcher.prefetch(new HeapPageId(tableId, nextToPrefetch)))
+                break;
+            nextToPrefetch++;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * SlottedHeapPage is a page of a HeapFile in the slotted format: records of
+ * variable length, found through a slot directory. A string takes two bytes
+ * plus its length, instead of the STRING_LEN + 4 bytes it takes in a
+ * {@link HeapPage}, so a table of short strings needs far fewer pages.
+ * <p>
+ * The layout of a page of P bytes, where every number is a big-endian
+ * unsigned short:
+ * <pre>
+ * 0  number of slots in the directory
+ * 2  size of the record area at the end of the page, holes included
+ * 4  total size of the live records
+ * 6  slot directory, SLOT_SIZE bytes per slot: offset of the record in the
+ *    page (0 for an empty slot) and its length
+ *    ... free space ...
+ *    record area, growing down from P
+ * </pre>
+ * A record holds its fields in order: an int in 4 bytes, a string as its
+ * length in 2 bytes followed by one byte per character. Strings are
+ * truncated to the declared length of their field (VARCHAR(n), see
+ * {@link HeapFile#getMaxLength}). A page of zeros is an empty page. Pages
+ * are at most 64 KB, so that offsets fit in two bytes.
+ * <p>
+ * A delete leaves a hole in the record area, which is compacted when an
+ * insert needs the space; records keep their slot, and so their RecordId.
+ * As in HeapPage, the page keeps the bytes it was read from and decodes
+ * tuples when they are iterated over; the bytes are copied on the first
+ * change.
+ *
+ * @see HeapFile.PageFormat#SLOTTED
+ */
+public class SlottedHeapPage extends HeapPage {
+
+    static final int HEADER_SIZE = 6;
+    static final int SLOT_SIZE = 4;
+
+    private final Type[] types;
+    /**
+     * 每个字符串字段声明的最大长度
+     */
+    private final int[] maxLengths;
+    /**
+     * 一条记录最多占用的字节数
+     */
+    private final int maxRecordSize;
+
+    /**
+     * 修改后的页数据；第一次修改前为null，此时读取data
+     */
+    private byte[] page;
+
+    /**
+     * Create a SlottedHeapPage from the bytes of a page read from disk. The
+     * schema and the declared string lengths come from the table in the
+     * catalog.
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) {
+        super(id, Database.getCatalog().getTupleDesc(id.getTableId()), data);
+        DbFile file = Database.getCatalog().getDatabaseFile(id.getTableId());
+        this.maxLengths = file instanceof HeapFile ? ((HeapFile) file).getMaxLengths() : defaultLengths(td);
+        this.maxRecordSize = maxRecordSize(td, maxLengths);
+        this.types = new Type[td.numFields()];
+        for (int i = 0; i < types.length; i++)
+            types[i] = td.getFieldType(i);
+    }
+
+    static int[] defaultLengths(TupleDesc td) {
+        int[] lengths = new int[td.numFields()];
+        Arrays.fill(lengths, Type.STRING_LEN);
+        return lengths;
+    }
+
+    /**
+     * @return the largest number of bytes a record of td can take, not
+     *         counting its slot
+     */
+    static int maxRecordSize(TupleDesc td, int[] maxLengths) {
+        int size = 0;
+        for (int i = 0; i < td.numFields(); i++)
+            size += td.getFieldType(i) == Type.INT_TYPE ? Type.INT_TYPE.getLen() : 2 + maxLengths[i];
+        return size;
+    }
+
+    static int getShort(byte[] b, int off) {
+        return (b[off] & 0xff) << 8 | b[off + 1] & 0xff;
+    }
+
+    static void putShort(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 8);
+        b[off + 1] = (byte) v;
+    }
+
+    /**
+     * Encode the fields of t as a record into buf, which must hold at least
+     * {@link #maxRecordSize} bytes.
+     *
+     * @return the length of the record
+     */
+    static int encode(TupleDesc td, int[] maxLengths, Tuple t, byte[] buf) {
+        int off = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            Field f = t.getField(i);
+            if (td.getFieldType(i) == Type.INT_TYPE) {
+                int v = ((IntField) f).getValue();
+                buf[off] = (byte) (v >>> 24);
+                buf[off + 1] = (byte) (v >>> 16);
+                buf[off + 2] = (byte) (v >>> 8);
+                buf[off + 3] = (byte) v;
+                off += 4;
+            } else {
+                String s = ((StringField) f).getValue();
+                int len = Math.min(s.length(), maxLengths[i]);
+                putShort(buf, off, len);
+                for (int k = 0; k < len; k++)
+                    buf[off + 2 + k] = (byte) s.charAt(k); // 与StringField.serialize一样只写低字节
+                off += 2 + len;
+            }
+        }
+        return off;
+    }
+
+    /**
+     * @return the number of records of maxRecordSize bytes that still fit
+     *         in the page at buf[base]
+     */
+    static int freeSlots(byte[] buf, int base, int maxRecordSize) {
+        int free = BufferPool.getPageSize() - HEADER_SIZE - SLOT_SIZE * getShort(buf, base)
+                - getShort(buf, base + 4);
+        return Math.max(0, free / (maxRecordSize + SLOT_SIZE));
+    }
+
+    /**
+     * Append a record in a new slot of the page at buf[base], if it fits in
+     * the free space between the directory and the record area.
+     *
+     * @return false if the page has no room for the record
+     */
+    static boolean append(byte[] buf, int base, byte[] record, int len) {
+        int numSlots = getShort(buf, base);
+        int recordStart = BufferPool.getPageSize() - getShort(buf, base + 2);
+        if (recordStart - (HEADER_SIZE + SLOT_SIZE * (numSlots + 1)) < len)
+            return false;
+        place(buf, base, numSlots, record, len);
+        return true;
+    }
+
+    /**
+     * Write a record below the record area of the page at buf[base] and
+     * point slot at it. The caller has checked that it fits.
+     */
+    private static void place(byte[] buf, int base, int slot, byte[] record, int len) {
+        int heapBytes = getShort(buf, base + 2) + len;
+        int offset = BufferPool.getPageSize() - heapBytes;
+        System.arraycopy(record, 0, buf, base + offset, len);
+        putShort(buf, base + HEADER_SIZE + slot * SLOT_SIZE, offset);
+        putShort(buf, base + HEADER_SIZE + slot * SLOT_SIZE + 2, len);
+        if (slot == getShort(buf, base))
+            putShort(buf, base, slot + 1);
+        putShort(buf, base + 2, heapBytes);
+        putShort(buf, base + 4, getShort(buf, base + 4) + len);
+    }
+
+    private byte[] bytes() {
+        return page != null ? page : data;
+    }
+
+    private byte[] writable() {
+        if (page == null)
+            page = Arrays.copyOf(data, BufferPool.getPageSize()); // 去掉可能存在的校验尾
+        return page;
+    }
+
+    private int numSlots() {
+        return getShort(bytes(), 0);
+    }
+
+    private int recordOffset(int slot) {
+        return getShort(bytes(), HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    private int recordLength(int slot) {
+        return getShort(bytes(), HEADER_SIZE + slot * SLOT_SIZE + 2);
+    }
+
+    @Override
+    public SlottedHeapPage getBeforeImage() {
+        byte[] oldDataRef;
+        synchronized (oldDataLock) {
+            oldDataRef = oldData;
+        }
+        return new SlottedHeapPage(pid, oldDataRef);
+    }
+
+    @Override
+    public byte[] getPageData() {
+        return Arrays.copyOf(bytes(), BufferPool.getPageSize());
+    }
+
+    /**
+     * Returns the number of records of the largest size the schema allows
+     * that still fit on this page. Smaller records may fit when this is 0;
+     * the free space map only sends inserts to pages where any record fits.
+     */
+    @Override
+    public int getNumUnusedSlots() {
+        return freeSlots(bytes(), 0, maxRecordSize);
+    }
+
+    @Override
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < numSlots() && recordOffset(i) != 0;
+    }
+
+    /**
+     * Adds the specified tuple to the page, in the first empty slot of the
+     * directory or in a new one, compacting the record area if the free
+     * space is fragmented.
+     *
+     * @throws DbException if the record does not fit, or the TupleDesc does
+     *                     not match
+     */
+    @Override
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc()))
+            throw new DbException("tupleDesc of the tuple does not match page " + pid);
+        byte[] record = new byte[maxRecordSize];
+        int len = encode(td, maxLengths, t, record);
+        int numSlots = numSlots();
+        int slot = 0;
+        while (slot < numSlots && recordOffset(slot) != 0)
+            slot++;
+        int need = len + (slot == numSlots ? SLOT_SIZE : 0);
+        byte[] b = bytes();
+        int dirEnd = HEADER_SIZE + SLOT_SIZE * numSlots;
+        int contiguous = BufferPool.getPageSize() - getShort(b, 2) - dirEnd;
+        if (contiguous < need) {
+            if (BufferPool.getPageSize() - dirEnd - getShort(b, 4) < need)
+                throw new DbException("page " + pid + " is full");
+            compact();
+        }
+        place(writable(), 0, slot, record, len);
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    /**
+     * Move the live records to the end of the page, so that the holes left
+     * by deletes become free space.
+     */
+    private void compact() {
+        byte[] b = writable();
+        byte[] old = b.clone();
+        int numSlots = getShort(b, 0);
+        int pos = BufferPool.getPageSize();
+        for (int i = 0; i < numSlots; i++) {
+            int off = getShort(old, HEADER_SIZE + i * SLOT_SIZE);
+            if (off == 0)
+                continue;
+            int len = getShort(old, HEADER_SIZE + i * SLOT_SIZE + 2);
+            pos -= len;
+            System.arraycopy(old, off, b, pos, len);
+            putShort(b, HEADER_SIZE + i * SLOT_SIZE, pos);
+        }
+        Arrays.fill(b, HEADER_SIZE + SLOT_SIZE * numSlots, pos, (byte) 0);
+        putShort(b, 2, BufferPool.getPageSize() - pos);
+    }
+
+    /**
+     * Delete the specified tuple from the page. Its record becomes a hole;
+     * empty slots at the end of the directory are dropped.
+     *
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *                     already empty.
+     */
+    @Override
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId()))
+            throw new DbException("tuple is not on page " + pid);
+        int slot = rid.getTupleNumber();
+        if (!isSlotUsed(slot))
+            throw new DbException("slot " + slot + " of page " + pid + " is already empty");
+        byte[] b = writable();
+        putShort(b, 4, getShort(b, 4) - recordLength(slot));
+        putShort(b, HEADER_SIZE + slot * SLOT_SIZE, 0);
+        putShort(b, HEADER_SIZE + slot * SLOT_SIZE + 2, 0);
+        int numSlots = getShort(b, 0);
+        while (numSlots > 0 && recordOffset(numSlots - 1) == 0)
+            numSlots--;
+        putShort(b, 0, numSlots);
+    }
+
+    @Override
+    public Iterator<Tuple> iterator() {
+        SlotCursor cursor = cursor();
+        return new Iterator<Tuple>() {
+            boolean advanced;
+            boolean more;
+
+            public boolean hasNext() {
+                if (!advanced) {
+                    more = cursor.next();
+                    advanced = true;
+                }
+                return more;
+            }
+
+            public Tuple next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                advanced = false;
+                return cursor.getTuple();
+            }
+        };
+    }
+
+    @Override
+    public SlotCursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A SlotCursor over the slot directory. Fields up to the first string
+     * are at fixed offsets in the record; the others are found by skipping
+     * over the strings before them.
+     */
+    private class Cursor extends SlotCursor {
+        private byte[] b;
+        private int slot = -1;
+        private int offset;
+
+        @Override
+        public boolean next() {
+            b = bytes(); // 页在迭代过程中可能被修改
+            int numSlots = getShort(b, 0);
+            while (++slot < numSlots) {
+                offset = getShort(b, HEADER_SIZE + slot * SLOT_SIZE);
+                if (offset != 0)
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int slot() {
+            return slot;
+        }
+
+        private int fieldOffset(int i) {
+            int off = offset;
+            for (int j = 0; j < i; j++)
+                off += types[j] == Type.INT_TYPE ? 4 : 2 + getShort(b, off);
+            return off;
+        }
+
+        private Field field(int i, int off) {
+            if (types[i] == Type.INT_TYPE)
+                return new IntField(Type.readInt(b, off));
+            return new StringField(new String(b, off + 2, getShort(b, off)), Type.STRING_LEN);
+        }
+
+        @Override
+        public int getInt(int i) {
+            return Type.readInt(b, fieldOffset(i));
+        }
+
+        @Override
+        public Field getField(int i) {
+            return field(i, fieldOffset(i));
+        }
+
+        @Override
+        public Tuple getTuple() {
+            Tuple t = new Tuple(td);
+            t.setRecordId(new RecordId(pid, slot));
+            int off = offset;
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] == Type.INT_TYPE) {
+                    t.setInt(i, Type.readInt(b, off));
+                    off += 4;
+                } else {
+                    t.setField(i, field(i, off));
+                    off += 2 + getShort(b, off);
+                }
+            }
+            return t;
+        }
+    }
+}
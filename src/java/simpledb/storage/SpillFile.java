@@ -0,0 +1,156 @@
+package simpledb.storage;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+
+import java.io.*;
+
+/**
+ * SpillFile is a temporary file of tuples that an operator writes when its
+ * input does not fit in memory, and reads back later, from the start, as
+ * many times as needed. Tuples are appended and read sequentially with
+ * buffered streams, without going through the buffer pool: int fields take
+ * 4 bytes and string fields 2 bytes plus their characters.
+ * <p>
+ * The file is deleted by {@link #delete()}, or when the JVM exits.
+ *
+ * @NotThreadsafe
+ */
+public class SpillFile {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final TupleDesc td;
+    private final File file;
+    private DataOutputStream out;
+    /**
+     * 打开out时文件的长度
+     */
+    private long flushed;
+    private long size;
+
+    /**
+     * Create an empty spill file in the temporary directory.
+     */
+    public SpillFile(TupleDesc td) throws IOException {
+        this.td = td;
+        this.file = File.createTempFile("spill", ".dat");
+        this.file.deleteOnExit();
+    }
+
+    /**
+     * @return the schema of the tuples
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * Append a tuple to the file.
+     */
+    public void add(Tuple t) throws IOException {
+        if (out == null) {
+            flushed = file.length();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_SIZE));
+        }
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE)
+                out.writeInt(t.getInt(i));
+            else
+                out.writeUTF(((StringField) t.getField(i)).getValue());
+        }
+        size++;
+    }
+
+    /**
+     * @return the number of tuples in the file
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes written to the file
+     */
+    public long bytes() {
+        return out != null ? flushed + out.size() : file.length();
+    }
+
+    /**
+     * Finish writing: the tuples added so far are on disk.
+     */
+    private void flush() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * @return an iterator over the tuples added so far, in the order they
+     *         were added; adding more tuples while it is open is not allowed
+     */
+    public DbFileIterator iterator() {
+        return new AbstractDbFileIterator() {
+            private DataInputStream in;
+            private long read;
+
+            public void open() throws DbException {
+                try {
+                    flush();
+                    in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+                    read = 0;
+                } catch (IOException e) {
+                    throw new DbException("failed to open spill file " + file + ": " + e);
+                }
+            }
+
+            protected Tuple readNext() throws DbException {
+                if (in == null || read == size)
+                    return null;
+                Tuple t = new Tuple(td);
+                try {
+                    for (int i = 0; i < td.numFields(); i++) {
+                        if (td.getFieldType(i) == Type.INT_TYPE)
+                            t.setInt(i, in.readInt());
+                        else
+                            t.setField(i, new StringField(in.readUTF(), Type.STRING_LEN));
+                    }
+                } catch (IOException e) {
+                    throw new DbException("failed to read spill file " + file + ": " + e);
+                }
+                read++;
+                return t;
+            }
+
+            public void rewind() throws DbException {
+                close();
+                open();
+            }
+
+            public void close() {
+                super.close();
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException ignored) {
+                        // 只读的临时文件，关闭失败无影响
+                    }
+                    in = null;
+                }
+            }
+        };
+    }
+
+    /**
+     * Delete the file; the spill file must not be used afterwards.
+     */
+    public void delete() {
+        try {
+            flush();
+        } catch (IOException ignored) {
+            // 文件随后被删除
+        }
+        file.delete();
+    }
+}
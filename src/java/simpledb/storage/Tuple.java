@@ -11,6 +11,12 @@ import java.util.function.Consumer;
  * Tuple maintains information about the contents of a tuple. Tuples have a
  * specified schema specified by a TupleDesc object and contain Field objects
  * with the data for each field.
+ * <p>
+ * The values of int fields are kept unboxed in an int array and read with
+ * {@link #getInt(int)} and written with {@link #setInt(int, int)}; an
+ * IntField is only created when {@link #getField(int)} asks for one. Fields
+ * of other types are kept as their (immutable, possibly shared) Field
+ * objects.
  */
 public class Tuple implements Serializable, Iterable<Field> {
 
@@ -22,41 +28,70 @@ public class Tuple implements Serializable, Iterable<Field> {
     private TupleDesc tupleDesc;
 
     /**
-     * 元组中的所有字段，包括字段的类型和值等
+     * int字段的值；其他字段的位置不使用
      */
-    private ArrayList<simpledb.storage.Field> fields;
+    private final int[] ints;
+
+    /**
+     * 字段对象：非int字段的值，以及int字段按需创建的IntField；为null表示
+     * 该int字段的值只在ints中
+     */
+    private final Field[] fields;
 
     /**
      * 记录该元组在哪一个表的哪一页的特定位置
      */
     private RecordId recordId;
 
+    /**
+     * 新元组中字符串字段的初始值；Field是不可变的，所有元组可以共享
+     */
+    private static final StringField STRING_DEFAULT = new StringField("", 0);
+
     /**
      * Create a new tuple with the specified schema (type).
      *
      * @param td the schema of this tuple. It must be a valid TupleDesc
      *           instance with at least one field.
      */
-    public Tuple(simpledb.storage.TupleDesc td) {
+    public Tuple(TupleDesc td) {
         // TODO: some code goes here
         tupleDesc = td;
-        fields = new ArrayList<>();
-
-        // 按照TupleDesc中的描述创建一个新元组
-        for (TupleDesc.TDItem tdItem : td) {
-            Type fieldType = tdItem.fieldType;
-            if (Type.INT_TYPE.equals(fieldType)) { // 是int类型
-                fields.add(new IntField(0));
-            } else if (Type.STRING_TYPE.equals(fieldType)) { // 是固定长度的String
-                fields.add(new StringField("", 0));
-            }
+        int n = td.numFields();
+        ints = new int[n];
+        fields = new Field[n];
+
+        // 按照TupleDesc中的描述创建一个新元组，int字段初始为0
+        for (int i = 0; i < n; i++) {
+            if (Type.STRING_TYPE.equals(td.getFieldType(i))) // 是固定长度的String
+                fields[i] = STRING_DEFAULT;
         }
     }
 
+    /**
+     * Create a new tuple with the fields of t1 followed by the fields of t2,
+     * as the join operators return them.
+     *
+     * @param t1 the tuple whose fields come first
+     * @param t2 the tuple whose fields come last
+     * @param td the schema of the result, usually
+     *           {@code TupleDesc.merge(t1.getTupleDesc(), t2.getTupleDesc())}
+     * @return the new tuple, without a RecordId
+     */
+    public static Tuple merge(Tuple t1, Tuple t2, TupleDesc td) {
+        Tuple t = new Tuple(td);
+        int n1 = t1.ints.length;
+        System.arraycopy(t1.ints, 0, t.ints, 0, n1);
+        System.arraycopy(t1.fields, 0, t.fields, 0, n1);
+        System.arraycopy(t2.ints, 0, t.ints, n1, t2.ints.length);
+        System.arraycopy(t2.fields, 0, t.fields, n1, t2.fields.length);
+        return t;
+    }
+
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
-    public simpledb.storage.TupleDesc getTupleDesc() {
+    public TupleDesc getTupleDesc() {
         // TODO: some code goes here
         return tupleDesc;
     }
@@ -65,7 +100,7 @@ public class Tuple implements Serializable, Iterable<Field> {
      * @return The RecordId representing the location of this tuple on disk. May
      *         be null.
      */
-    public simpledb.storage.RecordId getRecordId() {
+    public RecordId getRecordId() {
         // TODO: some code goes here
         return recordId;
     }
@@ -75,7 +110,7 @@ public class Tuple implements Serializable, Iterable<Field> {
      *
      * @param rid the new RecordId for this tuple.
      */
-    public void setRecordId(simpledb.storage.RecordId rid) {
+    public void setRecordId(RecordId rid) {
         // TODO: some code goes here
         recordId = rid;
     }
@@ -92,7 +127,22 @@ public class Tuple implements Serializable, Iterable<Field> {
         Type fieldType = f.getType();
         Type oldType = tupleDesc.getFieldType(i);
         if (!oldType.equals(fieldType)) tupleDesc.setFieldType(i, fieldType);
-        fields.set(i, f);
+        if (f instanceof IntField)
+            ints[i] = ((IntField) f).getValue();
+        fields[i] = f;
+    }
+
+    /**
+     * Change the value of the ith field of this tuple to an int, without
+     * creating an IntField.
+     *
+     * @param i index of the field to change. It must be a valid index.
+     * @param v new value for the field.
+     */
+    public void setInt(int i, int v) {
+        if (!Type.INT_TYPE.equals(tupleDesc.getFieldType(i))) tupleDesc.setFieldType(i, Type.INT_TYPE);
+        ints[i] = v;
+        fields[i] = null;
     }
 
     /**
@@ -103,13 +153,27 @@ public class Tuple implements Serializable, Iterable<Field> {
         // TODO: some code goes here
         Field f = null;
         try {
-            f = fields.get(i);
+            f = fields[i];
+            if (f == null) // 按需创建IntField并记住它
+                f = fields[i] = new IntField(ints[i]);
         } catch (IndexOutOfBoundsException ex) {
             ex.printStackTrace();
         }
         return f;
     }
 
+    /**
+     * @param i index of an int field. Must be a valid index.
+     * @return the value of the ith field
+     * @throws ClassCastException if the ith field is not an int field
+     */
+    public int getInt(int i) {
+        Field f = fields[i];
+        if (f == null)
+            return ints[i];
+        return ((IntField) f).getValue();
+    }
+
     /**
      * Returns the contents of this Tuple as a string. Note that to pass the
      * system tests, the format needs to be as follows:
@@ -120,13 +184,13 @@ public class Tuple implements Serializable, Iterable<Field> {
      */
     public String toString() {
         // TODO: some code goes here
-//        throw new UnsupportedOperationException("Implement this");
         StringBuilder sb = new StringBuilder();
-        boolean flag = false;
-        for (Field field : fields) {
-            if (flag) sb.append("\t");
-            sb.append(field); // 获取其字符串表示
-            flag = true;
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) sb.append("\t");
+            if (fields[i] == null)
+                sb.append(ints[i]);
+            else
+                sb.append(fields[i]); // 获取其字符串表示
         }
         return sb.toString();
     }
@@ -142,7 +206,7 @@ public class Tuple implements Serializable, Iterable<Field> {
     /**
      * reset the TupleDesc of this tuple (only affecting the TupleDesc)
      */
-    public void resetTupleDesc(simpledb.storage.TupleDesc td) {
+    public void resetTupleDesc(TupleDesc td) {
         // TODO: some code goes here
         tupleDesc = td;
     }
@@ -154,45 +218,26 @@ public class Tuple implements Serializable, Iterable<Field> {
 
     private class Itr implements Iterator<Field> {
         int cursor;     // index of next element to return
-        int lastRet = -1; // index of last element to returned; -1 if no such
 
         // prevent creating a synthetic constructor
         Itr() {}
 
         @Override
-        public boolean hasNext() { return cursor != fields.size(); }
+        public boolean hasNext() { return cursor != fields.length; }
 
         @Override
         public Field next() {
             int i = cursor;
-            if (i >= fields.size()) throw new NoSuchElementException();
+            if (i >= fields.length) throw new NoSuchElementException();
             cursor = i + 1;
-            return fields.get(lastRet = i);
-        }
-
-        @Override
-        public void remove() {
-            if (lastRet < 0) throw new IllegalArgumentException();
-            try {
-                fields.remove(lastRet);
-                cursor = lastRet;
-                lastRet = -1;
-            } catch (IndexOutOfBoundsException ex) {
-                throw new ConcurrentModificationException();
-            }
+            return getField(i);
         }
 
         @Override
         public void forEachRemaining(Consumer<? super Field> action) {
             Objects.requireNonNull(action);
-            final int size = fields.size();
-            int i = cursor;
-            if (i < size) {
-                for (; i < size; ++i)
-                    action.accept(fields.get(i));
-                cursor = i;
-                lastRet = i - 1;
-            }
+            for (; cursor < fields.length; cursor++)
+                action.accept(getField(cursor));
         }
     }
-}
\ No newline at end of file
+}
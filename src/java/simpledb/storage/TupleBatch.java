@@ -0,0 +1,228 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+
+/**
+ * TupleBatch holds up to {@link #CAPACITY} rows column by column, as the
+ * batch operators pass them to each other: the values of an int field are
+ * in an int vector, those of other fields in a vector of Field objects.
+ * <p>
+ * A selection vector lists the rows of the batch that are still part of the
+ * result, so that a filter only has to rewrite it instead of moving the
+ * values; {@link #size()} and {@link #row(int)} go through the selection.
+ * Rows are added with {@link #addRow()} while no selection is set.
+ * <p>
+ * The rows of a batch carry no RecordId.
+ */
+public class TupleBatch {
+
+    /**
+     * The number of rows of a batch
+     */
+    public static final int CAPACITY = 1024;
+
+    private final TupleDesc td;
+    /**
+     * int字段的值，其他字段为null
+     */
+    private final int[][] ints;
+    /**
+     * 非int字段的值，int字段为null
+     */
+    private final Field[][] fields;
+    /**
+     * 批中已写入的行数
+     */
+    private int rows;
+    /**
+     * 被选中的行，为null时所有行都被选中
+     */
+    private int[] selection;
+    private int selected;
+
+    /**
+     * Create an empty batch with vectors for all fields of td.
+     */
+    public TupleBatch(TupleDesc td) {
+        this.td = td;
+        int n = td.numFields();
+        this.ints = new int[n][];
+        this.fields = new Field[n][];
+        for (int i = 0; i < n; i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE)
+                ints[i] = new int[CAPACITY];
+            else
+                fields[i] = new Field[CAPACITY];
+        }
+    }
+
+    private TupleBatch(TupleDesc td, int[][] ints, Field[][] fields, int rows, int[] selection, int selected) {
+        this.td = td;
+        this.ints = ints;
+        this.fields = fields;
+        this.rows = rows;
+        this.selection = selection;
+        this.selected = selected;
+    }
+
+    /**
+     * @return the schema of the rows
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the number of selected rows
+     */
+    public int size() {
+        return selection == null ? rows : selected;
+    }
+
+    /**
+     * @return the number of rows written to the batch, selected or not
+     */
+    public int numRows() {
+        return rows;
+    }
+
+    /**
+     * @return true if no more rows can be added
+     */
+    public boolean isFull() {
+        return rows == CAPACITY;
+    }
+
+    /**
+     * @param k index of a selected row, below {@link #size()}
+     * @return the position of the kth selected row in the vectors
+     */
+    public int row(int k) {
+        return selection == null ? k : selection[k];
+    }
+
+    /**
+     * @return the selection vector, or null if every row is selected
+     */
+    public int[] getSelection() {
+        return selection;
+    }
+
+    /**
+     * Select the rows sel[0..n) of the batch, which must be in increasing
+     * order. The array is used as it is, not copied.
+     */
+    public void select(int[] sel, int n) {
+        this.selection = sel;
+        this.selected = n;
+    }
+
+    /**
+     * Remove all rows and the selection.
+     */
+    public void clear() {
+        rows = 0;
+        selection = null;
+        selected = 0;
+    }
+
+    /**
+     * Add a row whose values are then written with {@link #setInt} and
+     * {@link #setField}.
+     *
+     * @return the position of the new row in the vectors
+     */
+    public int addRow() {
+        if (selection != null)
+            throw new IllegalStateException("cannot add rows to a batch with a selection");
+        if (rows == CAPACITY)
+            throw new IllegalStateException("batch is full");
+        return rows++;
+    }
+
+    /**
+     * Add a row with the fields of t.
+     */
+    public void add(Tuple t) {
+        int r = addRow();
+        for (int i = 0; i < ints.length; i++) {
+            if (ints[i] != null)
+                ints[i][r] = t.getInt(i);
+            else
+                fields[i][r] = t.getField(i);
+        }
+    }
+
+    /**
+     * @return the vector of an int field
+     */
+    public int[] getInts(int field) {
+        return ints[field];
+    }
+
+    /**
+     * @return the vector of a field that is not an int field
+     */
+    public Field[] getFields(int field) {
+        return fields[field];
+    }
+
+    /**
+     * @param row position of the row in the vectors
+     * @return the value of an int field
+     */
+    public int getInt(int field, int row) {
+        return ints[field][row];
+    }
+
+    /**
+     * @param row position of the row in the vectors
+     * @return the value of a field, as a Field
+     */
+    public Field getField(int field, int row) {
+        if (ints[field] != null)
+            return new IntField(ints[field][row]);
+        return fields[field][row];
+    }
+
+    public void setInt(int field, int row, int v) {
+        ints[field][row] = v;
+    }
+
+    public void setField(int field, int row, Field f) {
+        if (ints[field] != null)
+            ints[field][row] = ((IntField) f).getValue();
+        else
+            fields[field][row] = f;
+    }
+
+    /**
+     * @param k index of a selected row, below {@link #size()}
+     * @return the kth selected row as a Tuple
+     */
+    public Tuple getTuple(int k) {
+        int r = row(k);
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < ints.length; i++) {
+            if (ints[i] != null)
+                t.setInt(i, ints[i][r]);
+            else
+                t.setField(i, fields[i][r]);
+        }
+        return t;
+    }
+
+    /**
+     * @return a batch with the given fields of this one, in the given order
+     *         and with the same selection, sharing its vectors
+     */
+    public TupleBatch project(int[] fieldIds, TupleDesc td) {
+        int[][] ints = new int[fieldIds.length][];
+        Field[][] fields = new Field[fieldIds.length][];
+        for (int i = 0; i < fieldIds.length; i++) {
+            ints[i] = this.ints[fieldIds[i]];
+            fields[i] = this.fields[fieldIds[i]];
+        }
+        return new TupleBatch(td, ints, fields, rows, selection, selected);
+    }
+}
@@ -248,6 +248,20 @@ public class TupleDesc implements Serializable, Iterable<TupleDesc.TDItem> {
         return tupleSize;
     }
 
+    /**
+     * @return the offset (in bytes) of the ith field from the start of a
+     *         serialized tuple of this TupleDesc
+     * @throws NoSuchElementException if i is not a valid field reference.
+     */
+    public int getFieldOffset(int i) throws NoSuchElementException {
+        if (i < 0 || i >= tdItems.size())
+            throw new NoSuchElementException("tdItem index invalid");
+        int offset = 0;
+        for (int j = 0; j < i; ++j)
+            offset += tdItems.get(j).fieldType.getLen();
+        return offset;
+    }
+
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
@@ -0,0 +1,127 @@
+package simpledb.storage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Full 2Q replacement (Johnson and Shasha). Newly read pages enter a FIFO
+ * probation queue A1in. Pages evicted from A1in are remembered (id only) in
+ * the ghost queue A1out; if such a page is read again it is admitted into
+ * the main LRU queue Am. A page referenced only once, such as one read by a
+ * sequential scan, therefore never reaches Am and cannot push the working
+ * set out of the pool.
+ */
+public class TwoQueueReplacementPolicy implements ReplacementPolicy {
+
+    /**
+     * A1in与A1out的大小占缓冲池页数的比例，取自论文中的推荐值
+     */
+    private static final double KIN_RATIO = 0.25;
+    private static final double KOUT_RATIO = 0.5;
+
+    private final int kin;
+    private final int kout;
+
+    private final LinkedHashSet<PageId> a1in;
+    private final LinkedHashSet<PageId> a1out;
+    private final LinkedHashMap<PageId, Boolean> am;
+
+    /**
+     * @param numPages the number of frames in the buffer pool
+     */
+    public TwoQueueReplacementPolicy(int numPages) {
+        this.kin = Math.max(1, (int) (numPages * KIN_RATIO));
+        this.kout = Math.max(1, (int) (numPages * KOUT_RATIO));
+        this.a1in = new LinkedHashSet<>();
+        this.a1out = new LinkedHashSet<>();
+        this.am = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    @Override
+    public synchronized void pageAdmitted(PageId pid) {
+        if (a1out.remove(pid))
+            am.put(pid, Boolean.TRUE);
+        else if (!am.containsKey(pid))
+            a1in.add(pid);
+    }
+
+    @Override
+    public synchronized void pageAccessed(PageId pid) {
+        // a hit in A1in is deliberately ignored: correlated references
+        // (e.g. several tuples read off the same page) do not promote it
+        am.get(pid);
+    }
+
+    @Override
+    public synchronized void pageRemoved(PageId pid) {
+        a1in.remove(pid);
+        am.remove(pid);
+        a1out.remove(pid);
+    }
+
+    @Override
+    public synchronized PageId chooseVictim(Predicate<PageId> evictable) {
+        PageId victim = null;
+        if (a1in.size() > kin || am.isEmpty()) {
+            victim = takeFirst(a1in.iterator(), evictable);
+            if (victim == null)
+                victim = takeFirst(am.keySet().iterator(), evictable);
+        } else {
+            victim = takeFirst(am.keySet().iterator(), evictable);
+            if (victim == null)
+                victim = takeFirst(a1in.iterator(), evictable);
+        }
+        return victim;
+    }
+
+    @Override
+    public synchronized void victimRejected(PageId pid) {
+        if (a1in.contains(pid) || am.containsKey(pid))
+            return;
+        // 从A1in选出的victim已被记入A1out，放回A1in的最前面，不能当作再次读入而进入Am；
+        // 很少发生，重建队列的代价可以接受
+        if (a1out.remove(pid)) {
+            List<PageId> rest = new ArrayList<>(a1in);
+            a1in.clear();
+            a1in.add(pid);
+            a1in.addAll(rest);
+        } else {
+            List<PageId> rest = new ArrayList<>(am.keySet());
+            am.clear();
+            am.put(pid, Boolean.TRUE);
+            for (PageId p : rest)
+                am.put(p, Boolean.TRUE);
+        }
+    }
+
+    private PageId takeFirst(Iterator<PageId> it, Predicate<PageId> evictable) {
+        while (it.hasNext()) {
+            PageId pid = it.next();
+            if (evictable.test(pid)) {
+                boolean fromA1in = a1in.contains(pid);
+                it.remove();
+                if (fromA1in)
+                    remember(pid);
+                return pid;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Record pid in the ghost queue A1out, dropping the oldest ghost when the
+     * queue is full.
+     */
+    private void remember(PageId pid) {
+        a1out.add(pid);
+        if (a1out.size() > kout) {
+            Iterator<PageId> it = a1out.iterator();
+            it.next();
+            it.remove();
+        }
+    }
+}
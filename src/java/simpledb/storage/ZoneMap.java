@@ -0,0 +1,392 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * ZoneMap keeps the smallest and the largest value of each int field on
+ * each page of a HeapFile, so that a scan with a predicate on an int field
+ * can skip the pages where no value can satisfy it.
+ * <p>
+ * Like the {@link FreeSpaceMap}, the map is kept in memory and in a side
+ * file next to the heap file (&lt;file&gt;.zm, 8 bytes per int field and
+ * page), which is only written when a page is written to the heap file.
+ * Before the page is written, its entry in the side file is widened to
+ * every value, and its range is only recorded again once the write is done:
+ * the side file left by a crash between the two writes may be too wide, but
+ * never makes a scan skip a page with matching tuples. The
+ * in-memory map also covers uncommitted changes: an insert widens the range
+ * of its page right away, while a delete or an abort leaves the range as it
+ * is, which is still correct but may be wider than needed. Such a page is
+ * marked stale, and its range is computed again from the page the next time
+ * the page is written.
+ * <p>
+ * A side file that is missing, older than the heap file or of the wrong size
+ * is rebuilt from the pages on first use; a page written while the map is
+ * not loaded deletes the side file. An empty page has an empty range, which
+ * no predicate matches.
+ *
+ * @Threadsafe
+ */
+class ZoneMap {
+
+    /**
+     * Computes the ranges of a page on disk; used to rebuild the map.
+     */
+    interface RangeReader {
+        int[] ranges(int pageNo) throws IOException;
+    }
+
+    private final File heapFile;
+    private final File mapFile;
+    private final FilePageIO io;
+
+    /**
+     * The int fields of the table; ranges[2c] and ranges[2c + 1] are the
+     * smallest and largest value of field intFields[c]
+     */
+    private final int[] intFields;
+    /**
+     * 字段在intFields中的下标，非int字段为-1
+     */
+    private final int[] column;
+    private final int entrySize;
+
+    private boolean loaded;
+    /**
+     * 每页每个int字段的最小值和最大值，每页占2 * intFields.length项
+     */
+    private int[] entries = new int[0];
+    private int numPages;
+    /**
+     * 范围比页的内容宽、写回时需要重新计算的页
+     */
+    private final BitSet stale = new BitSet();
+    /**
+     * 映射加载前被修改过的页，加载后范围未知
+     */
+    private final BitSet touched = new BitSet();
+    /**
+     * 映射未加载时开始写、尚未写完的页
+     */
+    private final BitSet writing = new BitSet();
+    private boolean invalidated;
+
+    ZoneMap(File heapFile, TupleDesc td) {
+        this.heapFile = heapFile;
+        this.mapFile = fileFor(heapFile);
+        this.io = new FilePageIO(mapFile, FilePageIO.Mode.CHANNEL);
+        this.column = new int[td.numFields()];
+        int n = 0;
+        for (int i = 0; i < td.numFields(); i++)
+            column[i] = td.getFieldType(i) == Type.INT_TYPE ? n++ : -1;
+        this.intFields = new int[n];
+        for (int i = 0; i < td.numFields(); i++) {
+            if (column[i] >= 0)
+                intFields[column[i]] = i;
+        }
+        this.entrySize = 8 * n;
+    }
+
+    /**
+     * @return the side file holding the map of heapFile
+     */
+    static File fileFor(File heapFile) {
+        return new File(heapFile.getPath() + ".zm");
+    }
+
+    /**
+     * @return the side file the map is stored in
+     */
+    File getFile() {
+        return mapFile;
+    }
+
+    /**
+     * @return true if the map has ranges for field
+     */
+    boolean covers(int field) {
+        return field >= 0 && field < column.length && column[field] >= 0;
+    }
+
+    /**
+     * @return the ranges of a page with no tuples: every smallest value is
+     *         larger than every largest one
+     */
+    int[] emptyRanges() {
+        int[] ranges = new int[2 * intFields.length];
+        for (int c = 0; c < intFields.length; c++) {
+            ranges[2 * c] = Integer.MAX_VALUE;
+            ranges[2 * c + 1] = Integer.MIN_VALUE;
+        }
+        return ranges;
+    }
+
+    /**
+     * @return the exact ranges of the tuples on page
+     */
+    int[] rangesOf(HeapPage page) {
+        int[] ranges = emptyRanges();
+        if (intFields.length == 0)
+            return ranges;
+        HeapPage.SlotCursor c = page.cursor();
+        while (c.next()) {
+            for (int k = 0; k < intFields.length; k++) {
+                int v = c.getInt(intFields[k]);
+                if (v < ranges[2 * k])
+                    ranges[2 * k] = v;
+                if (v > ranges[2 * k + 1])
+                    ranges[2 * k + 1] = v;
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Load the map from its side file, or rebuild it with reader if the side
+     * file does not describe the current heap file. Does nothing if the map
+     * is already loaded.
+     *
+     * @param numPages the number of pages in the heap file
+     */
+    synchronized void load(int numPages, RangeReader reader) throws IOException {
+        if (loaded)
+            return;
+        int width = 2 * intFields.length;
+        int[] e = new int[numPages * width];
+        if (width > 0) {
+            boolean valid = !invalidated && mapFile.length() == (long) numPages * entrySize
+                    && mapFile.lastModified() >= heapFile.lastModified();
+            if (valid && numPages > 0) {
+                byte[] bytes = new byte[numPages * entrySize];
+                valid = io.read(0, bytes) == bytes.length;
+                for (int i = 0; valid && i < e.length; i++)
+                    e[i] = Type.readInt(bytes, 4 * i);
+            }
+            if (!valid) {
+                // 侧文件缺失或过期，根据页的内容重建
+                io.close();
+                if (mapFile.exists() && !mapFile.delete())
+                    throw new IOException("cannot delete stale zone map " + mapFile);
+                byte[] bytes = new byte[numPages * entrySize];
+                for (int p = 0; p < numPages; p++) {
+                    int[] ranges = reader.ranges(p);
+                    System.arraycopy(ranges, 0, e, p * width, width);
+                    encode(ranges, bytes, p * entrySize);
+                }
+                io.write(0, bytes);
+            }
+        }
+        entries = e;
+        this.numPages = numPages;
+        // 加载前修改过的页和正在写的页可能含有任意值
+        touched.or(writing);
+        for (int p = touched.nextSetBit(0); p >= 0 && p < numPages; p = touched.nextSetBit(p + 1)) {
+            for (int c = 0; c < intFields.length; c++) {
+                entries[p * width + 2 * c] = Integer.MIN_VALUE;
+                entries[p * width + 2 * c + 1] = Integer.MAX_VALUE;
+            }
+            stale.set(p);
+        }
+        touched.clear();
+        invalidated = false;
+        loaded = true;
+    }
+
+    /**
+     * @return true once {@link #load} has completed
+     */
+    synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    private static void encode(int[] ranges, byte[] bytes, int off) {
+        for (int i = 0; i < ranges.length; i++) {
+            int v = ranges[i];
+            bytes[off + 4 * i] = (byte) (v >>> 24);
+            bytes[off + 4 * i + 1] = (byte) (v >>> 16);
+            bytes[off + 4 * i + 2] = (byte) (v >>> 8);
+            bytes[off + 4 * i + 3] = (byte) v;
+        }
+    }
+
+    /**
+     * Make room for pageNo, with an empty range for new pages.
+     */
+    private void ensure(int pageNo) {
+        int width = 2 * intFields.length;
+        if (pageNo < numPages)
+            return;
+        if ((pageNo + 1) * width > entries.length)
+            entries = Arrays.copyOf(entries, Math.max(pageNo + 1, 2 * numPages) * width);
+        int[] empty = emptyRanges();
+        for (int p = numPages; p <= pageNo; p++)
+            System.arraycopy(empty, 0, entries, p * width, width);
+        numPages = pageNo + 1;
+    }
+
+    /**
+     * Widen the range of a page to include t, which was just inserted into
+     * it.
+     */
+    synchronized void widen(int pageNo, Tuple t) {
+        if (!loaded) {
+            touched.set(pageNo);
+            return;
+        }
+        ensure(pageNo);
+        int base = pageNo * 2 * intFields.length;
+        for (int c = 0; c < intFields.length; c++) {
+            int v = t.getInt(intFields[c]);
+            entries[base + 2 * c] = Math.min(entries[base + 2 * c], v);
+            entries[base + 2 * c + 1] = Math.max(entries[base + 2 * c + 1], v);
+        }
+    }
+
+    /**
+     * Record that tuples were removed from a page, by a delete or an abort,
+     * so that its range may be wider than its tuples.
+     */
+    synchronized void markStale(int pageNo) {
+        if (!loaded)
+            touched.set(pageNo);
+        else
+            stale.set(pageNo);
+    }
+
+    /**
+     * @return true if the range of a page must be computed again before it
+     *         is persisted
+     */
+    synchronized boolean isStale(int pageNo) {
+        return stale.get(pageNo) || pageNo >= numPages;
+    }
+
+    /**
+     * Called before pages are written to the heap file. Their entries in the
+     * side file are widened to every value until {@link #persist} records
+     * their ranges; if the map is not loaded, the side file is deleted, and
+     * a map loaded before {@link #endWrite} never skips the pages.
+     *
+     * @param firstPage the number of the first page to be written
+     * @param count     the number of consecutive pages to be written
+     */
+    synchronized void beginWrite(int firstPage, int count) throws IOException {
+        if (!loaded) {
+            writing.set(firstPage, firstPage + count);
+            invalidate();
+            return;
+        }
+        if (intFields.length == 0)
+            return;
+        int[] all = new int[2 * intFields.length];
+        for (int c = 0; c < intFields.length; c++) {
+            all[2 * c] = Integer.MIN_VALUE;
+            all[2 * c + 1] = Integer.MAX_VALUE;
+        }
+        byte[] bytes = new byte[count * entrySize];
+        for (int i = 0; i < count; i++)
+            encode(all, bytes, i * entrySize);
+        io.write((long) firstPage * entrySize, bytes);
+    }
+
+    /**
+     * Called once pages passed to {@link #beginWrite} are written to the heap
+     * file.
+     */
+    synchronized void endWrite(int firstPage, int count) {
+        writing.clear(firstPage, firstPage + count);
+    }
+
+    /**
+     * Record the range of a page that was just written to the heap file, in
+     * memory and in the side file.
+     *
+     * @param ranges the exact ranges of the page, or null to keep the ones in
+     *               memory, which must not be stale
+     */
+    synchronized void persist(int pageNo, int[] ranges) throws IOException {
+        if (intFields.length == 0)
+            return;
+        ensure(pageNo);
+        int width = 2 * intFields.length;
+        if (ranges != null)
+            System.arraycopy(ranges, 0, entries, pageNo * width, width);
+        stale.clear(pageNo);
+        byte[] bytes = new byte[entrySize];
+        encode(Arrays.copyOfRange(entries, pageNo * width, (pageNo + 1) * width), bytes, 0);
+        io.write((long) pageNo * entrySize, bytes);
+    }
+
+    /**
+     * Record the ranges of consecutive pages that were just written to the
+     * heap file, with a single write to the side file.
+     */
+    synchronized void persist(int firstPage, int[][] ranges) throws IOException {
+        if (intFields.length == 0)
+            return;
+        ensure(firstPage + ranges.length - 1);
+        int width = 2 * intFields.length;
+        byte[] bytes = new byte[ranges.length * entrySize];
+        for (int i = 0; i < ranges.length; i++) {
+            System.arraycopy(ranges[i], 0, entries, (firstPage + i) * width, width);
+            stale.clear(firstPage + i);
+            encode(ranges[i], bytes, i * entrySize);
+        }
+        io.write((long) firstPage * entrySize, bytes);
+    }
+
+    /**
+     * Called when a page is written while the map is not loaded: the side
+     * file no longer describes the heap file, and is rebuilt on load.
+     */
+    private void invalidate() throws IOException {
+        if (loaded || invalidated)
+            return;
+        io.close();
+        if (mapFile.exists() && !mapFile.delete())
+            throw new IOException("cannot delete stale zone map " + mapFile);
+        invalidated = true;
+    }
+
+    /**
+     * @return false if no value of field on page can satisfy
+     *         "value op operand"
+     */
+    synchronized boolean mayMatch(int pageNo, int field, Predicate.Op op, int operand) {
+        if (!loaded || pageNo >= numPages || column[field] < 0)
+            return true;
+        int base = pageNo * 2 * intFields.length + 2 * column[field];
+        int min = entries[base], max = entries[base + 1];
+        if (min > max)
+            return false; // 空页
+        switch (op) {
+            case EQUALS:
+            case LIKE:
+                return min <= operand && operand <= max;
+            case NOT_EQUALS:
+                return min != max || min != operand;
+            case GREATER_THAN:
+                return max > operand;
+            case GREATER_THAN_OR_EQ:
+                return max >= operand;
+            case LESS_THAN:
+                return min < operand;
+            case LESS_THAN_OR_EQ:
+                return min <= operand;
+        }
+        return true;
+    }
+
+    /**
+     * Close the side file; it is reopened if the map is used again.
+     */
+    synchronized void close() throws IOException {
+        io.close();
+    }
+}
@@ -0,0 +1,144 @@
+package simpledb;
+
+import org.junit.Test;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.OpIterator;
+import simpledb.execution.OrderBy;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class AggregateSpillTest extends SimpleDbTestBase {
+
+    /**
+     * @return n tuples (i % groups, i) in random order
+     */
+    private static List<Tuple> tuples(int n, int groups) {
+        List<Tuple> result = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            result.add(Utility.getHeapTuple(new int[]{i % groups, i}));
+        Collections.shuffle(result, new Random(1));
+        return result;
+    }
+
+    private static OpIterator scan(List<Tuple> tuples) {
+        return new TupleIterator(tuples.get(0).getTupleDesc(), tuples);
+    }
+
+    /**
+     * @return the group value to aggregate value of each result tuple
+     */
+    private static Map<Field, Integer> run(OpIterator it) throws Exception {
+        Map<Field, Integer> result = new HashMap<>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertNull("one tuple per group", result.put(t.getField(0), t.getInt(1)));
+        }
+        return result;
+    }
+
+    private static Map<Field, Integer> sums(List<Tuple> tuples, int gfield) {
+        Map<Field, Integer> result = new HashMap<>();
+        for (Tuple t : tuples)
+            result.merge(t.getField(gfield), t.getInt(1), Integer::sum);
+        return result;
+    }
+
+    /**
+     * More groups than the budget are partitioned to disk, aggregated
+     * correctly, and again after rewind
+     */
+    @Test public void spill() throws Exception {
+        List<Tuple> tuples = tuples(20000, 5000);
+        Aggregate agg = new Aggregate(scan(tuples), 1, 0, Aggregator.Op.SUM, 100);
+        agg.open();
+        Map<Field, Integer> expected = sums(tuples, 0);
+        assertEquals(expected, run(agg));
+        agg.rewind();
+        assertEquals(expected, run(agg));
+        agg.close();
+        assertFalse(agg.isSortedInput());
+        assertTrue(agg.getSpilledPartitions() > HashEquiJoin.FANOUT);
+        assertTrue(agg.getSpilledTuples() > 0);
+        assertTrue(agg.getPeakGroups() <= 100);
+    }
+
+    /**
+     * Within the budget nothing is spilled
+     */
+    @Test public void inMemory() throws Exception {
+        List<Tuple> tuples = tuples(20000, 100);
+        Aggregate agg = new Aggregate(scan(tuples), 1, 0, Aggregator.Op.SUM, 100);
+        agg.open();
+        assertEquals(sums(tuples, 0), run(agg));
+        agg.close();
+        assertEquals(0, agg.getSpilledPartitions());
+        assertEquals(100, agg.getPeakGroups());
+    }
+
+    /**
+     * String group values are partitioned by their hash too
+     */
+    @Test public void spillStringGroups() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.STRING_TYPE, Type.INT_TYPE});
+        List<Tuple> tuples = new ArrayList<>();
+        for (Tuple t : tuples(5000, 1000)) {
+            Tuple s = new Tuple(td);
+            s.setField(0, new StringField("g" + t.getInt(0), Type.STRING_LEN));
+            s.setInt(1, t.getInt(1));
+            tuples.add(s);
+        }
+        Aggregate agg = new Aggregate(scan(tuples), 1, 0, Aggregator.Op.COUNT, 50);
+        agg.open();
+        Map<Field, Integer> result = run(agg);
+        agg.close();
+        assertEquals(1000, result.size());
+        for (int count : result.values())
+            assertEquals(5, count);
+        assertTrue(agg.getSpilledPartitions() > 0);
+    }
+
+    /**
+     * A child sorted on the group field, in either direction, is
+     * aggregated one group at a time, in its order
+     */
+    @Test public void sortedInput() throws Exception {
+        List<Tuple> tuples = tuples(20000, 5000);
+        Map<Field, Integer> expected = sums(tuples, 0);
+        for (boolean asc : new boolean[]{true, false}) {
+            Aggregate agg = new Aggregate(new OrderBy(0, asc, scan(tuples)), 1, 0, Aggregator.Op.SUM, 100);
+            agg.open();
+            for (int pass = 0; pass < 2; pass++) {
+                Map<Field, Integer> result = new HashMap<>();
+                int last = asc ? -1 : 5000;
+                while (agg.hasNext()) {
+                    Tuple t = agg.next();
+                    assertTrue(asc ? t.getInt(0) > last : t.getInt(0) < last);
+                    last = t.getInt(0);
+                    result.put(t.getField(0), t.getInt(1));
+                }
+                assertEquals(expected, result);
+                agg.rewind();
+            }
+            agg.close();
+            assertTrue(agg.isSortedInput());
+            assertEquals(1, agg.getPeakGroups());
+            assertEquals(0, agg.getSpilledPartitions());
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(AggregateSpillTest.class);
+    }
+}
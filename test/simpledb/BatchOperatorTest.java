@@ -0,0 +1,200 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.*;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BatchOperatorTest extends SimpleDbTestBase {
+
+    /**
+     * More rows than fit in a batch
+     */
+    private static final int ROWS = 3000;
+
+    private HeapFile hf;
+    private List<List<Integer>> values;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        values = new ArrayList<>();
+        hf = SystemTestUtil.createRandomHeapFile(3, ROWS, 100, null, values);
+        tid = new TransactionId();
+    }
+
+    private static List<Integer> project(List<Integer> row, int... fields) {
+        List<Integer> result = new ArrayList<>();
+        for (int f : fields)
+            result.add(row.get(f));
+        return result;
+    }
+
+    /**
+     * BatchProject over BatchFilter over BatchSeqScan returns the tuples of
+     * the row plan, in batches of at most CAPACITY rows
+     */
+    @Test public void scanFilterProject() throws Exception {
+        BatchOpIterator plan = new BatchProject(Arrays.asList(2, 0), Arrays.asList(Type.INT_TYPE, Type.INT_TYPE),
+                new BatchFilter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(30)),
+                        new BatchSeqScan(tid, hf.getId(), "t")));
+        List<List<Integer>> expected = new ArrayList<>();
+        for (List<Integer> row : values) {
+            if (row.get(1) < 30)
+                expected.add(project(row, 2, 0));
+        }
+        SystemTestUtil.matchTuples(new BatchToRow(plan), expected);
+
+        plan.open();
+        int batches = 0;
+        TupleBatch b;
+        while ((b = plan.nextBatch()) != null) {
+            assertTrue(b.size() > 0 && b.size() <= TupleBatch.CAPACITY);
+            batches++;
+        }
+        assertTrue(batches > 1);
+        plan.rewind();
+        assertNotNull(plan.nextBatch());
+        plan.close();
+
+        // 所有字段、所有元组
+        SystemTestUtil.matchTuples(new BatchToRow(new BatchSeqScan(tid, hf.getId())), values);
+    }
+
+    /**
+     * BatchHashEquiJoin returns the tuples of HashEquiJoin
+     */
+    @Test public void hashJoin() throws Exception {
+        List<List<Integer>> small = new ArrayList<>();
+        HeapFile other = SystemTestUtil.createRandomHeapFile(2, 200, 100, null, small);
+        JoinPredicate p = new JoinPredicate(1, Predicate.Op.EQUALS, 0);
+        List<List<Integer>> expected = new ArrayList<>();
+        for (List<Integer> s : small) {
+            for (List<Integer> row : values) {
+                if (s.get(1).equals(row.get(0))) {
+                    List<Integer> joined = new ArrayList<>(s);
+                    joined.addAll(row);
+                    expected.add(joined);
+                }
+            }
+        }
+        assertTrue(expected.size() > TupleBatch.CAPACITY);
+        BatchOpIterator join = new BatchHashEquiJoin(p, new BatchSeqScan(tid, other.getId()),
+                new BatchSeqScan(tid, hf.getId()));
+        assertEquals(5, join.getTupleDesc().numFields());
+        SystemTestUtil.matchTuples(new BatchToRow(join), expected);
+        SystemTestUtil.matchTuples(new HashEquiJoin(p, new SeqScan(tid, other.getId()),
+                new SeqScan(tid, hf.getId())), expected);
+    }
+
+    /**
+     * BatchAggregate with and without grouping, including through the
+     * adapters on top of a row Filter
+     */
+    @Test public void aggregate() throws Exception {
+        Map<Integer, int[]> groups = new LinkedHashMap<>(); // min, max, sum, count
+        long sum = 0;
+        for (List<Integer> row : values) {
+            int[] g = groups.computeIfAbsent(row.get(0), k -> new int[]{Integer.MAX_VALUE, Integer.MIN_VALUE, 0, 0});
+            int v = row.get(2);
+            g[0] = Math.min(g[0], v);
+            g[1] = Math.max(g[1], v);
+            g[2] += v;
+            g[3]++;
+            sum += v;
+        }
+        SystemTestUtil.matchTuples(new BatchToRow(new BatchAggregate(new BatchSeqScan(tid, hf.getId()), 2,
+                Aggregator.NO_GROUPING, Aggregator.Op.AVG)), Collections.singletonList(
+                Collections.singletonList((int) (sum / ROWS))));
+
+        Aggregator.Op[] ops = {Aggregator.Op.MIN, Aggregator.Op.MAX, Aggregator.Op.SUM, Aggregator.Op.COUNT};
+        for (int i = 0; i < ops.length; i++) {
+            List<List<Integer>> expected = new ArrayList<>();
+            for (Map.Entry<Integer, int[]> e : groups.entrySet())
+                expected.add(Arrays.asList(e.getKey(), e.getValue()[i]));
+            BatchOpIterator scan = new RowToBatch(new SeqScan(tid, hf.getId()));
+            SystemTestUtil.matchTuples(new BatchToRow(new BatchAggregate(scan, 2, 0, ops[i])), expected);
+        }
+
+        // 行Filter之上的批处理聚集
+        int count = 0;
+        for (List<Integer> row : values)
+            count += row.get(1) >= 50 ? 1 : 0;
+        Filter filter = new Filter(new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(50)),
+                new SeqScan(tid, hf.getId()));
+        SystemTestUtil.matchTuples(new BatchToRow(new BatchAggregate(new RowToBatch(filter), 0,
+                Aggregator.NO_GROUPING, Aggregator.Op.COUNT)),
+                Collections.singletonList(Collections.singletonList(count)));
+    }
+
+    /**
+     * String fields are carried through the batch operators, filtered and
+     * grouped
+     */
+    @Test public void stringFields() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, new String[]{"id", "city"});
+        File f = File.createTempFile("batch", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile cities = new HeapFile(f, td);
+        Database.getCatalog().addTable(cities, SystemTestUtil.getUUID());
+        String[] names = {"boston", "paris", "lima"};
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            Tuple t = new Tuple(td);
+            t.setInt(0, i);
+            t.setField(1, new StringField(names[i % names.length], Type.STRING_LEN));
+            tuples.add(t);
+        }
+        cities.bulkLoad(tuples.iterator());
+
+        BatchOpIterator filter = new BatchFilter(new Predicate(1, Predicate.Op.EQUALS,
+                new StringField("lima", Type.STRING_LEN)), new BatchSeqScan(tid, cities.getId()));
+        OpIterator rows = new BatchToRow(filter);
+        rows.open();
+        int n = 0;
+        while (rows.hasNext()) {
+            Tuple t = rows.next();
+            assertEquals(2, t.getInt(0) % 3);
+            assertEquals(new StringField("lima", Type.STRING_LEN), t.getField(1));
+            n++;
+        }
+        rows.close();
+        assertEquals(ROWS / 3, n);
+
+        OpIterator counts = new BatchToRow(new BatchAggregate(new BatchSeqScan(tid, cities.getId()), 0, 1,
+                Aggregator.Op.COUNT));
+        counts.open();
+        Map<String, Integer> result = new HashMap<>();
+        while (counts.hasNext()) {
+            Tuple t = counts.next();
+            result.put(((StringField) t.getField(0)).getValue(), t.getInt(1));
+        }
+        counts.close();
+        assertEquals(3, result.size());
+        assertEquals(Integer.valueOf(ROWS / 3), result.get("paris"));
+
+        try {
+            new BatchAggregate(new BatchSeqScan(tid, cities.getId()), 1, 0, Aggregator.Op.SUM);
+            fail("expected SUM on a string field to be refused");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BatchOperatorTest.class);
+    }
+}
@@ -0,0 +1,112 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BufferPoolConcurrencyTest extends SimpleDbTestBase {
+
+    /**
+     * A HeapFile that counts (and slows down) its page reads
+     */
+    private static class CountingHeapFile extends HeapFile {
+        final AtomicInteger reads = new AtomicInteger();
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads.incrementAndGet();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return super.readPage(pid);
+        }
+    }
+
+    private CountingHeapFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 2000, 1000, null, null);
+        hf = new CountingHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Concurrent misses on the same page read it from disk only once, and
+     * every caller gets the same page
+     */
+    @Test public void concurrentMissReadsOnce() throws Exception {
+        int threads = 8;
+        BufferPool bp = Database.resetBufferPool(10);
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Page>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return bp.getPage(new TransactionId(), pid, Permissions.READ_ONLY);
+            }));
+        }
+        start.countDown();
+        Page first = results.get(0).get();
+        for (Future<Page> r : results)
+            assertSame(first, r.get());
+        pool.shutdown();
+        assertEquals(1, hf.reads.get());
+    }
+
+    /**
+     * Many threads reading more pages than fit in the pool keep it bounded
+     */
+    @Test public void concurrentEviction() throws Exception {
+        int threads = 4;
+        BufferPool bp = Database.resetBufferPool(3);
+        int numPages = hf.numPages();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            results.add(pool.submit(() -> {
+                for (int i = 0; i < 2 * numPages; i++) {
+                    HeapPageId pid = new HeapPageId(hf.getId(), (i + offset) % numPages);
+                    Page p = bp.getPage(new TransactionId(), pid, Permissions.READ_ONLY);
+                    assertEquals(pid, p.getId());
+                }
+                return null;
+            }));
+        }
+        for (Future<?> r : results)
+            r.get();
+        pool.shutdown();
+        assertTrue(hf.reads.get() >= numPages);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolConcurrencyTest.class);
+    }
+}
@@ -0,0 +1,106 @@
+package simpledb;
+
+import org.junit.Test;
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BufferPoolStatsTest extends SimpleDbTestBase {
+
+    private static BufferPoolStats.TableSnapshot snapshot(BufferPoolStats stats, int tableId) {
+        for (BufferPoolStats.TableSnapshot t : stats.getTables()) {
+            if (t.getTableId() == tableId)
+                return t;
+        }
+        fail("no stats for table " + tableId);
+        return null;
+    }
+
+    /**
+     * Hits, misses, reads and evictions are counted per table
+     */
+    @Test public void countsPerTable() throws Exception {
+        HeapFile a = SystemTestUtil.createRandomHeapFile(2, 504 * 6, null, null);
+        HeapFile b = SystemTestUtil.createRandomHeapFile(2, 504 * 2, null, null);
+        BufferPool pool = Database.resetBufferPool(4);
+        BufferPoolStats stats = pool.getStats();
+        TransactionId tid = new TransactionId();
+
+        for (int i = 0; i < 2; i++)
+            pool.getPage(tid, new HeapPageId(b.getId(), i), Permissions.READ_ONLY);
+        pool.getPage(tid, new HeapPageId(b.getId(), 0), Permissions.READ_ONLY);
+        for (int i = 0; i < 6; i++)
+            pool.getPage(tid, new HeapPageId(a.getId(), i), Permissions.READ_ONLY);
+
+        BufferPoolStats.TableSnapshot sa = snapshot(stats, a.getId());
+        BufferPoolStats.TableSnapshot sb = snapshot(stats, b.getId());
+        assertEquals(0, sa.getHits());
+        assertEquals(6, sa.getMisses());
+        assertEquals(6, sa.getPagesRead());
+        assertEquals(1, sb.getHits());
+        assertEquals(2, sb.getMisses());
+        assertEquals(2, sb.getPagesRead());
+        // 8 pages read into a pool of 4
+        assertEquals(4, stats.getEvictions());
+        assertEquals(4, stats.getResidentPages());
+        assertEquals(1.0 / 9, stats.getHitRatio(), 1e-9);
+        assertEquals(6, stats.getReadLatency(a.getId()).getCount());
+        assertTrue(stats.getReadLatency(a.getId()).getPercentileMicros(0.99) >= 1);
+
+        stats.reset();
+        assertEquals(0, stats.getHits() + stats.getMisses() + stats.getEvictions() + stats.getPagesRead());
+    }
+
+    /**
+     * Dirty pages and flushes are counted
+     */
+    @Test public void dirtyPagesAndFlushes() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        BufferPoolStats stats = Database.getBufferPool().getStats();
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[]{1, 2}));
+        assertEquals(1, stats.getDirtyPages());
+        Database.getBufferPool().transactionComplete(tid, true);
+        assertEquals(0, stats.getDirtyPages());
+        assertEquals(1, stats.getFlushes());
+        assertEquals(1, snapshot(stats, hf.getId()).getPagesWritten());
+    }
+
+    /**
+     * The stats of the current pool can be read through JMX
+     */
+    @Test public void jmx() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        BufferPool pool = Database.resetBufferPool(10);
+        pool.getPage(new TransactionId(), new HeapPageId(hf.getId(), 0), Permissions.READ_ONLY);
+        pool.getStats().register();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(BufferPoolStats.OBJECT_NAME);
+        assertEquals(1L, server.getAttribute(name, "Misses"));
+        assertEquals(10, server.getAttribute(name, "Capacity"));
+        CompositeData[] tables = (CompositeData[]) server.getAttribute(name, "Tables");
+        assertEquals(1, tables.length);
+        assertEquals(hf.getId(), tables[0].get("tableId"));
+        assertEquals(1L, tables[0].get("pagesRead"));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolStatsTest.class);
+    }
+}
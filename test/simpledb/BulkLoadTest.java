@@ -0,0 +1,124 @@
+package simpledb;
+
+import org.junit.Test;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BulkLoadTest extends SimpleDbTestBase {
+
+    private static List<Tuple> tuples(int from, int count) {
+        List<Tuple> result = new ArrayList<>();
+        for (int i = from; i < from + count; i++)
+            result.add(Utility.getHeapTuple(new int[]{i, -i}));
+        return result;
+    }
+
+    private static void addExpected(List<List<Integer>> expected, int from, int count) {
+        for (int i = from; i < from + count; i++)
+            expected.add(Arrays.asList(i, -i));
+    }
+
+    /**
+     * Loaded tuples are appended after the existing ones on packed pages, and
+     * the load is logged as one compact transaction
+     */
+    @Test public void appendsPackedPages() throws Exception {
+        List<List<Integer>> expected = new ArrayList<>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 600, null, expected);
+        assertEquals(2, hf.numPages());
+        int records = Database.getLogFile().getTotalRecords();
+
+        // 504 tuples fit on a page: 100 full pages and one with 10 tuples
+        int count = 504 * 100 + 10;
+        assertEquals(count, hf.bulkLoad(tuples(0, count).iterator()));
+        addExpected(expected, 0, count);
+
+        assertEquals(2 + 101, hf.numPages());
+        assertEquals(hf.numPages() * (long) BufferPool.getPageSize(), hf.getFile().length());
+        assertEquals(records + 3, Database.getLogFile().getTotalRecords()); // BEGIN, BULK_LOAD, COMMIT
+        SystemTestUtil.matchTuples(hf, expected);
+
+        // the partly filled last page is used by later inserts
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[]{7, 7}));
+        Database.getBufferPool().transactionComplete(tid, true);
+        assertEquals(2 + 101, hf.numPages());
+    }
+
+    /**
+     * A load that fails leaves the file as it was
+     */
+    @Test public void failedLoadIsUndone() throws Exception {
+        List<List<Integer>> expected = new ArrayList<>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 600, null, expected);
+        long length = hf.getFile().length();
+
+        Iterator<Tuple> source = tuples(0, 504 * 80).iterator();
+        Iterator<Tuple> failing = new Iterator<Tuple>() {
+            int n;
+
+            public boolean hasNext() {
+                return true;
+            }
+
+            public Tuple next() {
+                if (++n > 504 * 80)
+                    throw new IllegalStateException("source failed");
+                return source.next();
+            }
+        };
+        try {
+            hf.bulkLoad(failing);
+            fail("expected the load to fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(length, hf.getFile().length());
+        SystemTestUtil.matchTuples(hf, expected);
+
+        try {
+            hf.bulkLoad(Collections.singletonList(Utility.getHeapTuple(1, 3)).iterator());
+            fail("expected a schema mismatch");
+        } catch (DbException e) {
+            // expected
+        }
+        assertEquals(length, hf.getFile().length());
+    }
+
+    /**
+     * Unit test for HeapFileEncoder.readTuples
+     */
+    @Test public void readTextFile() throws Exception {
+        File text = File.createTempFile("copy", ".txt");
+        text.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(new FileWriter(text))) {
+            out.println("1|2");
+            out.println();
+            out.println(" 3 | -4 ");
+        }
+        Iterator<Tuple> it = HeapFileEncoder.readTuples(text, Utility.getTupleDesc(2), '|');
+        assertEquals(new IntField(2), it.next().getField(1));
+        Tuple t = it.next();
+        assertEquals(new IntField(3), t.getField(0));
+        assertEquals(new IntField(-4), t.getField(1));
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BulkLoadTest.class);
+    }
+}
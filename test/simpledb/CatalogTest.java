@@ -97,6 +97,33 @@ public class CatalogTest extends SimpleDbTestBase {
     	assertEquals(f, Database.getCatalog().getDatabaseFile(id2));
     }
 
+    /**
+     * A file that leaves the catalog, because its table is replaced or the
+     * catalog is cleared, is closed; a file added again is not
+     */
+    @Test public void closesDroppedFiles() {
+        final int[] closed = new int[1];
+        class ClosingFile extends SkeletonFile {
+            ClosingFile(int tableid) {
+                super(tableid, Utility.getTupleDesc(2));
+            }
+
+            @Override
+            public void close() {
+                closed[0]++;
+            }
+        }
+        String newName = SystemTestUtil.getUUID();
+        DbFile f = new ClosingFile(r.nextInt());
+        Database.getCatalog().addTable(f, newName);
+        Database.getCatalog().addTable(f, newName);
+        assertEquals(0, closed[0]);
+        Database.getCatalog().addTable(new ClosingFile(r.nextInt()), newName);
+        assertEquals(1, closed[0]);
+        Database.getCatalog().clear();
+        assertEquals(2, closed[0]);
+    }
+
     /**
      * JUnit suite target
      */
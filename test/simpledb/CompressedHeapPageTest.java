@@ -0,0 +1,200 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class CompressedHeapPageTest extends SimpleDbTestBase {
+
+    /**
+     * A constant column (RLE), a clustered one (frame of reference), a low
+     * cardinality one (dictionary), one spanning the whole int range, a low
+     * cardinality string column (dictionary) and a unique one (plain)
+     */
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE, Type.STRING_TYPE, Type.STRING_TYPE},
+            new String[]{"region", "id", "status", "hash", "city", "code"});
+    private static final String[] CITIES = {"boston", "paris", "lima", "oslo", "kyoto"};
+    private static final int ROWS = 5000;
+
+    private HeapFile hf;
+    private List<Tuple> tuples;
+
+    private static Tuple tuple(int i, Random r) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i < ROWS / 2 ? 7 : 8));
+        t.setField(1, new IntField(1000000 + i));
+        t.setField(2, new IntField(new int[]{-5, 100, 2000000}[r.nextInt(3)]));
+        t.setField(3, new IntField(i == 0 ? Integer.MIN_VALUE : i == 1 ? Integer.MAX_VALUE : r.nextInt()));
+        t.setField(4, new StringField(CITIES[r.nextInt(CITIES.length)], Type.STRING_LEN));
+        t.setField(5, new StringField("c" + i, Type.STRING_LEN));
+        return t;
+    }
+
+    private static HeapFile createCompressedHeapFile() throws Exception {
+        File f = File.createTempFile("compressed", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile hf = new HeapFile(f, TD, FilePageIO.DEFAULT_MODE, false, HeapFile.PageFormat.COMPRESSED, null);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    private static List<String> contents(DbFileIterator it) throws Exception {
+        List<String> result = new ArrayList<>();
+        it.open();
+        while (it.hasNext())
+            result.add(it.next().toString());
+        it.close();
+        return result;
+    }
+
+    private static List<String> contents(List<Tuple> tuples) {
+        List<String> result = new ArrayList<>();
+        for (Tuple t : tuples)
+            result.add(t.toString());
+        return result;
+    }
+
+    @Before public void setUp() throws Exception {
+        hf = createCompressedHeapFile();
+        tuples = new ArrayList<>();
+        Random r = new Random(1);
+        for (int i = 0; i < ROWS; i++)
+            tuples.add(tuple(i, r));
+        assertEquals(ROWS, hf.bulkLoad(tuples.iterator()));
+    }
+
+    /**
+     * The tuples read back are the ones loaded, in order, and take far fewer
+     * pages than in the fixed format
+     */
+    @Test public void roundTrip() throws Exception {
+        assertEquals(contents(tuples), contents(hf.iterator(new TransactionId())));
+        int fixedPages = Math.ceilDiv(ROWS, BufferPool.getPageSize() * 8 / (TD.getSize() * 8 + 1));
+        assertTrue(hf.numPages() + " pages", hf.numPages() * 10 < fixedPages);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0));
+        assertTrue(page instanceof CompressedHeapPage);
+        assertEquals(0, page.getNumUnusedSlots());
+        HeapPage.SlotCursor c = page.cursor();
+        for (int i = 0; c.next(); i++) {
+            assertEquals(i, c.slot());
+            assertEquals(1000000 + i, c.getInt(1));
+            assertEquals(tuples.get(i).getField(4), c.getField(4));
+        }
+    }
+
+    /**
+     * A predicate evaluated on the compressed pages returns the tuples that
+     * Predicate.filter accepts, for every operator and kind of column
+     */
+    @Test public void predicates() throws Exception {
+        Map<Integer, List<Field>> operands = new HashMap<>();
+        operands.put(0, Arrays.asList(new IntField(6), new IntField(7), new IntField(8), new IntField(9)));
+        operands.put(1, Arrays.asList(new IntField(0), new IntField(1000000), new IntField(1002500),
+                new IntField(1004999), new IntField(Integer.MAX_VALUE)));
+        operands.put(2, Arrays.asList(new IntField(-5), new IntField(100), new IntField(101)));
+        operands.put(3, Arrays.asList(new IntField(Integer.MIN_VALUE), new IntField(0),
+                new IntField(Integer.MAX_VALUE)));
+        operands.put(4, Arrays.asList(new StringField("oslo", Type.STRING_LEN),
+                new StringField("o", Type.STRING_LEN), new StringField("zurich", Type.STRING_LEN)));
+        operands.put(5, Arrays.asList(new StringField("c42", Type.STRING_LEN),
+                new StringField("c9", Type.STRING_LEN)));
+        for (Map.Entry<Integer, List<Field>> e : operands.entrySet()) {
+            for (Field operand : e.getValue()) {
+                for (Predicate.Op op : Predicate.Op.values()) {
+                    Predicate p = new Predicate(e.getKey(), op, operand);
+                    assertTrue(hf.canEvaluate(p));
+                    List<Tuple> expected = new ArrayList<>();
+                    for (Tuple t : tuples) {
+                        if (p.filter(t))
+                            expected.add(t);
+                    }
+                    assertEquals(p.toString(), contents(expected), contents(hf.iterator(new TransactionId(), p)));
+                }
+            }
+        }
+
+        // 只返回投影的字段
+        Predicate p = new Predicate(4, Predicate.Op.EQUALS, new StringField("lima", Type.STRING_LEN));
+        DbFileIterator it = hf.iterator(new TransactionId(), p, new int[]{1, 4});
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(new StringField("lima", Type.STRING_LEN), t.getField(4));
+            assertEquals(new IntField(0), t.getField(0));
+        }
+        it.close();
+    }
+
+    /**
+     * Deletes mark rows deleted and survive a restart; inserts are refused
+     */
+    @Test public void deleteAndInsert() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        Predicate p = new Predicate(2, Predicate.Op.EQUALS, new IntField(100));
+        DbFileIterator it = hf.iterator(t.getId(), p);
+        List<Tuple> deleted = new ArrayList<>();
+        it.open();
+        while (it.hasNext())
+            deleted.add(it.next());
+        it.close();
+        for (Tuple d : deleted)
+            Database.getBufferPool().deleteTuple(t.getId(), d);
+        try {
+            Database.getBufferPool().insertTuple(t.getId(), hf.getId(), tuples.get(0));
+            fail("expected compressed pages to refuse inserts");
+        } catch (DbException e) {
+            // expected
+        }
+        t.commit();
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        List<Tuple> expected = new ArrayList<>();
+        for (Tuple tuple : tuples) {
+            if (!p.filter(tuple))
+                expected.add(tuple);
+        }
+        assertEquals(contents(expected), contents(hf.iterator(new TransactionId())));
+        assertEquals(Collections.emptyList(), contents(hf.iterator(new TransactionId(), p)));
+    }
+
+    /**
+     * format=compressed in the catalog file selects the compressed format
+     */
+    @Test public void loadSchema() throws Exception {
+        File catalog = File.createTempFile("catalog", ".txt");
+        catalog.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(catalog)) {
+            out.println("facts (id int, city varchar(8)) format=compressed");
+        }
+        Database.getCatalog().loadSchema(catalog.getPath());
+        HeapFile facts = (HeapFile) Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId("facts"));
+        assertEquals(HeapFile.PageFormat.COMPRESSED, facts.getPageFormat());
+        assertFalse(hf.canEvaluate(new Predicate(4, Predicate.Op.EQUALS, new IntField(1))));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedHeapPageTest.class);
+    }
+}
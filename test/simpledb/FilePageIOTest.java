@@ -0,0 +1,93 @@
+package simpledb;
+
+import org.junit.Test;
+import simpledb.common.Database;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class FilePageIOTest extends SimpleDbTestBase {
+
+    private static byte[] filled(int len, int value) {
+        byte[] b = new byte[len];
+        Arrays.fill(b, (byte) value);
+        return b;
+    }
+
+    /**
+     * Pages written in every mode read back unchanged, and reads past the end
+     * of the file report -1
+     */
+    @Test public void roundTrip() throws Exception {
+        for (FilePageIO.Mode mode : FilePageIO.Mode.values()) {
+            File f = File.createTempFile("pageio", ".dat");
+            f.deleteOnExit();
+            FilePageIO io = new FilePageIO(f, mode);
+            io.write(0, filled(64, 1));
+            io.write(64, filled(64, 2));
+            assertEquals(128, io.size());
+
+            byte[] buf = new byte[64];
+            assertEquals(64, io.read(64, buf));
+            assertArrayEquals(mode.toString(), filled(64, 2), buf);
+            assertEquals(-1, io.read(128, buf));
+
+            // a short read at the end of the file
+            assertEquals(32, io.read(96, buf));
+            io.close();
+        }
+    }
+
+    /**
+     * A memory mapped file sees pages appended and overwritten after it was
+     * first mapped
+     */
+    @Test public void mmapSeesWrites() throws Exception {
+        File f = File.createTempFile("pageio", ".dat");
+        f.deleteOnExit();
+        FilePageIO io = new FilePageIO(f, FilePageIO.Mode.MMAP);
+        io.write(0, filled(64, 1));
+        byte[] buf = new byte[64];
+        assertEquals(64, io.read(0, buf));
+
+        io.write(64, filled(64, 3));
+        assertEquals(64, io.read(64, buf));
+        assertArrayEquals(filled(64, 3), buf);
+
+        io.write(0, filled(64, 4));
+        assertEquals(64, io.read(0, buf));
+        assertArrayEquals(filled(64, 4), buf);
+        io.close();
+    }
+
+    /**
+     * A table scans the same tuples whatever mode its pages are read in
+     */
+    @Test public void heapFileModes() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 2000, null, tuples);
+        for (FilePageIO.Mode mode : FilePageIO.Mode.values()) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            HeapFile hf = new HeapFile(table.getFile(), table.getTupleDesc(), mode);
+            assertEquals(mode, hf.getIOMode());
+            SystemTestUtil.matchTuples(hf, new TransactionId(), tuples);
+            hf.close();
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FilePageIOTest.class);
+    }
+}
@@ -0,0 +1,126 @@
+package simpledb;
+
+import org.junit.Test;
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+
+    /**
+     * 504 two-int tuples fit on a page
+     */
+    private static final int SLOTS = 504;
+
+    /**
+     * @return the free slots recorded in the side file for each page
+     */
+    private static int[] sideFile(HeapFile hf) throws IOException {
+        File fsm = hf.getFreeSpaceMapFile();
+        int[] entries = new int[(int) (fsm.length() / 2)];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fsm))) {
+            for (int i = 0; i < entries.length; i++)
+                entries[i] = in.readChar();
+        }
+        return entries;
+    }
+
+    /**
+     * Inserts fill the free slots of existing pages before appending a page,
+     * and committed pages are recorded in the side file
+     */
+    @Test public void insertUsesFreeSlots() throws Exception {
+        // two full pages and a third one with 10 tuples
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 2 * SLOTS + 10, null, null);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < SLOTS - 10; i++)
+            Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(i, 2));
+        assertEquals(3, hf.numPages());
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(-1, 2));
+        assertEquals(4, hf.numPages());
+        Database.getBufferPool().transactionComplete(tid, true);
+
+        assertArrayEquals(new int[]{0, 0, 0, SLOTS - 1}, sideFile(hf));
+    }
+
+    /**
+     * Deleted slots are found again by later inserts
+     */
+    @Test public void deleteFreesSlots() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 3 * SLOTS, null, null);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        Tuple victim = it.next();
+        it.close();
+        Database.getBufferPool().deleteTuple(tid, victim);
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(7, 2));
+        assertEquals(3, hf.numPages());
+        Database.getBufferPool().transactionComplete(tid, true);
+    }
+
+    /**
+     * The space taken by an aborted insert can be used again
+     */
+    @Test public void abortRestoresFreeSpace() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, SLOTS - 1, null, null);
+        TransactionId t1 = new TransactionId();
+        Database.getBufferPool().insertTuple(t1, hf.getId(), Utility.getHeapTuple(1, 2));
+        Database.getBufferPool().transactionComplete(t1, false);
+
+        TransactionId t2 = new TransactionId();
+        Database.getBufferPool().insertTuple(t2, hf.getId(), Utility.getHeapTuple(2, 2));
+        assertEquals(1, hf.numPages());
+        Database.getBufferPool().transactionComplete(t2, true);
+        assertArrayEquals(new int[]{0}, sideFile(hf));
+    }
+
+    /**
+     * A missing or stale side file is rebuilt from the page headers
+     */
+    @Test public void rebuildsSideFile() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, SLOTS + 4, null, null);
+        File fsm = hf.getFreeSpaceMapFile();
+        try (FileOutputStream out = new FileOutputStream(fsm)) {
+            out.write(new byte[]{0, 0, 0, 0, 0, 0}); // wrong number of pages
+        }
+        HeapFile reopened = new HeapFile(hf.getFile(), hf.getTupleDesc());
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, reopened.getId(), Utility.getHeapTuple(3, 2));
+        assertEquals(2, reopened.numPages());
+        assertArrayEquals(new int[]{0, SLOTS - 4}, sideFile(reopened));
+        Database.getBufferPool().transactionComplete(tid, true);
+        assertArrayEquals(new int[]{0, SLOTS - 5}, sideFile(reopened));
+    }
+
+    /**
+     * Deleting a heap file also deletes its side file
+     */
+    @Test public void deletedWithHeapFile() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(3, 2));
+        Database.getBufferPool().transactionComplete(tid, true);
+        assertTrue(hf.getFreeSpaceMapFile().exists());
+        hf.close();
+        assertTrue(HeapFile.delete(hf.getFile()));
+        assertFalse(hf.getFile().exists());
+        assertFalse(hf.getFreeSpaceMapFile().exists());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
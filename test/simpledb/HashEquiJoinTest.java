@@ -0,0 +1,139 @@
+package simpledb;
+
+import org.junit.Test;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class HashEquiJoinTest extends SimpleDbTestBase {
+
+    private static final JoinPredicate EQ = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+
+    /**
+     * @return n tuples (key, i), with key from keys
+     */
+    private static List<Tuple> tuples(int n, java.util.function.IntUnaryOperator keys) {
+        List<Tuple> result = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            result.add(Utility.getHeapTuple(new int[]{keys.applyAsInt(i), i}));
+        return result;
+    }
+
+    private static OpIterator scan(List<Tuple> tuples) {
+        return new TupleIterator(tuples.get(0).getTupleDesc(), tuples);
+    }
+
+    private static List<String> expected(List<Tuple> build, List<Tuple> probe, JoinPredicate p) {
+        List<String> result = new ArrayList<>();
+        for (Tuple b : build) {
+            for (Tuple t : probe) {
+                if (p.filter(b, t))
+                    result.add(Tuple.merge(b, t, TupleDesc.merge(b.getTupleDesc(), t.getTupleDesc())).toString());
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private static List<String> run(OpIterator it) throws Exception {
+        List<String> result = new ArrayList<>();
+        while (it.hasNext())
+            result.add(it.next().toString());
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * A build side that fits in memory is joined without spilling
+     */
+    @Test public void inMemory() throws Exception {
+        List<Tuple> build = tuples(1000, i -> i % 300);
+        List<Tuple> probe = tuples(3000, i -> i % 500);
+        HashEquiJoin join = new HashEquiJoin(EQ, scan(build), scan(probe), 1000);
+        join.open();
+        assertEquals(expected(build, probe, EQ), run(join));
+        join.close();
+        assertEquals(0, join.getSpilledPartitions());
+        assertEquals(0, join.getSpilledTuples());
+        assertEquals(1000, join.getPeakMemoryTuples());
+    }
+
+    /**
+     * A larger build side is partitioned to disk and joined partition by
+     * partition, with no more than the budget in memory; rewind joins again
+     */
+    @Test public void spills() throws Exception {
+        List<Tuple> build = tuples(5000, i -> i * 7 % 2000);
+        List<Tuple> probe = tuples(4000, i -> i % 2500);
+        HashEquiJoin join = new HashEquiJoin(EQ, scan(build), scan(probe), 500);
+        join.open();
+        List<String> expected = expected(build, probe, EQ);
+        assertEquals(expected, run(join));
+        assertTrue(join.getSpilledPartitions() >= HashEquiJoin.FANOUT);
+        assertTrue(join.getSpilledTuples() >= build.size() + probe.size());
+        assertTrue(join.getSpilledBytes() >= 8 * join.getSpilledTuples());
+        assertTrue(join.getPeakMemoryTuples() <= 500);
+
+        join.rewind();
+        assertEquals(expected, run(join));
+        join.close();
+    }
+
+    /**
+     * A join value shared by more tuples than fit in memory is joined in
+     * chunks after repartitioning stops splitting it
+     */
+    @Test public void skew() throws Exception {
+        List<Tuple> build = tuples(3000, i -> i % 3 == 0 ? 42 : i);
+        List<Tuple> probe = tuples(1000, i -> i % 10 == 0 ? 42 : i);
+        HashEquiJoin join = new HashEquiJoin(EQ, scan(build), scan(probe), 200);
+        join.open();
+        assertEquals(expected(build, probe, EQ), run(join));
+        assertTrue(join.getPeakMemoryTuples() <= 200);
+        join.close();
+    }
+
+    /**
+     * String join fields survive the spill files
+     */
+    @Test public void strings() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.STRING_TYPE, Type.INT_TYPE});
+        List<Tuple> build = new ArrayList<>();
+        List<Tuple> probe = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new StringField("k" + i % 700, Type.STRING_LEN));
+            t.setInt(1, i);
+            (i % 2 == 0 ? build : probe).add(t);
+        }
+        HashEquiJoin join = new HashEquiJoin(EQ, scan(build), scan(probe), 100);
+        join.open();
+        assertEquals(expected(build, probe, EQ), run(join));
+        assertTrue(join.getSpilledPartitions() > 0);
+        join.close();
+    }
+
+    /**
+     * The memory budget must hold at least one tuple
+     */
+    @Test(expected = IllegalArgumentException.class) public void emptyBudget() {
+        new HashEquiJoin(EQ, scan(tuples(10, i -> i)), scan(tuples(10, i -> i)), 0);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashEquiJoinTest.class);
+    }
+}
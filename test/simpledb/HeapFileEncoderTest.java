@@ -0,0 +1,101 @@
+package simpledb;
+
+import org.junit.Test;
+import simpledb.common.Type;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFileEncoder;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class HeapFileEncoderTest extends SimpleDbTestBase {
+
+    private static final Type[] INT_STRING_INT = {Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE};
+
+    /**
+     * Convert text with the serial and the parallel encoder, with chunks of
+     * chunkBytes, and check that the outputs are identical
+     *
+     * @return the number of tuples reported by the parallel encoder
+     */
+    private static long assertSameOutput(String text, Type[] types, int chunkBytes) throws IOException {
+        File in = File.createTempFile("encoder", ".txt");
+        File serial = File.createTempFile("serial", ".dat");
+        File parallel = File.createTempFile("parallel", ".dat");
+        in.deleteOnExit();
+        serial.deleteOnExit();
+        parallel.deleteOnExit();
+        Files.write(in.toPath(), text.getBytes());
+        long expected = HeapFileEncoder.convert(in, serial, BufferPool.getPageSize(), types.length, types, ',');
+        long tuples = HeapFileEncoder.convertParallel(in, parallel, BufferPool.getPageSize(), types.length,
+                types, ',', 4, chunkBytes);
+        assertEquals(expected, tuples);
+        assertArrayEquals(Files.readAllBytes(serial.toPath()), Files.readAllBytes(parallel.toPath()));
+        return tuples;
+    }
+
+    private static String randomRows(int rows, long seed) {
+        Random r = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            StringBuilder s = new StringBuilder();
+            for (int j = r.nextInt(Type.STRING_LEN + 20); j > 0; j--)
+                s.append((char) ('a' + r.nextInt(26)));
+            sb.append(r.nextInt()).append(", ").append(s).append(" ,").append(-i);
+            // mix line endings and blank lines
+            sb.append(r.nextInt(10) == 0 ? "\r\n\n" : "\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Many small chunks spread the pages over chunk boundaries
+     */
+    @Test public void manyChunks() throws Exception {
+        assertEquals(5000, assertSameOutput(randomRows(5000, 1), INT_STRING_INT, 4096));
+    }
+
+    /**
+     * A chunk smaller than a line still ends at a line boundary
+     */
+    @Test public void tinyChunks() throws Exception {
+        assertEquals(300, assertSameOutput(randomRows(300, 2), INT_STRING_INT, 1));
+    }
+
+    /**
+     * An empty input gives one empty page; a full last page adds no empty page
+     */
+    @Test public void pageBoundaries() throws Exception {
+        assertEquals(0, assertSameOutput("", INT_STRING_INT, 4096));
+        Type[] ints = {Type.INT_TYPE, Type.INT_TYPE};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 504 * 3; i++) // 504 two-int tuples fit on a page
+            sb.append(i).append(',').append(i).append('\n');
+        assertEquals(504 * 3, assertSameOutput(sb.toString(), ints, 1000));
+    }
+
+    /**
+     * Malformed lines, and a last line without a newline, give the output of
+     * the serial encoder
+     */
+    @Test public void malformedInput() throws Exception {
+        Type[] ints = {Type.INT_TYPE, Type.INT_TYPE};
+        assertSameOutput("1,2\n3,x\n5,6\n", ints, 4);
+        assertSameOutput("1,2\n3\n5,6\n", ints, 4);
+        assertSameOutput("1,2\n3,4\n5,6", ints, 4);
+        assertEquals(2, assertSameOutput("1\n2\n3", new Type[]{Type.INT_TYPE}, 2));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HeapFileEncoderTest.class);
+    }
+}
@@ -0,0 +1,117 @@
+package simpledb;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.Filter;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class HeapPageCursorTest extends SimpleDbTestBase {
+    private HeapPageId pid;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() {
+        this.pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)), SystemTestUtil.getUUID());
+    }
+
+    /**
+     * The cursor visits the used slots in order and reads the same values
+     * the tuples hold
+     */
+    @Test public void cursorReadsInPlace() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        HeapPage.SlotCursor cursor = page.cursor();
+        int row = 0;
+        while (cursor.next()) {
+            int[] expected = HeapPageReadTest.EXAMPLE_VALUES[row];
+            assertEquals(row, cursor.slot());
+            assertEquals(expected[0], cursor.getInt(0));
+            assertEquals(expected[1], cursor.getInt(1));
+            assertEquals(new IntField(expected[1]), cursor.getField(1));
+            Tuple t = cursor.getTuple();
+            assertEquals(new RecordId(pid, row), t.getRecordId());
+            assertEquals(new IntField(expected[0]), t.getField(0));
+            row++;
+        }
+        assertEquals(HeapPageReadTest.EXAMPLE_VALUES.length, row);
+        assertFalse(cursor.next());
+    }
+
+    /**
+     * Unit test for HeapPage.iterator(field, op, operand)
+     */
+    @Test public void filteredIterator() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        Iterator<Tuple> it = page.iterator(0, Predicate.Op.GREATER_THAN, 40000);
+        List<Integer> seen = new ArrayList<>();
+        while (it.hasNext())
+            seen.add(((IntField) it.next().getField(0)).getValue());
+        List<Integer> expected = new ArrayList<>();
+        for (int[] tuple : HeapPageReadTest.EXAMPLE_VALUES) {
+            if (tuple[0] > 40000)
+                expected.add(tuple[0]);
+        }
+        assertEquals(expected, seen);
+        try {
+            it.next();
+            fail("expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Unchanged pages serialize back to the bytes they were read from
+     */
+    @Test public void pageDataRoundTrip() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, page.getPageData());
+    }
+
+    /**
+     * A Filter over a SeqScan pushes its predicate into the scan and returns
+     * the same tuples
+     */
+    @Test public void filterPushDown() throws Exception {
+        Map<Integer, Integer> eq = new HashMap<>();
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 3000, 100, eq, tuples);
+        List<List<Integer>> expected = new ArrayList<>();
+        for (List<Integer> t : tuples) {
+            if (t.get(1) < 30)
+                expected.add(t);
+        }
+
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, hf.getId());
+        Predicate p = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(30));
+        assertTrue(scan.pushDown(p));
+        Filter filter = new Filter(p, scan);
+        SystemTestUtil.matchTuples(filter, expected);
+
+        // string operands are not pushed down
+        assertFalse(scan.pushDown(new Predicate(1, Predicate.Op.EQUALS, new StringField("x", 8))));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HeapPageCursorTest.class);
+    }
+}
@@ -0,0 +1,159 @@
+package simpledb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.LogicalJoinNode;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class IndexNestedLoopJoinTest extends SimpleDbTestBase {
+
+    private TransactionId tid;
+    private BTreeFile inner;
+    private List<Tuple> outer;
+
+    /**
+     * Create an inner table of 20000 (key, value) rows, indexed on the key,
+     * and 200 outer tuples
+     */
+    @Before public void setUp() throws Exception {
+        tid = new TransactionId();
+        inner = BTreeUtility.createRandomBTreeFile(2, 20000, 1000, null, null, 0);
+        outer = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            outer.add(Utility.getHeapTuple(new int[]{i * 7 % 1100, i}));
+    }
+
+    @After public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private OpIterator outerScan() {
+        return new TupleIterator(Utility.getTupleDesc(2), outer);
+    }
+
+    private static List<String> run(OpIterator it) throws Exception {
+        List<String> result = new ArrayList<>();
+        it.open();
+        while (it.hasNext())
+            result.add(it.next().toString());
+        it.close();
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * The index join returns the tuples of Join, with one index search per
+     * outer tuple, and again after rewind
+     */
+    @Test public void equals() throws Exception {
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        List<String> expected = run(new Join(p, outerScan(), new SeqScan(tid, inner.getId())));
+        IndexNestedLoopJoin join = new IndexNestedLoopJoin(p, outerScan(), new SeqScan(tid, inner.getId()));
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, run(join));
+
+        join.open();
+        while (join.hasNext())
+            join.next();
+        assertEquals(outer.size(), join.getProbes());
+        join.rewind();
+        int n = 0;
+        while (join.hasNext()) {
+            join.next();
+            n++;
+        }
+        assertEquals(expected.size(), n);
+        join.close();
+    }
+
+    /**
+     * Range predicates search the index with the reversed operator
+     */
+    @Test public void ranges() throws Exception {
+        outer = outer.subList(0, 10);
+        for (Predicate.Op op : new Predicate.Op[]{Predicate.Op.LESS_THAN, Predicate.Op.LESS_THAN_OR_EQ,
+                Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ}) {
+            JoinPredicate p = new JoinPredicate(0, op, 0);
+            assertEquals(run(new Join(p, outerScan(), new SeqScan(tid, inner.getId()))),
+                    run(new IndexNestedLoopJoin(p, outerScan(), new SeqScan(tid, inner.getId()))));
+        }
+    }
+
+    /**
+     * Filters over the inner scan are applied to the tuples found
+     */
+    @Test public void filters() throws Exception {
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        Predicate f = new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(500));
+        List<String> expected = run(new Join(p, outerScan(), new Filter(f, new SeqScan(tid, inner.getId()))));
+        assertEquals(expected, run(new IndexNestedLoopJoin(p, outerScan(),
+                new Filter(f, new SeqScan(tid, inner.getId())))));
+    }
+
+    /**
+     * Only an index on the join field can be searched, and only for
+     * comparisons
+     */
+    @Test public void canProbe() throws Exception {
+        SeqScan scan = new SeqScan(tid, inner.getId());
+        assertTrue(IndexNestedLoopJoin.canProbe(new JoinPredicate(0, Predicate.Op.EQUALS, 0), scan));
+        assertFalse(IndexNestedLoopJoin.canProbe(new JoinPredicate(0, Predicate.Op.EQUALS, 1), scan));
+        assertFalse(IndexNestedLoopJoin.canProbe(new JoinPredicate(0, Predicate.Op.NOT_EQUALS, 0), scan));
+        HeapFile heap = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        assertFalse(IndexNestedLoopJoin.canProbe(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, heap.getId())));
+    }
+
+    /**
+     * instantiateJoin searches the index for a small outer table, hashes a
+     * large one, and uses a block nested-loop join for other predicates
+     */
+    @Test public void instantiateJoin() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        String name = Database.getCatalog().getTableName(table.getId());
+        int[] tuples = {10};
+        TableStats.setTableStats(name, new TableStats(table.getId(), 1000) {
+            @Override
+            public int totalTuples() {
+                return tuples[0];
+            }
+        });
+        try {
+            // 随机表的字段没有名字
+            LogicalJoinNode eq = new LogicalJoinNode("a", "b", "", "", Predicate.Op.EQUALS);
+            assertTrue(JoinOptimizer.instantiateJoin(eq, new SeqScan(tid, table.getId(), "a"),
+                    new SeqScan(tid, inner.getId(), "b")) instanceof IndexNestedLoopJoin);
+            LogicalJoinNode ne = new LogicalJoinNode("a", "b", "", "", Predicate.Op.NOT_EQUALS);
+            assertTrue(JoinOptimizer.instantiateJoin(ne, new SeqScan(tid, table.getId(), "a"),
+                    new SeqScan(tid, inner.getId(), "b")) instanceof Join);
+            tuples[0] = 100000;
+            assertTrue(JoinOptimizer.instantiateJoin(eq, new SeqScan(tid, table.getId(), "a"),
+                    new SeqScan(tid, inner.getId(), "b")) instanceof HashEquiJoin);
+        } finally {
+            TableStats.getStatsMap().remove(name);
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IndexNestedLoopJoinTest.class);
+    }
+}
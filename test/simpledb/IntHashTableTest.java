@@ -0,0 +1,93 @@
+package simpledb;
+
+import org.junit.Test;
+import simpledb.execution.IntHashTable;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class IntHashTableTest extends SimpleDbTestBase {
+
+    /**
+     * Unit test for IntHashTable.put() and get()
+     */
+    @Test public void putGet() {
+        IntHashTable t = new IntHashTable();
+        assertEquals(IntHashTable.ABSENT, t.get(0));
+        assertEquals(IntHashTable.ABSENT, t.put(0, 7));
+        assertEquals(IntHashTable.ABSENT, t.put(-1, 0));
+        assertEquals(IntHashTable.ABSENT, t.put(Integer.MIN_VALUE, 3));
+        assertEquals(7, t.get(0));
+        assertEquals(0, t.get(-1));
+        assertEquals(3, t.get(Integer.MIN_VALUE));
+        assertEquals(IntHashTable.ABSENT, t.get(1));
+        assertEquals(7, t.put(0, 8));
+        assertEquals(8, t.get(0));
+        assertEquals(3, t.size());
+    }
+
+    /**
+     * putIfAbsent() keeps the first value of a key
+     */
+    @Test public void putIfAbsent() {
+        IntHashTable t = new IntHashTable();
+        assertEquals(IntHashTable.ABSENT, t.putIfAbsent(5, 1));
+        assertEquals(1, t.putIfAbsent(5, 2));
+        assertEquals(1, t.get(5));
+        assertEquals(1, t.size());
+    }
+
+    /**
+     * The table grows past its initial capacity and agrees with a HashMap
+     */
+    @Test public void grow() {
+        IntHashTable t = new IntHashTable();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random r = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            // 一半是连续的键，一半是随机的键
+            int key = i % 2 == 0 ? i : r.nextInt();
+            Integer old = expected.put(key, i);
+            assertEquals(old == null ? IntHashTable.ABSENT : old, t.put(key, i));
+        }
+        assertEquals(expected.size(), t.size());
+        for (Map.Entry<Integer, Integer> e : expected.entrySet())
+            assertEquals((int) e.getValue(), t.get(e.getKey()));
+        for (int i = 0; i < 1000; i++) {
+            int key = r.nextInt();
+            assertEquals(expected.getOrDefault(key, IntHashTable.ABSENT).intValue(), t.get(key));
+        }
+    }
+
+    /**
+     * clear() removes all keys
+     */
+    @Test public void clear() {
+        IntHashTable t = new IntHashTable(1000);
+        for (int i = 0; i < 1000; i++)
+            t.put(i, i);
+        t.clear();
+        assertEquals(0, t.size());
+        for (int i = 0; i < 1000; i++)
+            assertEquals(IntHashTable.ABSENT, t.get(i));
+        t.put(3, 4);
+        assertEquals(4, t.get(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeValue() {
+        new IntHashTable().put(1, -2);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IntHashTableTest.class);
+    }
+}
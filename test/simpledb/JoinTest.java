@@ -3,6 +3,11 @@ package simpledb;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Before;
@@ -13,8 +18,10 @@ import simpledb.execution.Join;
 import simpledb.execution.JoinPredicate;
 import simpledb.execution.OpIterator;
 import simpledb.execution.Predicate;
+import simpledb.storage.BufferPool;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
 import simpledb.systemtest.SimpleDbTestBase;
 
 public class JoinTest extends SimpleDbTestBase {
@@ -112,6 +119,39 @@ public class JoinTest extends SimpleDbTestBase {
     TestUtil.matchAllTuples(eqJoin, op);
   }
 
+  /**
+   * Join reads child1 in blocks of pages and scans child2 once per block
+   */
+  @Test public void blocks() throws Exception {
+    List<Tuple> outer = new ArrayList<>();
+    List<Tuple> inner = new ArrayList<>();
+    for (int i = 0; i < 2000; i++)
+      outer.add(Utility.getHeapTuple(new int[] { i % 700, i }));
+    for (int i = 0; i < 300; i++)
+      inner.add(Utility.getHeapTuple(new int[] { i * 3, i }));
+    TupleDesc td = Utility.getTupleDesc(2);
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    Join op = new Join(pred, new TupleIterator(td, outer), new TupleIterator(td, inner), 1);
+    assertEquals(BufferPool.getPageSize() / td.getSize(), op.getBlockTuples());
+
+    List<String> expected = new ArrayList<>();
+    for (Tuple t1 : outer)
+      for (Tuple t2 : inner)
+        if (pred.filter(t1, t2))
+          expected.add(Tuple.merge(t1, t2, op.getTupleDesc()).toString());
+    Collections.sort(expected);
+
+    op.open();
+    List<String> actual = new ArrayList<>();
+    while (op.hasNext())
+      actual.add(op.next().toString());
+    Collections.sort(actual);
+    assertEquals(expected, actual);
+    int blocks = (outer.size() + op.getBlockTuples() - 1) / op.getBlockTuples();
+    assertEquals(blocks, op.getInnerScans());
+    op.close();
+  }
+
   /**
    * JUnit suite target
    */
@@ -0,0 +1,185 @@
+package simpledb;
+
+import org.junit.Test;
+import simpledb.common.Type;
+import simpledb.execution.*;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class MultiAggregateTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE},
+            new String[]{"a", "s", "v"});
+
+    private static final int[] AFIELDS = {2, 2, 2, 1, 2, 2};
+    private static final Aggregator.Op[] AOPS = {Aggregator.Op.COUNT, Aggregator.Op.SUM, Aggregator.Op.AVG,
+            Aggregator.Op.COUNT, Aggregator.Op.MIN, Aggregator.Op.MAX};
+
+    /**
+     * @return n tuples (a, s, v) with a in [0, 50), s one of 20 strings
+     */
+    private static List<Tuple> tuples(int n) {
+        Random r = new Random(1);
+        List<Tuple> result = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Tuple t = new Tuple(TD);
+            t.setInt(0, r.nextInt(50));
+            t.setField(1, new StringField("s" + r.nextInt(20), Type.STRING_LEN));
+            t.setInt(2, r.nextInt(2000) - 1000);
+            result.add(t);
+        }
+        return result;
+    }
+
+    private static OpIterator scan(List<Tuple> tuples) {
+        return new TupleIterator(TD, tuples);
+    }
+
+    /**
+     * @return the count, sum, avg, count, min and max of v in the tuples
+     *         of each (a, s), as strings
+     */
+    private static Map<String, String> expected(List<Tuple> tuples) {
+        Map<String, List<Integer>> values = new HashMap<>();
+        for (Tuple t : tuples)
+            values.computeIfAbsent(t.getField(0) + " " + t.getField(1), k -> new ArrayList<>()).add(t.getInt(2));
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> e : values.entrySet()) {
+            List<Integer> vs = e.getValue();
+            int sum = 0;
+            for (int v : vs)
+                sum += v;
+            result.put(e.getKey(), vs.size() + " " + sum + " " + sum / vs.size() + " " + vs.size() + " "
+                    + Collections.min(vs) + " " + Collections.max(vs));
+        }
+        return result;
+    }
+
+    private static Map<String, String> run(OpIterator it) throws Exception {
+        Map<String, String> result = new HashMap<>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            StringBuilder values = new StringBuilder();
+            for (int i = 2; i < t.getTupleDesc().numFields(); i++)
+                values.append(i > 2 ? " " : "").append(t.getInt(i));
+            assertNull("one tuple per group", result.put(t.getField(0) + " " + t.getField(1), values.toString()));
+        }
+        return result;
+    }
+
+    /**
+     * Several aggregates over an int and a string group field are computed
+     * in one pass, in memory and partitioned to disk
+     */
+    @Test public void compositeGroups() throws Exception {
+        List<Tuple> tuples = tuples(5000);
+        Map<String, String> expected = expected(tuples);
+        for (int budget : new int[]{Aggregate.MAX_GROUPS, 40}) {
+            Aggregate agg = new Aggregate(scan(tuples), AFIELDS, AOPS, new int[]{0, 1}, budget);
+            agg.open();
+            assertEquals(expected, run(agg));
+            agg.rewind();
+            assertEquals(expected, run(agg));
+            agg.close();
+            assertEquals(budget == 40, agg.getSpilledPartitions() > 0);
+        }
+    }
+
+    /**
+     * The group fields come first, then one column for each aggregate
+     */
+    @Test public void tupleDesc() {
+        Aggregate agg = new Aggregate(scan(tuples(1)), new int[]{2, 1},
+                new Aggregator.Op[]{Aggregator.Op.SUM, Aggregator.Op.COUNT}, new int[]{1, 0});
+        TupleDesc expected = new TupleDesc(new Type[]{Type.STRING_TYPE, Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE},
+                new String[]{"s", "a", "sum (v)", "count (s)"});
+        assertEquals(expected, agg.getTupleDesc());
+        assertEquals(1, agg.groupField());
+        assertEquals("sum (v)", agg.aggregateFieldName());
+
+        Aggregate total = new Aggregate(scan(tuples(1)), new int[]{2, 2},
+                new Aggregator.Op[]{Aggregator.Op.MIN, Aggregator.Op.MAX}, new int[0]);
+        assertEquals(2, total.getTupleDesc().numFields());
+        assertEquals(Aggregator.NO_GROUPING, total.groupField());
+    }
+
+    /**
+     * A child sorted on the group fields, in any order, is aggregated one
+     * group at a time; one sorted on only some of them is not
+     */
+    @Test public void sortedInput() throws Exception {
+        List<Tuple> tuples = tuples(5000);
+        Map<String, String> expected = expected(tuples);
+        OrderBy sorted = new OrderBy(new int[]{1, 0, 2}, new boolean[]{true, false, true}, scan(tuples));
+        Aggregate agg = new Aggregate(sorted, AFIELDS, AOPS, new int[]{0, 1}, 40);
+        agg.open();
+        assertEquals(expected, run(agg));
+        agg.close();
+        assertTrue(agg.isSortedInput());
+        assertEquals(1, agg.getPeakGroups());
+
+        agg = new Aggregate(new OrderBy(0, true, scan(tuples)), AFIELDS, AOPS, new int[]{0, 1});
+        agg.open();
+        assertEquals(expected, run(agg));
+        agg.close();
+        assertFalse(agg.isSortedInput());
+    }
+
+    /**
+     * LogicalPlan computes all the aggregates of the select list in one
+     * Aggregate, grouped by all the GROUP BY fields
+     */
+    @Test public void logicalPlan() throws Exception {
+        List<List<Integer>> rows = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(3, 500, 5, null, rows, "c");
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addProjectField("t.c1", null);
+        lp.addProjectField("t.c2", "SUM");
+        lp.addProjectField("t.c0", null);
+        lp.addProjectField("t.c2", "COUNT");
+        lp.addAggregate("SUM", "t.c2", null);
+        lp.addAggregate("COUNT", "t.c2", null);
+        lp.addGroupBy("t.c0");
+        lp.addGroupBy("t.c1");
+        OpIterator plan = lp.physicalPlan(tid, new HashMap<>(), false);
+        OpIterator agg = ((Operator) plan).getChildren()[0];
+        assertTrue(agg instanceof Aggregate);
+        assertArrayEquals(new int[]{0, 1}, ((Aggregate) agg).groupFields());
+        assertEquals(2, ((Aggregate) agg).aggregateOps().length);
+
+        Map<List<Integer>, int[]> expected = new HashMap<>();
+        for (List<Integer> row : rows) {
+            int[] sumCount = expected.computeIfAbsent(Arrays.asList(row.get(1), row.get(0)), k -> new int[2]);
+            sumCount[0] += row.get(2);
+            sumCount[1]++;
+        }
+        plan.open();
+        int groups = 0;
+        while (plan.hasNext()) {
+            Tuple t = plan.next();
+            int[] sumCount = expected.get(Arrays.asList(t.getInt(0), t.getInt(2)));
+            assertEquals(sumCount[0], t.getInt(1));
+            assertEquals(sumCount[1], t.getInt(3));
+            groups++;
+        }
+        plan.close();
+        assertEquals(expected.size(), groups);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MultiAggregateTest.class);
+    }
+}
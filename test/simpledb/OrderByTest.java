@@ -0,0 +1,153 @@
+package simpledb;
+
+import org.junit.Test;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.OpIterator;
+import simpledb.execution.OrderBy;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class OrderByTest extends SimpleDbTestBase {
+
+    /**
+     * @return n tuples (key, i), with key from keys
+     */
+    private static List<Tuple> tuples(int n, java.util.function.IntUnaryOperator keys) {
+        List<Tuple> result = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            result.add(Utility.getHeapTuple(new int[]{keys.applyAsInt(i), i}));
+        return result;
+    }
+
+    private static OpIterator scan(List<Tuple> tuples) {
+        return new TupleIterator(tuples.get(0).getTupleDesc(), tuples);
+    }
+
+    private static List<Integer> keys(List<Tuple> tuples, boolean asc) {
+        List<Integer> result = new ArrayList<>();
+        for (Tuple t : tuples)
+            result.add(t.getInt(0));
+        result.sort(asc ? Comparator.naturalOrder() : Comparator.reverseOrder());
+        return result;
+    }
+
+    private static List<Integer> run(OpIterator it) throws Exception {
+        List<Integer> result = new ArrayList<>();
+        while (it.hasNext())
+            result.add(it.next().getInt(0));
+        return result;
+    }
+
+    /**
+     * Input within the budget is sorted in memory, keeping the order of
+     * tuples with equal keys
+     */
+    @Test public void inMemory() throws Exception {
+        List<Tuple> tuples = tuples(1000, i -> i * 7 % 10);
+        OrderBy ob = new OrderBy(0, true, scan(tuples), 1000);
+        ob.open();
+        int lastKey = -1, lastId = -1;
+        while (ob.hasNext()) {
+            Tuple t = ob.next();
+            if (t.getInt(0) == lastKey)
+                assertTrue(t.getInt(1) > lastId);
+            lastKey = t.getInt(0);
+            lastId = t.getInt(1);
+        }
+        ob.close();
+        assertEquals(1000, ob.getSortedTuples());
+        assertEquals(0, ob.getRuns());
+        assertEquals(0, ob.getSpilledTuples());
+        assertTrue(ob.explainAnalyze().contains("in memory"));
+    }
+
+    /**
+     * Larger input is sorted in runs of about twice the budget, merged in
+     * one pass, and again after rewind
+     */
+    @Test public void external() throws Exception {
+        Random r = new Random(1);
+        List<Tuple> tuples = tuples(20000, i -> r.nextInt(5000));
+        for (boolean asc : new boolean[]{true, false}) {
+            OrderBy ob = new OrderBy(0, asc, scan(tuples), 500);
+            ob.open();
+            List<Integer> expected = keys(tuples, asc);
+            assertEquals(expected, run(ob));
+            assertTrue(ob.getRuns() > 1);
+            // 置换选择在随机输入上生成约两倍内存预算的顺串
+            assertTrue(ob.getRuns() <= 20000 / 500);
+            assertEquals(1, ob.getMergePasses());
+            assertEquals(20000, ob.getSpilledTuples());
+            assertTrue(ob.explainAnalyze().contains("external merge"));
+
+            ob.rewind();
+            assertEquals(expected, run(ob));
+            ob.close();
+        }
+    }
+
+    /**
+     * Sorted input makes a single run
+     */
+    @Test public void sortedInput() throws Exception {
+        List<Tuple> tuples = tuples(5000, i -> i);
+        OrderBy ob = new OrderBy(0, true, scan(tuples), 100);
+        ob.open();
+        assertEquals(keys(tuples, true), run(ob));
+        assertEquals(1, ob.getRuns());
+        ob.close();
+    }
+
+    /**
+     * More runs than are merged at once are merged in several passes
+     */
+    @Test public void mergePasses() throws Exception {
+        List<Tuple> tuples = tuples(3000, i -> 3000 - i);
+        OrderBy ob = new OrderBy(0, true, scan(tuples), 10);
+        ob.open();
+        assertEquals(keys(tuples, true), run(ob));
+        assertEquals(300, ob.getRuns());
+        assertEquals(2, ob.getMergePasses());
+        assertEquals(2 * 3000, ob.getSpilledTuples());
+        ob.close();
+    }
+
+    /**
+     * String keys survive the runs
+     */
+    @Test public void strings() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.STRING_TYPE, Type.INT_TYPE});
+        List<Tuple> tuples = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Tuple t = new Tuple(td);
+            String s = "k" + i * 7919 % 2000;
+            t.setField(0, new StringField(s, Type.STRING_LEN));
+            t.setInt(1, i);
+            tuples.add(t);
+            expected.add(s);
+        }
+        Collections.sort(expected);
+        OrderBy ob = new OrderBy(0, true, scan(tuples), 100);
+        ob.open();
+        List<String> actual = new ArrayList<>();
+        while (ob.hasNext())
+            actual.add(((StringField) ob.next().getField(0)).getValue());
+        ob.close();
+        assertEquals(expected, actual);
+        assertTrue(ob.getRuns() > 1);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(OrderByTest.class);
+    }
+}
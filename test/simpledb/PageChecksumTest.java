@@ -0,0 +1,167 @@
+package simpledb;
+
+import org.junit.Test;
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeLeafPage;
+import simpledb.index.BTreePageId;
+import simpledb.index.BTreeRootPtrPage;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PageChecksumTest extends SimpleDbTestBase {
+
+    private static HeapFile createChecksummedHeapFile() throws Exception {
+        File f = File.createTempFile("checksum", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2), FilePageIO.DEFAULT_MODE, true);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    /**
+     * Overwrite len bytes of the file at offset with garbage, as a torn
+     * write would
+     */
+    private static void damage(File f, long offset, int len) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(offset);
+            byte[] garbage = new byte[len];
+            Arrays.fill(garbage, (byte) 0x5a);
+            raf.write(garbage);
+        }
+    }
+
+    /**
+     * Unit test for PageChecksum: sealed pages verify, damaged ones do not,
+     * and a page that was never written is accepted
+     */
+    @Test public void sealAndVerify() {
+        byte[] page = new byte[100];
+        for (int i = 0; i < page.length; i++)
+            page[i] = (byte) i;
+        byte[] sealed = PageChecksum.seal(page);
+        assertEquals(page.length + PageChecksum.TRAILER_SIZE, sealed.length);
+        assertTrue(PageChecksum.verify(sealed, 0, page.length));
+        sealed[17] ^= 1;
+        assertFalse(PageChecksum.verify(sealed, 0, page.length));
+        assertTrue(PageChecksum.verify(new byte[page.length + PageChecksum.TRAILER_SIZE], 0, page.length));
+    }
+
+    /**
+     * Pages of a file with checksums are stored with their trailer and read
+     * back unchanged
+     */
+    @Test public void heapFileRoundTrip() throws Exception {
+        HeapFile hf = createChecksummedHeapFile();
+        List<List<Integer>> expected = new ArrayList<>();
+        Transaction t = new Transaction();
+        t.start();
+        for (int i = 0; i < 1000; i++) {
+            Database.getBufferPool().insertTuple(t.getId(), hf.getId(), Utility.getHeapTuple(new int[]{i, -i}));
+            expected.add(Arrays.asList(i, -i));
+        }
+        t.commit();
+        assertEquals(2, hf.numPages());
+        assertEquals(2L * (BufferPool.getPageSize() + PageChecksum.TRAILER_SIZE), hf.getFile().length());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(hf, expected);
+    }
+
+    /**
+     * A torn page is repaired from the after image of its last update in
+     * the log, and the repaired page is written back
+     */
+    @Test public void tornPageIsRepaired() throws Exception {
+        HeapFile hf = createChecksummedHeapFile();
+        List<List<Integer>> expected = new ArrayList<>();
+        Transaction t = new Transaction();
+        t.start();
+        for (int i = 0; i < 100; i++) {
+            Database.getBufferPool().insertTuple(t.getId(), hf.getId(), Utility.getHeapTuple(new int[]{i, i}));
+            expected.add(Arrays.asList(i, i));
+        }
+        t.commit();
+
+        damage(hf.getFile(), 200, 1000);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(hf, expected);
+
+        // the repaired page is on disk again
+        byte[] onDisk = new byte[BufferPool.getPageSize() + PageChecksum.TRAILER_SIZE];
+        try (RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "r")) {
+            raf.readFully(onDisk);
+        }
+        assertTrue(PageChecksum.verify(onDisk, 0, BufferPool.getPageSize()));
+    }
+
+    /**
+     * A damaged page that the log knows nothing about cannot be read
+     */
+    @Test public void unrepairablePageFails() throws Exception {
+        HeapFile hf = createChecksummedHeapFile();
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            tuples.add(Utility.getHeapTuple(new int[]{i, i}));
+        hf.bulkLoad(tuples.iterator()); // no page images in the log
+        damage(hf.getFile(), 10, 4);
+        try {
+            hf.readPage(new HeapPageId(hf.getId(), 0));
+            fail("expected the checksum mismatch to be reported");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause().getMessage().contains("checksum"));
+        }
+    }
+
+    /**
+     * B+ tree pages are checked the same way
+     */
+    @Test public void btreePages() throws Exception {
+        File f = File.createTempFile("checksum", ".idx");
+        f.deleteOnExit();
+        BTreeFile bf = new BTreeFile(f, 0, Utility.getTupleDesc(2), FilePageIO.DEFAULT_MODE, true);
+        Database.getCatalog().addTable(bf, SystemTestUtil.getUUID());
+        BTreePageId rootPtrId = BTreeRootPtrPage.getId(bf.getId());
+        BTreePageId leafId = new BTreePageId(bf.getId(), 1, BTreePageId.LEAF);
+        bf.writePage(new BTreeRootPtrPage(rootPtrId, BTreeRootPtrPage.createEmptyPageData()));
+        BTreeLeafPage leaf = new BTreeLeafPage(leafId, BTreeLeafPage.createEmptyPageData(), 0);
+        leaf.insertTuple(Utility.getHeapTuple(new int[]{42, 1}));
+        bf.writePage(leaf);
+        assertEquals(1, bf.numPages());
+
+        BTreeLeafPage read = (BTreeLeafPage) bf.readPage(leafId);
+        assertEquals(42, ((IntField) read.iterator().next().getField(0)).getValue());
+        assertNotNull(bf.readPage(rootPtrId));
+
+        damage(f, BTreeRootPtrPage.getPageSize() + PageChecksum.TRAILER_SIZE + 50, 8);
+        try {
+            bf.readPage(leafId);
+            fail("expected the checksum mismatch to be reported");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause().getMessage().contains("checksum"));
+        }
+        assertNotNull(Database.getBufferPool().getPage(new Transaction().getId(), rootPtrId,
+                Permissions.READ_ONLY));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageChecksumTest.class);
+    }
+}
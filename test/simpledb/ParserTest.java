@@ -0,0 +1,78 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.common.Database;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ParserTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 100;
+
+    private HeapFile table;
+
+    @Before public void createTable() throws Exception {
+        table = SystemTestUtil.createRandomHeapFile(2, ROWS, null, new ArrayList<List<Integer>>(), "c");
+        Database.getCatalog().addTable(table, "t");
+    }
+
+    private int countRows() throws Exception {
+        SeqScan scan = new SeqScan(new TransactionId(), table.getId());
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.close();
+        return n;
+    }
+
+    /**
+     * Assert that s is rejected as invalid SQL without changing the table
+     */
+    private void assertRejected(String s) throws Exception {
+        try {
+            new Parser().processNextStatementForTest(s);
+            fail("expected a parse error: " + s);
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof ParsingException);
+        }
+        assertEquals(ROWS, countRows());
+    }
+
+    /**
+     * LIMIT is only supported on SELECT; DELETE and INSERT with a LIMIT are
+     * parse errors instead of ignoring it
+     */
+    @Test public void limitOutsideSelect() throws Exception {
+        assertRejected("DELETE FROM t WHERE t.c0 > 0 LIMIT 1;");
+        assertRejected("DELETE FROM t LIMIT 10");
+        assertRejected("INSERT INTO t VALUES (1, 2) LIMIT 1;");
+        assertRejected("INSERT INTO t SELECT * FROM t LIMIT 5;");
+    }
+
+    /**
+     * A LIMIT that does not fit in an int is a parse error
+     */
+    @Test public void limitTooLarge() throws Exception {
+        assertRejected("SELECT * FROM t LIMIT 99999999999999999999;");
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ParserTest.class);
+    }
+}
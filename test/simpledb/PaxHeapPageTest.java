@@ -0,0 +1,154 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PaxHeapPageTest extends SimpleDbTestBase {
+
+    private static final int COLUMNS = 4;
+
+    private HeapFile hf;
+    private List<List<Integer>> expected;
+
+    private static Tuple tuple(int i) {
+        int[] values = new int[COLUMNS];
+        for (int j = 0; j < COLUMNS; j++)
+            values[j] = i * 10 + j;
+        return Utility.getHeapTuple(values);
+    }
+
+    private static List<Integer> values(int i) {
+        List<Integer> values = new ArrayList<>();
+        for (int j = 0; j < COLUMNS; j++)
+            values.add(i * 10 + j);
+        return values;
+    }
+
+    @Before public void setUp() throws Exception {
+        File f = File.createTempFile("pax", ".dat");
+        HeapFile.deleteOnExit(f);
+        hf = new HeapFile(f, Utility.getTupleDesc(COLUMNS), FilePageIO.DEFAULT_MODE, false,
+                HeapFile.PageFormat.PAX, null);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        List<Tuple> tuples = new ArrayList<>();
+        expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            tuples.add(tuple(i));
+            expected.add(values(i));
+        }
+        hf.bulkLoad(tuples.iterator());
+    }
+
+    /**
+     * The values of a field are stored together after the header
+     */
+    @Test public void layout() throws Exception {
+        // 16 byte tuples: 254 slots and a 32 byte header per 4 KB page
+        int numSlots = BufferPool.getPageSize() * 8 / (COLUMNS * 4 * 8 + 1);
+        int headerSize = (numSlots + 7) / 8;
+        assertEquals(Math.ceilDiv(1000, numSlots), hf.numPages());
+        HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0));
+        assertTrue(page instanceof PaxHeapPage);
+        byte[] data = page.getPageData();
+        assertEquals(0, Type.readInt(data, headerSize));           // field 0 of slot 0
+        assertEquals(10, Type.readInt(data, headerSize + 4));      // field 0 of slot 1
+        assertEquals(1, Type.readInt(data, headerSize + numSlots * 4)); // field 1 of slot 0
+        SystemTestUtil.matchTuples(hf, expected);
+    }
+
+    /**
+     * Tuples inserted and deleted through the BufferPool are written back
+     * into the minipages
+     */
+    @Test public void insertAndDelete() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        DbFileIterator it = hf.iterator(t.getId());
+        it.open();
+        Tuple first = it.next();
+        it.close();
+        Database.getBufferPool().deleteTuple(t.getId(), first);
+        expected.remove(values(0));
+        for (int i = 1000; i < 1100; i++) {
+            Database.getBufferPool().insertTuple(t.getId(), hf.getId(), tuple(i));
+            expected.add(values(i));
+        }
+        t.commit();
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(hf, expected);
+    }
+
+    /**
+     * A projected scan only sets the requested fields
+     */
+    @Test public void projectedIterator() throws Exception {
+        DbFileIterator it = hf.iterator(new TransactionId(), null, new int[]{3, 1});
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int i = ((IntField) t.getField(1)).getValue() / 10;
+            assertEquals(new IntField(0), t.getField(0)); // 未读取的字段
+            assertEquals(new IntField(0), t.getField(2));
+            assertEquals(new IntField(i * 10 + 3), t.getField(3));
+            assertEquals(new RecordId(new HeapPageId(hf.getId(), i / 254), i % 254), t.getRecordId());
+            n++;
+        }
+        it.close();
+        assertEquals(1000, n);
+
+        Predicate p = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(50));
+        it = hf.iterator(new TransactionId(), p, new int[]{2});
+        it.open();
+        List<Integer> thirds = new ArrayList<>();
+        while (it.hasNext())
+            thirds.add(((IntField) it.next().getField(2)).getValue());
+        it.close();
+        assertEquals(Arrays.asList(2, 12, 22, 32, 42), thirds);
+    }
+
+    /**
+     * Project pushes the fields it and the filters below it need into the
+     * SeqScan
+     */
+    @Test public void projectionPushDown() throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, hf.getId(), "t");
+        Filter filter = new Filter(new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(9900)), scan);
+        Project project = new Project(Arrays.asList(3, 0), new Type[]{Type.INT_TYPE, Type.INT_TYPE}, filter);
+        List<List<Integer>> result = new ArrayList<>();
+        for (int i = 990; i < 1000; i++)
+            result.add(Arrays.asList(i * 10 + 3, i * 10));
+        SystemTestUtil.matchTuples(project, result);
+
+        scan.open();
+        assertTrue(scan.hasNext());
+        Tuple t = scan.next();
+        assertEquals(new IntField(9903), t.getField(3));
+        assertEquals(new IntField(0), t.getField(2)); // 未读取的字段
+        scan.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxHeapPageTest.class);
+    }
+}
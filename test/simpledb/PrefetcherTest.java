@@ -0,0 +1,89 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.common.Database;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PrefetcherTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+    private final List<List<Integer>> tuples = new ArrayList<>();
+
+    @Before public void createTable() throws Exception {
+        // 504 two-int tuples fit on a page: 40 pages
+        hf = SystemTestUtil.createRandomHeapFile(2, 504 * 40, null, tuples);
+    }
+
+    /**
+     * A sequential scan prefetches the pages ahead of it, and later finds
+     * them in the buffer pool
+     */
+    @Test public void sequentialScanPrefetches() throws Exception {
+        Database.resetBufferPool(64);
+        Prefetcher prefetcher = Database.getBufferPool().getPrefetcher();
+        DbFileIterator it = hf.iterator(new TransactionId());
+        it.open();
+        // read the first four pages, then give the background threads time
+        int read = 0;
+        while (read < 504 * 4 && it.hasNext()) {
+            it.next();
+            read++;
+        }
+        Thread.sleep(500);
+        assertTrue(prefetcher.getIssued() > 0);
+        while (it.hasNext()) {
+            it.next();
+            read++;
+        }
+        it.close();
+        assertEquals(tuples.size(), read);
+        assertTrue(prefetcher.getHits() > 0);
+        assertTrue(prefetcher.getHits() + prefetcher.getWasted() <= prefetcher.getIssued());
+    }
+
+    /**
+     * Prefetching never holds more than its cap of unrequested pages
+     */
+    @Test public void prefetchIsCapped() throws Exception {
+        Database.resetBufferPool(8);
+        Prefetcher prefetcher = Database.getBufferPool().getPrefetcher();
+        assertEquals(2, prefetcher.getMaxOutstanding());
+        for (int i = 0; i < 10; i++)
+            prefetcher.prefetch(new HeapPageId(hf.getId(), i));
+        Thread.sleep(500);
+        assertTrue(prefetcher.getIssued() <= 2);
+
+        // small pools do not prefetch at all
+        Database.resetBufferPool(3);
+        assertFalse(Database.getBufferPool().getPrefetcher().prefetch(new HeapPageId(hf.getId(), 0)));
+    }
+
+    /**
+     * A request the executor rejects is refused, and does not count against
+     * the cap
+     */
+    @Test public void rejectedRequestsAreRefused() throws Exception {
+        Database.resetBufferPool(64);
+        Prefetcher prefetcher = Database.getBufferPool().getPrefetcher();
+        prefetcher.shutdown();
+        for (int i = 0; i < 2 * prefetcher.getMaxOutstanding(); i++)
+            assertFalse(prefetcher.prefetch(new HeapPageId(hf.getId(), i)));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PrefetcherTest.class);
+    }
+}
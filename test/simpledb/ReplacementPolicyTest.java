@@ -0,0 +1,142 @@
+package simpledb;
+
+import org.junit.Test;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ReplacementPolicyTest extends SimpleDbTestBase {
+
+    @SuppressWarnings("unchecked")
+    private static final IntFunction<ReplacementPolicy>[] FACTORIES = new IntFunction[] {
+            (IntFunction<ReplacementPolicy>) LRUReplacementPolicy::new,
+            (IntFunction<ReplacementPolicy>) ClockReplacementPolicy::new,
+            (IntFunction<ReplacementPolicy>) LRUKReplacementPolicy::new,
+            (IntFunction<ReplacementPolicy>) TwoQueueReplacementPolicy::new
+    };
+
+    private static HeapPageId pid(int pageNo) {
+        return new HeapPageId(1, pageNo);
+    }
+
+    /**
+     * Admit pages 0..n-1 into the given policy
+     */
+    private static ReplacementPolicy fill(IntFunction<ReplacementPolicy> factory, int n) {
+        ReplacementPolicy policy = factory.apply(n);
+        for (int i = 0; i < n; i++)
+            policy.pageAdmitted(pid(i));
+        return policy;
+    }
+
+    /**
+     * Unit test for LRUReplacementPolicy: the least recently accessed page goes first
+     */
+    @Test public void lru() {
+        ReplacementPolicy policy = fill(LRUReplacementPolicy::new, 4);
+        policy.pageAccessed(pid(0));
+        assertEquals(pid(1), policy.chooseVictim(p -> true));
+        assertEquals(pid(2), policy.chooseVictim(p -> true));
+        assertEquals(pid(3), policy.chooseVictim(p -> true));
+        assertEquals(pid(0), policy.chooseVictim(p -> true));
+        assertNull(policy.chooseVictim(p -> true));
+    }
+
+    /**
+     * Unit test for ClockReplacementPolicy: a referenced page gets a second chance
+     */
+    @Test public void clock() {
+        ReplacementPolicy policy = fill(ClockReplacementPolicy::new, 4);
+        // the first sweep clears every reference bit, then page 0 goes
+        assertEquals(pid(0), policy.chooseVictim(p -> true));
+        policy.pageAdmitted(pid(4));
+        policy.pageAccessed(pid(1));
+        assertEquals(pid(2), policy.chooseVictim(p -> true));
+    }
+
+    /**
+     * Unit test for LRUKReplacementPolicy: pages referenced only once go first
+     */
+    @Test public void lruK() {
+        ReplacementPolicy policy = fill(LRUKReplacementPolicy::new, 4);
+        policy.pageAccessed(pid(0));
+        policy.pageAccessed(pid(1));
+        assertEquals(pid(2), policy.chooseVictim(p -> true));
+        assertEquals(pid(3), policy.chooseVictim(p -> true));
+        policy.pageAccessed(pid(1));
+        assertEquals(pid(0), policy.chooseVictim(p -> true));
+    }
+
+    /**
+     * Unit test for TwoQueueReplacementPolicy: pages evicted from A1in and read
+     * again are promoted to Am and survive a scan
+     */
+    @Test public void twoQueue() {
+        ReplacementPolicy policy = fill(TwoQueueReplacementPolicy::new, 4);
+        // bring page 0 back after it was evicted: it is promoted to Am
+        assertEquals(pid(0), policy.chooseVictim(p -> true));
+        policy.pageAdmitted(pid(0));
+        // a scan over many pages only cycles through A1in
+        for (int i = 100; i < 120; i++) {
+            assertNotEquals(pid(0), policy.chooseVictim(p -> true));
+            policy.pageAdmitted(pid(i));
+        }
+    }
+
+    /**
+     * All policies must skip pages that may not be evicted (e.g. dirty pages)
+     */
+    @Test public void respectsEvictable() {
+        for (IntFunction<ReplacementPolicy> factory : FACTORIES) {
+            ReplacementPolicy policy = fill(factory, 6);
+            Set<PageId> pinned = new HashSet<>();
+            for (int i = 0; i < 6; i += 2)
+                pinned.add(pid(i));
+            Set<PageId> evicted = new HashSet<>();
+            PageId victim;
+            while ((victim = policy.chooseVictim(p -> !pinned.contains(p))) != null)
+                assertTrue(evicted.add(victim));
+            assertEquals(3, evicted.size());
+            for (PageId p : pinned)
+                assertFalse(evicted.contains(p));
+        }
+    }
+
+    /**
+     * A rejected victim goes back where it was without counting as a
+     * reference: it is the next victim again, and 2Q does not promote it
+     * from A1in to Am as a page read again after its eviction
+     */
+    @Test public void victimRejected() {
+        for (IntFunction<ReplacementPolicy> factory : FACTORIES) {
+            ReplacementPolicy policy = fill(factory, 4);
+            PageId victim = policy.chooseVictim(p -> true);
+            policy.victimRejected(victim);
+            assertEquals(victim, policy.chooseVictim(p -> true));
+        }
+
+        ReplacementPolicy policy = fill(TwoQueueReplacementPolicy::new, 4);
+        assertEquals(pid(0), policy.chooseVictim(p -> true));
+        policy.victimRejected(pid(0));
+        // page 0 is still on probation: a scan pushes it out of the pool
+        Set<PageId> evicted = new HashSet<>();
+        for (int i = 100; i < 104; i++) {
+            evicted.add(policy.chooseVictim(p -> true));
+            policy.pageAdmitted(pid(i));
+        }
+        assertTrue(evicted.contains(pid(0)));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReplacementPolicyTest.class);
+    }
+}
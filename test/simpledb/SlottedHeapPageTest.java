@@ -0,0 +1,234 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class SlottedHeapPageTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE},
+            new String[]{"id", "code"});
+
+    private HeapFile hf;
+    private HeapPageId pid;
+
+    private static HeapFile createSlottedHeapFile(int codeLength) throws Exception {
+        File f = File.createTempFile("slotted", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile hf = new HeapFile(f, TD, FilePageIO.DEFAULT_MODE, false, HeapFile.PageFormat.SLOTTED,
+                new int[]{0, codeLength});
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    private static Tuple tuple(int id, String code) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(code, Type.STRING_LEN));
+        return t;
+    }
+
+    private static Map<Integer, String> contents(Iterator<Tuple> it) {
+        Map<Integer, String> result = new TreeMap<>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            result.put(((IntField) t.getField(0)).getValue(), ((StringField) t.getField(1)).getValue());
+        }
+        return result;
+    }
+
+    private static Map<Integer, String> contents(DbFile f) throws Exception {
+        DbFileIterator it = f.iterator(new TransactionId());
+        it.open();
+        List<Tuple> tuples = new ArrayList<>();
+        while (it.hasNext())
+            tuples.add(it.next());
+        it.close();
+        return contents(tuples.iterator());
+    }
+
+    @Before public void setUp() throws Exception {
+        hf = createSlottedHeapFile(8);
+        pid = new HeapPageId(hf.getId(), 0);
+    }
+
+    /**
+     * Records take their real size: a page holds many more short strings
+     * than fixed slots, and a full page refuses further inserts
+     */
+    @Test public void fillPage() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        // 4 + 2 + 3 bytes per record and 4 per slot
+        int perPage = (BufferPool.getPageSize() - 6) / 13;
+        assertEquals((BufferPool.getPageSize() - 6) / (4 + 2 + 8 + 4), page.getNumUnusedSlots());
+        Map<Integer, String> expected = new TreeMap<>();
+        for (int i = 0; i < perPage; i++) {
+            page.insertTuple(tuple(i, "abc"));
+            expected.put(i, "abc");
+        }
+        assertEquals(0, page.getNumUnusedSlots());
+        try {
+            page.insertTuple(tuple(-1, "abc"));
+            fail("expected the page to be full");
+        } catch (DbException e) {
+            // expected
+        }
+        assertEquals(expected, contents(page.iterator()));
+
+        // the bytes of the page give the same page
+        assertEquals(expected, contents(new SlottedHeapPage(pid, page.getPageData()).iterator()));
+    }
+
+    /**
+     * Deleted records leave holes that are reused once the record area is
+     * compacted; the remaining records keep their RecordId
+     */
+    @Test public void deleteAndCompact() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        List<Tuple> inserted = new ArrayList<>();
+        for (int i = 0; page.getNumUnusedSlots() > 0; i++) {
+            Tuple t = tuple(i, "x" + i);
+            page.insertTuple(t);
+            inserted.add(t);
+        }
+        Map<Integer, String> expected = contents(page.iterator());
+        for (int i = 0; i < inserted.size(); i += 2) {
+            page.deleteTuple(inserted.get(i));
+            expected.remove(i);
+        }
+        assertFalse(page.isSlotUsed(0));
+        assertTrue(page.isSlotUsed(1));
+        try {
+            page.deleteTuple(inserted.get(0));
+            fail("expected the slot to be empty");
+        } catch (DbException e) {
+            // expected
+        }
+
+        // longer records than the deleted ones only fit after compaction
+        for (int i = 0; page.getNumUnusedSlots() > 0; i++) {
+            Tuple t = tuple(100000 + i, "abcdefgh");
+            page.insertTuple(t);
+            expected.put(100000 + i, "abcdefgh");
+            assertEquals(0, t.getRecordId().getTupleNumber() % 2); // 复用被删除的slot
+        }
+        assertEquals(expected, contents(page.iterator()));
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int id = ((IntField) t.getField(0)).getValue();
+            if (id < 100000)
+                assertEquals(inserted.get(id).getRecordId(), t.getRecordId());
+        }
+    }
+
+    /**
+     * The cursor reads fields after a string at the right offset
+     */
+    @Test public void cursor() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.STRING_TYPE, Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE});
+        File f = File.createTempFile("slotted", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile file = new HeapFile(f, td, FilePageIO.DEFAULT_MODE, false, HeapFile.PageFormat.SLOTTED, null);
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+        SlottedHeapPage page = new SlottedHeapPage(new HeapPageId(file.getId(), 0), HeapPage.createEmptyPageData());
+        for (int i = 0; i < 10; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new StringField("s".repeat(i), Type.STRING_LEN));
+            t.setField(1, new IntField(i));
+            t.setField(2, new StringField("t".repeat(2 * i), Type.STRING_LEN));
+            t.setField(3, new IntField(-i));
+            page.insertTuple(t);
+        }
+        HeapPage.SlotCursor c = page.cursor();
+        int n = 0;
+        while (c.next()) {
+            assertEquals(n, c.getInt(1));
+            assertEquals(-n, c.getInt(3));
+            assertEquals("t".repeat(2 * n), ((StringField) c.getField(2)).getValue());
+            n++;
+        }
+        assertEquals(10, n);
+    }
+
+    /**
+     * Inserts through the BufferPool are written in the slotted format and
+     * read back with strings cut to the declared length
+     */
+    @Test public void heapFileRoundTrip() throws Exception {
+        Map<Integer, String> expected = new TreeMap<>();
+        Transaction t = new Transaction();
+        t.start();
+        for (int i = 0; i < 1000; i++) {
+            Database.getBufferPool().insertTuple(t.getId(), hf.getId(), tuple(i, "code-" + i));
+            expected.put(i, ("code-" + i).substring(0, Math.min(8, ("code-" + i).length())));
+        }
+        t.commit();
+        // 最长的记录是 4 + 2 + 8 字节，加上4字节的slot
+        assertEquals(Math.ceilDiv(1000, (BufferPool.getPageSize() - 6) / 18), hf.numPages());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertEquals(expected, contents(hf));
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(new TransactionId(), pid, Permissions.READ_ONLY);
+        assertTrue(page instanceof SlottedHeapPage);
+    }
+
+    /**
+     * bulkLoad packs records as tightly as they fit
+     */
+    @Test public void bulkLoad() throws Exception {
+        List<Tuple> tuples = new ArrayList<>();
+        Map<Integer, String> expected = new TreeMap<>();
+        for (int i = 0; i < 5000; i++) {
+            tuples.add(tuple(i, "ab"));
+            expected.put(i, "ab");
+        }
+        assertEquals(5000, hf.bulkLoad(tuples.iterator()));
+        int perPage = (BufferPool.getPageSize() - 6) / (4 + 2 + 2 + 4);
+        assertEquals(Math.ceilDiv(5000, perPage), hf.numPages());
+        assertEquals(expected, contents(hf));
+    }
+
+    /**
+     * varchar(n) in the catalog file selects the slotted format
+     */
+    @Test public void loadSchema() throws Exception {
+        File catalog = File.createTempFile("catalog", ".txt");
+        catalog.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(catalog)) {
+            out.println("codes (id int pk, code varchar(4), name string)");
+            out.println("fixed (id int, code varchar(4)) format=fixed");
+        }
+        Database.getCatalog().loadSchema(catalog.getPath());
+        HeapFile codes = (HeapFile) Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId("codes"));
+        assertEquals(HeapFile.PageFormat.SLOTTED, codes.getPageFormat());
+        assertEquals(Type.STRING_TYPE, codes.getTupleDesc().getFieldType(1));
+        assertEquals(4, codes.getMaxLength(1));
+        assertEquals(Type.STRING_LEN, codes.getMaxLength(2));
+        assertEquals("id", Database.getCatalog().getPrimaryKey(codes.getId()));
+        HeapFile fixed = (HeapFile) Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId("fixed"));
+        assertEquals(HeapFile.PageFormat.FIXED, fixed.getPageFormat());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapPageTest.class);
+    }
+}
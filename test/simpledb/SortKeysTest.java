@@ -0,0 +1,112 @@
+package simpledb;
+
+import org.junit.Test;
+import simpledb.common.Type;
+import simpledb.execution.SortKeys;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class SortKeysTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE});
+
+    private static Tuple tuple(int a, String s, int b) {
+        Tuple t = new Tuple(TD);
+        t.setInt(0, a);
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        t.setInt(2, b);
+        return t;
+    }
+
+    /**
+     * The tuples for the keys: ints around the sign and byte boundaries, and
+     * strings that are prefixes of each other or contain char 0
+     */
+    private static List<Tuple> tuples() {
+        int[] ints = {Integer.MIN_VALUE, -65536, -256, -1, 0, 1, 255, 256, 65536, Integer.MAX_VALUE};
+        String[] strings = {"", "\0", "\0a", "\1", "a", "a\0", "a\0b", "ab", "abcdefghij", "abcdefghik", "b",
+                "ÿ", "Ā", "￿"};
+        List<Tuple> result = new ArrayList<>();
+        int i = 0;
+        for (int a : ints) {
+            for (String s : strings)
+                result.add(tuple(a, s, i++ % 7));
+        }
+        Collections.shuffle(result, new Random(1));
+        return result;
+    }
+
+    private static int signum(int c) {
+        return Integer.compare(c, 0);
+    }
+
+    /**
+     * @return the order of a and b on the fields in their directions
+     */
+    private static int compare(Tuple a, Tuple b, int[] fields, boolean[] asc) {
+        for (int i = 0; i < fields.length; i++) {
+            int c = TD.getFieldType(fields[i]) == Type.INT_TYPE
+                    ? Integer.compare(a.getInt(fields[i]), b.getInt(fields[i]))
+                    : ((StringField) a.getField(fields[i])).getValue()
+                    .compareTo(((StringField) b.getField(fields[i])).getValue());
+            if (c != 0)
+                return asc[i] ? c : -c;
+        }
+        return 0;
+    }
+
+    private void checkOrder(int[] fields, boolean[] asc) {
+        SortKeys keys = new SortKeys(TD, fields, asc);
+        List<Tuple> tuples = tuples();
+        for (Tuple a : tuples) {
+            byte[] ka = keys.encode(a);
+            for (Tuple b : tuples) {
+                assertEquals(a + " vs " + b, signum(compare(a, b, fields, asc)),
+                        signum(Arrays.compareUnsigned(ka, keys.encode(b))));
+            }
+        }
+    }
+
+    /**
+     * The unsigned byte order of the keys is the order of the fields, in
+     * either direction, with fields after a string
+     */
+    @Test public void order() {
+        checkOrder(new int[]{0}, new boolean[]{true});
+        checkOrder(new int[]{0}, new boolean[]{false});
+        checkOrder(new int[]{1}, new boolean[]{true});
+        checkOrder(new int[]{1, 0}, new boolean[]{true, true});
+        checkOrder(new int[]{1, 0}, new boolean[]{false, true});
+        checkOrder(new int[]{0, 1, 2}, new boolean[]{false, true, false});
+    }
+
+    /**
+     * sort orders on the keys, keeping equal keys in input order, for keys
+     * within and beyond the 8-byte prefix
+     */
+    @Test public void sort() {
+        int[][] fieldLists = {{0}, {2, 0}, {2, 0, 2}, {1}, {2, 1}};
+        for (int[] fields : fieldLists) {
+            boolean[] asc = new boolean[fields.length];
+            for (int i = 0; i < asc.length; i++)
+                asc[i] = i % 2 == 0;
+            List<Tuple> tuples = tuples();
+            List<Tuple> expected = new ArrayList<>(tuples);
+            expected.sort((a, b) -> compare(a, b, fields, asc));
+            new SortKeys(TD, fields, asc).sort(tuples);
+            assertEquals(expected, tuples);
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SortKeysTest.class);
+    }
+}
@@ -0,0 +1,177 @@
+package simpledb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.LogicalJoinNode;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class SortMergeJoinTest extends SimpleDbTestBase {
+
+    private static final Predicate.Op[] OPS = {Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+            Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ};
+
+    private TransactionId tid;
+    private List<Tuple> left, right;
+
+    /**
+     * Create two unsorted tables of (key, i) tuples with duplicate keys
+     */
+    @Before public void setUp() throws Exception {
+        tid = new TransactionId();
+        left = new ArrayList<>();
+        right = new ArrayList<>();
+        for (int i = 0; i < 300; i++)
+            left.add(Utility.getHeapTuple(new int[]{i * 37 % 101, i}));
+        for (int i = 0; i < 200; i++)
+            right.add(Utility.getHeapTuple(new int[]{i * 53 % 120, i}));
+    }
+
+    @After public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private static OpIterator scan(List<Tuple> tuples) {
+        return new TupleIterator(tuples.get(0).getTupleDesc(), tuples);
+    }
+
+    private static List<String> run(OpIterator it) throws Exception {
+        List<String> result = new ArrayList<>();
+        it.open();
+        while (it.hasNext())
+            result.add(it.next().toString());
+        it.close();
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Every comparison returns the tuples of Join, and again after rewind
+     */
+    @Test public void operators() throws Exception {
+        for (Predicate.Op op : OPS) {
+            JoinPredicate p = new JoinPredicate(0, op, 0);
+            List<String> expected = run(new Join(p, scan(left), scan(right)));
+            assertFalse(expected.isEmpty());
+            SortMergeJoin join = new SortMergeJoin(p, scan(left), scan(right));
+            assertEquals(expected, run(join));
+
+            join.open();
+            while (join.hasNext())
+                join.next();
+            join.rewind();
+            int n = 0;
+            while (join.hasNext()) {
+                join.next();
+                n++;
+            }
+            join.close();
+            assertEquals(expected.size(), n);
+        }
+    }
+
+    /**
+     * The result is sorted on the join field of child1
+     */
+    @Test public void resultOrder() throws Exception {
+        SortMergeJoin join = new SortMergeJoin(new JoinPredicate(0, Predicate.Op.LESS_THAN, 0),
+                scan(left), scan(right));
+        join.open();
+        int last = Integer.MIN_VALUE;
+        while (join.hasNext()) {
+            int key = join.next().getInt(0);
+            assertTrue(key >= last);
+            last = key;
+        }
+        join.close();
+        assertTrue(SortMergeJoin.isSortedOn(join, 0));
+    }
+
+    /**
+     * String join fields are compared with Field.compare
+     */
+    @Test public void strings() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.STRING_TYPE, Type.INT_TYPE});
+        List<Tuple> l = new ArrayList<>(), r = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new StringField("k" + i * 7 % 60, Type.STRING_LEN));
+            t.setInt(1, i);
+            (i % 2 == 0 ? l : r).add(t);
+        }
+        for (Predicate.Op op : new Predicate.Op[]{Predicate.Op.EQUALS, Predicate.Op.GREATER_THAN}) {
+            JoinPredicate p = new JoinPredicate(0, op, 0);
+            assertEquals(run(new Join(p, scan(l), scan(r))), run(new SortMergeJoin(p, scan(l), scan(r))));
+        }
+    }
+
+    /**
+     * Children already sorted on the join field, by an OrderBy or as a scan
+     * of a B+ tree on it, are not sorted again
+     */
+    @Test public void sortedChildren() throws Exception {
+        BTreeFile tree = BTreeUtility.createRandomBTreeFile(2, 2000, 500, null, null, 0);
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        OpIterator ordered = new OrderBy(0, true, scan(left));
+        SeqScan treeScan = new SeqScan(tid, tree.getId());
+        SortMergeJoin join = new SortMergeJoin(p, ordered, treeScan);
+        assertSame(ordered, join.getChildren()[0]);
+        assertSame(treeScan, join.getChildren()[1]);
+        assertEquals(run(new Join(p, scan(left), new SeqScan(tid, tree.getId()))), run(join));
+
+        join = new SortMergeJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 1), scan(left), treeScan);
+        assertTrue(join.getChildren()[0] instanceof OrderBy);
+        assertTrue(join.getChildren()[1] instanceof OrderBy);
+        assertFalse(SortMergeJoin.isSortedOn(new OrderBy(0, false, scan(left)), 0));
+    }
+
+    /**
+     * Only comparisons can be merged
+     */
+    @Test(expected = IllegalArgumentException.class) public void notEquals() {
+        new SortMergeJoin(new JoinPredicate(0, Predicate.Op.NOT_EQUALS, 0), scan(left), scan(right));
+    }
+
+    /**
+     * instantiateJoin merges tables scanned in the order of their B+ tree
+     * keys, and range joins of unsorted tables
+     */
+    @Test public void instantiateJoin() throws Exception {
+        BTreeFile t1 = BTreeUtility.createRandomBTreeFile(2, 20000, 1000, null, null, 0);
+        BTreeFile t2 = BTreeUtility.createRandomBTreeFile(2, 20000, 1000, null, null, 0);
+        // 随机表的字段没有名字
+        LogicalJoinNode eq = new LogicalJoinNode("a", "b", "", "", Predicate.Op.EQUALS);
+        assertTrue(JoinOptimizer.instantiateJoin(eq, new SeqScan(tid, t1.getId(), "a"),
+                new SeqScan(tid, t2.getId(), "b")) instanceof SortMergeJoin);
+
+        HeapFile h1 = SystemTestUtil.createRandomHeapFile(2, 2000, null, null);
+        HeapFile h2 = SystemTestUtil.createRandomHeapFile(2, 2000, null, null);
+        LogicalJoinNode lt = new LogicalJoinNode("a", "b", "", "", Predicate.Op.LESS_THAN);
+        assertTrue(JoinOptimizer.instantiateJoin(lt, new SeqScan(tid, h1.getId(), "a"),
+                new SeqScan(tid, h2.getId(), "b")) instanceof SortMergeJoin);
+        assertTrue(JoinOptimizer.instantiateJoin(eq, new SeqScan(tid, h1.getId(), "a"),
+                new SeqScan(tid, h2.getId(), "b")) instanceof HashEquiJoin);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SortMergeJoinTest.class);
+    }
+}
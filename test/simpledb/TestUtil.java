@@ -377,7 +377,7 @@ public class TestUtil {
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-            emptyFile.deleteOnExit();
+            HeapFile.deleteOnExit(emptyFile);
         }
 
         protected void setUp() throws Exception {
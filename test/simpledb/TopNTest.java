@@ -0,0 +1,142 @@
+package simpledb;
+
+import org.junit.Test;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class TopNTest extends SimpleDbTestBase {
+
+    /**
+     * @return n tuples (a, b, i)
+     */
+    private static List<Tuple> tuples(int n) {
+        Random r = new Random(1);
+        List<Tuple> result = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            result.add(Utility.getHeapTuple(new int[]{r.nextInt(20), r.nextInt(50), i}));
+        return result;
+    }
+
+    private static OpIterator scan(List<Tuple> tuples) {
+        return new TupleIterator(tuples.get(0).getTupleDesc(), tuples);
+    }
+
+    private static List<String> run(OpIterator it) throws Exception {
+        List<String> result = new ArrayList<>();
+        it.open();
+        while (it.hasNext())
+            result.add(it.next().toString());
+        it.close();
+        return result;
+    }
+
+    /**
+     * OrderBy on several fields compares them in turn, each in its direction
+     */
+    @Test public void multiKeyOrderBy() throws Exception {
+        List<Tuple> tuples = tuples(2000);
+        List<Tuple> expected = new ArrayList<>(tuples);
+        expected.sort(Comparator.<Tuple>comparingInt(t -> t.getInt(0))
+                .thenComparing(Comparator.<Tuple>comparingInt(t -> t.getInt(1)).reversed()));
+        List<String> expectedStrings = new ArrayList<>();
+        for (Tuple t : expected)
+            expectedStrings.add(t.toString());
+
+        int[] fields = {0, 1};
+        boolean[] asc = {true, false};
+        assertEquals(expectedStrings, run(new OrderBy(fields, asc, scan(tuples))));
+        // 外部排序时相等的键顺序不定，只比较排序键
+        OrderBy external = new OrderBy(fields, asc, scan(tuples), 100);
+        List<String> keys = new ArrayList<>(), expectedKeys = new ArrayList<>();
+        external.open();
+        while (external.hasNext()) {
+            Tuple t = external.next();
+            keys.add(t.getInt(0) + "," + t.getInt(1));
+        }
+        external.close();
+        for (Tuple t : expected)
+            expectedKeys.add(t.getInt(0) + "," + t.getInt(1));
+        assertEquals(expectedKeys, keys);
+        assertTrue(external.getRuns() > 1);
+    }
+
+    /**
+     * TopN returns the first tuples of OrderBy, ties in input order, holding
+     * at most limit tuples, and again after rewind; LIMIT 0 reads nothing
+     */
+    @Test public void firstTuples() throws Exception {
+        List<Tuple> tuples = tuples(5000);
+        int[] fields = {0, 1};
+        boolean[] asc = {false, true};
+        List<String> sorted = run(new OrderBy(fields, asc, scan(tuples)));
+        for (int limit : new int[]{0, 1, 10, 777, 5000, 6000}) {
+            TopN top = new TopN(fields, asc, limit, scan(tuples));
+            List<String> expected = sorted.subList(0, Math.min(limit, sorted.size()));
+            assertEquals(expected, run(top));
+            assertEquals(limit == 0 ? 0 : 5000, top.getTuplesRead());
+
+            top.open();
+            top.rewind();
+            List<String> again = new ArrayList<>();
+            while (top.hasNext())
+                again.add(top.next().toString());
+            top.close();
+            assertEquals(expected, again);
+        }
+    }
+
+    /**
+     * Without sort fields TopN returns the first tuples of its child and
+     * reads no further
+     */
+    @Test public void limitOnly() throws Exception {
+        List<Tuple> tuples = tuples(100);
+        TopN top = new TopN(new int[0], new boolean[0], 7, scan(tuples));
+        List<String> expected = new ArrayList<>();
+        for (Tuple t : tuples.subList(0, 7))
+            expected.add(t.toString());
+        assertEquals(expected, run(top));
+        assertEquals(7, top.getTuplesRead());
+    }
+
+    /**
+     * LogicalPlan sorts on every ORDER BY field, and plans a TopN when there
+     * is a LIMIT
+     */
+    @Test public void logicalPlan() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 500, null, null, "c");
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addProjectField("*", null);
+        lp.addOrderBy("t.c0", true);
+        lp.addOrderBy("t.c1", false);
+        OpIterator sorted = ((Operator) lp.physicalPlan(tid, new HashMap<>(), false)).getChildren()[0];
+        assertTrue(sorted instanceof OrderBy);
+        assertArrayEquals(new int[]{0, 1}, ((OrderBy) sorted).getOrderByFields());
+
+        lp.addLimit(10);
+        OpIterator plan = lp.physicalPlan(tid, new HashMap<>(), false);
+        OpIterator top = ((Operator) plan).getChildren()[0];
+        assertTrue(top instanceof TopN);
+        assertArrayEquals(new boolean[]{true, false}, ((TopN) top).getAscending());
+        assertEquals(10, run(plan).size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TopNTest.class);
+    }
+}
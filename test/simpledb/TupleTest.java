@@ -1,11 +1,17 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Test;
 
+import simpledb.common.Type;
 import simpledb.common.Utility;
 import simpledb.storage.*;
 import simpledb.systemtest.SimpleDbTestBase;
@@ -33,6 +39,54 @@ public class TupleTest extends SimpleDbTestBase {
         assertEquals(new IntField(37), tup.getField(1));
     }
 
+    /**
+     * Unit test for Tuple.getInt() and Tuple.setInt(), which keep int fields
+     * unboxed but are seen the same way through getField()
+     */
+    @Test
+    public void intFields() {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE});
+        Tuple tup = new Tuple(td);
+        assertEquals(0, tup.getInt(0));
+        assertEquals(new IntField(0), tup.getField(2));
+
+        tup.setInt(0, 42);
+        tup.setField(1, new StringField("abc", Type.STRING_LEN));
+        tup.setField(2, new IntField(-7));
+        assertEquals(42, tup.getInt(0));
+        assertEquals(new IntField(42), tup.getField(0));
+        assertEquals(-7, tup.getInt(2));
+        assertEquals("42\tabc\t-7", tup.toString());
+
+        List<Field> fields = new ArrayList<>();
+        tup.forEach(fields::add);
+        assertEquals(Arrays.asList(new IntField(42), new StringField("abc", Type.STRING_LEN), new IntField(-7)),
+                fields);
+
+        try {
+            tup.getInt(1);
+            fail("expected getInt to refuse a string field");
+        } catch (ClassCastException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Unit test for Tuple.merge()
+     */
+    @Test
+    public void merge() {
+        Tuple t1 = Utility.getHeapTuple(new int[]{1, 2});
+        Tuple t2 = Utility.getHeapTuple(new int[]{3});
+        TupleDesc td = TupleDesc.merge(t1.getTupleDesc(), t2.getTupleDesc());
+        Tuple t = Tuple.merge(t1, t2, td);
+        assertEquals(td, t.getTupleDesc());
+        assertEquals("1\t2\t3", t.toString());
+        t.setInt(0, 9);
+        assertEquals(1, t1.getInt(0));
+        assertEquals(new IntField(3), t.getField(2));
+    }
+
     /**
      * Unit test for Tuple.getTupleDesc()
      */
@@ -0,0 +1,178 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.optimizer.QueryPlanVisualizer;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 10000;
+
+    private File file;
+    private HeapFile hf;
+
+    private HeapFile open() {
+        HeapFile f = new HeapFile(file, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        return f;
+    }
+
+    private static List<Integer> firstFields(DbFileIterator it) throws Exception {
+        List<Integer> result = new ArrayList<>();
+        it.open();
+        while (it.hasNext())
+            result.add(((IntField) it.next().getField(0)).getValue());
+        it.close();
+        Collections.sort(result);
+        return result;
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> result = new ArrayList<>();
+        for (int i = from; i < to; i++)
+            result.add(i);
+        return result;
+    }
+
+    /**
+     * Loads a table whose first field grows with the page number
+     */
+    @Before public void setUp() throws Exception {
+        file = File.createTempFile("zonemap", ".dat");
+        HeapFile.deleteOnExit(file);
+        hf = open();
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++)
+            tuples.add(Utility.getHeapTuple(new int[]{i, i % 7}));
+        hf.bulkLoad(tuples.iterator());
+    }
+
+    /**
+     * A scan with a predicate reads only the pages whose range can match
+     */
+    @Test public void skipsPages() throws Exception {
+        Predicate p = new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(ROWS - 1000));
+        int pages = hf.numPages();
+        int skipped = hf.countSkippedPages(p);
+        assertTrue(skipped + " of " + pages, skipped >= pages * 8 / 10);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        long read = Database.getBufferPool().getStats().getPagesRead();
+        assertEquals(range(ROWS - 999, ROWS), firstFields(hf.iterator(new TransactionId(), p)));
+        assertTrue(Database.getBufferPool().getStats().getPagesRead() - read <= pages - skipped);
+
+        // 非int字段和其他谓词不跳过
+        assertEquals(0, hf.countSkippedPages(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(7))));
+        assertEquals(pages, hf.countSkippedPages(new Predicate(0, Predicate.Op.EQUALS, new IntField(-1))));
+        assertEquals(pages - 1, hf.countSkippedPages(new Predicate(0, Predicate.Op.EQUALS, new IntField(5000))));
+        assertTrue(hf.getZoneMapFile().exists());
+
+        // 删除堆文件时一并删除侧文件
+        hf.close();
+        assertTrue(HeapFile.delete(file));
+        assertFalse(hf.getZoneMapFile().exists());
+        assertFalse(hf.getFreeSpaceMapFile().exists());
+    }
+
+    /**
+     * Inserts widen the range of their page at once, and it is persisted
+     * when the page is written
+     */
+    @Test public void insert() throws Exception {
+        Predicate p = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(1000000));
+        assertEquals(hf.numPages(), hf.countSkippedPages(p));
+        Transaction t = new Transaction();
+        t.start();
+        Database.getBufferPool().insertTuple(t.getId(), hf.getId(), Utility.getHeapTuple(new int[]{1000000, 0}));
+        assertEquals(Collections.singletonList(1000000), firstFields(hf.iterator(t.getId(), p)));
+        t.commit();
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        hf = open(); // 从侧文件加载
+        assertEquals(hf.numPages() - 1, hf.countSkippedPages(p));
+        assertEquals(Collections.singletonList(1000000), firstFields(hf.iterator(new TransactionId(), p)));
+    }
+
+    /**
+     * After deletes, the range of a page is computed again when the page is
+     * written; an aborted insert does not hide a page either
+     */
+    @Test public void deleteAndAbort() throws Exception {
+        Predicate high = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(ROWS - 100));
+        int before = hf.countSkippedPages(high);
+        Transaction t = new Transaction();
+        t.start();
+        DbFileIterator it = hf.iterator(t.getId(), high);
+        List<Tuple> doomed = new ArrayList<>();
+        it.open();
+        while (it.hasNext())
+            doomed.add(it.next());
+        it.close();
+        for (Tuple d : doomed)
+            Database.getBufferPool().deleteTuple(t.getId(), d);
+        assertEquals(before, hf.countSkippedPages(high)); // 范围还未收缩
+        t.commit();
+        Database.getBufferPool().flushAllPages();
+        assertEquals(hf.numPages(), hf.countSkippedPages(high));
+        assertEquals(Collections.emptyList(), firstFields(hf.iterator(new TransactionId(), high)));
+
+        Transaction aborted = new Transaction();
+        aborted.start();
+        Database.getBufferPool().insertTuple(aborted.getId(), hf.getId(), Utility.getHeapTuple(new int[]{ROWS, 0}));
+        aborted.abort();
+        assertEquals(Collections.emptyList(), firstFields(hf.iterator(new TransactionId(), high)));
+    }
+
+    /**
+     * A missing side file is rebuilt from the pages, and pages changed before
+     * the map is loaded are never skipped
+     */
+    @Test public void rebuild() throws Exception {
+        Predicate p = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(500));
+        int skipped = hf.countSkippedPages(p);
+        hf.close();
+        assertTrue(hf.getZoneMapFile().delete());
+        hf = open();
+        assertEquals(skipped, hf.countSkippedPages(p));
+
+        hf = open(); // 映射尚未加载
+        Transaction t = new Transaction();
+        t.start();
+        Database.getBufferPool().insertTuple(t.getId(), hf.getId(), Utility.getHeapTuple(new int[]{-1, 0}));
+        assertEquals(range(-1, 500), firstFields(hf.iterator(t.getId(), p)));
+        t.commit();
+    }
+
+    /**
+     * EXPLAIN shows how many pages the filter lets the scan skip
+     */
+    @Test public void explain() throws Exception {
+        SeqScan scan = new SeqScan(new TransactionId(), hf.getId(), "t");
+        Filter filter = new Filter(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(ROWS / 2)), scan);
+        int skipped = hf.countSkippedPages(filter.getPredicate());
+        String plan = new QueryPlanVisualizer().getQueryPlanTree(filter);
+        assertTrue(plan, plan.contains("zonemap skips:" + skipped * 100 / hf.numPages() + "%("
+                + skipped + "/" + hf.numPages() + " pages)"));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
@@ -0,0 +1,79 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.OpIterator;
+import simpledb.execution.OrderBy;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * SELECT c0, SUM(c1) GROUP BY c0 over a table of n rows with n/4 distinct
+ * groups in random order: with a budget that holds all the groups, with
+ * budgets that make the aggregate partition its input to disk, and over
+ * an OrderBy on the group field, aggregated one group at a time.
+ * <p>
+ * The table is resident in the buffer pool; the spill files go through the
+ * file system cache.
+ * <p>
+ * Usage: AggregateSpillBenchmark [n]
+ */
+public class AggregateSpillBenchmark {
+
+    private interface Child {
+        OpIterator build(TransactionId tid);
+    }
+
+    private static void run(String name, int budget, Child child) throws Exception {
+        Aggregate[] last = new Aggregate[1];
+        long[] results = new long[1];
+        double ms = BenchUtil.bestOf(1, 3, () -> {
+            Aggregate agg = new Aggregate(child.build(new TransactionId()), 1, 0, Aggregator.Op.SUM, budget);
+            agg.open();
+            long count = 0;
+            while (agg.hasNext()) {
+                agg.next();
+                count++;
+            }
+            agg.close();
+            results[0] = count;
+            last[0] = agg;
+        });
+        System.out.printf("%-22s %9.1f %9d %11d %11.1f %11d%n", name, ms, results[0],
+                last[0].getSpilledPartitions(), last[0].getSpilledBytes() / 1e6, last[0].getPeakGroups());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        Random r = new Random(1);
+        File f = File.createTempFile("agg", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile table = new HeapFile(f, Utility.getTupleDesc(3));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        List<Tuple> tuples = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            tuples.add(Utility.getHeapTuple(new int[]{r.nextInt(n / 4), r.nextInt(1000), i}));
+        table.bulkLoad(tuples.iterator());
+        tuples = null;
+        Database.resetBufferPool(table.numPages() + 16);
+
+        System.out.printf("%d rows, %d groups, best of 3%n", n, n / 4);
+        System.out.printf("%-22s %9s %9s %11s %11s %11s%n", "plan", "ms", "groups", "partitions", "spilled MB",
+                "peak groups");
+        Child scan = tid -> new SeqScan(tid, table.getId());
+        run("hash, " + n / 4 + " groups", n / 4, scan);
+        run("hash, " + Aggregate.MAX_GROUPS + " groups", Aggregate.MAX_GROUPS, scan);
+        run("hash, " + Aggregate.MAX_GROUPS / 10 + " groups", Aggregate.MAX_GROUPS / 10, scan);
+        run("sorted (with OrderBy)", Aggregate.MAX_GROUPS / 10, tid -> new OrderBy(0, true, scan.build(tid)));
+    }
+}
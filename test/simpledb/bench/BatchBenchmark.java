@@ -0,0 +1,137 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.*;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Row at a time and batch at a time execution of two scan-filter-aggregate
+ * queries on a table shaped like the TPC-H lineitem table:
+ * <pre>
+ * Q6: SELECT SUM(price) FROM lineitem
+ *     WHERE shipdate &gt;= 365 AND shipdate &lt; 730 AND discount &lt;= 3
+ * Q1: SELECT returnflag, SUM(quantity) FROM lineitem
+ *     WHERE shipdate &lt;= 2400 GROUP BY returnflag
+ * </pre>
+ * Each query runs as a row plan (Filter over SeqScan, with the sum computed
+ * in a loop over the tuples, since the row Aggregate is not implemented in
+ * this tree), as BatchAggregate over RowToBatch over the row plan, and as a
+ * batch plan. The pages are resident in the buffer pool.
+ * <p>
+ * Usage: BatchBenchmark [rows]
+ */
+public class BatchBenchmark {
+
+    private static final TupleDesc LINEITEM = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE},
+            new String[]{"orderkey", "quantity", "price", "discount", "shipdate", "returnflag"});
+    private static final int QUANTITY = 1, PRICE = 2, DISCOUNT = 3, SHIPDATE = 4, RETURNFLAG = 5;
+
+    private static Predicate[] q6() {
+        return new Predicate[]{
+                new Predicate(SHIPDATE, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(365)),
+                new Predicate(SHIPDATE, Predicate.Op.LESS_THAN, new IntField(730)),
+                new Predicate(DISCOUNT, Predicate.Op.LESS_THAN_OR_EQ, new IntField(3))};
+    }
+
+    private static Predicate[] q1() {
+        return new Predicate[]{new Predicate(SHIPDATE, Predicate.Op.LESS_THAN_OR_EQ, new IntField(2400))};
+    }
+
+    private static OpIterator rowPlan(int tableId, Predicate[] ps) {
+        OpIterator plan = new SeqScan(new TransactionId(), tableId);
+        for (Predicate p : ps)
+            plan = new Filter(p, plan);
+        return plan;
+    }
+
+    private static BatchOpIterator batchPlan(int tableId, Predicate[] ps) {
+        BatchOpIterator plan = new BatchSeqScan(new TransactionId(), tableId);
+        for (Predicate p : ps)
+            plan = new BatchFilter(p, plan);
+        return plan;
+    }
+
+    /**
+     * @return the sum of afield over the tuples of the row plan, grouped by
+     *         gfield (or not, if gfield is NO_GROUPING)
+     */
+    private static long rowQuery(int tableId, Predicate[] ps, int afield, int gfield) throws Exception {
+        OpIterator it = rowPlan(tableId, ps);
+        long[] sums = new long[3];
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            sums[gfield == Aggregator.NO_GROUPING ? 0 : t.getInt(gfield)] += t.getInt(afield);
+        }
+        it.close();
+        return sums[0] + sums[1] + sums[2];
+    }
+
+    private static long batchQuery(BatchOpIterator source, int afield, int gfield) throws Exception {
+        BatchOpIterator it = new BatchAggregate(source, afield, gfield, Aggregator.Op.SUM);
+        int a = gfield == Aggregator.NO_GROUPING ? 0 : 1;
+        long sum = 0;
+        it.open();
+        TupleBatch b;
+        while ((b = it.nextBatch()) != null) {
+            for (int k = 0; k < b.size(); k++)
+                sum += b.getInt(a, b.row(k));
+        }
+        it.close();
+        return sum;
+    }
+
+    private static void run(String query, String plan, int rows, long[] check, BenchUtil.Body body)
+            throws Exception {
+        double ms = BenchUtil.bestOf(3, 5, body);
+        System.out.printf("%-4s %-28s %9.1f %12.0f %14d%n", query, plan, ms, rows / ms * 1000, check[0]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        File f = File.createTempFile("lineitem", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile hf = new HeapFile(f, LINEITEM);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        Random r = new Random(1);
+        List<Tuple> tuples = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Tuple t = new Tuple(LINEITEM);
+            t.setInt(0, i / 4);
+            t.setInt(QUANTITY, 1 + r.nextInt(50));
+            t.setInt(PRICE, 900 + r.nextInt(10000));
+            t.setInt(DISCOUNT, r.nextInt(11));
+            t.setInt(SHIPDATE, r.nextInt(2557));
+            t.setInt(RETURNFLAG, r.nextInt(3));
+            tuples.add(t);
+        }
+        hf.bulkLoad(tuples.iterator());
+        tuples = null;
+        Database.resetBufferPool(hf.numPages() + 16);
+        int id = hf.getId();
+
+        System.out.printf("%d lineitem rows, resident pages, best of 5%n", rows);
+        System.out.printf("%-4s %-28s %9s %12s %14s%n", "", "plan", "ms", "rows/s", "result");
+        Object[][] queries = {{"Q6", q6(), PRICE, Aggregator.NO_GROUPING}, {"Q1", q1(), QUANTITY, RETURNFLAG}};
+        for (Object[] q : queries) {
+            String name = (String) q[0];
+            Predicate[] ps = (Predicate[]) q[1];
+            int afield = (Integer) q[2], gfield = (Integer) q[3];
+            long[] check = new long[1];
+            run(name, "row", rows, check, () -> check[0] = rowQuery(id, ps, afield, gfield));
+            run(name, "row + RowToBatch + batch agg", rows, check,
+                    () -> check[0] = batchQuery(new RowToBatch(rowPlan(id, ps)), afield, gfield));
+            run(name, "batch", rows, check, () -> check[0] = batchQuery(batchPlan(id, ps), afield, gfield));
+        }
+    }
+}
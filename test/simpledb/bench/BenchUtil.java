@@ -0,0 +1,98 @@
+package simpledb.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timing helpers shared by the benchmarks in this package. The benchmarks are
+ * plain main programs (JMH is not part of lib/); run one with
+ * <pre>ant runbench -Dbench=BufferPoolBenchmark -Dargs="..."</pre>
+ */
+public class BenchUtil {
+
+    /**
+     * One unit of benchmarked work.
+     */
+    public interface Op {
+        /**
+         * @param thread    the index of the calling thread
+         * @param iteration how many times this thread has run the op so far
+         */
+        void run(int thread, long iteration) throws Exception;
+    }
+
+    /**
+     * A benchmark body that is timed as a whole.
+     */
+    public interface Body {
+        void run() throws Exception;
+    }
+
+    /**
+     * Run op in a loop on the given number of threads, first for warmupMs
+     * without measuring and then for measureMs.
+     *
+     * @return completed ops per second over the measured interval, summed
+     *         over all threads
+     */
+    public static double throughput(int threads, long warmupMs, long measureMs, Op op)
+            throws InterruptedException {
+        LongAdder done = new LongAdder();
+        AtomicBoolean measuring = new AtomicBoolean(false);
+        AtomicBoolean stop = new AtomicBoolean(false);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            Thread w = new Thread(() -> {
+                try {
+                    start.await();
+                    for (long i = 0; !stop.get(); i++) {
+                        op.run(thread, i);
+                        if (measuring.get())
+                            done.increment();
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            workers.add(w);
+            w.start();
+        }
+        start.countDown();
+        Thread.sleep(warmupMs);
+        measuring.set(true);
+        long begin = System.nanoTime();
+        Thread.sleep(measureMs);
+        long ops = done.sum();
+        long elapsed = System.nanoTime() - begin;
+        stop.set(true);
+        for (Thread w : workers)
+            w.join();
+        if (!failures.isEmpty())
+            throw new RuntimeException("benchmark op failed", failures.get(0));
+        return ops * 1e9 / elapsed;
+    }
+
+    /**
+     * Run body warmups times, then repeats times, and return the best
+     * (smallest) wall-clock time of the measured runs in milliseconds.
+     */
+    public static double bestOf(int warmups, int repeats, Body body) throws Exception {
+        for (int i = 0; i < warmups; i++)
+            body.run();
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < repeats; i++) {
+            long begin = System.nanoTime();
+            body.run();
+            best = Math.min(best, (System.nanoTime() - begin) / 1e6);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,66 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
+
+/**
+ * Multi-threaded BufferPool.getPage throughput, from 1 to 32 threads.
+ * <p>
+ * Usage: BufferPoolBenchmark [policy] [poolPages] [tablePages], where policy
+ * is one of clock, lru, lruk, 2q. With the defaults the whole table fits in
+ * the pool, so the benchmark measures the hit path; a pool smaller than the
+ * table mixes in misses and evictions.
+ */
+public class BufferPoolBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32};
+
+    static IntFunction<ReplacementPolicy> policy(String name) {
+        switch (name.toLowerCase()) {
+            case "clock":
+                return ClockReplacementPolicy::new;
+            case "lru":
+                return LRUReplacementPolicy::new;
+            case "lruk":
+                return LRUKReplacementPolicy::new;
+            case "2q":
+                return TwoQueueReplacementPolicy::new;
+            default:
+                throw new IllegalArgumentException("unknown policy " + name);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String policyName = args.length > 0 ? args[0] : "clock";
+        int poolPages = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+        int tablePages = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+
+        // two int columns: 504 tuples per 4 KB page
+        int rows = tablePages * 504;
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, rows, null, null);
+        int numPages = table.numPages();
+        TransactionId tid = new TransactionId();
+
+        System.out.printf("getPage, policy=%s, pool=%d pages, table=%d pages%n",
+                policyName, poolPages, numPages);
+        System.out.printf("%8s %16s %10s%n", "threads", "ops/s", "speedup");
+        double base = 0;
+        for (int threads : THREADS) {
+            Database.resetBufferPool(poolPages, policy(policyName));
+            BufferPool pool = Database.getBufferPool();
+            double opsPerSec = BenchUtil.throughput(threads, 500, 2000, (thread, i) -> {
+                int pageNo = ThreadLocalRandom.current().nextInt(numPages);
+                pool.getPage(tid, new HeapPageId(table.getId(), pageNo), Permissions.READ_ONLY);
+            });
+            if (threads == 1)
+                base = opsPerSec;
+            System.out.printf("%8d %16.0f %9.2fx%n", threads, opsPerSec, opsPerSec / base);
+        }
+    }
+}
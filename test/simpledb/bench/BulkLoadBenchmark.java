@@ -0,0 +1,46 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loading rows into an empty table with HeapFile.bulkLoad versus one
+ * BufferPool.insertTuple per row.
+ * <p>
+ * Usage: BulkLoadBenchmark [rows]
+ */
+public class BulkLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        List<Tuple> tuples = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++)
+            tuples.add(Utility.getHeapTuple(new int[]{i, rows - i}));
+
+        System.out.printf("%d rows%n", rows);
+        System.out.printf("%-12s %14s%n", "method", "rows/s");
+        double bulk = BenchUtil.bestOf(1, 3, () -> {
+            HeapFile table = SystemTestUtil.createRandomHeapFile(2, 0, null, null);
+            table.bulkLoad(tuples.iterator());
+        });
+        System.out.printf("%-12s %14.0f%n", "bulkLoad", rows * 1000 / bulk);
+
+        double insert = BenchUtil.bestOf(1, 3, () -> {
+            HeapFile table = SystemTestUtil.createRandomHeapFile(2, 0, null, null);
+            // the pool must hold every page the transaction dirties
+            Database.resetBufferPool(rows / 504 + 64);
+            TransactionId tid = new TransactionId();
+            for (Tuple t : tuples)
+                Database.getBufferPool().insertTuple(tid, table.getId(), t);
+            Database.getBufferPool().transactionComplete(tid, true);
+        });
+        System.out.printf("%-12s %14.0f%n", "insertTuple", rows * 1000 / insert);
+    }
+}
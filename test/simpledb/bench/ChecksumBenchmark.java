@@ -0,0 +1,69 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The cost of verifying page checksums on the read path: HeapFile.readPage
+ * on the same table stored without and with CRC32C trailers.
+ * <p>
+ * Usage: ChecksumBenchmark [tablePages] [threads]. The tables are freshly
+ * written, so they are served from the OS page cache; this is the worst
+ * case for the relative overhead, since no disk time hides the CRC.
+ */
+public class ChecksumBenchmark {
+
+    static volatile int sink;
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+        // two int columns: 504 tuples per 4 KB page
+        HeapFile plain = SystemTestUtil.createRandomHeapFile(2, tablePages * 504, null, null);
+        List<Tuple> tuples = new ArrayList<>();
+        DbFileIterator it = plain.iterator(new TransactionId());
+        it.open();
+        while (it.hasNext())
+            tuples.add(it.next());
+        it.close();
+        File f = File.createTempFile("checksum", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile checked = new HeapFile(f, plain.getTupleDesc(), FilePageIO.DEFAULT_MODE, true);
+        Database.getCatalog().addTable(checked, SystemTestUtil.getUUID());
+        checked.bulkLoad(tuples.iterator());
+        int numPages = plain.numPages();
+
+        byte[] page = new byte[BufferPool.getPageSize()];
+        ThreadLocalRandom.current().nextBytes(page);
+        double crcs = BenchUtil.throughput(1, 500, 2000, (thread, i) -> sink += PageChecksum.compute(page, 0, page.length));
+        System.out.printf("CRC32C of a %d byte page: %.0f ns%n", page.length, 1e9 / crcs);
+
+        System.out.printf("page reads, table=%d pages, threads=%d, best of 3%n", numPages, threads);
+        System.out.printf("%-10s %16s %16s%n", "access", "plain/s", "crc32c/s");
+        for (boolean sequential : new boolean[]{false, true}) {
+            double[] rates = new double[2];
+            HeapFile[] files = {plain, checked};
+            // alternate the two files so that both see the same JIT and GC state
+            for (int round = 0; round < 3; round++) {
+                for (int k = 0; k < 2; k++) {
+                    HeapFile hf = files[k];
+                    rates[k] = Math.max(rates[k], BenchUtil.throughput(threads, 300, 1500, (thread, i) -> {
+                        int pageNo = sequential ? (int) (i % numPages)
+                                : ThreadLocalRandom.current().nextInt(numPages);
+                        hf.readPage(new HeapPageId(hf.getId(), pageNo));
+                    }));
+                }
+            }
+            System.out.printf("%-10s %16.0f %16.0f   overhead %.1f%%%n", sequential ? "sequential" : "random",
+                    rates[0], rates[1], 100 * (rates[0] / rates[1] - 1));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.Predicate;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Compression ratio and scan throughput of the compressed page format on
+ * the tables the system tests build with HeapFileEncoder: random ints below
+ * a maximum value, some columns set to a constant.
+ * <p>
+ * Each table is written by HeapFileEncoder in the fixed format and bulk
+ * loaded into a compressed file. Scans run on resident pages, reading all
+ * tuples, and with the predicate c1 &lt; max / 10 evaluated in the scan.
+ * <p>
+ * Usage: CompressionBenchmark [rows]
+ */
+public class CompressionBenchmark {
+
+    private static final int COLUMNS = 4;
+
+    private static double scan(HeapFile hf, Predicate p, int rows) throws Exception {
+        TransactionId tid = new TransactionId();
+        double ms = BenchUtil.bestOf(3, 5, () -> {
+            DbFileIterator it = p == null ? hf.iterator(tid) : hf.iterator(tid, p);
+            it.open();
+            while (it.hasNext())
+                it.next();
+            it.close();
+        });
+        return rows / ms * 1000;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int[] maxValues = {1 << 16, 1 << 10, 16};
+
+        System.out.printf("%d rows of %d int columns, scans of resident pages, best of 5%n", rows, COLUMNS);
+        System.out.printf("%-22s %-10s %7s %7s %12s %12s%n", "table", "format", "pages", "ratio",
+                "scan rows/s", "c1<max/10");
+        for (int maxValue : maxValues) {
+            for (boolean constant : new boolean[]{false, true}) {
+                List<List<Integer>> values = new ArrayList<>();
+                Map<Integer, Integer> spec = constant ? Collections.singletonMap(0, 42) : null;
+                HeapFile fixed = SystemTestUtil.createRandomHeapFile(COLUMNS, rows, maxValue, spec, values);
+
+                File f = File.createTempFile("compressed", ".dat");
+                HeapFile.deleteOnExit(f);
+                HeapFile compressed = new HeapFile(f, Utility.getTupleDesc(COLUMNS), FilePageIO.DEFAULT_MODE,
+                        false, HeapFile.PageFormat.COMPRESSED, null);
+                Database.getCatalog().addTable(compressed, SystemTestUtil.getUUID());
+                List<Tuple> tuples = new ArrayList<>(rows);
+                for (List<Integer> v : values)
+                    tuples.add(Utility.getHeapTuple(v.stream().mapToInt(Integer::intValue).toArray()));
+                compressed.bulkLoad(tuples.iterator());
+                tuples = null;
+                values = null;
+
+                Database.resetBufferPool(fixed.numPages() + compressed.numPages() + 16);
+                Predicate p = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(maxValue / 10));
+                String table = "max " + maxValue + (constant ? ", c0 const" : "");
+                for (HeapFile hf : new HeapFile[]{fixed, compressed}) {
+                    System.out.printf("%-22s %-10s %7d %7.1f %12.0f %12.0f%n", table,
+                            hf.getPageFormat().name().toLowerCase(), hf.numPages(),
+                            (double) fixed.numPages() / hf.numPages(), scan(hf, null, rows), scan(hf, p, rows));
+                }
+            }
+        }
+    }
+}
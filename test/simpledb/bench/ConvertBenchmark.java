@@ -0,0 +1,45 @@
+package simpledb.bench;
+
+import simpledb.common.Type;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFileEncoder;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+/**
+ * Converting a text file into a heap file with the serial HeapFileEncoder
+ * versus the parallel one at several thread counts.
+ * <p>
+ * Usage: ConvertBenchmark [rows]
+ */
+public class ConvertBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        Type[] types = {Type.INT_TYPE, Type.INT_TYPE, Type.STRING_TYPE};
+        File in = File.createTempFile("convert", ".txt");
+        File out = File.createTempFile("convert", ".dat");
+        in.deleteOnExit();
+        out.deleteOnExit();
+        Random r = new Random(0);
+        try (BufferedWriter w = new BufferedWriter(new FileWriter(in))) {
+            for (int i = 0; i < rows; i++)
+                w.write(i + "," + r.nextInt() + ",name" + r.nextInt(100000) + "\n");
+        }
+
+        System.out.printf("%d rows, %d MB of text%n", rows, in.length() >> 20);
+        System.out.printf("%-12s %14s%n", "encoder", "rows/s");
+        double serial = BenchUtil.bestOf(1, 3, () ->
+                HeapFileEncoder.convert(in, out, BufferPool.getPageSize(), types.length, types, ','));
+        System.out.printf("%-12s %14.0f%n", "serial", rows * 1000 / serial);
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            int t = threads;
+            double parallel = BenchUtil.bestOf(1, 3, () ->
+                    HeapFileEncoder.convertParallel(in, out, BufferPool.getPageSize(), types.length, types, ',', t));
+            System.out.printf("%-12s %14.0f%n", "parallel-" + t, rows * 1000 / parallel);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.OrderBy;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * OrderBy of a resident table of n rows with random keys, with a memory
+ * budget that holds the whole table, and with budgets that make it sort
+ * externally, in runs merged once or, with more than 64 runs, twice.
+ * <p>
+ * Usage: ExternalSortBenchmark [n]
+ */
+public class ExternalSortBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Random r = new Random(1);
+        File f = File.createTempFile("sort", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile table = new HeapFile(f, Utility.getTupleDesc(3));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        List<Tuple> tuples = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            tuples.add(Utility.getHeapTuple(new int[]{r.nextInt(), i, r.nextInt()}));
+        table.bulkLoad(tuples.iterator());
+        tuples = null;
+        Database.resetBufferPool(table.numPages() + 16);
+
+        System.out.printf("%d rows, best of 3%n", n);
+        System.out.printf("%-10s %9s %7s %7s %11s%n", "budget", "ms", "runs", "passes", "spilled MB");
+        for (int budget : new int[]{n, n / 10, n / 200}) {
+            OrderBy[] last = new OrderBy[1];
+            double ms = BenchUtil.bestOf(1, 3, () -> {
+                OrderBy ob = new OrderBy(0, true, new SeqScan(new TransactionId(), table.getId()), budget);
+                ob.open();
+                while (ob.hasNext())
+                    ob.next();
+                ob.close();
+                last[0] = ob;
+            });
+            System.out.printf("%-10d %9.1f %7d %7d %11.1f%n", budget, ms, last[0].getRuns(),
+                    last[0].getMergePasses(), last[0].getSpilledBytes() / 1e6);
+            System.out.println("  " + last[0].explainAnalyze());
+        }
+    }
+}
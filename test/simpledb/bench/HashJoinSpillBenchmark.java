@@ -0,0 +1,76 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * HashEquiJoin of a build table of n/5 rows with a probe table of n rows
+ * on a key with about one match per probe row, with a memory budget that
+ * holds the whole build side, and with budgets that make the join
+ * partition both sides to disk.
+ * <p>
+ * The tables are resident in the buffer pool; the spill files go through
+ * the file system cache.
+ * <p>
+ * Usage: HashJoinSpillBenchmark [n]
+ */
+public class HashJoinSpillBenchmark {
+
+    private static HeapFile table(int rows, int keys, Random r) throws Exception {
+        File f = File.createTempFile("join", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(3));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        List<Tuple> tuples = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++)
+            tuples.add(Utility.getHeapTuple(new int[]{r.nextInt(keys), i, r.nextInt()}));
+        hf.bulkLoad(tuples.iterator());
+        return hf;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Random r = new Random(1);
+        HeapFile build = table(n / 5, n / 5, r);
+        HeapFile probe = table(n, n / 5, r);
+        Database.resetBufferPool(build.numPages() + probe.numPages() + 16);
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+
+        System.out.printf("build %d rows, probe %d rows, best of 3%n", n / 5, n);
+        System.out.printf("%-14s %9s %9s %11s %11s %12s%n", "budget", "ms", "results", "partitions", "spilled MB",
+                "peak tuples");
+        for (int budget : new int[]{n / 5, HashEquiJoin.MAP_SIZE, HashEquiJoin.MAP_SIZE / 4}) {
+            HashEquiJoin[] last = new HashEquiJoin[1];
+            long[] results = new long[1];
+            double ms = BenchUtil.bestOf(1, 3, () -> {
+                TransactionId tid = new TransactionId();
+                HashEquiJoin join = new HashEquiJoin(p, new SeqScan(tid, build.getId()),
+                        new SeqScan(tid, probe.getId()), budget);
+                join.open();
+                long count = 0;
+                while (join.hasNext()) {
+                    join.next();
+                    count++;
+                }
+                join.close();
+                results[0] = count;
+                last[0] = join;
+            });
+            System.out.printf("%-14d %9.1f %9d %11d %11.1f %12d%n", budget, ms, results[0],
+                    last[0].getSpilledPartitions(), last[0].getSpilledBytes() / 1e6, last[0].getPeakMemoryTuples());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Scan of a string-heavy table stored in the fixed and in the slotted page
+ * format: (id int, code varchar(8), city varchar(16)), with codes of 3 to 8
+ * characters and city names of 4 to 16.
+ * <p>
+ * Each scan starts from an empty buffer pool, so it reads every page of the
+ * file through HeapFile.readPage; the files are freshly written and served
+ * from the OS page cache, so the times do not include disk latency, only
+ * the cost of reading and decoding the pages.
+ * <p>
+ * Usage: HeapFormatBenchmark [rows]
+ */
+public class HeapFormatBenchmark {
+
+    private static final TupleDesc TD = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.STRING_TYPE},
+            new String[]{"id", "code", "city"});
+
+    private static String randomString(Random r, int min, int max) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = min + r.nextInt(max - min + 1); i > 0; i--)
+            sb.append((char) ('a' + r.nextInt(26)));
+        return sb.toString();
+    }
+
+    private static HeapFile load(List<Tuple> tuples, HeapFile.PageFormat format) throws Exception {
+        File f = File.createTempFile("format", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile hf = new HeapFile(f, TD, FilePageIO.DEFAULT_MODE, false, format, new int[]{0, 8, 16});
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        hf.bulkLoad(tuples.iterator());
+        return hf;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        Random r = new Random(42);
+        List<Tuple> tuples = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Tuple t = new Tuple(TD);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField(randomString(r, 3, 8), Type.STRING_LEN));
+            t.setField(2, new StringField(randomString(r, 4, 16), Type.STRING_LEN));
+            tuples.add(t);
+        }
+        HeapFile fixed = load(tuples, HeapFile.PageFormat.FIXED);
+        HeapFile slotted = load(tuples, HeapFile.PageFormat.SLOTTED);
+
+        System.out.printf("scan of %d rows from an empty buffer pool, best of 5%n", rows);
+        System.out.printf("%-8s %8s %10s %10s %12s%n", "format", "pages", "MB", "ms", "rows/s");
+        for (HeapFile hf : new HeapFile[]{fixed, slotted}) {
+            double ms = BenchUtil.bestOf(2, 5, () -> {
+                Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+                DbFileIterator it = hf.iterator(new TransactionId());
+                it.open();
+                int n = 0;
+                while (it.hasNext()) {
+                    it.next();
+                    n++;
+                }
+                it.close();
+                if (n != rows)
+                    throw new IllegalStateException("scanned " + n + " rows");
+            });
+            System.out.printf("%-8s %8d %10.1f %10.1f %12.0f%n", hf.getPageFormat().name().toLowerCase(),
+                    hf.numPages(), hf.getFile().length() / 1e6, ms, rows / ms * 1000);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.HeapFile;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * BufferPool.insertTuple throughput into tables whose existing pages are all
+ * full. With the free space map the cost of an insert does not depend on the
+ * size of the table.
+ * <p>
+ * Usage: InsertBenchmark [inserts] [tablePages...]
+ */
+public class InsertBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int inserts = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int[] sizes = {100, 1000, 10000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++)
+                sizes[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        System.out.printf("%d inserts per transaction%n", inserts);
+        System.out.printf("%12s %14s%n", "table pages", "inserts/s");
+        for (int pages : sizes) {
+            // two int columns: 504 tuples per 4 KB page
+            HeapFile table = SystemTestUtil.createRandomHeapFile(2, pages * 504, null, null);
+            Database.resetBufferPool(1000);
+            double ms = BenchUtil.bestOf(1, 3, () -> {
+                TransactionId tid = new TransactionId();
+                for (int i = 0; i < inserts; i++)
+                    Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(i, 2));
+                Database.getBufferPool().transactionComplete(tid, true);
+            });
+            System.out.printf("%12d %14.0f%n", pages, inserts * 1000 / ms);
+        }
+    }
+}
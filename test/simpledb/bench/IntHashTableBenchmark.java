@@ -0,0 +1,114 @@
+package simpledb.bench;
+
+import simpledb.execution.IntHashTable;
+import simpledb.storage.Field;
+import simpledb.storage.IntField;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The hash table of a hash join on an int field: build a table of n rows
+ * with random keys in [0, n), chaining the rows with the same key as
+ * HashEquiJoin does, then probe it with n random keys in [0, 2n), about
+ * half of which match. Compares a HashMap keyed on the IntFields of the
+ * tuples with IntHashTable keyed on the ints.
+ * <p>
+ * The keys are created before timing, as they are already in the tuples.
+ * Run with a heap of at least 3g for 10M keys.
+ * <p>
+ * Usage: IntHashTableBenchmark [n...]
+ */
+public class IntHashTableBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private interface Table {
+        /**
+         * Build the table from the first keys, then probe it with the
+         * second ones.
+         *
+         * @return the number of matching rows, and the time of the build
+         *         and the probe in ns
+         */
+        long[] run(int[] build, int[] probe);
+    }
+
+    private static long[] fieldMap(Field[] build, Field[] probe) {
+        long begin = System.nanoTime();
+        Map<Field, Integer> heads = new HashMap<>();
+        int[] next = new int[build.length];
+        for (int r = 0; r < build.length; r++) {
+            Integer head = heads.put(build[r], r);
+            next[r] = head == null ? -1 : head;
+        }
+        long built = System.nanoTime();
+        long matches = 0;
+        for (Field key : probe) {
+            Integer head = heads.get(key);
+            for (int m = head == null ? -1 : head; m >= 0; m = next[m])
+                matches++;
+        }
+        return new long[]{matches, built - begin, System.nanoTime() - built};
+    }
+
+    private static long[] intTable(int[] build, int[] probe) {
+        long begin = System.nanoTime();
+        IntHashTable heads = new IntHashTable();
+        int[] next = new int[build.length];
+        for (int r = 0; r < build.length; r++)
+            next[r] = heads.put(build[r], r);
+        long built = System.nanoTime();
+        long matches = 0;
+        for (int key : probe) {
+            for (int m = heads.get(key); m >= 0; m = next[m])
+                matches++;
+        }
+        return new long[]{matches, built - begin, System.nanoTime() - built};
+    }
+
+    private static Field[] fields(int[] keys) {
+        Field[] result = new Field[keys.length];
+        for (int i = 0; i < keys.length; i++)
+            result[i] = new IntField(keys[i]);
+        return result;
+    }
+
+    private static void run(String name, int n, int[] build, int[] probe, Table table) {
+        long[] best = null;
+        long allocated = 0;
+        for (int i = 0; i < 5; i++) {
+            long before = THREADS.getCurrentThreadAllocatedBytes();
+            long[] r = table.run(build, probe);
+            allocated = THREADS.getCurrentThreadAllocatedBytes() - before;
+            if (best == null || r[1] + r[2] < best[1] + best[2])
+                best = r;
+        }
+        System.out.printf("%-24s %10d %9.1f %9.1f %12.1f %10d%n", name, n, best[1] / 1e6, best[2] / 1e6,
+                (double) allocated / n, best[0]);
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1000000, 10000000};
+        System.out.printf("%-24s %10s %9s %9s %12s %10s%n", "table", "n", "build ms", "probe ms", "bytes/row",
+                "matches");
+        for (int n : sizes) {
+            Random r = new Random(1);
+            int[] build = new int[n];
+            int[] probe = new int[n];
+            for (int i = 0; i < n; i++) {
+                build[i] = r.nextInt(n);
+                probe[i] = r.nextInt(2 * n);
+            }
+            Field[] buildFields = fields(build);
+            Field[] probeFields = fields(probe);
+            run("HashMap<Field,Integer>", n, build, probe, (b, p) -> fieldMap(buildFields, probeFields));
+            run("IntHashTable", n, build, probe, IntHashTableBenchmark::intTable);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The join algorithms on equality of two int keys of resident tables:
+ * <ul>
+ * <li>a nested loop join that scans the inner table once per outer tuple
+ * (Join with blocks of one tuple), a block nested-loop join and a hash
+ * join of two tables of n rows;</li>
+ * <li>the same joins and an index nested-loop join of n/100 outer rows with
+ * an inner table of 10n rows indexed on the key.</li>
+ * </ul>
+ * Usage: JoinAlgorithmBenchmark [n]
+ */
+public class JoinAlgorithmBenchmark {
+
+    private interface Plan {
+        OpIterator build(TransactionId tid);
+    }
+
+    private static HeapFile table(int rows, int keys, Random r) throws Exception {
+        File f = File.createTempFile("join", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        List<Tuple> tuples = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++)
+            tuples.add(Utility.getHeapTuple(new int[]{r.nextInt(keys), i}));
+        hf.bulkLoad(tuples.iterator());
+        return hf;
+    }
+
+    private static void run(String name, Plan plan) throws Exception {
+        long[] results = new long[1];
+        double ms = BenchUtil.bestOf(1, 3, () -> {
+            OpIterator it = plan.build(new TransactionId());
+            it.open();
+            long n = 0;
+            while (it.hasNext()) {
+                it.next();
+                n++;
+            }
+            it.close();
+            results[0] = n;
+        });
+        System.out.printf("%-36s %10.1f %10d%n", name, ms, results[0]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        Random r = new Random(1);
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+
+        HeapFile left = table(n, n, r);
+        HeapFile right = table(n, n, r);
+        HeapFile small = table(n / 100, 10 * n, r);
+        BTreeFile index = BTreeUtility.createRandomBTreeFile(2, 10 * n, 10 * n, null, null, 0);
+        Database.resetBufferPool(left.numPages() + right.numPages() + small.numPages() + index.numPages() + 16);
+
+        System.out.printf("%-36s %10s %10s%n", "join", "ms", "results");
+        System.out.printf("%d x %d rows%n", n, n);
+        run("  nested loop", tid -> new Join(p, new SeqScan(tid, left.getId()), new SeqScan(tid, right.getId()), 0));
+        run("  block nested loop", tid -> new Join(p, new SeqScan(tid, left.getId()),
+                new SeqScan(tid, right.getId())));
+        run("  hash", tid -> new HashEquiJoin(p, new SeqScan(tid, left.getId()), new SeqScan(tid, right.getId())));
+
+        System.out.printf("%d x %d rows, inner indexed%n", n / 100, 10 * n);
+        run("  nested loop", tid -> new Join(p, new SeqScan(tid, small.getId()), new SeqScan(tid, index.getId()), 0));
+        run("  block nested loop", tid -> new Join(p, new SeqScan(tid, small.getId()),
+                new SeqScan(tid, index.getId())));
+        run("  hash", tid -> new HashEquiJoin(p, new SeqScan(tid, small.getId()), new SeqScan(tid, index.getId())));
+        run("  index nested loop", tid -> new IndexNestedLoopJoin(p, new SeqScan(tid, small.getId()),
+                new SeqScan(tid, index.getId())));
+    }
+}
@@ -0,0 +1,69 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * COUNT, SUM and AVG of c2 over a table of n rows, grouped by c0 and by
+ * (c0, c1): three Aggregates, each scanning the table, against one
+ * Aggregate computing the three in one pass.
+ * <p>
+ * The table is resident in the buffer pool.
+ * <p>
+ * Usage: MultiAggregateBenchmark [n]
+ */
+public class MultiAggregateBenchmark {
+
+    private static final Aggregator.Op[] OPS = {Aggregator.Op.COUNT, Aggregator.Op.SUM, Aggregator.Op.AVG};
+
+    private static void drain(Aggregate agg) throws Exception {
+        agg.open();
+        while (agg.hasNext())
+            agg.next();
+        agg.close();
+    }
+
+    private static void run(String name, HeapFile table, int[] gfields) throws Exception {
+        double separate = BenchUtil.bestOf(1, 3, () -> {
+            for (Aggregator.Op op : OPS)
+                drain(new Aggregate(new SeqScan(new TransactionId(), table.getId()),
+                        new int[]{2}, new Aggregator.Op[]{op}, gfields));
+        });
+        double shared = BenchUtil.bestOf(1, 3, () -> drain(new Aggregate(
+                new SeqScan(new TransactionId(), table.getId()), new int[]{2, 2, 2}, OPS, gfields)));
+        System.out.printf("%-18s %12.1f %12.1f %8.2fx%n", name, separate, shared, separate / shared);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        Random r = new Random(1);
+        File f = File.createTempFile("multiagg", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile table = new HeapFile(f, Utility.getTupleDesc(3));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        List<Tuple> tuples = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            tuples.add(Utility.getHeapTuple(new int[]{r.nextInt(1000), r.nextInt(100), r.nextInt(10000)}));
+        table.bulkLoad(tuples.iterator());
+        tuples = null;
+        Database.resetBufferPool(table.numPages() + 16);
+
+        System.out.printf("%d rows, best of 3%n", n);
+        System.out.printf("%-18s %12s %12s %9s%n", "group by", "3 aggregates", "1 aggregate", "speedup");
+        run("none", table, new int[0]);
+        run("c0", table, new int[]{0});
+        run("c0, c1", table, new int[]{0, 1});
+    }
+}
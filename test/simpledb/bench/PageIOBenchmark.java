@@ -0,0 +1,52 @@
+package simpledb.bench;
+
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Random page reads per second in each FilePageIO mode: raw reads from the
+ * file, and HeapFile.readPage (read plus page decoding).
+ * <p>
+ * Usage: PageIOBenchmark [tablePages] [threads]. The table is freshly
+ * written, so it is served from the OS page cache; the benchmark measures
+ * the per-read overhead of each mode, not the disk.
+ */
+public class PageIOBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+        // two int columns: 504 tuples per 4 KB page
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, tablePages * 504, null, null);
+        File f = table.getFile();
+        int numPages = table.numPages();
+        int pageSize = BufferPool.getPageSize();
+
+        System.out.printf("random page reads, table=%d pages, threads=%d%n", numPages, threads);
+        System.out.printf("%-14s %16s %16s%n", "mode", "raw reads/s", "readPage/s");
+        for (FilePageIO.Mode mode : FilePageIO.Mode.values()) {
+            FilePageIO io = new FilePageIO(f, mode);
+            double raw = BenchUtil.throughput(threads, 500, 2000, new BenchUtil.Op() {
+                final ThreadLocal<byte[]> buf = ThreadLocal.withInitial(() -> new byte[pageSize]);
+
+                public void run(int thread, long i) throws Exception {
+                    int pageNo = ThreadLocalRandom.current().nextInt(numPages);
+                    io.read((long) pageNo * pageSize, buf.get());
+                }
+            });
+            io.close();
+
+            HeapFile hf = new HeapFile(f, table.getTupleDesc(), mode);
+            double decoded = BenchUtil.throughput(threads, 500, 2000, (thread, i) -> {
+                int pageNo = ThreadLocalRandom.current().nextInt(numPages);
+                hf.readPage(new HeapPageId(hf.getId(), pageNo));
+            });
+            hf.close();
+            System.out.printf("%-14s %16.0f %16.0f%n", mode, raw, decoded);
+        }
+    }
+}
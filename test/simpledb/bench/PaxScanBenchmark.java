@@ -0,0 +1,97 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Project;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A query reading 3 columns of a 16 column int table, SELECT c0, c7, c15
+ * FROM t, run as Project over SeqScan on the table stored in the fixed and
+ * in the PAX page format, with and without pushing the projection into the
+ * scan.
+ * <p>
+ * The pages are resident in the buffer pool; both formats hold the same
+ * number of tuples per page, so they read the same number of pages from
+ * disk, and the difference is in decoding and memory traffic.
+ * <p>
+ * Usage: PaxScanBenchmark [rows]
+ */
+public class PaxScanBenchmark {
+
+    private static final int COLUMNS = 16;
+    private static final List<Integer> SELECTED = Arrays.asList(0, 7, 15);
+
+    private static HeapFile load(List<Tuple> tuples, HeapFile.PageFormat format) throws Exception {
+        File f = File.createTempFile("pax", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(COLUMNS), FilePageIO.DEFAULT_MODE, false, format, null);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        hf.bulkLoad(tuples.iterator());
+        return hf;
+    }
+
+    /**
+     * A SeqScan that ignores the projection pushed into it.
+     */
+    private static class FullScan extends SeqScan {
+        FullScan(TransactionId tid, int tableId) {
+            super(tid, tableId);
+        }
+
+        @Override
+        public boolean pushDownProjection(java.util.Collection<Integer> fields) {
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        Random r = new Random(42);
+        List<Tuple> tuples = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            int[] values = new int[COLUMNS];
+            for (int j = 0; j < COLUMNS; j++)
+                values[j] = r.nextInt();
+            tuples.add(Utility.getHeapTuple(values));
+        }
+        HeapFile fixed = load(tuples, HeapFile.PageFormat.FIXED);
+        HeapFile pax = load(tuples, HeapFile.PageFormat.PAX);
+        tuples = null;
+        Database.resetBufferPool(fixed.numPages() + pax.numPages() + 16);
+        TransactionId tid = new TransactionId();
+        Type[] types = {Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE};
+
+        System.out.printf("SELECT 3 of %d int columns, %d rows, %d resident pages per table, best of 5%n",
+                COLUMNS, rows, fixed.numPages());
+        System.out.printf("%-8s %-14s %10s %12s%n", "format", "projection", "ms", "rows/s");
+        for (HeapFile hf : new HeapFile[]{fixed, pax}) {
+            for (boolean pushed : new boolean[]{false, true}) {
+                double ms = BenchUtil.bestOf(3, 5, () -> {
+                    SeqScan scan = pushed ? new SeqScan(tid, hf.getId()) : new FullScan(tid, hf.getId());
+                    OpIterator project = new Project(SELECTED, types, scan);
+                    project.open();
+                    long sum = 0;
+                    while (project.hasNext())
+                        sum += ((IntField) project.next().getField(1)).getValue();
+                    project.close();
+                    if (sum == 42)
+                        System.out.print("");
+                });
+                System.out.printf("%-8s %-14s %10.1f %12.0f%n", hf.getPageFormat().name().toLowerCase(),
+                        pushed ? "pushed down" : "in Project", ms, rows / ms * 1000);
+            }
+        }
+    }
+}
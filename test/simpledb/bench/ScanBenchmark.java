@@ -0,0 +1,87 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.execution.Predicate;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Time and heap allocation of scanning a HeapFile that is resident in the
+ * buffer pool, comparing
+ * <ul>
+ * <li>iterating over every Tuple,</li>
+ * <li>summing one column with a HeapPage.SlotCursor,</li>
+ * <li>a 1% selective filter applied to every Tuple, and</li>
+ * <li>the same filter evaluated on the page bytes.</li>
+ * </ul>
+ * Usage: ScanBenchmark [tablePages]
+ */
+public class ScanBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        // two int columns in [0, 100): 504 tuples per 4 KB page
+        int rows = tablePages * 504;
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, rows, 100, null, null);
+        Database.resetBufferPool(table.numPages() + 16);
+        TransactionId tid = new TransactionId();
+        Predicate p = new Predicate(1, Predicate.Op.EQUALS, new IntField(7));
+
+        System.out.printf("scan of %d tuples on %d resident pages%n", rows, table.numPages());
+        System.out.printf("%-22s %10s %14s%n", "", "ms", "bytes/tuple");
+        run("tuples", rows, () -> {
+            DbFileIterator it = table.iterator(tid);
+            it.open();
+            while (it.hasNext())
+                it.next();
+            it.close();
+        });
+        run("cursor sum(col 0)", rows, () -> {
+            long sum = 0;
+            for (int pageNo = 0; pageNo < table.numPages(); pageNo++) {
+                HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                        new HeapPageId(table.getId(), pageNo), Permissions.READ_ONLY);
+                HeapPage.SlotCursor c = page.cursor();
+                while (c.next())
+                    sum += c.getInt(0);
+            }
+            if (sum == 42)
+                System.out.print("");
+        });
+        run("filter on tuples", rows, () -> {
+            DbFileIterator it = table.iterator(tid);
+            it.open();
+            while (it.hasNext())
+                p.filter(it.next());
+            it.close();
+        });
+        run("filter on page bytes", rows, () -> {
+            DbFileIterator it = table.iterator(tid, p);
+            it.open();
+            while (it.hasNext())
+                it.next();
+            it.close();
+        });
+    }
+
+    private static void run(String name, int rows, BenchUtil.Body body) throws Exception {
+        for (int i = 0; i < 3; i++)
+            body.run();
+        long before = allocated();
+        body.run();
+        long bytes = allocated() - before;
+        double ms = BenchUtil.bestOf(0, 5, body);
+        System.out.printf("%-22s %10.1f %14.1f%n", name, ms, (double) bytes / rows);
+    }
+}
@@ -0,0 +1,98 @@
+package simpledb.bench;
+
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+import simpledb.execution.SortKeys;
+import simpledb.storage.Field;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+/**
+ * In-memory sorts of n tuples (default 10M), with the comparator OrderBy
+ * used, and on normalized keys with {@link SortKeys}: on a random int, on
+ * two ints the second descending, and on a random string of 8 to 16 chars.
+ * <p>
+ * Needs a heap of about 4 GB for 10M rows.
+ * <p>
+ * Usage: SortKeysBenchmark [n]
+ */
+public class SortKeysBenchmark {
+
+    /**
+     * The comparator of OrderBy: ints with getInt, other fields with
+     * Field.compare
+     */
+    private static Comparator<Tuple> comparator(int[] fields, boolean[] asc) {
+        return (o1, o2) -> {
+            for (int i = 0; i < fields.length; i++) {
+                int f = fields[i], c;
+                if (o1.getTupleDesc().getFieldType(f) == Type.INT_TYPE) {
+                    c = Integer.compare(o1.getInt(f), o2.getInt(f));
+                } else {
+                    Field t1 = o1.getField(f), t2 = o2.getField(f);
+                    if (t1.compare(Predicate.Op.EQUALS, t2))
+                        c = 0;
+                    else
+                        c = t1.compare(Predicate.Op.GREATER_THAN, t2) ? 1 : -1;
+                }
+                if (c != 0)
+                    return asc[i] ? c : -c;
+            }
+            return 0;
+        };
+    }
+
+    private static void run(String name, int n, IntFunction<Tuple> row, int[] fields, boolean[] asc)
+            throws Exception {
+        List<Tuple> tuples = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            tuples.add(row.apply(i));
+        TupleDesc td = tuples.get(0).getTupleDesc();
+        Comparator<Tuple> comparator = comparator(fields, asc);
+        SortKeys keys = new SortKeys(td, fields, asc);
+        double byComparator = BenchUtil.bestOf(1, 3, () -> new ArrayList<>(tuples).sort(comparator));
+        double byKeys = BenchUtil.bestOf(1, 3, () -> keys.sort(new ArrayList<>(tuples)));
+        System.out.printf("%-24s %12.1f %12.1f %8.2fx%n", name, byComparator, byKeys, byComparator / byKeys);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        TupleDesc ints = new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE});
+        TupleDesc strings = new TupleDesc(new Type[]{Type.STRING_TYPE, Type.INT_TYPE});
+
+        System.out.printf("%d rows, best of 3%n", n);
+        System.out.printf("%-24s %12s %12s %9s%n", "key", "comparator", "sort keys", "speedup");
+        Random r = new Random(1);
+        run("int", n, i -> {
+            Tuple t = new Tuple(ints);
+            t.setInt(0, r.nextInt());
+            t.setInt(1, r.nextInt(100));
+            t.setInt(2, i);
+            return t;
+        }, new int[]{0}, new boolean[]{true});
+        run("int, int DESC", n, i -> {
+            Tuple t = new Tuple(ints);
+            t.setInt(0, r.nextInt(1000));
+            t.setInt(1, r.nextInt());
+            t.setInt(2, i);
+            return t;
+        }, new int[]{0, 1}, new boolean[]{true, false});
+        run("string", n, i -> {
+            Tuple t = new Tuple(strings);
+            StringBuilder sb = new StringBuilder();
+            int len = 8 + r.nextInt(9);
+            for (int j = 0; j < len; j++)
+                sb.append((char) ('a' + r.nextInt(26)));
+            t.setField(0, new StringField(sb.toString(), Type.STRING_LEN));
+            t.setInt(1, i);
+            return t;
+        }, new int[]{0}, new boolean[]{true});
+    }
+}
@@ -0,0 +1,88 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The sort-merge join of resident tables against the other joins:
+ * <ul>
+ * <li>a range join (LESS_THAN) of two unsorted tables of n rows, by a
+ * block nested-loop join and by a sort-merge join that sorts both;</li>
+ * <li>an equality join of two tables of 10n rows scanned in the order of
+ * their B+ tree keys, by a hash join and by a sort-merge join that does
+ * not sort.</li>
+ * </ul>
+ * Usage: SortMergeJoinBenchmark [n]
+ */
+public class SortMergeJoinBenchmark {
+
+    private interface Plan {
+        OpIterator build(TransactionId tid);
+    }
+
+    private static HeapFile table(int rows, int keys, Random r) throws Exception {
+        File f = File.createTempFile("join", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        List<Tuple> tuples = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++)
+            tuples.add(Utility.getHeapTuple(new int[]{r.nextInt(keys), i}));
+        hf.bulkLoad(tuples.iterator());
+        return hf;
+    }
+
+    private static void run(String name, Plan plan) throws Exception {
+        long[] results = new long[1];
+        double ms = BenchUtil.bestOf(1, 3, () -> {
+            OpIterator it = plan.build(new TransactionId());
+            it.open();
+            long n = 0;
+            while (it.hasNext()) {
+                it.next();
+                n++;
+            }
+            it.close();
+            results[0] = n;
+        });
+        System.out.printf("%-36s %10.1f %10d%n", name, ms, results[0]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        Random r = new Random(1);
+        JoinPredicate lt = new JoinPredicate(0, Predicate.Op.LESS_THAN, 0);
+        JoinPredicate eq = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+
+        HeapFile left = table(n, 100 * n, r);
+        HeapFile right = table(n, 100 * n, r);
+        BTreeFile tree1 = BTreeUtility.createRandomBTreeFile(2, 10 * n, 10 * n, null, null, 0);
+        BTreeFile tree2 = BTreeUtility.createRandomBTreeFile(2, 10 * n, 10 * n, null, null, 0);
+        Database.resetBufferPool(left.numPages() + right.numPages() + tree1.numPages() + tree2.numPages() + 16);
+
+        System.out.printf("%-36s %10s %10s%n", "join", "ms", "results");
+        System.out.printf("%d x %d rows, LESS_THAN%n", n, n);
+        run("  block nested loop", tid -> new Join(lt, new SeqScan(tid, left.getId()),
+                new SeqScan(tid, right.getId())));
+        run("  sort-merge", tid -> new SortMergeJoin(lt, new SeqScan(tid, left.getId()),
+                new SeqScan(tid, right.getId())));
+
+        System.out.printf("%d x %d rows, EQUALS on B+ tree keys%n", 10 * n, 10 * n);
+        run("  hash", tid -> new HashEquiJoin(eq, new SeqScan(tid, tree1.getId()),
+                new SeqScan(tid, tree2.getId())));
+        run("  sort-merge", tid -> new SortMergeJoin(eq, new SeqScan(tid, tree1.getId()),
+                new SeqScan(tid, tree2.getId())));
+    }
+}
@@ -0,0 +1,67 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.OpIterator;
+import simpledb.execution.OrderBy;
+import simpledb.execution.SeqScan;
+import simpledb.execution.TopN;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ORDER BY c0, c1 DESC LIMIT k over a resident table of n rows with random
+ * keys: an OrderBy of the whole table read for its first k tuples, against
+ * a TopN.
+ * <p>
+ * Usage: TopNBenchmark [n]
+ */
+public class TopNBenchmark {
+
+    private interface Plan {
+        OpIterator build(TransactionId tid);
+    }
+
+    private static void run(String name, int k, Plan plan) throws Exception {
+        double ms = BenchUtil.bestOf(1, 3, () -> {
+            OpIterator it = plan.build(new TransactionId());
+            it.open();
+            for (int i = 0; i < k && it.hasNext(); i++)
+                it.next();
+            it.close();
+        });
+        System.out.printf("%-28s %10.1f%n", name, ms);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Random r = new Random(1);
+        File f = File.createTempFile("topn", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile table = new HeapFile(f, Utility.getTupleDesc(3));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        List<Tuple> tuples = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            tuples.add(Utility.getHeapTuple(new int[]{r.nextInt(1000), r.nextInt(), i}));
+        table.bulkLoad(tuples.iterator());
+        tuples = null;
+        Database.resetBufferPool(table.numPages() + 16);
+
+        int[] fields = {0, 1};
+        boolean[] asc = {true, false};
+        System.out.printf("%d rows, best of 3%n", n);
+        System.out.printf("%-28s %10s%n", "plan", "ms");
+        run("scan only", n, tid -> new SeqScan(tid, table.getId()));
+        for (int k : new int[]{10, 1000, 100000}) {
+            run("OrderBy, first " + k, k, tid -> new OrderBy(fields, asc, new SeqScan(tid, table.getId())));
+            run("TopN " + k, k, tid -> new TopN(fields, asc, k, new SeqScan(tid, table.getId())));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Time and memory allocated by the operators that work on int fields of
+ * tuples: a scan of resident pages, a filter, a nested loop join, a hash
+ * join and a sort, on a table of 4 random int columns.
+ * <p>
+ * Apart from the scan, the operators read the tuples from a TupleIterator
+ * over tuples already read from the table, so that they measure the
+ * operator and not the pages.
+ * <p>
+ * Usage: TupleBenchmark [rows]
+ */
+public class TupleBenchmark {
+
+    private static final int COLUMNS = 4;
+    private static final int MAX_VALUE = 1 << 20;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private interface Query {
+        OpIterator plan() throws Exception;
+    }
+
+    private static void run(String name, int rows, Query query) throws Exception {
+        long[] allocated = new long[1];
+        double ms = BenchUtil.bestOf(3, 5, () -> {
+            OpIterator it = query.plan();
+            long before = THREADS.getCurrentThreadAllocatedBytes();
+            it.open();
+            while (it.hasNext())
+                it.next();
+            it.close();
+            allocated[0] = THREADS.getCurrentThreadAllocatedBytes() - before;
+        });
+        System.out.printf("%-34s %9.1f %12.0f %10.1f%n", name, ms, rows / ms * 1000, (double) allocated[0] / rows);
+    }
+
+    private static List<Tuple> read(HeapFile hf) throws Exception {
+        List<Tuple> tuples = new ArrayList<>();
+        DbFileIterator it = hf.iterator(new TransactionId());
+        it.open();
+        while (it.hasNext())
+            tuples.add(it.next());
+        it.close();
+        return tuples;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int small = (int) Math.sqrt(rows * 8.0);
+
+        File f = File.createTempFile("tuples", ".dat");
+        HeapFile.deleteOnExit(f);
+        TupleDesc td = Utility.getTupleDesc(COLUMNS);
+        HeapFile hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        Random r = new Random(1);
+        List<Tuple> loaded = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            int[] v = new int[COLUMNS];
+            for (int c = 0; c < COLUMNS; c++)
+                v[c] = r.nextInt(MAX_VALUE);
+            loaded.add(Utility.getHeapTuple(v));
+        }
+        hf.bulkLoad(loaded.iterator());
+        loaded = null;
+        Database.resetBufferPool(hf.numPages() + 16);
+
+        List<Tuple> tuples = read(hf);
+        List<Tuple> outer = tuples.subList(0, small);
+        List<Tuple> dimension = tuples.subList(0, rows / 10);
+        TupleDesc read = tuples.get(0).getTupleDesc();
+
+        System.out.printf("%d rows of %d int columns, best of 5%n", rows, COLUMNS);
+        System.out.printf("%-34s %9s %12s %10s%n", "query", "ms", "rows/s", "bytes/row");
+        run("scan", rows, () -> new SeqScan(new TransactionId(), hf.getId()));
+        run("filter c1 < max/2", rows, () -> new Filter(
+                new Predicate(1, Predicate.Op.LESS_THAN, new IntField(MAX_VALUE / 2)), new TupleIterator(read, tuples)));
+        run("nested loop join " + small + "x" + small, small * small, () -> new Join(
+                new JoinPredicate(1, Predicate.Op.LESS_THAN, 2),
+                new TupleIterator(read, outer), new TupleIterator(read, outer)));
+        run("hash join on c0, 1/10 dimension", rows, () -> new HashEquiJoin(
+                new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new TupleIterator(read, dimension), new TupleIterator(read, tuples)));
+        run("order by c2", rows, () -> new OrderBy(2, true, new TupleIterator(read, tuples)));
+    }
+}
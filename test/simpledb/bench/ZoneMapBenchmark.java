@@ -0,0 +1,69 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.Predicate;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Scans with a predicate "c &gt; v" from an empty buffer pool, on a table
+ * (c0 int, c1 int) where c0 grows with the row number, so that the zone
+ * map can skip most pages, and c1 has the same values in random order, so
+ * that every page may match. Both columns return the same number of rows.
+ * <p>
+ * Usage: ZoneMapBenchmark [rows]
+ */
+public class ZoneMapBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Random r = new Random(42);
+        int[] shuffled = new int[rows];
+        for (int i = 0; i < rows; i++)
+            shuffled[i] = i;
+        for (int i = rows - 1; i > 0; i--) {
+            int j = r.nextInt(i + 1);
+            int tmp = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = tmp;
+        }
+        List<Tuple> tuples = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++)
+            tuples.add(Utility.getHeapTuple(new int[]{i, shuffled[i]}));
+        File f = File.createTempFile("zonemap", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        hf.bulkLoad(tuples.iterator());
+        tuples = null;
+
+        System.out.printf("%d rows, %d pages, scans from an empty buffer pool, best of 5%n", rows, hf.numPages());
+        System.out.printf("%-12s %-8s %8s %8s %10s%n", "selectivity", "column", "skipped", "read", "ms");
+        for (double selectivity : new double[]{0.001, 0.01, 0.1, 0.5}) {
+            for (int field : new int[]{0, 1}) {
+                Predicate p = new Predicate(field, Predicate.Op.GREATER_THAN,
+                        new IntField((int) (rows * (1 - selectivity))));
+                long[] read = new long[1];
+                double ms = BenchUtil.bestOf(2, 5, () -> {
+                    Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+                    long before = Database.getBufferPool().getStats().getPagesRead();
+                    DbFileIterator it = hf.iterator(new TransactionId(), p);
+                    it.open();
+                    while (it.hasNext())
+                        it.next();
+                    it.close();
+                    read[0] = Database.getBufferPool().getStats().getPagesRead() - before;
+                });
+                System.out.printf("%-12s %-8s %8d %8d %10.1f%n", selectivity * 100 + "%",
+                        field == 0 ? "sorted" : "random", hf.countSkippedPages(p), read[0], ms);
+            }
+        }
+    }
+}
@@ -127,9 +127,9 @@ public class LogTest extends SimpleDbTestBase {
         // empty heap files w/ 2 columns.
         // adds to the catalog.
         file1 = new File("simple1.db");
-        file1.delete();
+        HeapFile.delete(file1);
         file2 = new File("simple2.db");
-        file2.delete();
+        HeapFile.delete(file2);
         hf1 = Utility.createEmptyHeapFile(file1.getAbsolutePath(), 2);
         hf2 = Utility.createEmptyHeapFile(file2.getAbsolutePath(), 2);
     }